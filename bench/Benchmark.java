@@ -0,0 +1,147 @@
+import java.util.Locale;
+
+/**
+ * Benchmark
+ *
+ * Times the hot paths of the program so that a change to one of them can be checked for whether it helps or hurts.
+ * NeuralNetBenchmarks covers running, training, loading and storing networks and reading training data, and
+ * ImageBenchmarks covers reading, writing and converting bitmaps. Everything is run on synthetic data, made from a
+ * fixed seed, so the benchmarks need no files other than config.txt and give the same work on every run.
+ *
+ * The benchmarks are run the same way as with JMH. Each one first runs for WARMUP_ITERATIONS iterations whose times
+ * are thrown away, so that the JIT compiler has finished compiling the code being timed, then for
+ * MEASUREMENT_ITERATIONS iterations that are timed. An iteration calls the operation over and over until
+ * ITERATION_NANOS have passed, and at least once. The average time of a call is printed, along with the standard
+ * deviation of that average between the iterations. Every operation returns a value that is folded into a volatile
+ * field, so the JIT compiler cannot find that the work is unused and remove it.
+ *
+ * JMH itself is not used because the code it generates has to be in a named package, and no class in a named package
+ * can use the classes of this program, which are all in the default package. This folder is kept out of src and
+ * compiled separately, against the classes of src:
+ *
+ * javac -d out src/*.java
+ * javac -cp out -d out bench/*.java
+ * java -cp out Benchmark [filter]
+ *
+ * Only the benchmarks whose names contain the filter are run, so for example "small propagate" runs just one, and
+ * "bmp" runs every benchmark that reads or writes a bitmap.
+ *
+ * Methods in this class:
+ * void   run(String name, Operation operation)
+ * double runIteration(Operation operation)
+ * void   main(String[] args)
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+public class Benchmark
+{
+   static final int WARMUP_ITERATIONS = 3;
+   static final int MEASUREMENT_ITERATIONS = 5;
+   static final long ITERATION_NANOS = 1_000_000_000L;    // how long each iteration keeps calling the operation
+
+   private final String filter;      // only benchmarks whose names contain this are run
+   private volatile double sink;     // every result is added in here so that none of the work can be removed
+
+   /**
+    * The code being timed by one benchmark.
+    */
+   interface Operation
+   {
+      /**
+       * Runs the code being timed once.
+       *
+       * @return any value that depends on the work that was done
+       */
+      double run() throws Exception;
+   }
+
+   /**
+    * Creates a runner for the benchmarks whose names contain the given filter.
+    *
+    * @param filter the text to look for in the names of the benchmarks to run, or the empty string to run all of them
+    */
+   Benchmark(String filter)
+   {
+      this.filter = filter;
+   }
+
+   /**
+    * Warms up and times one benchmark, then prints the average time of one call and its standard deviation, unless
+    * the name of the benchmark does not contain the filter.
+    *
+    * @param name      the name of the benchmark, which starts with the name of the data it runs on
+    * @param operation the code to time
+    */
+   void run(String name, Operation operation) throws Exception
+   {
+      if (!name.contains(filter))
+      {
+         return;
+      }
+
+      for (int i = 0; i < WARMUP_ITERATIONS; i++)
+      {
+         runIteration(operation);
+      }
+
+      double[] times = new double[MEASUREMENT_ITERATIONS];
+      double mean = 0.0;
+      for (int i = 0; i < MEASUREMENT_ITERATIONS; i++)
+      {
+         times[i] = runIteration(operation);
+         mean += times[i] / MEASUREMENT_ITERATIONS;
+      }
+
+      double variance = 0.0;
+      for (double time : times)
+      {
+         variance += (time - mean) * (time - mean) / Math.max(1, MEASUREMENT_ITERATIONS - 1);
+      }
+
+      System.out.println(String.format(Locale.ROOT, "%-40s %14.3f us/op  +- %10.3f", name, mean / 1000.0,
+            Math.sqrt(variance) / 1000.0));
+   } // void run(String name, Operation operation)
+
+   /**
+    * Calls the operation until ITERATION_NANOS have passed.
+    *
+    * @param operation the code to time
+    * @return the average time of one call in nanoseconds
+    */
+   private double runIteration(Operation operation) throws Exception
+   {
+      double sum = 0.0;
+      long calls = 0;
+      long start = System.nanoTime();
+      long elapsed;
+      do
+      {
+         sum += operation.run();
+         calls++;
+         elapsed = System.nanoTime() - start;
+      }
+      while (elapsed < ITERATION_NANOS);
+
+      sink += sum;
+      return (double) elapsed / calls;
+   } // private double runIteration(Operation operation)
+
+   /**
+    * Runs the benchmarks of every network shape and image size, or only those whose names contain the first argument.
+    *
+    * @param args the filter for the names of the benchmarks to run, if any
+    */
+   public static void main(String[] args) throws Exception
+   {
+      Benchmark benchmark = new Benchmark(args.length > 0 ? String.join(" ", args) : "");
+      System.out.println("Kernels: " + Kernels.INSTANCE.getName());
+
+      Main.getConfig(Main.configFile);
+      Main.printingRate = 0;      // train prints nothing, and an epoch at a time cannot be split into printing steps
+
+      NeuralNetBenchmarks.run(benchmark);
+      ImageBenchmarks.run(benchmark);
+   }
+
+} // public class Benchmark
@@ -0,0 +1,103 @@
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Image Benchmarks
+ *
+ * The benchmarks of reading, writing and converting bitmaps: DibDump.bmpToArray for 24 and 32-bit files,
+ * DibDump.imageArrayToBMP for each bit count that it writes, and ImageWrapper.toGrayScale, both the original version
+ * that allocates its arrays and the single pass version that fills an array owned by the caller. They are run on
+ * square images of random colors, one the size of the hand images and one much larger:
+ *
+ * hand  - HAND_SIZE by HAND_SIZE pels
+ * large - LARGE_SIZE by LARGE_SIZE pels
+ *
+ * ImageWrapper.toGrayScale() only handles square images, which is why both of them are square.
+ *
+ * Methods in this class:
+ * void    run(Benchmark benchmark)
+ * void    runSize(Benchmark benchmark, String name, int size)
+ * int[][] createImage(int size, Random random)
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+final class ImageBenchmarks
+{
+   static final int HAND_SIZE = 40;       // the hand images are 40 by 40, giving the 1600 inputs of the network
+   static final int LARGE_SIZE = 1000;
+   static final long SEED = 20200515L;
+
+   /**
+    * This class only has static methods and is never created.
+    */
+   private ImageBenchmarks()
+   {
+   }
+
+   /**
+    * Runs the benchmarks for the hand sized image and the large image.
+    *
+    * @param benchmark the runner that times the benchmarks and prints their results
+    */
+   static void run(Benchmark benchmark) throws Exception
+   {
+      runSize(benchmark, "hand", HAND_SIZE);
+      runSize(benchmark, "large", LARGE_SIZE);
+   }
+
+   /**
+    * Creates an image of the given size and bitmap files of it, then runs every benchmark on them.
+    *
+    * @param benchmark the runner that times the benchmarks and prints their results
+    * @param name      the name of the image size, which starts the name of each benchmark
+    * @param size      the height and width of the image
+    */
+   private static void runSize(Benchmark benchmark, String name, int size) throws Exception
+   {
+      int[][] pels = createImage(size, new Random(SEED));
+      double[] gray = new double[size * size];
+
+      File bmp32 = NeuralNetBenchmarks.createTempFile(".bmp");
+      File bmp24 = NeuralNetBenchmarks.createTempFile(".bmp");
+      DibDump.imageArrayToBMP(pels, bmp32.getPath(), 32);
+      DibDump.imageArrayToBMP(pels, bmp24.getPath(), 24);
+
+      benchmark.run(name + " bmpToArray 32-bit", () -> DibDump.bmpToArray(bmp32.getPath())[0][0]);
+      benchmark.run(name + " bmpToArray 24-bit", () -> DibDump.bmpToArray(bmp24.getPath())[0][0]);
+
+      for (int bitCount : new int[] {32, 24, 8})
+      {
+         File out = NeuralNetBenchmarks.createTempFile(".bmp");
+         benchmark.run(name + " imageArrayToBMP " + bitCount + "-bit", () ->
+         {
+            DibDump.imageArrayToBMP(pels, out.getPath(), bitCount);
+            return out.length();
+         });
+      }
+
+      benchmark.run(name + " toGrayScale", () -> new ImageWrapper(pels).toGrayScale()[0]);
+      benchmark.run(name + " toGrayScale into array", () -> ImageWrapper.toGrayScale(pels, gray)[0]);
+   } // private static void runSize(Benchmark benchmark, String name, int size)
+
+   /**
+    * Makes a square image of pels with random red, green and blue values and no alpha.
+    *
+    * @param size   the height and width of the image
+    * @param random the generator for the colors
+    * @return the pels of the image, indexed as pels[row][column]
+    */
+   static int[][] createImage(int size, Random random)
+   {
+      int[][] pels = new int[size][size];
+      for (int[] row : pels)
+      {
+         for (int j = 0; j < row.length; j++)
+         {
+            row[j] = random.nextInt() & 0x00ffffff;
+         }
+      }
+      return pels;
+   }
+
+} // final class ImageBenchmarks
@@ -0,0 +1,203 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+/**
+ * Neural Net Benchmarks
+ *
+ * The benchmarks of NeuralNet and of reading training data: propagate, backPropagate, calculateError, training for one
+ * epoch, loading and storing the weights in both the text and the binary format, and Main.getTrainingData. They are
+ * run on two shapes of network, both with the 1600 inputs and single output of the hand images in trainingData.txt:
+ *
+ * config - the hidden layers given in config.txt, which is read by Benchmark before these are run
+ * small  - a single hidden layer of SMALL_HIDDEN_SIZE units
+ *
+ * Each shape gets its own randomized network, CASES synthetic training cases and temporary files, all made before any
+ * of its benchmarks are timed. The sparse benchmarks run propagate and backPropagate on a copy of the first input with
+ * all but MASK_DENSITY of its values zeroed, like a masked hand image, once with every input used and once with the
+ * zeros skipped. Training uses the learning rate, error evaluation and threads of config.txt, and
+ * changes the weights of the network, which does not change how long the other benchmarks take.
+ *
+ * Methods in this class:
+ * void         run(Benchmark benchmark)
+ * void         runShape(Benchmark benchmark, String shape, int[] sizeOfLayers)
+ * double[][][] createTrainingData(int[] sizeOfLayers, Random random)
+ * double[]     createMaskedInput(double[] input, Random random)
+ * void         writeTrainingData(double[][][] trainingData, File file)
+ * File         createTempFile(String suffix)
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+final class NeuralNetBenchmarks
+{
+   static final int INPUT_SIZE = 1600;        // the number of pels in each hand image
+   static final int OUTPUT_SIZE = 1;
+   static final int SMALL_HIDDEN_SIZE = 10;
+   static final int CASES = 16;               // the number of synthetic training cases for each shape
+   static final double MASK_DENSITY = 0.1;    // the fraction of the inputs left in the masked input
+   static final long SEED = 20200515L;
+
+   /**
+    * This class only has static methods and is never created.
+    */
+   private NeuralNetBenchmarks()
+   {
+   }
+
+   /**
+    * Runs the benchmarks for the shape of network in config.txt and for the small shape.
+    *
+    * @param benchmark the runner that times the benchmarks and prints their results
+    */
+   static void run(Benchmark benchmark) throws Exception
+   {
+      int[] configLayers = Main.layers.clone();
+      configLayers[0] = INPUT_SIZE;
+      configLayers[configLayers.length - 1] = OUTPUT_SIZE;
+
+      runShape(benchmark, "config", configLayers);
+      runShape(benchmark, "small", new int[] {INPUT_SIZE, SMALL_HIDDEN_SIZE, OUTPUT_SIZE});
+   }
+
+   /**
+    * Creates a network of the given shape and its synthetic data and files, then runs every benchmark on them.
+    *
+    * @param benchmark    the runner that times the benchmarks and prints their results
+    * @param shape        the name of the shape, which starts the name of each benchmark
+    * @param sizeOfLayers the number of processing units in each activation layer
+    */
+   private static void runShape(Benchmark benchmark, String shape, int[] sizeOfLayers) throws Exception
+   {
+      Random random = new Random(SEED);
+      NeuralNet network = new NeuralNet(sizeOfLayers);
+      double[][][] trainingData = createTrainingData(sizeOfLayers, random);
+      double[] input = trainingData[0][0];
+      double[] expected = trainingData[0][1];
+      double[] maskedInput = createMaskedInput(input, random);
+
+      File textWeights = createTempFile(".txt");
+      File binaryWeights = createTempFile(".bin");
+      File trainingFile = createTempFile(".txt");
+      network.storeWeights(textWeights.getPath());
+      network.storeWeights(binaryWeights.getPath());
+      writeTrainingData(trainingData, trainingFile);
+
+      benchmark.run(shape + " propagate", () -> network.propagate(input)[0]);
+      benchmark.run(shape + " backPropagate", () -> network.backPropagate(input, expected, Main.learningRate));
+      benchmark.run(shape + " calculateError", () -> network.calculateError(trainingData));
+      benchmark.run(shape + " train epoch", () ->
+            network.train(trainingData, Main.learningRate, Main.lambdaMult, 1, Main.batchSize).length());
+
+      for (double threshold : new double[] {-1.0, 0.0})
+      {
+         String mode = threshold < 0.0 ? " dense" : " sparse";
+         network.setSparseInputThreshold(threshold);
+         benchmark.run(shape + mode + " masked propagate", () -> network.propagate(maskedInput)[0]);
+         benchmark.run(shape + mode + " masked backPropagate", () ->
+               network.backPropagate(maskedInput, expected, Main.learningRate));
+      }
+      network.setSparseInputThreshold(-1.0);
+
+      benchmark.run(shape + " load text weights", () -> new NeuralNet(textWeights.getPath()).getWeights()[0][0]);
+      benchmark.run(shape + " load binary weights", () -> new NeuralNet(binaryWeights.getPath()).getWeights()[0][0]);
+      benchmark.run(shape + " store text weights", () ->
+      {
+         network.storeWeights(textWeights.getPath());
+         return textWeights.length();
+      });
+      benchmark.run(shape + " store binary weights", () ->
+      {
+         network.storeWeights(binaryWeights.getPath());
+         return binaryWeights.length();
+      });
+
+      benchmark.run(shape + " getTrainingData", () -> Main.getTrainingData(trainingFile.getPath())[0][0][0]);
+   } // private static void runShape(Benchmark benchmark, String shape, int[] sizeOfLayers)
+
+   /**
+    * Makes CASES training cases with random inputs and expected outputs between 0 and 1, like the gray scale pels and
+    * outputs of the hand images.
+    *
+    * @param sizeOfLayers the number of processing units in each activation layer
+    * @param random       the generator for the values
+    * @return the training data, indexed as trainingData[case][0 for input or 1 for output][i]
+    */
+   static double[][][] createTrainingData(int[] sizeOfLayers, Random random)
+   {
+      double[][][] trainingData = new double[CASES][2][];
+      for (double[][] trainingCase : trainingData)
+      {
+         trainingCase[0] = new double[sizeOfLayers[0]];
+         trainingCase[1] = new double[sizeOfLayers[sizeOfLayers.length - 1]];
+         for (double[] values : trainingCase)
+         {
+            for (int i = 0; i < values.length; i++)
+            {
+               values[i] = random.nextDouble();
+            }
+         }
+      }
+      return trainingData;
+   } // static double[][][] createTrainingData(int[] sizeOfLayers, Random random)
+
+   /**
+    * Copies an input with all but about MASK_DENSITY of its values, chosen at random, set to 0.
+    *
+    * @param input  the input to copy
+    * @param random the generator that chooses the values to keep
+    * @return the masked copy
+    */
+   static double[] createMaskedInput(double[] input, Random random)
+   {
+      double[] masked = new double[input.length];
+      for (int i = 0; i < input.length; i++)
+      {
+         if (random.nextDouble() < MASK_DENSITY)
+         {
+            masked[i] = input[i];
+         }
+      }
+      return masked;
+   }
+
+   /**
+    * Writes training data to a file in the text format read by Main.getTrainingData.
+    *
+    * @param trainingData the training data to write
+    * @param file         the file to write it to
+    */
+   static void writeTrainingData(double[][][] trainingData, File file) throws IOException
+   {
+      PrintWriter pw = new PrintWriter(file);
+      pw.println(trainingData.length + " " + trainingData[0][0].length + " " + trainingData[0][1].length);
+      for (double[][] trainingCase : trainingData)
+      {
+         for (double[] values : trainingCase)
+         {
+            StringBuilder line = new StringBuilder();
+            for (double value : values)
+            {
+               line.append(value).append(' ');
+            }
+            pw.println(line.toString().trim());
+         }
+      }
+      pw.close();
+   } // static void writeTrainingData(double[][][] trainingData, File file)
+
+   /**
+    * Creates a temporary file that is deleted when the benchmarks finish.
+    *
+    * @param suffix the ending of the name of the file, which decides the format that weights are stored in
+    * @return the new, empty file
+    */
+   static File createTempFile(String suffix) throws IOException
+   {
+      File file = File.createTempFile("benchmark", suffix);
+      file.deleteOnExit();
+      return file;
+   }
+
+} // final class NeuralNetBenchmarks
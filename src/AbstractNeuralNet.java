@@ -0,0 +1,980 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Abstract Neural Net
+ *
+ * The parts of a fully connected neural network that do not depend on how its weights are stored: the training loop,
+ * which adapts the learning rate and decides when to stop, and the ways of measuring the error that it uses. A
+ * NeuralNet keeps its weights, activations and scratch arrays as doubles, while a FloatNeuralNet keeps them as floats,
+ * which halves the memory they take and the bandwidth used by the loops that walk through them. Either one can be
+ * trained, run and stored in the same way, and create makes whichever one the configuration asks for.
+ *
+ * Subclasses supply the storage and the kernels: backprop for a single training case, the gradient of a single case,
+ * the update of a range of weights, and the error over a set of training cases. Mini-batch training is run here. Each
+ * batch is split into one contiguous shard per thread, every shard accumulates its gradients into the workspace of its
+ * thread, and each layer is then updated in ranges, one per shard, which add up the gradients of the shards in a
+ * fixed order, so the result for a given number of threads does not depend on how the threads are scheduled.
+ *
+ * While a network has any TrainingListeners, training measures where its time goes and hands the TrainingMetrics of
+ * each epoch to the listeners. The subclasses time their forward passes, backward passes and updates for each layer,
+ * into the metrics of the workspace of the thread doing the work, and collectWorkerMetrics adds those up at the end of
+ * each epoch. Without listeners the metrics are null and nothing is timed.
+ *
+ * The weights are changed by the Optimizer set with setOptimizer, plain gradient descent unless another is chosen.
+ * Subclasses keep the state of the optimizer in flat arrays alongside their weights, and change the weights by it in
+ * updateWeights, which only trainBatch calls, so while the optimizer is anything but SGD, every update goes through
+ * trainBatch, even one of a single training case.
+ *
+ * Inputs that are mostly zeros, like those of images, can skip the zeros: with a sparse input threshold of 0 or more,
+ * each input is gathered into a SparseInput before it is propagated, and if few enough inputs are left, the product
+ * with the first layer of weights and the update of that layer only walk the weights of those inputs.
+ *
+ * A network that has been pruned by Pruner keeps a list of the weights that pruning set to 0 in each layer, along with
+ * a pruned mask of each layer that marks the same weights. While it has them, the update kernels and the Optimizer
+ * skip the marked weights, so that fine-tuning only changes the weights that are left, the pruned weights and the state
+ * kept for them stay at 0, and the network stays as sparse as it was pruned to.
+ *
+ * With a Checkpointer, training also takes a Checkpoint of the weights and its own state every so often and hands it
+ * to the checkpointer to write in the background. restore puts a network back the way a checkpoint found it, so that
+ * the next call to train continues from the epoch after it instead of starting over.
+ *
+ * Methods in this class:
+ * AbstractNeuralNet create(int[] sizeOfLayers, Precision precision, Precision accumulation)
+ * AbstractNeuralNet create(int[] sizeOfLayers, Precision precision, Precision accumulation,
+ *                          Activation... activations)
+ * String   train(double[][][] trainingData, double learningRate, double lambdaMult, int epochs)
+ * String   train(double[][][] trainingData, double learningRate, double lambdaMult, int epochs, int batchSize)
+ * void     adaptLearningRate(double curError, double lambdaMult)
+ * void     recordEvaluation(long start, double operations)
+ * void     finishEpoch(int epoch, long nanos)
+ * void     setOptimizer(Optimizer optimizer)
+ * Optimizer getOptimizer()
+ * void     setSparseInputThreshold(double threshold)
+ * double   getSparseInputThreshold()
+ * void     setPrunedWeights(int[][] prunedWeights)
+ * int[][]  getPrunedWeights()
+ * void     zeroPrunedWeights()
+ * void     setCheckpointer(Checkpointer checkpointer)
+ * void     restore(Checkpoint checkpoint)
+ * void     addTrainingListener(TrainingListener listener)
+ * void     removeTrainingListener(TrainingListener listener)
+ * double   calculateSampledError(double[][][] trainingData, int sampleSize)
+ * double   calculateError(double[][][] trainingData)
+ * double[] propagate(double[] input)
+ * void     storeWeights(String filename)
+ * int[]    getSizeOfLayers()
+ * void     setActivations(Activation... functions)
+ * Activation[] getActivations()
+ * void     createWorkers(int threads)
+ * void     shutDownWorkers()
+ * void     collectWorkerMetrics(TrainingMetrics metrics)
+ * double   trainBatch(double[][][] trainingData, int start, int end, double learningRate)
+ * double   accumulateBatch(double[][][] trainingData, int start, int end)
+ * void     applyGradient(double learningRate, int batchCount, int shards)
+ * void     runTasks(Runnable[] tasks, boolean parallel)
+ * double[][] copyWeights()
+ * double   backPropagate(double[] input, double[] expected, double learningRate)
+ * AbstractWorkspace getWorkspace()
+ * AbstractWorkspace createWorkspace()
+ * double   accumulateGradient(double[] input, double[] expected, AbstractWorkspace worker)
+ * void     createOptimizerState()
+ * void     updateWeights(int layer, int from, int to, int shards, double learningRate, int batchCount,
+ *                        double firstCorrection, double secondCorrection)
+ * Checkpoint createCheckpoint(int nextEpoch, int updates, double learningRate, double minError)
+ * void     restoreWeights(Checkpoint checkpoint)
+ * void     clearOptimizerState()
+ * void     zeroWeights(int layer, int[] indices)
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+public abstract class AbstractNeuralNet
+{
+   int[] sizeOfLayers;                    // number of units in each activation layer
+   int numOfLayers;                       // number of connectivity layers
+   Activation[] activationFunctions;      // the activation function of each layer after the input layer
+
+   Optimizer optimizer = Optimizer.SGD;   // how the weights are changed by their gradients
+   int optimizerSteps;                    // number of updates made by the optimizer, which ADAM corrects its averages by
+   double sparseThreshold = -1.0;         // inputs at most this far from 0 are skipped, negative to never skip any
+   int[][] prunedWeights;                 // the index of each weight held at 0 in each connectivity layer, or null
+   boolean[][] prunedMask;                // whether each weight of each connectivity layer is held at 0, or null
+
+   private double learningRate;           // current learning rate while training
+   private double minError;               // lowest error seen while training, used to adapt the learning rate
+
+   private final List<TrainingListener> listeners = new ArrayList<TrainingListener>();
+   TrainingMetrics metrics;               // the metrics of the current epoch, null unless there are listeners
+
+   private Checkpointer checkpointer;      // takes checkpoints while training, or null for none
+   private Checkpoint resumeFrom;         // the checkpoint that the next call to train continues from, or null
+
+   private ForkJoinPool pool;             // threads used to split up each mini-batch, only while training
+   AbstractWorkspace[] workerWorkspaces;  // one workspace per shard of a mini-batch, the first is getWorkspace()
+
+   /**
+    * The ways that train can measure the error used to adapt the learning rate and decide when to stop.
+    *
+    * FULL     - the error over the whole training set after every weight update (the original behavior)
+    * RUNNING  - the sum of the errors found by the forward passes of backprop, checked once per epoch
+    * INTERVAL - the error over the whole training set after every evaluationSize weight updates
+    * SAMPLE   - the error over evaluationSize randomly chosen training cases, scaled to the size of the training set
+    *            and checked once per epoch
+    */
+   public enum ErrorEvaluation
+   {
+      FULL, RUNNING, INTERVAL, SAMPLE
+   }
+
+   /**
+    * The floating point types that a network can store its values in or add up its sums in.
+    *
+    * DOUBLE - 64-bit doubles, as in NeuralNet
+    * FLOAT  - 32-bit floats, as in FloatNeuralNet
+    */
+   public enum Precision
+   {
+      DOUBLE, FLOAT
+   }
+
+   /**
+    * Creates a network with randomized weights that stores its values in the given precision. A network stored as
+    * doubles always adds up its sums as doubles, so the accumulation is only used for a network stored as floats.
+    *
+    * @param sizeOfLayers the number of processing units in each activation layer
+    * @param precision    the type that the weights, activations and scratch arrays are stored as
+    * @param accumulation the type that a network stored as floats adds up its sums in
+    * @return the new network
+    */
+   public static AbstractNeuralNet create(int[] sizeOfLayers, Precision precision, Precision accumulation)
+   {
+      if (precision == Precision.FLOAT)
+      {
+         return new FloatNeuralNet(sizeOfLayers, accumulation);
+      }
+      return new NeuralNet(sizeOfLayers);
+   }
+
+   /**
+    * Creates a network with randomized weights that stores its values in the given precision and uses the given
+    * activation functions.
+    *
+    * @param sizeOfLayers the number of processing units in each activation layer
+    * @param precision    the type that the weights, activations and scratch arrays are stored as
+    * @param accumulation the type that a network stored as floats adds up its sums in
+    * @param activations  one activation function for every layer, or one for each layer after the input layer
+    * @return the new network
+    */
+   public static AbstractNeuralNet create(int[] sizeOfLayers, Precision precision, Precision accumulation,
+                                          Activation... activations)
+   {
+      AbstractNeuralNet network = create(sizeOfLayers, precision, accumulation);
+      network.setActivations(activations);
+      return network;
+   }
+
+   /**
+    * Trains the neural network with the given training data and calculates the error with the test
+    * data. The learning rate of the network starts at the given learning rate, and increases or
+    * decreases depending on the error. Training runs for a given number of epochs or until the
+    * learning rate goes to 0.
+    *
+    * @param trainingData the inputs and outputs for each training case, used to train the network
+    * @param learningRate the initial learning rate of the network
+    * @param lambdaMult   how much to multiply the learning rate by for each iteration
+    * @param epochs       the number of epochs that training will run for
+    */
+   public String train(double[][][] trainingData, double learningRate, double lambdaMult, int epochs)
+   {
+      return train(trainingData, learningRate, lambdaMult, epochs, 1);
+   }
+
+   /**
+    * Trains the neural network using mini-batch gradient descent. The training cases are split into consecutive
+    * batches of batchSize cases, and the gradients of every case in a batch are accumulated and averaged before the
+    * weights are changed once. The learning rate is adapted after each of these updates in the same way as in
+    * per-case training. A batch size of 1 updates the weights after every training case.
+    *
+    * How the error is measured is chosen by Main.errorEvaluation and Main.evaluationSize; see ErrorEvaluation. If
+    * Main.threads is more than 1, the cases of each batch are split between that many threads. If there are any
+    * TrainingListeners, they are given the metrics of each epoch as it finishes; if one of them is a
+    * PrintingTrainingListener, its lines, which hold the error, are printed instead of the usual lines of the error.
+    * If the network was restored from a checkpoint, training continues from the epoch, learning rate and error of the
+    * checkpoint instead of from the start, and if it has a checkpointer, a checkpoint is handed to it at the end of
+    * every epoch where one is due.
+    *
+    * @param trainingData        the inputs and outputs for each training case, used to train the network
+    * @param initialLearningRate the initial learning rate of the network
+    * @param lambdaMult          how much to multiply the learning rate by for each iteration
+    * @param epochs              the number of epochs that training will run for
+    * @param batchSize           the number of training cases whose gradients are combined into each weight update
+    */
+   public String train(double[][][] trainingData, double initialLearningRate, double lambdaMult, int epochs, int batchSize)
+   {
+      if (batchSize < 1)
+      {
+         throw new IllegalArgumentException("Batch size must be at least 1, was " + batchSize);
+      }
+      if (Main.errorEvaluation != ErrorEvaluation.FULL && Main.errorEvaluation != ErrorEvaluation.RUNNING &&
+            Main.evaluationSize < 1)
+      {
+         throw new IllegalArgumentException("Evaluation size must be at least 1, was " + Main.evaluationSize);
+      }
+
+      int updates = 0;
+      int e = 1;
+      learningRate = initialLearningRate;
+      minError = Double.MAX_VALUE;
+      if (resumeFrom != null)
+      {
+         updates = resumeFrom.getUpdates();
+         e = resumeFrom.getNextEpoch();
+         learningRate = resumeFrom.getLearningRate();
+         minError = resumeFrom.getMinError();
+         resumeFrom = null;
+      }
+
+      // A PrintingTrainingListener already prints the error of each epoch it prints, so it is not printed again
+      boolean printError = Main.printingRate != 0;
+      for (TrainingListener listener : listeners)
+      {
+         printError &= !(listener instanceof PrintingTrainingListener);
+      }
+
+      metrics = listeners.isEmpty() ? null : new TrainingMetrics(numOfLayers);
+      try
+      {
+         createWorkers(Math.min(Main.threads, batchSize));
+
+         // Count the multiplies and adds of the weights in a forward pass, and in both passes of a training case
+         double forwardOperations = 0.0;
+         for (int n = 0; n < numOfLayers; n++)
+         {
+            forwardOperations += 2.0 * sizeOfLayers[n] * sizeOfLayers[n + 1];
+         }
+         double caseOperations = 3.0 * forwardOperations - 2.0 * sizeOfLayers[0] * sizeOfLayers[1];
+
+         while (e <= epochs && learningRate != 0.0 && minError >= Main.errorThreshold)
+         {
+            long epochStart = metrics != null ? System.nanoTime() : 0;
+            double runningError = 0.0;
+            for (int start = 0; start < trainingData.length; start += batchSize)
+            {
+               int end = Math.min(start + batchSize, trainingData.length);
+
+               // Find how much the weights need to change for each batch of training cases
+               if (end - start == 1 && optimizer == Optimizer.SGD)
+               {
+                  runningError += backPropagate(trainingData[start][0], trainingData[start][1], learningRate);
+               }
+               else
+               {
+                  runningError += trainBatch(trainingData, start, end, learningRate);
+               }
+               updates++;
+               if (metrics != null)
+               {
+                  metrics.samples += end - start;
+                  metrics.operations += caseOperations * (end - start);
+               }
+
+               // Calculate the error using the training data if it is measured between updates
+               if (Main.errorEvaluation == ErrorEvaluation.FULL ||
+                     (Main.errorEvaluation == ErrorEvaluation.INTERVAL && updates % Main.evaluationSize == 0))
+               {
+                  long evaluationStart = metrics != null ? System.nanoTime() : 0;
+                  adaptLearningRate(calculateError(trainingData), lambdaMult);
+                  recordEvaluation(evaluationStart, trainingData.length * forwardOperations);
+               }
+            } // for (int start = 0; start < trainingData.length; start += batchSize)
+
+            // Calculate the error once for the whole epoch if it is measured that way
+            if (Main.errorEvaluation == ErrorEvaluation.RUNNING)
+            {
+               adaptLearningRate(runningError, lambdaMult);
+            }
+            else if (Main.errorEvaluation == ErrorEvaluation.SAMPLE)
+            {
+               long evaluationStart = metrics != null ? System.nanoTime() : 0;
+               adaptLearningRate(calculateSampledError(trainingData, Main.evaluationSize), lambdaMult);
+               recordEvaluation(evaluationStart,
+                     Math.min(Main.evaluationSize, trainingData.length) * forwardOperations);
+            }
+
+            // Print the current error
+            if (printError && e % (epochs / Main.printingRate) == 0)
+            {
+               System.out.println("Epoch " + e + ": Error = " + Math.sqrt(minError));
+            }
+
+            if (metrics != null)
+            {
+               finishEpoch(e, System.nanoTime() - epochStart);
+            }
+
+            if (checkpointer != null && checkpointer.isDue(e))
+            {
+               checkpointer.save(createCheckpoint(e + 1, updates, learningRate, minError));
+            }
+
+            e++;
+         } // while (e <= epochs && learningRate != 0)
+      } // try
+      finally
+      {
+         shutDownWorkers();
+         metrics = null;
+      }
+
+      // Return the ending diagnostic information: the final epoch, learning rate, error, and reason for stopping
+      String diagnosticInformation = "";
+      diagnosticInformation += "Final Epoch: " + e + "\n";
+      diagnosticInformation += "Final Learning Rate: " + learningRate + "\n";
+      diagnosticInformation += "Final Error: " + Math.sqrt(minError) + "\n";
+
+      diagnosticInformation += "Reason for stopping: ";
+      if (e > epochs)
+      {
+         diagnosticInformation += "Reached max epochs\n";
+      }
+      else if (learningRate == 0.0)
+      {
+         diagnosticInformation += "Learning rate went to 0\n";
+      }
+      else if (minError < Main.errorThreshold)
+      {
+         diagnosticInformation += "Reached error threshold\n";
+      }
+
+      return diagnosticInformation;
+   } // public String train(double[][][] trainingData, double initialLearningRate, double lambdaMult, int epochs, int batchSize)
+
+   /**
+    * Changes the learning rate depending on if the error is decreasing or increasing compared to the lowest error seen
+    * so far, and keeps track of that lowest error.
+    *
+    * @param curError   the error of the network after the latest weight updates
+    * @param lambdaMult how much to multiply or divide the learning rate by
+    */
+   private void adaptLearningRate(double curError, double lambdaMult)
+   {
+      if (minError != Double.MAX_VALUE && curError < minError)
+      {
+         // If the error is decreasing, increase the learning rate
+         learningRate *= lambdaMult;
+         minError = curError;
+      }
+      else if (minError != Double.MAX_VALUE && curError >= minError && lambdaMult != 1.0)
+      {
+         // If the error is increasing, decrease the learning rate
+         learningRate /= lambdaMult;
+      }
+      else
+      {
+         minError = curError;
+      }
+   } // private void adaptLearningRate(double curError, double lambdaMult)
+
+   /**
+    * Adds the time and operations of measuring the error to the metrics of the epoch, if there are any.
+    *
+    * @param start      the time that measuring the error started, from System.nanoTime
+    * @param operations the number of floating point operations that measuring the error took
+    */
+   private void recordEvaluation(long start, double operations)
+   {
+      if (metrics != null)
+      {
+         metrics.addTime(TrainingMetrics.Phase.ERROR_EVALUATION, System.nanoTime() - start);
+         metrics.operations += operations;
+      }
+   }
+
+   /**
+    * Completes the metrics of an epoch with the times of the training threads and the state of training, gives them to
+    * every listener, then clears them for the next epoch.
+    *
+    * @param epoch the epoch that finished
+    * @param nanos the wall clock time of the epoch
+    */
+   private void finishEpoch(int epoch, long nanos)
+   {
+      collectWorkerMetrics(metrics);
+      metrics.epoch = epoch;
+      metrics.epochNanos = nanos;
+      metrics.error = Math.sqrt(minError);
+      metrics.learningRate = learningRate;
+
+      for (TrainingListener listener : listeners)
+      {
+         listener.epochFinished(metrics);
+      }
+      metrics.clear();
+   } // private void finishEpoch(int epoch, long nanos)
+
+   /**
+    * Sets the optimizer that training changes the weights with, and starts it from an empty state.
+    *
+    * @param optimizer the optimizer to use from the next update on
+    */
+   public void setOptimizer(Optimizer optimizer)
+   {
+      this.optimizer = optimizer;
+      optimizerSteps = 0;
+      clearOptimizerState();
+   }
+
+   /**
+    * Gets the optimizer that training changes the weights with.
+    *
+    * @return the optimizer
+    */
+   public Optimizer getOptimizer()
+   {
+      return optimizer;
+   }
+
+   /**
+    * Sets how close to 0 an input has to be to be skipped in the first layer, both in training and in propagate.
+    * Inputs are only skipped when at most SparseInput.MAX_DENSITY of them are left.
+    *
+    * @param threshold the largest absolute value of an input that is treated as zero, 0 to skip only exact zeros, or
+    *                  negative to always use every input
+    */
+   public void setSparseInputThreshold(double threshold)
+   {
+      sparseThreshold = threshold;
+   }
+
+   /**
+    * Gets how close to 0 an input has to be to be skipped in the first layer.
+    *
+    * @return the sparse input threshold, negative if inputs are never skipped
+    */
+   public double getSparseInputThreshold()
+   {
+      return sparseThreshold;
+   }
+
+   /**
+    * Sets the weights that are held at 0 in each connectivity layer, and sets them to 0 right away. From then on,
+    * training leaves them out of every update.
+    *
+    * @param prunedWeights the flat row-major index of each weight to hold at 0, for each connectivity layer, or null to
+    *                      let every weight change again
+    * @throws IllegalArgumentException if there is not one list for each connectivity layer
+    */
+   public void setPrunedWeights(int[][] prunedWeights)
+   {
+      if (prunedWeights != null && prunedWeights.length != numOfLayers)
+      {
+         throw new IllegalArgumentException("Expected pruned weights for " + numOfLayers + " layers but got " +
+               prunedWeights.length);
+      }
+
+      this.prunedWeights = prunedWeights;
+      prunedMask = null;
+      if (prunedWeights != null)
+      {
+         prunedMask = new boolean[numOfLayers][];
+         for (int n = 0; n < numOfLayers; n++)
+         {
+            prunedMask[n] = new boolean[sizeOfLayers[n] * sizeOfLayers[n + 1]];
+            for (int k : prunedWeights[n])
+            {
+               prunedMask[n][k] = true;
+            }
+         }
+         zeroPrunedWeights();
+      }
+   } // public void setPrunedWeights(int[][] prunedWeights)
+
+   /**
+    * Gets the weights that are held at 0 in each connectivity layer. The arrays are shared with this network and must
+    * not be changed.
+    *
+    * @return the index of each weight held at 0 for each connectivity layer, or null if none are
+    */
+   public int[][] getPrunedWeights()
+   {
+      return prunedWeights;
+   }
+
+   /**
+    * Sets every weight in the pruned weights lists back to 0.
+    */
+   private void zeroPrunedWeights()
+   {
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         zeroWeights(n, prunedWeights[n]);
+      }
+   }
+
+   /**
+    * Sets the checkpointer that training hands its checkpoints to.
+    *
+    * @param checkpointer the checkpointer, or null to stop taking checkpoints
+    */
+   public void setCheckpointer(Checkpointer checkpointer)
+   {
+      this.checkpointer = checkpointer;
+   }
+
+   /**
+    * Puts the weights of the network back to those of a checkpoint, and makes the next call to train continue from
+    * the epoch, learning rate and error of the checkpoint. The checkpoint can come from a network of either precision.
+    * The state of the optimizer is restored too if the checkpoint was taken with the optimizer the network has now,
+    * and starts over otherwise.
+    *
+    * @param checkpoint the checkpoint to continue from
+    * @throws IllegalArgumentException if the checkpoint was taken from a network with different layer sizes
+    */
+   public void restore(Checkpoint checkpoint)
+   {
+      if (!Arrays.equals(checkpoint.getSizeOfLayers(), sizeOfLayers))
+      {
+         throw new IllegalArgumentException("Checkpoint has layer sizes " + Arrays.toString(checkpoint.getSizeOfLayers()) +
+               " but the network has " + Arrays.toString(sizeOfLayers));
+      }
+      restoreWeights(checkpoint);
+      if (prunedWeights != null)
+      {
+         zeroPrunedWeights();
+      }
+      optimizerSteps = checkpoint.getOptimizer() == optimizer ? checkpoint.getOptimizerSteps() : 0;
+      resumeFrom = checkpoint;
+   }
+
+   /**
+    * Adds a listener that is given the metrics of every epoch from the next time the network is trained on.
+    *
+    * @param listener the listener to add
+    */
+   public void addTrainingListener(TrainingListener listener)
+   {
+      listeners.add(listener);
+   }
+
+   /**
+    * Removes a listener, so that it is no longer given the metrics of epochs.
+    *
+    * @param listener the listener to remove
+    */
+   public void removeTrainingListener(TrainingListener listener)
+   {
+      listeners.remove(listener);
+   }
+
+   /**
+    * Estimates the total error of the training data from a random subset of its test cases. The error of the chosen
+    * cases is scaled up by the size of the training data over the size of the sample, so it can be compared with the
+    * error threshold in the same way as the full error. If the sample is at least as large as the training data, this
+    * is the same as calculateError.
+    *
+    * @param trainingData the inputs and expected output for each training case
+    * @param sampleSize   the number of test cases to use
+    * @return the estimated error between the expected output and the output the network gets
+    */
+   public double calculateSampledError(double[][][] trainingData, int sampleSize)
+   {
+      if (sampleSize >= trainingData.length)
+      {
+         return calculateError(trainingData);
+      }
+
+      // Choose the sample with a partial Fisher-Yates shuffle of a copy of the test cases
+      double[][][] shuffled = trainingData.clone();
+      for (int k = 0; k < sampleSize; k++)
+      {
+         int swap = k + (int) (Math.random() * (shuffled.length - k));
+         double[][] temp = shuffled[k];
+         shuffled[k] = shuffled[swap];
+         shuffled[swap] = temp;
+      }
+
+      double[][][] sample = new double[sampleSize][][];
+      System.arraycopy(shuffled, 0, sample, 0, sampleSize);
+
+      return calculateError(sample) * trainingData.length / sampleSize;
+   } // public double calculateSampledError(double[][][] trainingData, int sampleSize)
+
+   /**
+    * Calculates the total error for every single test case in the training data, as a quadratic mean of the error for
+    * each test case.
+    *
+    * @param trainingData the inputs and expected output for each training case
+    * @return the error between the expected output and the output the network gets
+    */
+   public abstract double calculateError(double[][][] trainingData);
+
+   /**
+    * Propagates the input through the network. The returned array belongs to the network and is overwritten by the
+    * next call.
+    *
+    * @param input the values for the activation of all input units
+    * @return the array of activations for the output units
+    */
+   public abstract double[] propagate(double[] input);
+
+   /**
+    * Stores the weights in the file given by the filename, in the binary format of the network if the filename ends
+    * in NeuralNet.BINARY_EXTENSION and in the shared text format otherwise.
+    *
+    * @param filename the name of the file to store the weights in
+    */
+   public abstract void storeWeights(String filename) throws IOException;
+
+   /**
+    * Gets the number of processing units in each activation layer. The array is shared with this network and must not
+    * be changed.
+    *
+    * @return the size of each activation layer
+    */
+   int[] getSizeOfLayers()
+   {
+      return sizeOfLayers;
+   }
+
+   /**
+    * Sets the activation function of each layer after the input layer. A single function is used for every layer. The
+    * weights are kept, so this is normally done before training.
+    *
+    * @param functions one activation function for every layer, or one for each layer after the input layer
+    * @throws IllegalArgumentException if there are neither one nor numOfLayers functions
+    */
+   public void setActivations(Activation... functions)
+   {
+      if (functions.length != 1 && functions.length != numOfLayers)
+      {
+         throw new IllegalArgumentException("Expected 1 or " + numOfLayers + " activation functions but got " +
+               functions.length);
+      }
+
+      activationFunctions = new Activation[numOfLayers];
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         activationFunctions[n] = functions[functions.length == 1 ? 0 : n];
+      }
+   } // public void setActivations(Activation... functions)
+
+   /**
+    * Gets the activation function of each layer after the input layer. The array is shared with this network and must
+    * not be changed.
+    *
+    * @return the activation function of each connectivity layer
+    */
+   public Activation[] getActivations()
+   {
+      return activationFunctions;
+   }
+
+   /**
+    * Creates the workspaces that each shard of a mini-batch accumulates its gradients into and, if there is more than
+    * one thread, the pool of threads that runs the shards. The first shard uses the workspace of the training thread.
+    * If training is being measured, each workspace also gets the metrics that its thread adds its times to.
+    *
+    * @param threads the number of threads to split each mini-batch between
+    */
+   private void createWorkers(int threads)
+   {
+      if (threads < 1)
+      {
+         throw new IllegalArgumentException("Number of threads must be at least 1, was " + threads);
+      }
+
+      workerWorkspaces = new AbstractWorkspace[threads];
+      workerWorkspaces[0] = getWorkspace();
+      for (int t = 1; t < threads; t++)
+      {
+         workerWorkspaces[t] = createWorkspace();
+      }
+      for (AbstractWorkspace ws : workerWorkspaces)
+      {
+         ws.metrics = metrics != null ? new TrainingMetrics(numOfLayers) : null;
+      }
+
+      if (threads > 1)
+      {
+         pool = new ForkJoinPool(threads);
+      }
+   } // private void createWorkers(int threads)
+
+   /**
+    * Stops the pool of training threads and lets go of their workspaces once training is done.
+    */
+   private void shutDownWorkers()
+   {
+      if (pool != null)
+      {
+         pool.shutdown();
+         pool = null;
+      }
+      workerWorkspaces = null;
+      getWorkspace().metrics = null;
+   }
+
+   /**
+    * Adds the phase and layer times that each training thread measured during the epoch into the given metrics, and
+    * clears them for the next epoch.
+    *
+    * @param metrics the metrics of the epoch
+    */
+   private void collectWorkerMetrics(TrainingMetrics metrics)
+   {
+      for (AbstractWorkspace ws : workerWorkspaces)
+      {
+         metrics.addAndClear(ws.metrics);
+      }
+   }
+
+   /**
+    * Accumulates the gradients of a batch of training cases with accumulateBatch, then changes every weight once by
+    * their average with applyGradient.
+    *
+    * @param trainingData the inputs and outputs for each training case
+    * @param start        the index of the first training case in the batch
+    * @param end          the index after the last training case in the batch
+    * @param learningRate the rate at which to change the weights
+    * @return the summed error of the training cases in the batch before the weights were changed
+    */
+   private double trainBatch(double[][][] trainingData, int start, int end, double learningRate)
+   {
+      int shards = Math.min(workerWorkspaces.length, end - start);
+      double error = accumulateBatch(trainingData, start, end);
+      applyGradient(learningRate, end - start, shards);
+      return error;
+   }
+
+   /**
+    * Accumulates the gradients of a batch of training cases. The batch is split into contiguous shards, one for each
+    * worker workspace, and the shards are run on the pool of training threads if there is more than one.
+    *
+    * @param trainingData the inputs and outputs for each training case
+    * @param start        the index of the first training case in the batch
+    * @param end          the index after the last training case in the batch
+    * @return the summed error of the training cases in the batch
+    */
+   private double accumulateBatch(double[][][] trainingData, int start, int end)
+   {
+      int count = end - start;
+      int shards = Math.min(workerWorkspaces.length, count);
+
+      double[] shardErrors = new double[shards];
+      Runnable[] tasks = new Runnable[shards];
+      for (int s = 0; s < shards; s++)
+      {
+         int shard = s;
+         int from = start + s * count / shards;
+         int to = start + (s + 1) * count / shards;
+
+         tasks[s] = () ->
+         {
+            double error = 0.0;
+            for (int c = from; c < to; c++)
+            {
+               error += accumulateGradient(trainingData[c][0], trainingData[c][1], workerWorkspaces[shard]);
+            }
+            shardErrors[shard] = error;
+         };
+      }
+      runTasks(tasks, shards > 1);
+
+      // Add up the errors of the shards in order
+      double error = 0.0;
+      for (int s = 0; s < shards; s++)
+      {
+         error += shardErrors[s];
+      }
+
+      return error;
+   } // private double accumulateBatch(double[][][] trainingData, int start, int end)
+
+   /**
+    * Changes every weight by the average of the gradients accumulated for the current batch, then clears the
+    * gradients for the next batch. With more than one shard, each layer is split into ranges of weights that are
+    * updated with updateWeights on the pool of training threads. The state arrays of the optimizer, if it has any, are
+    * created the first time they are needed.
+    *
+    * @param learningRate the rate at which to change the weights
+    * @param batchCount   the number of test cases whose gradients were accumulated
+    * @param shards       the number of worker workspaces that gradients were accumulated in
+    */
+   private void applyGradient(double learningRate, int batchCount, int shards)
+   {
+      if (optimizer != Optimizer.SGD)
+      {
+         createOptimizerState();
+      }
+      optimizerSteps++;
+      double firstCorrection = 1.0 - Math.pow(Optimizer.BETA1, optimizerSteps);
+      double secondCorrection = 1.0 - Math.pow(Optimizer.BETA2, optimizerSteps);
+
+      Runnable[] tasks = new Runnable[numOfLayers * shards];
+      long[] taskNanos = getWorkspace().metrics != null ? new long[tasks.length] : null;
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         int length = sizeOfLayers[n] * sizeOfLayers[n + 1];
+         for (int r = 0; r < shards; r++)
+         {
+            int layer = n;
+            int slot = n * shards + r;
+            int from = (int) ((long) r * length / shards);
+            int to = (int) ((long) (r + 1) * length / shards);
+
+            tasks[slot] = () ->
+            {
+               long start = taskNanos != null ? System.nanoTime() : 0;
+               updateWeights(layer, from, to, shards, learningRate, batchCount, firstCorrection, secondCorrection);
+               if (taskNanos != null)
+               {
+                  taskNanos[slot] = System.nanoTime() - start;
+               }
+            };
+         } // for (int r = 0; r < shards; r++)
+      } // for (int n = 0; n < numOfLayers; n++)
+      runTasks(tasks, shards > 1);
+
+      if (taskNanos != null)
+      {
+         for (int k = 0; k < taskNanos.length; k++)
+         {
+            getWorkspace().metrics.addLayerTime(TrainingMetrics.Phase.UPDATE, k / shards, taskNanos[k]);
+         }
+      }
+   } // private void applyGradient(double learningRate, int batchCount, int shards)
+
+   /**
+    * Runs every task on the pool of training threads and waits for them all, or runs them one after another on this
+    * thread.
+    *
+    * @param tasks    the tasks to run
+    * @param parallel whether to run the tasks on the pool, which only exists while training with more than one thread
+    */
+   private void runTasks(Runnable[] tasks, boolean parallel)
+   {
+      if (!parallel)
+      {
+         for (Runnable task : tasks)
+         {
+            task.run();
+         }
+         return;
+      }
+
+      ForkJoinTask<?>[] submitted = new ForkJoinTask<?>[tasks.length];
+      for (int k = 0; k < tasks.length; k++)
+      {
+         submitted[k] = pool.submit(tasks[k]);
+      }
+      for (ForkJoinTask<?> task : submitted)
+      {
+         task.join();
+      }
+   } // private void runTasks(Runnable[] tasks, boolean parallel)
+
+   /**
+    * Copies the weights of the network into new flat row-major arrays of doubles, one for each connectivity layer.
+    *
+    * @return the copied weights
+    */
+   abstract double[][] copyWeights();
+
+   /**
+    * Runs backprop for a single training case and changes the weights immediately.
+    *
+    * @param input        the input test case to train the network on
+    * @param expected     the expected output for that test case
+    * @param learningRate the rate at which to change the weights
+    * @return the error of the test case before the weights were changed
+    */
+   abstract double backPropagate(double[] input, double[] expected, double learningRate);
+
+   /**
+    * Gets the workspace of the thread that calls propagate and train, which the first shard of a mini-batch uses.
+    *
+    * @return the workspace of the training thread
+    */
+   abstract AbstractWorkspace getWorkspace();
+
+   /**
+    * Creates a new workspace for another thread to train on a shard of every mini-batch with.
+    *
+    * @return the new workspace
+    */
+   abstract AbstractWorkspace createWorkspace();
+
+   /**
+    * Runs backprop for a single test case without changing the weights, adding the gradient of the error with respect
+    * to each weight to the gradients of the workspace. Only the workspace is written to, so several threads can do
+    * this at once with different workspaces.
+    *
+    * @param input    the input test case to train the network on
+    * @param expected the expected output for that test case
+    * @param worker   the workspace to use, one made by getWorkspace or createWorkspace, including the gradients to
+    *                 add to
+    * @return the error of the test case
+    */
+   abstract double accumulateGradient(double[] input, double[] expected, AbstractWorkspace worker);
+
+   /**
+    * Creates the state arrays of the optimizer, filled with 0, if they do not exist yet.
+    */
+   abstract void createOptimizerState();
+
+   /**
+    * Changes one range of the weights of a layer by the gradients accumulated in the first few worker workspaces, then
+    * clears those gradients. The gradients of the shards are always added together in shard order.
+    *
+    * @param layer            the connectivity layer to change
+    * @param from             the flat index of the first weight in the range
+    * @param to               the flat index after the last weight in the range
+    * @param shards           the number of worker workspaces that gradients were accumulated in
+    * @param learningRate     the rate at which to change the weights
+    * @param batchCount       the number of test cases whose gradients were accumulated
+    * @param firstCorrection  1 - BETA1^t for ADAM, where t is the number of the update
+    * @param secondCorrection 1 - BETA2^t for ADAM
+    */
+   abstract void updateWeights(int layer, int from, int to, int shards, double learningRate, int batchCount,
+                               double firstCorrection, double secondCorrection);
+
+   /**
+    * Takes a checkpoint with a copy of the weights and the optimizer state, in the precision that the network keeps
+    * them in, and the given state of training.
+    *
+    * @param nextEpoch    the epoch that training would continue from
+    * @param updates      the number of weight updates done so far
+    * @param learningRate the current learning rate
+    * @param minError     the lowest error seen so far
+    * @return the checkpoint
+    */
+   abstract Checkpoint createCheckpoint(int nextEpoch, int updates, double learningRate, double minError);
+
+   /**
+    * Replaces the weights of the network with copies of those of a checkpoint with the same layer sizes, along with
+    * the optimizer state if the checkpoint was taken with the same optimizer. Otherwise the optimizer state is
+    * cleared.
+    *
+    * @param checkpoint the checkpoint to take the weights from
+    */
+   abstract void restoreWeights(Checkpoint checkpoint);
+
+   /**
+    * Lets go of the state arrays of the optimizer, so that they are created again, filled with 0, when next needed.
+    */
+   abstract void clearOptimizerState();
+
+   /**
+    * Sets the given weights of one connectivity layer to 0.
+    *
+    * @param layer   the connectivity layer
+    * @param indices the flat row-major index of each weight to set to 0
+    */
+   abstract void zeroWeights(int layer, int[] indices);
+
+} // public abstract class AbstractNeuralNet
@@ -0,0 +1,64 @@
+/**
+ * Abstract Workspace
+ *
+ * The parts of a workspace that do not depend on whether its network stores its values as doubles or as floats: the
+ * size of each layer, the metrics that the thread using the workspace adds its times to, and the list of inputs of the
+ * last forward pass that are not zero. A Workspace holds the arrays of a NeuralNet and a FloatWorkspace those of a
+ * FloatNeuralNet, and AbstractNeuralNet hands one of them to each thread that trains on a share of a mini-batch.
+ *
+ * Methods in this class:
+ * SparseInput getSparseScratch()
+ * int         largestLayer()
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+abstract class AbstractWorkspace
+{
+   final int[] sizeOfLayers;   // number of units in each activation layer of the network this workspace is for
+
+   TrainingMetrics metrics;    // the times measured by the thread using this workspace, null unless being measured
+   SparseInput sparseInput;    // the inputs of the last forward pass that are not zero, or null if all were used
+
+   private SparseInput sparseScratch;     // the list that sparseInput points to, created when first needed
+
+   /**
+    * Creates a workspace for a network with the given layer sizes.
+    *
+    * @param sizeOfLayers the number of processing units in each activation layer
+    */
+   AbstractWorkspace(int[] sizeOfLayers)
+   {
+      this.sizeOfLayers = sizeOfLayers;
+   }
+
+   /**
+    * Gets the list that the inputs of a forward pass are gathered into, creating it the first time.
+    *
+    * @return the list with room for every input
+    */
+   SparseInput getSparseScratch()
+   {
+      if (sparseScratch == null)
+      {
+         sparseScratch = new SparseInput(sizeOfLayers[0]);
+      }
+      return sparseScratch;
+   }
+
+   /**
+    * Finds the number of units in the largest activation layer.
+    *
+    * @return the size of the largest layer
+    */
+   int largestLayer()
+   {
+      int largest = 0;
+      for (int size : sizeOfLayers)
+      {
+         largest = Math.max(largest, size);
+      }
+      return largest;
+   }
+
+} // abstract class AbstractWorkspace
@@ -0,0 +1,187 @@
+import java.util.Locale;
+
+/**
+ * Activation
+ *
+ * The functions that a layer of a network can apply to the weighted sum going into each of its nodes. Each layer after
+ * the input layer has its own, so for example the hidden layers can use RELU while the output layer keeps SIGMOID.
+ *
+ * SIGMOID      - the logistic function 1 / (1 + e^-x), between 0 and 1
+ * TANH         - the hyperbolic tangent, between -1 and 1
+ * RELU         - x if x is positive and 0 otherwise
+ * LEAKY_RELU   - x if x is positive and LEAKY_SLOPE * x otherwise
+ * IDENTITY     - x itself
+ * FAST_SIGMOID - SIGMOID found by interpolating in a table instead of calling Math.exp
+ * FAST_TANH    - TANH found from the same table, as 2 * sigmoid(2x) - 1
+ *
+ * The derivative of every function is found from the output of the node instead of from its input, for example
+ * f * (1 - f) for SIGMOID and 1 - f^2 for TANH. Backprop already has the output stored as the activation of the node,
+ * so the derivative costs a multiply instead of calling the function again, and RELU, LEAKY_RELU and IDENTITY never
+ * call Math.exp at all.
+ *
+ * The table of the fast functions holds the sigmoid at TABLE_STEPS points per unit between -TABLE_RANGE and
+ * TABLE_RANGE, and is interpolated linearly between them. Inputs outside of that range give the value at its end. The
+ * error of FAST_SIGMOID is then at most h^2 / 8 times the largest second derivative of the sigmoid, 1 / (6 * sqrt(3)),
+ * for a step h of 1 / TABLE_STEPS, plus the 1.2e-7 that the sigmoid still is from 0 or 1 at the ends of the table:
+ * less than 3.1e-6 everywhere. FAST_TANH is off by twice that, less than 6.2e-6. Their derivatives are found from
+ * their own outputs in the same way as for SIGMOID and TANH.
+ *
+ * Methods in this class:
+ * double     apply(double x)
+ * float      apply(float x)
+ * double     derivative(double output)
+ * float      derivative(float output)
+ * double     tableSigmoid(double x)
+ * Activation parse(String name)
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+public enum Activation
+{
+   SIGMOID, TANH, RELU, LEAKY_RELU, IDENTITY, FAST_SIGMOID, FAST_TANH;
+
+   static final double LEAKY_SLOPE = 0.01;    // the slope of LEAKY_RELU for inputs below 0
+
+   static final int TABLE_RANGE = 16;         // the table of the fast functions covers -TABLE_RANGE to TABLE_RANGE
+   static final int TABLE_STEPS = 64;         // points in the table for every unit of input
+   private static final int TABLE_LAST = 2 * TABLE_RANGE * TABLE_STEPS;
+   private static final double[] SIGMOID_TABLE = new double[TABLE_LAST + 1];
+
+   static
+   {
+      for (int k = 0; k <= TABLE_LAST; k++)
+      {
+         SIGMOID_TABLE[k] = 1.0 / (1.0 + Math.exp(-((double) k / TABLE_STEPS - TABLE_RANGE)));
+      }
+   }
+
+   /**
+    * Applies the function to the weighted sum going into a node.
+    *
+    * @param x the input for the node
+    * @return the function applied to the input
+    */
+   public double apply(double x)
+   {
+      switch (this)
+      {
+         case SIGMOID:
+            return 1.0 / (1.0 + Math.exp(-x));
+         case TANH:
+            return Math.tanh(x);
+         case RELU:
+            return x > 0.0 ? x : 0.0;
+         case LEAKY_RELU:
+            return x > 0.0 ? x : LEAKY_SLOPE * x;
+         case FAST_SIGMOID:
+            return tableSigmoid(x);
+         case FAST_TANH:
+            return 2.0 * tableSigmoid(2.0 * x) - 1.0;
+         default:
+            return x;
+      }
+   } // public double apply(double x)
+
+   /**
+    * Applies the function to the weighted sum going into a node of a FloatNeuralNet. It is worked out as a double and
+    * rounded to a float.
+    *
+    * @param x the input for the node
+    * @return the function applied to the input
+    */
+   public float apply(float x)
+   {
+      return (float) apply((double) x);
+   }
+
+   /**
+    * Finds the derivative of the function at the input that gave the given output.
+    *
+    * @param output the output of the node, from apply
+    * @return the derivative of the function for that node
+    */
+   public double derivative(double output)
+   {
+      switch (this)
+      {
+         case SIGMOID:
+         case FAST_SIGMOID:
+            return output * (1.0 - output);
+         case TANH:
+         case FAST_TANH:
+            return 1.0 - output * output;
+         case RELU:
+            return output > 0.0 ? 1.0 : 0.0;
+         case LEAKY_RELU:
+            return output > 0.0 ? 1.0 : LEAKY_SLOPE;
+         default:
+            return 1.0;
+      }
+   } // public double derivative(double output)
+
+   /**
+    * Finds the derivative of the function at the input that gave the given output of a node of a FloatNeuralNet.
+    *
+    * @param output the output of the node, from apply
+    * @return the derivative of the function for that node
+    */
+   public float derivative(float output)
+   {
+      switch (this)
+      {
+         case SIGMOID:
+         case FAST_SIGMOID:
+            return output * (1.0f - output);
+         case TANH:
+         case FAST_TANH:
+            return 1.0f - output * output;
+         case RELU:
+            return output > 0.0f ? 1.0f : 0.0f;
+         case LEAKY_RELU:
+            return output > 0.0f ? 1.0f : (float) LEAKY_SLOPE;
+         default:
+            return 1.0f;
+      }
+   } // public float derivative(float output)
+
+   /**
+    * Finds the sigmoid of x by interpolating linearly between the two nearest points of the table.
+    *
+    * @param x the input
+    * @return the sigmoid of x, to within 3.1e-6
+    */
+   static double tableSigmoid(double x)
+   {
+      double position = (x + TABLE_RANGE) * TABLE_STEPS;
+      if (position <= 0.0)
+      {
+         return SIGMOID_TABLE[0];
+      }
+      if (position >= TABLE_LAST)
+      {
+         return SIGMOID_TABLE[TABLE_LAST];
+      }
+      if (position != position)
+      {
+         return position;                       // NaN stays NaN
+      }
+
+      int k = (int) position;
+      double fraction = position - k;
+      return SIGMOID_TABLE[k] + fraction * (SIGMOID_TABLE[k + 1] - SIGMOID_TABLE[k]);
+   } // static double tableSigmoid(double x)
+
+   /**
+    * Finds the activation with the given name, ignoring case and allowing dashes in place of underscores, as it is
+    * written in the config file.
+    *
+    * @param name the name of the activation, such as sigmoid or leaky-relu
+    * @return the activation with that name
+    */
+   public static Activation parse(String name)
+   {
+      return valueOf(name.toUpperCase(Locale.ROOT).replace('-', '_'));
+   }
+
+} // public enum Activation
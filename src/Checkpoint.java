@@ -0,0 +1,584 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Checkpoint
+ *
+ * A snapshot of a network partway through training: a copy of its weights and of the state of its Optimizer, kept
+ * as doubles for a NeuralNet or as floats for a FloatNeuralNet, along with everything train needs to carry on where it
+ * left off. That is the next epoch to run, the number of weight updates so far, the current learning rate, and the
+ * lowest error seen, which decides how the learning rate changes next. A network given a checkpoint with
+ * AbstractNeuralNet.restore continues training from it the next time train is called.
+ *
+ * The snapshot owns its arrays, so it can be written by another thread while the network keeps training. Checkpoint
+ * files are binary and little-endian, and are laid out as follows:
+ *
+ * int      magic number MAGIC, "NNCK" in ASCII
+ * int      format version, VERSION
+ * int      precision of the weights, 0 for doubles or 1 for floats
+ * int      number of activation layers, L
+ * int[L]   size of each activation layer
+ * int      next epoch
+ * int      number of weight updates
+ * int      the optimizer the network was trained with, as its ordinal in Optimizer
+ * int      the number of updates the optimizer has made, which Optimizer.ADAM corrects its averages by
+ * padding  zero bytes up to the next multiple of 8 bytes
+ * double   learning rate
+ * double   lowest error
+ *
+ * followed by the weights of each connectivity layer in the same flat row-major order as in the network, then by
+ * each state array of the optimizer, if it has any, laid out in the same way. Version 1 files, from before the
+ * optimizer was saved, have neither optimizer int and are read as Optimizer.SGD. A checkpoint
+ * is written to a temporary file next to the real one, which is then moved over it, so a crash while writing leaves
+ * the previous checkpoint whole.
+ *
+ * Methods in this class:
+ * Checkpoint take(int[] sizeOfLayers, double[][] weights, double[][][] optimizerState, Optimizer optimizer,
+ *                 int optimizerSteps, int nextEpoch, int updates, double learningRate, double minError)
+ * Checkpoint take(int[] sizeOfLayers, float[][] weights, float[][][] optimizerState, Optimizer optimizer,
+ *                 int optimizerSteps, int nextEpoch, int updates, double learningRate, double minError)
+ * void       write(String filename)
+ * void       writeBody(FileChannel channel)
+ * Checkpoint read(String filename)
+ * long       headerSize(int version, int numOfActivationLayers)
+ * int[]      getSizeOfLayers()
+ * double[][] getWeights()
+ * float[][]  getFloatWeights()
+ * double[][][] getOptimizerState()
+ * float[][][] getFloatOptimizerState()
+ * double[][] widen(int table)
+ * float[][]  narrow(int table)
+ * Optimizer  getOptimizer()
+ * int        getOptimizerSteps()
+ * int        getNextEpoch()
+ * int        getUpdates()
+ * double     getLearningRate()
+ * double     getMinError()
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+public final class Checkpoint
+{
+   static final int MAGIC = 0x4B43_4E4E;      // "NNCK" read as a little-endian int
+   static final int VERSION = 2;
+
+   private final int[] sizeOfLayers;          // number of units in each activation layer
+   private final double[][][] tables;         // the weights then the optimizer state of a NeuralNet, or null
+   private final float[][][] floatTables;     // the weights then the optimizer state of a FloatNeuralNet, or null
+   private final Optimizer optimizer;
+   private final int optimizerSteps;
+   private final int nextEpoch;
+   private final int updates;
+   private final double learningRate;
+   private final double minError;
+
+   /**
+    * Creates a checkpoint that takes over the given arrays, which nothing else may change afterwards. Exactly one of
+    * tables and floatTables is given. Each table holds one flat row-major array for every connectivity layer: the
+    * first holds the weights, and the rest hold the state arrays of the optimizer in order.
+    *
+    * @param sizeOfLayers   the number of units in each activation layer
+    * @param tables         the weights and optimizer state as doubles, 1 + optimizer.stateArrays() tables, or null
+    * @param floatTables    the weights and optimizer state as floats, 1 + optimizer.stateArrays() tables, or null
+    * @param optimizer      the optimizer the network was trained with
+    * @param optimizerSteps the number of updates the optimizer has made
+    * @param nextEpoch      the epoch that training continues from
+    * @param updates        the number of weight updates done so far
+    * @param learningRate   the current learning rate
+    * @param minError       the lowest error seen so far
+    */
+   Checkpoint(int[] sizeOfLayers, double[][][] tables, float[][][] floatTables, Optimizer optimizer,
+              int optimizerSteps, int nextEpoch, int updates, double learningRate, double minError)
+   {
+      this.sizeOfLayers = sizeOfLayers.clone();
+      this.tables = tables;
+      this.floatTables = floatTables;
+      this.optimizer = optimizer;
+      this.optimizerSteps = optimizerSteps;
+      this.nextEpoch = nextEpoch;
+      this.updates = updates;
+      this.learningRate = learningRate;
+      this.minError = minError;
+   }
+
+   /**
+    * Takes a checkpoint of a NeuralNet, copying its weights and the state arrays of its optimizer so that the network
+    * can keep training while the checkpoint is written.
+    *
+    * @param sizeOfLayers   the number of units in each activation layer
+    * @param weights        the flat row-major weights of each connectivity layer
+    * @param optimizerState the state arrays of the optimizer for each connectivity layer, or null if they have not
+    *                       been created, which is the same as all 0
+    * @param optimizer      the optimizer the network was trained with
+    * @param optimizerSteps the number of updates the optimizer has made
+    * @param nextEpoch      the epoch that training continues from
+    * @param updates        the number of weight updates done so far
+    * @param learningRate   the current learning rate
+    * @param minError       the lowest error seen so far
+    * @return the checkpoint
+    */
+   static Checkpoint take(int[] sizeOfLayers, double[][] weights, double[][][] optimizerState, Optimizer optimizer,
+                          int optimizerSteps, int nextEpoch, int updates, double learningRate, double minError)
+   {
+      double[][][] tables = new double[1 + optimizer.stateArrays()][weights.length][];
+      for (int n = 0; n < weights.length; n++)
+      {
+         tables[0][n] = weights[n].clone();
+         for (int t = 1; t < tables.length; t++)
+         {
+            tables[t][n] = optimizerState != null ? optimizerState[n][t - 1].clone() : new double[weights[n].length];
+         }
+      }
+      return new Checkpoint(sizeOfLayers, tables, null, optimizer, optimizerSteps, nextEpoch, updates, learningRate,
+            minError);
+   } // static Checkpoint take(int[] sizeOfLayers, double[][] weights, double[][][] optimizerState, ...)
+
+   /**
+    * Takes a checkpoint of a FloatNeuralNet in the same way, keeping its weights and optimizer state as floats.
+    *
+    * @param sizeOfLayers   the number of units in each activation layer
+    * @param weights        the flat row-major weights of each connectivity layer
+    * @param optimizerState the state arrays of the optimizer for each connectivity layer, or null if they have not
+    *                       been created, which is the same as all 0
+    * @param optimizer      the optimizer the network was trained with
+    * @param optimizerSteps the number of updates the optimizer has made
+    * @param nextEpoch      the epoch that training continues from
+    * @param updates        the number of weight updates done so far
+    * @param learningRate   the current learning rate
+    * @param minError       the lowest error seen so far
+    * @return the checkpoint
+    */
+   static Checkpoint take(int[] sizeOfLayers, float[][] weights, float[][][] optimizerState, Optimizer optimizer,
+                          int optimizerSteps, int nextEpoch, int updates, double learningRate, double minError)
+   {
+      float[][][] tables = new float[1 + optimizer.stateArrays()][weights.length][];
+      for (int n = 0; n < weights.length; n++)
+      {
+         tables[0][n] = weights[n].clone();
+         for (int t = 1; t < tables.length; t++)
+         {
+            tables[t][n] = optimizerState != null ? optimizerState[n][t - 1].clone() : new float[weights[n].length];
+         }
+      }
+      return new Checkpoint(sizeOfLayers, null, tables, optimizer, optimizerSteps, nextEpoch, updates, learningRate,
+            minError);
+   } // static Checkpoint take(int[] sizeOfLayers, float[][] weights, float[][][] optimizerState, ...)
+
+   /**
+    * Writes the checkpoint to a temporary file, then moves it over the given file in one step.
+    *
+    * @param filename the name of the file to write the checkpoint to
+    */
+   public void write(String filename) throws IOException
+   {
+      Path target = Paths.get(filename).toAbsolutePath();
+      Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         writeBody(channel);
+         channel.force(true);
+      }
+
+      try
+      {
+         Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+      catch (IOException e)
+      {
+         // The file system cannot move atomically
+         Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+   } // public void write(String filename)
+
+   /**
+    * Writes the header, the weights and the optimizer state, converting the values to little-endian bytes through a
+    * fixed-size buffer in the same way as NeuralNet.storeBinaryWeights.
+    *
+    * @param channel the channel of the file being written
+    */
+   private void writeBody(FileChannel channel) throws IOException
+   {
+      ByteBuffer header = ByteBuffer.allocate((int) headerSize(VERSION, sizeOfLayers.length))
+            .order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(MAGIC);
+      header.putInt(VERSION);
+      header.putInt(tables != null ? 0 : 1);
+      header.putInt(sizeOfLayers.length);
+      for (int size : sizeOfLayers)
+      {
+         header.putInt(size);
+      }
+      header.putInt(nextEpoch);
+      header.putInt(updates);
+      header.putInt(optimizer.ordinal());
+      header.putInt(optimizerSteps);
+      header.position(header.capacity() - 2 * Double.BYTES);
+      header.putDouble(learningRate);
+      header.putDouble(minError);
+      header.flip();
+      while (header.hasRemaining())
+      {
+         channel.write(header);
+      }
+
+      ByteBuffer block = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+      for (int t = 0; t <= optimizer.stateArrays(); t++)
+      {
+         for (int n = 0; n < sizeOfLayers.length - 1; n++)
+         {
+            int length = sizeOfLayers[n] * sizeOfLayers[n + 1];
+            int blockValues = block.capacity() / (tables != null ? Double.BYTES : Float.BYTES);
+            for (int start = 0; start < length; start += blockValues)
+            {
+               int count = Math.min(blockValues, length - start);
+               block.clear();
+               if (tables != null)
+               {
+                  block.asDoubleBuffer().put(tables[t][n], start, count);
+                  block.limit(count * Double.BYTES);
+               }
+               else
+               {
+                  block.asFloatBuffer().put(floatTables[t][n], start, count);
+                  block.limit(count * Float.BYTES);
+               }
+               while (block.hasRemaining())
+               {
+                  channel.write(block);
+               }
+            } // for (int start = 0; start < length; start += blockValues)
+         } // for (int n = 0; n < sizeOfLayers.length - 1; n++)
+      } // for (int t = 0; t <= optimizer.stateArrays(); t++)
+   } // private void writeBody(FileChannel channel)
+
+   /**
+    * Reads a checkpoint written by write, checking that the file holds exactly what its header describes. Checkpoints
+    * of version 1 are read too, as having been trained with Optimizer.SGD.
+    *
+    * @param filename the name of the checkpoint file
+    * @return the checkpoint
+    */
+   public static Checkpoint read(String filename) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+      {
+         long fileSize = channel.size();
+
+         ByteBuffer start = ByteBuffer.allocate(4 * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+         if (!NeuralNet.readFully(channel, start, 0) || start.getInt() != MAGIC)
+         {
+            throw new IOException(filename + " is not a checkpoint file");
+         }
+         int version = start.getInt();
+         if (version != 1 && version != VERSION)
+         {
+            throw new IOException("Unsupported checkpoint version " + version + " in " + filename);
+         }
+         int precision = start.getInt();
+         int numOfActivationLayers = start.getInt();
+         if ((precision != 0 && precision != 1) || numOfActivationLayers < 2 ||
+               headerSize(version, numOfActivationLayers) > fileSize)
+         {
+            throw new IOException("Checkpoint file " + filename + " has a bad header");
+         }
+
+         ByteBuffer header = ByteBuffer.allocate((int) headerSize(version, numOfActivationLayers))
+               .order(ByteOrder.LITTLE_ENDIAN);
+         NeuralNet.readFully(channel, header, 0);
+         header.position(start.capacity());
+
+         int[] sizeOfLayers = new int[numOfActivationLayers];
+         long tableSize = 0;
+         for (int n = 0; n < numOfActivationLayers; n++)
+         {
+            sizeOfLayers[n] = header.getInt();
+            if (sizeOfLayers[n] < 1)
+            {
+               throw new IOException("Checkpoint file " + filename + " has a bad layer size " + sizeOfLayers[n]);
+            }
+            if (n > 0)
+            {
+               tableSize += (long) sizeOfLayers[n - 1] * sizeOfLayers[n] *
+                     (precision == 0 ? Double.BYTES : Float.BYTES);
+            }
+         }
+
+         int nextEpoch = header.getInt();
+         int updates = header.getInt();
+         Optimizer optimizer = Optimizer.SGD;
+         int optimizerSteps = 0;
+         if (version > 1)
+         {
+            int ordinal = header.getInt();
+            if (ordinal < 0 || ordinal >= Optimizer.values().length)
+            {
+               throw new IOException("Checkpoint file " + filename + " has an unknown optimizer " + ordinal);
+            }
+            optimizer = Optimizer.values()[ordinal];
+            optimizerSteps = header.getInt();
+         }
+         header.position(header.capacity() - 2 * Double.BYTES);
+         double learningRate = header.getDouble();
+         double minError = header.getDouble();
+
+         int tableCount = 1 + optimizer.stateArrays();
+         long expectedSize = header.capacity() + tableCount * tableSize;
+         if (fileSize != expectedSize)
+         {
+            throw new IOException("Checkpoint file " + filename + " is " + fileSize + " bytes, expected " +
+                  expectedSize);
+         }
+
+         // Map each layer of each table and copy its values in bulk
+         double[][][] tables = precision == 0 ? new double[tableCount][numOfActivationLayers - 1][] : null;
+         float[][][] floatTables = precision == 1 ? new float[tableCount][numOfActivationLayers - 1][] : null;
+         long offset = header.capacity();
+         for (int t = 0; t < tableCount; t++)
+         {
+            for (int n = 0; n < numOfActivationLayers - 1; n++)
+            {
+               int length = sizeOfLayers[n] * sizeOfLayers[n + 1];
+               long layerBytes = (long) length * (precision == 0 ? Double.BYTES : Float.BYTES);
+               MappedByteBuffer layer = channel.map(FileChannel.MapMode.READ_ONLY, offset, layerBytes);
+               layer.order(ByteOrder.LITTLE_ENDIAN);
+               if (precision == 0)
+               {
+                  tables[t][n] = new double[length];
+                  layer.asDoubleBuffer().get(tables[t][n]);
+               }
+               else
+               {
+                  floatTables[t][n] = new float[length];
+                  layer.asFloatBuffer().get(floatTables[t][n]);
+               }
+               offset += layerBytes;
+            } // for (int n = 0; n < numOfActivationLayers - 1; n++)
+         } // for (int t = 0; t < tableCount; t++)
+
+         return new Checkpoint(sizeOfLayers, tables, floatTables, optimizer, optimizerSteps, nextEpoch, updates,
+               learningRate, minError);
+      } // try (FileChannel channel = ...)
+   } // public static Checkpoint read(String filename)
+
+   /**
+    * Finds the size of the header of a checkpoint file, including the padding and the two doubles at its end.
+    *
+    * @param version               the format version of the file
+    * @param numOfActivationLayers the number of activation layers in the network
+    * @return the number of bytes before the first weight
+    */
+   static long headerSize(int version, int numOfActivationLayers)
+   {
+      long size = ((version > 1 ? 8L : 6L) + numOfActivationLayers) * Integer.BYTES;
+      return (size + Double.BYTES - 1) / Double.BYTES * Double.BYTES + 2 * Double.BYTES;
+   }
+
+   /**
+    * Gets the number of units in each activation layer of the network the checkpoint was taken from.
+    *
+    * @return a copy of the layer sizes
+    */
+   public int[] getSizeOfLayers()
+   {
+      return sizeOfLayers.clone();
+   }
+
+   /**
+    * Copies the weights into new arrays of doubles, widening them if they were taken from a FloatNeuralNet.
+    *
+    * @return the flat row-major weights of each connectivity layer
+    */
+   public double[][] getWeights()
+   {
+      return widen(0);
+   }
+
+   /**
+    * Copies the weights into new arrays of floats, rounding them if they were taken from a NeuralNet.
+    *
+    * @return the flat row-major weights of each connectivity layer
+    */
+   public float[][] getFloatWeights()
+   {
+      return narrow(0);
+   }
+
+   /**
+    * Copies the state arrays of the optimizer into new arrays of doubles, widening them if they were taken from a
+    * FloatNeuralNet.
+    *
+    * @return the getOptimizer().stateArrays() state arrays of each connectivity layer, in the order that
+    *         Optimizer.update takes them, or null if the optimizer has none
+    */
+   public double[][][] getOptimizerState()
+   {
+      if (optimizer.stateArrays() == 0)
+      {
+         return null;
+      }
+
+      double[][][] state = new double[sizeOfLayers.length - 1][optimizer.stateArrays()][];
+      for (int t = 0; t < optimizer.stateArrays(); t++)
+      {
+         double[][] table = widen(t + 1);
+         for (int n = 0; n < state.length; n++)
+         {
+            state[n][t] = table[n];
+         }
+      }
+      return state;
+   } // public double[][][] getOptimizerState()
+
+   /**
+    * Copies the state arrays of the optimizer into new arrays of floats, rounding them if they were taken from a
+    * NeuralNet.
+    *
+    * @return the getOptimizer().stateArrays() state arrays of each connectivity layer, in the order that
+    *         Optimizer.update takes them, or null if the optimizer has none
+    */
+   public float[][][] getFloatOptimizerState()
+   {
+      if (optimizer.stateArrays() == 0)
+      {
+         return null;
+      }
+
+      float[][][] state = new float[sizeOfLayers.length - 1][optimizer.stateArrays()][];
+      for (int t = 0; t < optimizer.stateArrays(); t++)
+      {
+         float[][] table = narrow(t + 1);
+         for (int n = 0; n < state.length; n++)
+         {
+            state[n][t] = table[n];
+         }
+      }
+      return state;
+   } // public float[][][] getFloatOptimizerState()
+
+   /**
+    * Copies one table into new arrays of doubles, widening it if it was taken from a FloatNeuralNet.
+    *
+    * @param table the index of the table, 0 for the weights
+    * @return a flat row-major array for every connectivity layer
+    */
+   private double[][] widen(int table)
+   {
+      double[][] copy = new double[sizeOfLayers.length - 1][];
+      for (int n = 0; n < copy.length; n++)
+      {
+         if (tables != null)
+         {
+            copy[n] = tables[table][n].clone();
+         }
+         else
+         {
+            copy[n] = new double[floatTables[table][n].length];
+            for (int k = 0; k < copy[n].length; k++)
+            {
+               copy[n][k] = floatTables[table][n][k];
+            }
+         }
+      }
+      return copy;
+   } // private double[][] widen(int table)
+
+   /**
+    * Copies one table into new arrays of floats, rounding it if it was taken from a NeuralNet.
+    *
+    * @param table the index of the table, 0 for the weights
+    * @return a flat row-major array for every connectivity layer
+    */
+   private float[][] narrow(int table)
+   {
+      float[][] copy = new float[sizeOfLayers.length - 1][];
+      for (int n = 0; n < copy.length; n++)
+      {
+         if (floatTables != null)
+         {
+            copy[n] = floatTables[table][n].clone();
+         }
+         else
+         {
+            copy[n] = new float[tables[table][n].length];
+            for (int k = 0; k < copy[n].length; k++)
+            {
+               copy[n][k] = (float) tables[table][n][k];
+            }
+         }
+      }
+      return copy;
+   } // private float[][] narrow(int table)
+
+   /**
+    * Gets the optimizer the network was trained with, whose state the checkpoint holds.
+    *
+    * @return the optimizer
+    */
+   public Optimizer getOptimizer()
+   {
+      return optimizer;
+   }
+
+   /**
+    * Gets the number of updates the optimizer had made when the checkpoint was taken.
+    *
+    * @return the number of optimizer updates
+    */
+   public int getOptimizerSteps()
+   {
+      return optimizerSteps;
+   }
+
+   /**
+    * Gets the epoch that training continues from.
+    *
+    * @return the next epoch to run
+    */
+   public int getNextEpoch()
+   {
+      return nextEpoch;
+   }
+
+   /**
+    * Gets the number of weight updates done before the checkpoint, which decides when the error is measured next for
+    * ErrorEvaluation.INTERVAL.
+    *
+    * @return the number of updates
+    */
+   public int getUpdates()
+   {
+      return updates;
+   }
+
+   /**
+    * Gets the learning rate when the checkpoint was taken.
+    *
+    * @return the learning rate
+    */
+   public double getLearningRate()
+   {
+      return learningRate;
+   }
+
+   /**
+    * Gets the lowest error seen before the checkpoint was taken, as compared with the error threshold.
+    *
+    * @return the lowest error
+    */
+   public double getMinError()
+   {
+      return minError;
+   }
+
+} // public final class Checkpoint
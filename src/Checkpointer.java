@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checkpointer
+ *
+ * Decides when a network being trained takes a Checkpoint, and writes the checkpoints to a file on a background
+ * thread. A checkpoint is due every given number of epochs, or once the given number of minutes has passed since the
+ * last one, whichever comes first; either can be 0 to turn it off.
+ *
+ * Training only has to copy its weights into the checkpoint, and never waits for the disk. If a checkpoint is still
+ * being written when the next one is due, the next one waits in a queue of one, and a newer checkpoint replaces it
+ * there, since only the latest one is worth writing. A checkpoint that cannot be written is reported and training
+ * carries on. close waits for the checkpoints that are left, so that the last one is on disk before the program moves
+ * on.
+ *
+ * Methods in this class:
+ * boolean isDue(int epoch)
+ * void    save(Checkpoint checkpoint)
+ * void    write(Checkpoint checkpoint)
+ * String  getFilename()
+ * void    close()
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+public final class Checkpointer implements AutoCloseable
+{
+   private final String filename;          // the file that the checkpoints are written to
+   private final int epochInterval;        // the number of epochs between checkpoints, 0 for no limit
+   private final long intervalNanos;       // the time between checkpoints, 0 for no limit
+   private final ThreadPoolExecutor writer;
+
+   private long lastSave;                  // the time the last checkpoint was taken, from System.nanoTime
+
+   /**
+    * Creates a checkpointer and starts its clock.
+    *
+    * @param filename       the file to write the checkpoints to
+    * @param epochInterval  the number of epochs between checkpoints, or 0 for none based on epochs
+    * @param minuteInterval the number of minutes between checkpoints, or 0 for none based on time
+    */
+   public Checkpointer(String filename, int epochInterval, double minuteInterval)
+   {
+      if (epochInterval < 0 || minuteInterval < 0.0)
+      {
+         throw new IllegalArgumentException("Checkpoint intervals cannot be negative");
+      }
+
+      this.filename = filename;
+      this.epochInterval = epochInterval;
+      intervalNanos = (long) (minuteInterval * 60e9);
+
+      // One thread that ends when it is idle, with room for one waiting checkpoint that newer ones replace
+      writer = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(1),
+            new ThreadPoolExecutor.DiscardOldestPolicy());
+      writer.allowCoreThreadTimeOut(true);
+
+      lastSave = System.nanoTime();
+   } // public Checkpointer(String filename, int epochInterval, double minuteInterval)
+
+   /**
+    * Checks whether a checkpoint should be taken at the end of the given epoch.
+    *
+    * @param epoch the epoch that just finished
+    * @return true if it is a multiple of the epoch interval, or the time interval has passed since the last one
+    */
+   public boolean isDue(int epoch)
+   {
+      return (epochInterval > 0 && epoch % epochInterval == 0) ||
+            (intervalNanos > 0 && System.nanoTime() - lastSave >= intervalNanos);
+   }
+
+   /**
+    * Queues a checkpoint to be written on the background thread, and restarts the clock.
+    *
+    * @param checkpoint the checkpoint to write, which nothing else may change
+    */
+   public void save(Checkpoint checkpoint)
+   {
+      lastSave = System.nanoTime();
+      writer.execute(() -> write(checkpoint));
+   }
+
+   /**
+    * Writes a checkpoint, reporting instead of throwing if it fails, since training should not stop over it.
+    *
+    * @param checkpoint the checkpoint to write
+    */
+   private void write(Checkpoint checkpoint)
+   {
+      try
+      {
+         checkpoint.write(filename);
+      }
+      catch (IOException e)
+      {
+         System.err.println("Checkpoint output error " + e);
+      }
+   }
+
+   /**
+    * Gets the file that the checkpoints are written to.
+    *
+    * @return the name of the checkpoint file
+    */
+   public String getFilename()
+   {
+      return filename;
+   }
+
+   /**
+    * Waits for the checkpoints that are still queued or being written, then stops the background thread.
+    */
+   @Override
+   public void close()
+   {
+      writer.shutdown();
+      try
+      {
+         writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+} // public final class Checkpointer implements AutoCloseable
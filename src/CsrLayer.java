@@ -0,0 +1,225 @@
+/**
+ * CSR Layer
+ *
+ * One connectivity layer of weights kept in compressed sparse row form, for a network whose weights were mostly pruned
+ * to 0. Like the dense weights, there is one row for each node of the next layer, but a row only holds the weights
+ * that are not 0, in order of the node of the current layer that each one comes from:
+ *
+ * rowStart    - where each row starts in columns and values, with one more entry at the end for where the last row ends
+ * columns     - the node of the current layer that each weight comes from
+ * values      - the weight
+ *
+ * The weights of row i are therefore values[rowStart[i]] to values[rowStart[i + 1] - 1]. A layer with a fraction d of
+ * its weights left takes about 12 * d bytes for every weight instead of 8, so it is smaller than the dense layer once
+ * fewer than two thirds of its weights are left, and the forward kernels only walk the weights that are left. They add
+ * up the products of each row in the same order as NeuralNet.propagateLayer, just without the zero ones, so they give
+ * the same outputs as the dense weights with the scalar kernels.
+ *
+ * A layer never changes once it is made, so it can be shared by any number of threads.
+ *
+ * Methods in this class:
+ * CsrLayer fromDense(double[] w, int rows, int columnCount)
+ * int      nonZeros()
+ * double[] toDense()
+ * float[]  toDenseFloats()
+ * void     propagate(double[] prev, double[] next, Activation function)
+ * void     propagateBatch(double[] prev, int prevOffset, double[] next, int nextOffset, int count,
+ *                         Activation function)
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+final class CsrLayer
+{
+   final int rows;            // number of nodes in the next layer
+   final int columnCount;     // number of nodes in the current layer
+   final int[] rowStart;      // where each row starts in columns and values, rows + 1 of them
+   final int[] columns;       // the node of the current layer that each weight comes from
+   final double[] values;     // the weights that are not 0
+
+   /**
+    * Creates a layer from its CSR arrays, which it takes over.
+    *
+    * @param rows        the number of nodes in the next layer
+    * @param columnCount the number of nodes in the current layer
+    * @param rowStart    where each row starts in columns and values, with rows + 1 entries
+    * @param columns     the node of the current layer that each weight comes from
+    * @param values      the weights
+    */
+   CsrLayer(int rows, int columnCount, int[] rowStart, int[] columns, double[] values)
+   {
+      this.rows = rows;
+      this.columnCount = columnCount;
+      this.rowStart = rowStart;
+      this.columns = columns;
+      this.values = values;
+   }
+
+   /**
+    * Compresses a layer of flat row-major weights, leaving out every weight that is 0.
+    *
+    * @param w           the flat row-major weights of the layer
+    * @param rows        the number of nodes in the next layer
+    * @param columnCount the number of nodes in the current layer
+    * @return the compressed layer
+    */
+   static CsrLayer fromDense(double[] w, int rows, int columnCount)
+   {
+      int count = 0;
+      for (double weight : w)
+      {
+         if (weight != 0.0)
+         {
+            count++;
+         }
+      }
+
+      int[] rowStart = new int[rows + 1];
+      int[] columns = new int[count];
+      double[] values = new double[count];
+      int k = 0;
+      for (int i = 0; i < rows; i++)
+      {
+         rowStart[i] = k;
+         int row = i * columnCount;
+         for (int j = 0; j < columnCount; j++)
+         {
+            if (w[row + j] != 0.0)
+            {
+               columns[k] = j;
+               values[k] = w[row + j];
+               k++;
+            }
+         }
+      } // for (int i = 0; i < rows; i++)
+      rowStart[rows] = k;
+
+      return new CsrLayer(rows, columnCount, rowStart, columns, values);
+   } // static CsrLayer fromDense(double[] w, int rows, int columnCount)
+
+   /**
+    * Gets the number of weights that are kept.
+    *
+    * @return the number of weights that are not 0
+    */
+   int nonZeros()
+   {
+      return values.length;
+   }
+
+   /**
+    * Expands the layer back into flat row-major weights, with 0 for every weight that was left out.
+    *
+    * @return the dense weights
+    */
+   double[] toDense()
+   {
+      double[] w = new double[rows * columnCount];
+      for (int i = 0; i < rows; i++)
+      {
+         for (int k = rowStart[i]; k < rowStart[i + 1]; k++)
+         {
+            w[i * columnCount + columns[k]] = values[k];
+         }
+      }
+      return w;
+   }
+
+   /**
+    * Expands the layer back into flat row-major weights in the same way as toDense, rounding each weight to the
+    * nearest float, for a FloatNeuralNet.
+    *
+    * @return the dense weights as floats
+    */
+   float[] toDenseFloats()
+   {
+      float[] w = new float[rows * columnCount];
+      for (int i = 0; i < rows; i++)
+      {
+         for (int k = rowStart[i]; k < rowStart[i + 1]; k++)
+         {
+            w[i * columnCount + columns[k]] = (float) values[k];
+         }
+      }
+      return w;
+   }
+
+   /**
+    * Calculates the next activation layer from the current one, in the same way as NeuralNet.propagateLayer.
+    *
+    * @param prev     the activations of the current layer
+    * @param next     the array to store the activations of the next layer in
+    * @param function the activation function of the next layer
+    */
+   void propagate(double[] prev, double[] next, Activation function)
+   {
+      for (int i = 0; i < rows; i++)
+      {
+         double sum = 0.0;
+         for (int k = rowStart[i]; k < rowStart[i + 1]; k++)
+         {
+            sum += values[k] * prev[columns[k]];
+         }
+         next[i] = function.apply(sum);
+      }
+   }
+
+   /**
+    * Calculates the next activation layer for a row-major matrix of inputs, in the same way as
+    * NeuralNet.propagateLayerBatch. Each row of weights is applied to four inputs at a time, so each weight and its
+    * column are loaded once for all four, and the row is used for every input before moving to the next, so it is only
+    * read from memory once.
+    *
+    * @param prev       the array holding the activations of the current layer, one row per input
+    * @param prevOffset the index in prev where the first row starts
+    * @param next       the array to store the activations of the next layer in, one row per input
+    * @param nextOffset the index in next where the first row starts
+    * @param count      the number of inputs
+    * @param function   the activation function of the next layer
+    */
+   void propagateBatch(double[] prev, int prevOffset, double[] next, int nextOffset, int count, Activation function)
+   {
+      for (int i = 0; i < rows; i++)
+      {
+         int b = 0;
+         for (; b + 4 <= count; b += 4)
+         {
+            int in0 = prevOffset + b * columnCount;
+            int in1 = in0 + columnCount;
+            int in2 = in1 + columnCount;
+            int in3 = in2 + columnCount;
+            double sum0 = 0.0;
+            double sum1 = 0.0;
+            double sum2 = 0.0;
+            double sum3 = 0.0;
+            for (int k = rowStart[i]; k < rowStart[i + 1]; k++)
+            {
+               double weight = values[k];
+               int j = columns[k];
+               sum0 += weight * prev[in0 + j];
+               sum1 += weight * prev[in1 + j];
+               sum2 += weight * prev[in2 + j];
+               sum3 += weight * prev[in3 + j];
+            }
+            int out = nextOffset + b * rows + i;
+            next[out] = function.apply(sum0);
+            next[out + rows] = function.apply(sum1);
+            next[out + 2 * rows] = function.apply(sum2);
+            next[out + 3 * rows] = function.apply(sum3);
+         } // for (; b + 4 <= count; b += 4)
+
+         // Apply the row to the inputs left over
+         for (; b < count; b++)
+         {
+            int in = prevOffset + b * columnCount;
+            double sum = 0.0;
+            for (int k = rowStart[i]; k < rowStart[i + 1]; k++)
+            {
+               sum += values[k] * prev[in + columns[k]];
+            }
+            next[nextOffset + b * rows + i] = function.apply(sum);
+         }
+      } // for (int i = 0; i < rows; i++)
+   } // void propagateBatch(double[] prev, int prevOffset, double[] next, int nextOffset, int count, ...)
+
+} // final class CsrLayer
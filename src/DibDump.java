@@ -43,11 +43,16 @@
  * regardless of how it was read in.
  * Rev: 01/10/17  Was using the term 24-bit color when it was 32-bit in the comments. Fixed the documentation to be
  * correct.
+ * Rev: 10/17/26  The header fields, pels and topDownDIB flag are no longer static. readBmp returns them in a new
+ * DibImage for every file and writeBmp writes one out, so images can be read and written on many threads at once, and
+ * an image no longer has to be the same size as the last one read to be written.
  *
  * Classes in the file:
  * RgbQuad
  * DibDump
  *
+ * The header of each image is kept in a DibImage, in DibImage.java.
+ *
  * Methods in this file:
  * int     swapInt(int v)
  * int     swapShort(int v)
@@ -112,10 +117,13 @@
  * When lossy casts are done (e.g. int to byte) the conversion is done modulo the length of the smaller type.
  */
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 /**
  * A member-variable-only class for holding the RGBQUAD C structure elements.
@@ -130,40 +138,11 @@ final class RgbQuad
 
 /**
  * The Dib Dump class is used to read in a bmp file, turning it into a matrix that contains the rgb values of the image,
- * and also output a matrix of rgb values to a bmp file so that it can be viewed.
+ * and also output a matrix of rgb values to a bmp file so that it can be viewed. It keeps no state of its own, so it can
+ * be used by many threads at once.
  */
 public class DibDump
 {
-   // BITMAPFILEHEADER
-   static int bmpFileHeader_bfType;          // WORD
-   static int bmpFileHeader_bfSize;          // DWORD
-   static int bmpFileHeader_bfReserved1;     // WORD
-   static int bmpFileHeader_bfReserved2;     // WORD
-   static int bmpFileHeader_bfOffBits;       // DWORD
-
-   // BITMAPINFOHEADER
-   static int bmpInfoHeader_biSize;          // DWORD
-   static int bmpInfoHeader_biWidth;         // LONG
-   static int bmpInfoHeader_biHeight;        // LONG
-   static int bmpInfoHeader_biPlanes;        // WORD
-   static int bmpInfoHeader_biBitCount;      // WORD
-   static int bmpInfoHeader_biCompression;   // DWORD
-   static int bmpInfoHeader_biSizeImage;     // DWORD
-   static int bmpInfoHeader_biXPelsPerMeter; // LONG
-   static int bmpInfoHeader_biYPelsPerMeter; // LONG
-   static int bmpInfoHeader_biClrUsed;       // DWORD
-   static int bmpInfoHeader_biClrImportant;  // DWORD
-
-   // The true color pels
-   static int[][] imageArray;
-
-   /*
-    * if bmpInfoHeader_biHeight is negative then the image is a top down DIB. This flag is used to
-    * identify it as such. Note that when the image is saved, it will be written out in the usual
-    * inverted format with a positive bmpInfoHeader_biHeight value.
-    */
-   static boolean topDownDIB = false;
-
    /*
     * Ratio of each color in an RGB pel, so it can be converted to grayscale.
     */
@@ -225,34 +204,45 @@ public class DibDump
    }
 
    /**
-    * Reads an image from a bmp file and makes it into a matrix containing all the pels of that image.
+    * Reads an image from a bmp file into a new DibImage holding its header and a matrix containing all the pels of that
+    * image. The whole file is read into one buffer with a single channel read, and then every scan line is decoded
+    * straight out of that buffer. Nothing outside the returned image is changed, so any number of threads can read
+    * images at once.
     *
     * @param inFileName the input image to read from
-    * @return the array containing the pels of the image
+    * @return the header and pels of the image
     */
-   public static int[][] bmpToArray(String inFileName)
+   public static DibImage readBmp(String inFileName) throws IOException
    {
-      int i, j, k;
+      DibImage image = new DibImage();
+      int i, j;
       int numberOfColors;
       int pel;
-      int iByteVal, iColumn, iBytesPerRow, iPelsPerRow, iTrailingBits, iDeadBytes;
+      int iPelsPerRow, iBytesPerRow, iRowStart, iPelStart;
 
       // RBGQUAD
       int rgbQuad_rgbBlue;
       int rgbQuad_rgbGreen;
       int rgbQuad_rgbRed;
-      int rgbQuad_rgbReserved;           // not used in this method
 
       // The color table
       int[] colorPallet = new int[256];  // reserve space for the largest possible color table
 
       try // lots of things can go wrong when doing file i/o
       {
-         // Open the file that is the first command line parameter
-         FileInputStream fstream = new FileInputStream(inFileName);
-
-         // Convert our input stream to a DataInputStream
-         DataInputStream in = new DataInputStream(fstream);
+         // Read the whole file into one little-endian buffer, so that nothing has to be byte swapped and the pels can be
+         // decoded a row at a time straight out of its backing array
+         ByteBuffer in;
+         try (FileChannel channel = FileChannel.open(Paths.get(inFileName), StandardOpenOption.READ))
+         {
+            in = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (in.hasRemaining() && channel.read(in) >= 0)
+            {
+               // keep reading until the buffer is full or the file ends
+            }
+            in.flip();
+         }
+         byte[] bytes = in.array();
 
 /*
  *  Read in BITMAPFILEHEADER
@@ -277,12 +267,12 @@ public class DibDump
  *     Specifies the offset, in bytes, from the BITMAPFILEHEADER structure to the bitmap bits
  */
 
-         // Read and Convert to big endian
-         bmpFileHeader_bfType = swapShort(in.readUnsignedShort());        // WORD
-         bmpFileHeader_bfSize = swapInt(in.readInt());                    // DWORD
-         bmpFileHeader_bfReserved1 = swapShort(in.readUnsignedShort());   // WORD
-         bmpFileHeader_bfReserved2 = swapShort(in.readUnsignedShort());   // WORD
-         bmpFileHeader_bfOffBits = swapInt(in.readInt());                 // DWORD
+         // Read, the buffer is already little endian
+         image.bfType = in.getShort() & 0xFFFF;        // WORD
+         image.bfSize = in.getInt();                   // DWORD
+         image.bfReserved1 = in.getShort() & 0xFFFF;   // WORD
+         image.bfReserved2 = in.getShort() & 0xFFFF;   // WORD
+         image.bfOffBits = in.getInt();                // DWORD
 
 /*
  *  Read in BITMAPINFOHEADER
@@ -404,28 +394,29 @@ public class DibDump
  *     pColor = ((LPSTR)pBitmapInfo + (WORD)(pBitmapInfo->bmiHeader.biSize));
  */
 
-         // Read and convert to big endian
-         bmpInfoHeader_biSize = swapInt(in.readInt());                 // DWORD
-         bmpInfoHeader_biWidth = swapInt(in.readInt());                // LONG
-         bmpInfoHeader_biHeight = swapInt(in.readInt());               // LONG
-         bmpInfoHeader_biPlanes = swapShort(in.readUnsignedShort());   // WORD
-         bmpInfoHeader_biBitCount = swapShort(in.readUnsignedShort()); // WORD
-         bmpInfoHeader_biCompression = swapInt(in.readInt());          // DWORD
-         bmpInfoHeader_biSizeImage = swapInt(in.readInt());            // DWORD
-         bmpInfoHeader_biXPelsPerMeter = swapInt(in.readInt());        // LONG
-         bmpInfoHeader_biYPelsPerMeter = swapInt(in.readInt());        // LONG
-         bmpInfoHeader_biClrUsed = swapInt(in.readInt());              // DWORD
-         bmpInfoHeader_biClrImportant = swapInt(in.readInt());         // DWORD
+         // Read, the buffer is already little endian
+         int iInfoHeaderStart = in.position();
+         image.biSize = in.getInt();                   // DWORD
+         image.biWidth = in.getInt();                  // LONG
+         image.biHeight = in.getInt();                 // LONG
+         image.biPlanes = in.getShort() & 0xFFFF;      // WORD
+         image.biBitCount = in.getShort() & 0xFFFF;    // WORD
+         image.biCompression = in.getInt();            // DWORD
+         image.biSizeImage = in.getInt();              // DWORD
+         image.biXPelsPerMeter = in.getInt();          // LONG
+         image.biYPelsPerMeter = in.getInt();          // LONG
+         image.biClrUsed = in.getInt();                // DWORD
+         image.biClrImportant = in.getInt();           // DWORD
 
 /*
  *  Since we use the height to crate arrays, it cannot have a negative a value. If the height field is
  *  less than zero, then make it positive and set the topDownDIB flag to TRUE so we know that the image is
  *  stored on disc upsidedown (which means it is actually rightside up).
  */
-         if (bmpInfoHeader_biHeight < 0)
+         image.topDownDIB = image.biHeight < 0;
+         if (image.topDownDIB)
          {
-            topDownDIB = true;
-            bmpInfoHeader_biHeight = -bmpInfoHeader_biHeight;
+            image.biHeight = -image.biHeight;
          }
 
 /*
@@ -441,7 +432,7 @@ public class DibDump
  * typedef RGBQUAD FAR* LPRGBQUAD;
  */
 
-         switch (bmpInfoHeader_biBitCount) // Determine the number of colors in the default color table
+         switch (image.biBitCount) // Determine the number of colors in the default color table
          {
             case 1:
                numberOfColors = 2;
@@ -471,14 +462,15 @@ public class DibDump
  *     If the bitmap is a packed bitmap (a bitmap in which the bitmap array immediately follows the BITMAPINFO header and is
  *     referenced by a single pointer), the biClrUsed member must be either zero or the actual size of the color table.
  */
-         if (bmpInfoHeader_biClrUsed > 0) numberOfColors = bmpInfoHeader_biClrUsed;
+         if (image.biClrUsed > 0) numberOfColors = image.biClrUsed;
 
+         in.position(iInfoHeaderStart + image.biSize);   // The color table starts right after the info header
          for (i = 0; i < numberOfColors; ++i)         // Read in the color table (or not if numberOfColors is zero)
          {
-            rgbQuad_rgbBlue = in.readUnsignedByte();  // lowest byte in the color
-            rgbQuad_rgbGreen = in.readUnsignedByte();
-            rgbQuad_rgbRed = in.readUnsignedByte();   // highest byte in the color
-            rgbQuad_rgbReserved = in.readUnsignedByte();
+            rgbQuad_rgbBlue = in.get() & 0xFF;        // lowest byte in the color
+            rgbQuad_rgbGreen = in.get() & 0xFF;
+            rgbQuad_rgbRed = in.get() & 0xFF;         // highest byte in the color
+            in.get();                                 // the reserved byte is not used
 
             // Build the color from the RGB values. Since we declared the rgbQuad values to be int, we can shift and then OR the
             // values to build up the color. Since we are reading one byte at a time, there are no "endian" issues.
@@ -505,264 +497,150 @@ public class DibDump
  *
  */
 
-         imageArray = new int[bmpInfoHeader_biHeight][bmpInfoHeader_biWidth]; // Create the array for the pels
+         image.imageArray = new int[image.biHeight][image.biWidth]; // Create the array for the pels
+
 /*
- * I use the same loop structure for each case for clarity so you can see the similarities and differences.
- * The outer loop is over the rows (in reverse), the inner loop over the columns.
+ * Every scan line is padded to a multiple of 4 bytes, so each row starts iBytesPerRow after the one before it. The pels
+ * start at bfOffBits, or right after the color table if the file header does not say where they are. The whole bitmap
+ * has to be in the file before any of it is decoded.
  */
-         switch (bmpInfoHeader_biBitCount)
+         iPelsPerRow = image.biWidth;
+         iBytesPerRow = ((iPelsPerRow * image.biBitCount + 31) / 32) * 4;
+         iPelStart = image.bfOffBits > 0 ? image.bfOffBits : in.position();
+         if ((long) iPelStart + (long) iBytesPerRow * image.biHeight > in.limit())
          {
-            case 1: // each bit is a color, so there are 8 pels per byte.  Works
-/*
- * Each byte read in is 8 columns, so we need to break them out. We also have to deal with the case
- * where the image width is not an integer multiple of 8, in which case we will
- * have bits from part of the remaining byte. Each color is 1 bit which is masked with 0x01.
- * The screen ordering of the pels is High-Bit to Low-Bit, so the most significant element is first in the array of pels.
- */
-               iBytesPerRow = bmpInfoHeader_biWidth / 8;
-               iTrailingBits = bmpInfoHeader_biWidth % 8;
-
-               iDeadBytes = iBytesPerRow;
-               if (iTrailingBits > 0) ++iDeadBytes;
-               iDeadBytes = (4 - iDeadBytes % 4) % 4;
-
-               for (int row = 0; row < bmpInfoHeader_biHeight; ++row) // read over the rows
-               {
-                  if (topDownDIB) i = row;
-                  else i = bmpInfoHeader_biHeight - 1 - row;
-
-                  for (j = 0; j < iBytesPerRow; ++j)
-                  {
-                     iByteVal = in.readUnsignedByte();
-
-                     for (k = 0; k < 8; ++k)                          // Get 8 pels from the one byte
-                     {
-                        iColumn = j * 8 + k;
-                        pel = colorPallet[(iByteVal >> (7 - k)) & 0x01];
-                        imageArray[i][iColumn] = pel;
-                     }
-                  }
-
-                  // pick up the trailing bits for images that are not mod 8 columns wide
-                  if (iTrailingBits > 0)
-                  {
-                     iByteVal = in.readUnsignedByte();
-
-                     for (k = 0; k < iTrailingBits; ++k)
-                     {
-                        iColumn = iBytesPerRow * 8 + k;
-                        pel = colorPallet[(iByteVal >> (7 - k)) & 0x01];
-                        imageArray[i][iColumn] = pel;
-                     }
-                  }
+            throw new EOFException("the bitmap needs " + iBytesPerRow * image.biHeight + " bytes after byte " +
+                  iPelStart + " but the file is only " + in.limit() + " bytes");
+         }
 
-                  for (j = 0; j < iDeadBytes; ++j)
-                     in.readUnsignedByte(); // Now read in the "dead bytes" to pad to a 4 byte boundary
-               }
-               break;
-            case 2:                         // 4 colors, Each byte is 4 pels (2 bits each),  Should work, not tested.
 /*
- * Each byte read in is 4 columns, so we need to break them out. We also have to deal with the case
- * where the image width is not an integer multiple of 4, in which case we will
- * have from 2 to 6 bits of the remaining byte. Each color is 2 bits which is masked with 0x03.
- * The screen ordering of the pels is High-Half-Nibble to Low-Half-Nibble, so the most significant element is first in the array of
- * pels.
+ * I use the same loop structure for each case for clarity so you can see the similarities and differences.
+ * The outer loop is over the rows as they are stored, the inner loop over the columns of one row, read straight out of
+ * the buffer.
  */
-               iBytesPerRow = bmpInfoHeader_biWidth / 4;
-               iTrailingBits = bmpInfoHeader_biWidth % 4;                      // 0, 1, 2 or 3
-
-               iDeadBytes = iBytesPerRow;
-               if (iTrailingBits > 0) ++iDeadBytes;
-               iDeadBytes = (4 - iDeadBytes % 4) % 4;
-
-               for (int row = 0; row < bmpInfoHeader_biHeight; ++row)          // read over the rows
-               {
-                  if (topDownDIB) i = row;
-                  else i = bmpInfoHeader_biHeight - 1 - row;
-
-                  for (j = 0; j < iBytesPerRow; ++j)
-                  {
-                     iByteVal = in.readUnsignedByte();
-
-                     for (k = 0; k < 4; ++k)                                   // Get 4 pels from one byte
-                     {
-                        iColumn = j * 4 + k;
-                        pel = colorPallet[(iByteVal >> ((3 - k) * 2)) & 0x03]; // shift 2 bits at a time and reverse order
-                        imageArray[i][iColumn] = pel;
-                     }
-                  }
-
-                  // pick up the trailing nibble for images that are not mod 2 columns wide
-                  if (iTrailingBits > 0)
-                  {
-                     iByteVal = in.readUnsignedByte();
-
-                     for (k = 0; k < iTrailingBits; ++k)
-                     {
-                        iColumn = iBytesPerRow * 4 + k;
-                        pel = colorPallet[(iByteVal >> ((3 - k) * 2)) & 0x03];
-                        imageArray[i][iColumn] = pel;
-                     }
-                  }
-                  for (j = 0; j < iDeadBytes; ++j)
-                     in.readUnsignedByte(); // Now read in the "dead bytes" to pad to a 4 byte boundary
-               }
-               break;
-            case 4:                         // 16 colors, Each byte is two pels. Works
+         switch (image.biBitCount)
+         {
+            case 1: // each bit is a color, so there are 8 pels per byte.  Works
+            case 2: // 4 colors, Each byte is 4 pels (2 bits each),  Should work, not tested.
+            case 4: // 16 colors, Each byte is two pels. Works
 /*
- * Each byte read in is 2 columns, so we need to break them out. We also have to deal with the case
- * where the image width is not an integer multiple of 2, in which case we will
- * have one nibble from part of the remaining byte. We then read in the dead bytes so that each
- * scan line is a multiple of 4 bytes. Each color is a nibble (4 bits) which is masked with 0x0F.
- * The screen ordering of the pels is High-Nibble Low-Nibble, so the most significant element is first in the array of pels.
+ * Each byte holds 8 / biBitCount columns, so we need to break them out. The screen ordering of the pels is high bits to
+ * low bits, so the most significant element is first in the array of pels. For images whose width does not fill the
+ * last byte, only its high bits are used.
  */
-               iPelsPerRow = bmpInfoHeader_biWidth;
-               iBytesPerRow = iPelsPerRow / 2;
-               iTrailingBits = iPelsPerRow % 2;                                // Will either be 0 or 1
-
-               iDeadBytes = iBytesPerRow;
-               if (iTrailingBits > 0) ++iDeadBytes;
-               iDeadBytes = (4 - iDeadBytes % 4) % 4;
-
-               for (int row = 0; row < bmpInfoHeader_biHeight; ++row)          // read over the rows
+               int iBits = image.biBitCount;
+               int iMask = (1 << iBits) - 1;
+               for (int row = 0; row < image.biHeight; ++row) // read over the rows
                {
-                  if (topDownDIB) i = row;
-                  else i = bmpInfoHeader_biHeight - 1 - row;
+                  if (image.topDownDIB) i = row;
+                  else i = image.biHeight - 1 - row;
 
-                  for (j = 0; j < iBytesPerRow; ++j)
+                  int[] pels = image.imageArray[i];
+                  iRowStart = iPelStart + row * iBytesPerRow;
+                  for (j = 0; j < iPelsPerRow; ++j)
                   {
-                     iByteVal = in.readUnsignedByte();
-
-                     for (k = 0; k < 2; ++k)                                   // Two pels per byte
-                     {
-                        // 1 - k is needed to have High, Low nibbling order for the image.
-                        iColumn = j * 2 + k;
-                        pel = colorPallet[(iByteVal >> ((1 - k) * 4)) & 0x0F]; // shift 4 bits at a time
-                        imageArray[i][iColumn] = pel;
-                     }
+                     int iBit = j * iBits;
+                     int iByteVal = bytes[iRowStart + (iBit >> 3)] & 0xFF;
+                     pels[j] = colorPallet[(iByteVal >> (8 - iBits - (iBit & 7))) & iMask];
                   }
-
-                  // pick up the trailing nibble for images that are not mod 2 columns wide
-                  if (iTrailingBits > 0)
-                  {
-                     iByteVal = in.readUnsignedByte();
-
-                     iColumn = iBytesPerRow * 2;
-                     pel = colorPallet[(iByteVal >> 4) & 0x0F];       // The High nibble is the last remaining pel
-                     imageArray[i][iColumn] = pel;
-                  }
-                  for (j = 0; j < iDeadBytes; ++j)
-                     in.readUnsignedByte();                           // Now read in the "dead bytes" to pad to a 4 byte boundary
-               } // for (i = bmpInfoHeader_biHeight - 1; i >= 0; --i)
+               }
                break;
             case 8:                                                   // 1 byte, 1 pel, Works
 /*
- * Each byte read in is 1 column. We then read in the dead bytes so that each scan line is a multiple of 4 bytes.
+ * Each byte read in is 1 column, an index into the color table.
  */
-               iPelsPerRow = bmpInfoHeader_biWidth;
-               iDeadBytes = (4 - iPelsPerRow % 4) % 4;
-               for (int row = 0; row < bmpInfoHeader_biHeight; ++row) // read over the rows
+               for (int row = 0; row < image.biHeight; ++row) // read over the rows
                {
-                  if (topDownDIB) i = row;
-                  else i = bmpInfoHeader_biHeight - 1 - row;
+                  if (image.topDownDIB) i = row;
+                  else i = image.biHeight - 1 - row;
 
+                  int[] pels = image.imageArray[i];
+                  iRowStart = iPelStart + row * iBytesPerRow;
                   for (j = 0; j < iPelsPerRow; ++j)                   // j is now just the column counter
                   {
-                     iByteVal = in.readUnsignedByte();
-                     pel = colorPallet[iByteVal];
-                     imageArray[i][j] = pel;
+                     pels[j] = colorPallet[bytes[iRowStart + j] & 0xFF];
                   }
-
-                  for (j = 0; j < iDeadBytes; ++j)
-                     in.readUnsignedByte();                           // Now read in the "dead bytes" to pad to a 4 byte boundary
                }
                break;
             case 16: // Not likely to work (format is not internally consistent), not tested.
 /*
  * Each two bytes read in is 1 column. Each color is 5 bits in the 2 byte word value, so we shift 5 bits and then mask them
- * off with 0x1F which is %11111 in binary. We then read in the dead bytes so that each scan line is a multiple of 4 bytes.
+ * off with 0x1F which is %11111 in binary.
  */
-               iPelsPerRow = bmpInfoHeader_biWidth;
-               iDeadBytes = (4 - iPelsPerRow % 4) % 4;
-               for (int row = 0; row < bmpInfoHeader_biHeight; ++row)   // read over the rows
+               for (int row = 0; row < image.biHeight; ++row)   // read over the rows
                {
-                  if (topDownDIB) i = row;
-                  else i = bmpInfoHeader_biHeight - 1 - row;
+                  if (image.topDownDIB) i = row;
+                  else i = image.biHeight - 1 - row;
 
+                  int[] pels = image.imageArray[i];
+                  iRowStart = iPelStart + row * iBytesPerRow;
                   for (j = 0; j < iPelsPerRow; ++j)                     // j is now just the column counter
                   {
-                     pel = swapShort(in.readUnsignedShort()); // Need to deal with little endian values
+                     pel = in.getShort(iRowStart + j * 2) & 0xFFFF;      // The buffer deals with the little endian value
                      rgbQuad_rgbBlue = pel & 0x1F;
                      rgbQuad_rgbGreen = (pel >> 5) & 0x1F;
                      rgbQuad_rgbRed = (pel >> 10) & 0x1F;
-                     pel = (rgbQuad_rgbRed << 16) | (rgbQuad_rgbGreen << 8) | rgbQuad_rgbBlue;
-                     imageArray[i][j] = pel;
+                     pels[j] = (rgbQuad_rgbRed << 16) | (rgbQuad_rgbGreen << 8) | rgbQuad_rgbBlue;
                   }
-
-                  for (j = 0; j < iDeadBytes; ++j)
-                     in.readUnsignedByte();                             // Now read in the "dead bytes" to pad to a 4 byte boundary
-               } // for (i = bmpInfoHeader_biHeight - 1; i >= 0; --i)
+               }
                break;
             case 24:                                                    // Works
 /*
- * Each three bytes read in is 1 column. Each scan line is padded to by a multiple of 4 bytes. The disk image has only 3 however.
+ * Each three bytes read in is 1 column, stored as blue, green, red.
  */
-               iPelsPerRow = bmpInfoHeader_biWidth;
-               iDeadBytes = (4 - (iPelsPerRow * 3) % 4) % 4;
-
-               for (int row = 0; row < bmpInfoHeader_biHeight; ++row) // read over the rows
+               for (int row = 0; row < image.biHeight; ++row) // read over the rows
                {
-                  if (topDownDIB) i = row;
-                  else i = bmpInfoHeader_biHeight - 1 - row;
+                  if (image.topDownDIB) i = row;
+                  else i = image.biHeight - 1 - row;
 
-                  for (j = 0; j < iPelsPerRow; ++j)                   // j is now just the column counter
+                  int[] pels = image.imageArray[i];
+                  int iByte = iPelStart + row * iBytesPerRow;
+                  for (j = 0; j < iPelsPerRow; ++j, iByte += 3)       // j is now just the column counter
                   {
-                     rgbQuad_rgbBlue = in.readUnsignedByte();
-                     rgbQuad_rgbGreen = in.readUnsignedByte();
-                     rgbQuad_rgbRed = in.readUnsignedByte();
-                     pel = (rgbQuad_rgbRed << 16) | (rgbQuad_rgbGreen << 8) | rgbQuad_rgbBlue;
-                     imageArray[i][j] = pel;
+                     rgbQuad_rgbBlue = bytes[iByte] & 0xFF;
+                     rgbQuad_rgbGreen = bytes[iByte + 1] & 0xFF;
+                     rgbQuad_rgbRed = bytes[iByte + 2] & 0xFF;
+                     pels[j] = (rgbQuad_rgbRed << 16) | (rgbQuad_rgbGreen << 8) | rgbQuad_rgbBlue;
                   }
-                  for (j = 0; j < iDeadBytes; ++j)
-                     in.readUnsignedByte();                           // Now read in the "dead bytes" to pad to a 4 byte boundary
                }
                break;
             case 32:                                                  // Works
 /*
- * Each four bytes read in is 1 column. The number of bytes per line will always be a multiple of 4, so there are no dead bytes.
+ * Each four bytes read in is 1 column, stored as blue, green, red and the reserved byte, which is exactly one little
+ * endian int.
  */
-               iPelsPerRow = bmpInfoHeader_biWidth;
-               for (int row = 0; row < bmpInfoHeader_biHeight; ++row) // read over the rows
+               for (int row = 0; row < image.biHeight; ++row) // read over the rows
                {
-                  if (topDownDIB) i = row;
-                  else i = bmpInfoHeader_biHeight - 1 - row;
+                  if (image.topDownDIB) i = row;
+                  else i = image.biHeight - 1 - row;
 
-                  for (j = 0; j < iPelsPerRow; ++j)                   // j is now just the column counter
-                  {
-                     rgbQuad_rgbBlue = in.readUnsignedByte();
-                     rgbQuad_rgbGreen = in.readUnsignedByte();
-                     rgbQuad_rgbRed = in.readUnsignedByte();
-                     rgbQuad_rgbReserved = in.readUnsignedByte();
-                     pel = (rgbQuad_rgbReserved << 24) | (rgbQuad_rgbRed << 16) | (rgbQuad_rgbGreen << 8) | rgbQuad_rgbBlue;
-                     imageArray[i][j] = pel;
-                  }
+                  in.position(iPelStart + row * iBytesPerRow);
+                  in.asIntBuffer().get(image.imageArray[i]);
                }
                break;
             default: // Oops
                System.out.printf("This error should not occur - 1!\n");
 
-         } // switch (bmpInfoHeader_biBitCount)
-
-         in.close();
-         fstream.close();
+         } // switch (image.biBitCount)
       } // try
-      catch (Exception e)
+      catch (RuntimeException e)   // a damaged header can send the decoding outside of the buffer or the color table
       {
-         System.err.println("File input error" + e);
+         throw new IOException("Bad bitmap file " + inFileName + ": " + e, e);
       }
 
-      return imageArray;
-   } // public double[] bmpToArray(String inFileName)
+      return image;
+   } // public static DibImage readBmp(String inFileName)
+
+   /**
+    * Reads an image from a bmp file and makes it into a matrix containing all the pels of that image.
+    *
+    * @param inFileName the input image to read from
+    * @return the array containing the pels of the image
+    */
+   public static int[][] bmpToArray(String inFileName) throws IOException
+   {
+      return readBmp(inFileName).imageArray;
+   }
 
    public static int[][] colorImageToGrayscale(int[][] imageArray)
    {
@@ -778,72 +656,147 @@ public class DibDump
    }
 
    /**
-    * Takes in an matrix containing all the pels of the image and outputs those to the given bmp file.
+    * Takes in an matrix containing all the pels of the image and outputs those to the given bmp file as a 32-bit true
+    * color bitmap, with a header that matches the size of the matrix.
     *
     * @param imageArray  the input array containing the pels of the image
     * @param outFileName the filename of the bmp file to output to
     */
    public static void imageArrayToBMP(int[][] imageArray, String outFileName)
+   {
+      imageArrayToBMP(imageArray, outFileName, 32);
+   }
+
+   /**
+    * Takes in an matrix containing all the pels of the image and outputs those to the given bmp file with the given
+    * number of bits per pel, with a header that matches the size of the matrix. See writeBmp for the supported values.
+    *
+    * @param imageArray  the input array containing the pels of the image
+    * @param outFileName the filename of the bmp file to output to
+    * @param bitCount    the number of bits per pel in the bmp file
+    */
+   public static void imageArrayToBMP(int[][] imageArray, String outFileName, int bitCount)
    {
       try
       {
-         int iDeadBytes = (4 - (bmpInfoHeader_biWidth * 3) % 4) % 4;
-
-         bmpInfoHeader_biSizeImage = (bmpInfoHeader_biWidth * 3 + iDeadBytes) * bmpInfoHeader_biHeight;
-         bmpFileHeader_bfOffBits = 54;        // 54 byte offset for 24 bit images (just open one with this app to get this value)
-         bmpFileHeader_bfSize = bmpInfoHeader_biSizeImage + bmpFileHeader_bfOffBits;
-         bmpInfoHeader_biBitCount = 32;       // 32 bit color image
-         bmpInfoHeader_biCompression = 0;     // BI_RGB (which is a value of zero)
-         bmpInfoHeader_biClrUsed = 0;         // Zero for true color
-         bmpInfoHeader_biClrImportant = 0;    // Zero for true color
-
-         FileOutputStream fstream = new FileOutputStream(outFileName);
-         DataOutputStream out = new DataOutputStream(fstream);
-
-         // BITMAPFILEHEADER
-         out.writeShort(swapShort(bmpFileHeader_bfType));      // WORD
-         out.writeInt(swapInt(bmpFileHeader_bfSize));          // DWORD
-         out.writeShort(swapShort(bmpFileHeader_bfReserved1)); // WORD
-         out.writeShort(swapShort(bmpFileHeader_bfReserved2)); // WORD
-         out.writeInt(swapInt(bmpFileHeader_bfOffBits));       // DWORD
-
-         // BITMAPINFOHEADER
-         out.writeInt(swapInt(bmpInfoHeader_biSize));          // DWORD
-         out.writeInt(swapInt(bmpInfoHeader_biWidth));         // LONG
-         out.writeInt(swapInt(bmpInfoHeader_biHeight));        // LONG
-         out.writeShort(swapShort(bmpInfoHeader_biPlanes));    // WORD
-         out.writeShort(swapShort(bmpInfoHeader_biBitCount));  // WORD
-         out.writeInt(swapInt(bmpInfoHeader_biCompression));   // DWORD
-         out.writeInt(swapInt(bmpInfoHeader_biSizeImage));     // DWORD
-         out.writeInt(swapInt(bmpInfoHeader_biXPelsPerMeter)); // LONG
-         out.writeInt(swapInt(bmpInfoHeader_biYPelsPerMeter)); // LONG
-         out.writeInt(swapInt(bmpInfoHeader_biClrUsed));       // DWORD
-         out.writeInt(swapInt(bmpInfoHeader_biClrImportant));  // DWORD
-
-         // there is no color table for this true color image, so write out the pels
-         int rgbQuad_rgbReserved = 0;
-
-         for (int i = bmpInfoHeader_biHeight - 1; i >= 0; --i) // write over the rows (in the usual inverted format)
-         {
-            for (int j = 0; j < bmpInfoHeader_biWidth; ++j)    // and the columns
-            {
-               int pel = imageArray[i][j];
-               int rgbQuad_rgbBlue = pel & 0x00FF;
-               int rgbQuad_rgbGreen = (pel >> 8) & 0x00FF;
-               int rgbQuad_rgbRed = (pel >> 16) & 0x00FF;
-               out.writeByte(rgbQuad_rgbBlue);                 // lowest byte in the color
-               out.writeByte(rgbQuad_rgbGreen);
-               out.writeByte(rgbQuad_rgbRed);                  // highest byte in the color
-               out.writeByte(rgbQuad_rgbReserved);
-            }
-         } // for (i = bmpInfoHeader_biHeight - 1; i >= 0; --i)
-
-         out.close();
-         fstream.close();
+         writeBmp(new DibImage(imageArray), outFileName, bitCount);
       }
       catch (Exception e)
       {
          System.err.println("File output error" + e);
       }
    }
-} // public class DibDump
\ No newline at end of file
+
+   /**
+    * Writes an image out to the given bmp file as a 32-bit true color bitmap, which keeps the colors of an image of any
+    * number of bits per pel. The smaller 24-bit and 8-bit grayscale files have to be asked for with the bit count.
+    *
+    * @param image       the header and pels of the image
+    * @param outFileName the filename of the bmp file to output to
+    */
+   public static void writeBmp(DibImage image, String outFileName) throws IOException
+   {
+      writeBmp(image, outFileName, 32);
+   }
+
+   /**
+    * Writes an image out to the given bmp file. The width and height come from the pels of the image, and the rest of
+    * the header from the image where it applies, so images of any size can be written. The whole file is put together
+    * in one buffer, a scan line at a time, and written with a single channel write. The image itself is not changed, so
+    * any number of threads can write images at once.
+    *
+    * The number of bits per pel can be:
+    * 32  true color, blue, green, red and a zero reserved byte for each pel
+    * 24  true color, blue, green and red for each pel, 3/4 the size of 32-bit
+    * 8   grayscale, with a color table of 256 grays and the luminance of each pel as its index, 1/4 the size of 32-bit
+    *
+    * @param image       the header and pels of the image
+    * @param outFileName the filename of the bmp file to output to
+    * @param bitCount    the number of bits per pel in the bmp file
+    */
+   public static void writeBmp(DibImage image, String outFileName, int bitCount) throws IOException
+   {
+      if (bitCount != 8 && bitCount != 24 && bitCount != 32)
+      {
+         throw new IllegalArgumentException("Cannot write " + bitCount + " bit bitmaps, only 8, 24 or 32");
+      }
+
+      int[][] imageArray = image.imageArray;
+      int iHeight = imageArray.length;
+      int iWidth = iHeight == 0 ? 0 : imageArray[0].length;
+
+      int iBytesPerRow = ((iWidth * bitCount + 31) / 32) * 4;     // each scan line is padded to a 4 byte boundary
+      int iColors = bitCount == 8 ? 256 : 0;                      // only the grayscale image has a color table
+      int iSizeImage = iBytesPerRow * iHeight;
+      int iOffBits = 54 + iColors * 4;                            // both headers, then the color table
+      int iFileSize = iOffBits + iSizeImage;
+
+      ByteBuffer out = ByteBuffer.allocate(iFileSize).order(ByteOrder.LITTLE_ENDIAN);
+
+      // BITMAPFILEHEADER
+      out.putShort((short) image.bfType);        // WORD
+      out.putInt(iFileSize);                     // DWORD
+      out.putShort((short) image.bfReserved1);   // WORD
+      out.putShort((short) image.bfReserved2);   // WORD
+      out.putInt(iOffBits);                      // DWORD
+
+      // BITMAPINFOHEADER
+      out.putInt(40);                            // DWORD, only the BITMAPINFOHEADER is written
+      out.putInt(iWidth);                        // LONG
+      out.putInt(iHeight);                       // LONG
+      out.putShort((short) image.biPlanes);      // WORD
+      out.putShort((short) bitCount);            // WORD
+      out.putInt(0);                             // DWORD, BI_RGB (which is a value of zero)
+      out.putInt(iSizeImage);                    // DWORD
+      out.putInt(image.biXPelsPerMeter);         // LONG
+      out.putInt(image.biYPelsPerMeter);         // LONG
+      out.putInt(iColors);                       // DWORD, the colors used
+      out.putInt(0);                             // DWORD, zero means all colors are important
+
+      for (int i = 0; i < iColors; ++i)          // the color table, gray i at index i
+      {
+         out.putInt(rgbToPel(i, i, i));
+      }
+
+      // Write over the rows in the usual inverted format. The buffer starts zeroed, so the dead bytes are already there.
+      byte[] bytes = out.array();
+      for (int i = iHeight - 1; i >= 0; --i)
+      {
+         int[] pels = imageArray[i];
+         int iByte = iOffBits + (iHeight - 1 - i) * iBytesPerRow;
+         switch (bitCount)
+         {
+            case 8:
+               for (int j = 0; j < iWidth; ++j)
+               {
+                  bytes[iByte + j] = (byte) colorToGrayscale(pels[j]);   // the blue byte of the gray is its luminance
+               }
+               break;
+            case 24:
+               for (int j = 0; j < iWidth; ++j, iByte += 3)
+               {
+                  int pel = pels[j];
+                  bytes[iByte] = (byte) pel;                 // lowest byte in the color
+                  bytes[iByte + 1] = (byte) (pel >> 8);
+                  bytes[iByte + 2] = (byte) (pel >> 16);     // highest byte in the color
+               }
+               break;
+            default:
+               for (int j = 0; j < iWidth; ++j)
+               {
+                  out.putInt(iByte + j * 4, pels[j] & 0x00FFFFFF);   // the reserved byte is always zero
+               }
+         } // switch (bitCount)
+      } // for (int i = iHeight - 1; i >= 0; --i)
+
+      out.clear();
+      try (FileChannel channel = FileChannel.open(Paths.get(outFileName), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         while (out.hasRemaining())
+         {
+            channel.write(out);
+         }
+      }
+   } // public static void writeBmp(DibImage image, String outFileName, int bitCount)
+} // public class DibDump
@@ -0,0 +1,60 @@
+/**
+ * Dib Image
+ *
+ * A member-variable-only class holding one bitmap: the fields of its BITMAPFILEHEADER and BITMAPINFOHEADER C
+ * structures, whether it was stored as a top down DIB, and its true color pels. DibDump.readBmp returns a new one for
+ * every file it reads and DibDump.writeBmp writes one out, so each image carries its own header and several images can
+ * be read and written at the same time. See DibDump for what each header field means.
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+public final class DibImage
+{
+   // BITMAPFILEHEADER
+   public int bfType = 0x4D42;         // WORD, the signature BM
+   public int bfSize;                  // DWORD
+   public int bfReserved1;             // WORD
+   public int bfReserved2;             // WORD
+   public int bfOffBits;               // DWORD
+
+   // BITMAPINFOHEADER
+   public int biSize = 40;             // DWORD, the size of a BITMAPINFOHEADER
+   public int biWidth;                 // LONG
+   public int biHeight;                // LONG, always positive here, see topDownDIB
+   public int biPlanes = 1;            // WORD
+   public int biBitCount;              // WORD
+   public int biCompression;           // DWORD
+   public int biSizeImage;             // DWORD
+   public int biXPelsPerMeter = 2835;  // LONG, 72 dots per inch
+   public int biYPelsPerMeter = 2835;  // LONG
+   public int biClrUsed;               // DWORD
+   public int biClrImportant;          // DWORD
+
+   // Whether the file stored the image as a top down DIB, with a negative biHeight
+   public boolean topDownDIB;
+
+   // The true color pels, indexed as imageArray[row][column] with row 0 at the top
+   public int[][] imageArray;
+
+   /**
+    * Creates an empty image, for DibDump.readBmp to fill in.
+    */
+   DibImage()
+   {
+   }
+
+   /**
+    * Creates a 32-bit true color image from a matrix of pels, with a header that matches the size of the matrix.
+    *
+    * @param imageArray the matrix containing all the pels of the image
+    */
+   public DibImage(int[][] imageArray)
+   {
+      this.imageArray = imageArray;
+      biHeight = imageArray.length;
+      biWidth = imageArray.length == 0 ? 0 : imageArray[0].length;
+      biBitCount = 32;
+   }
+
+} // public final class DibImage
@@ -0,0 +1,1333 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Float Neural Net
+ *
+ * A fully connected neural network that works the same way as a NeuralNet, but stores its weights, activations and
+ * scratch arrays as 32-bit floats instead of doubles. This halves the memory the network takes, which matters most for
+ * the weights of a large input layer and the gradients kept for them during mini-batch training, and it halves the
+ * bytes read by propagate and backprop, whose loops are limited by how fast the weights can be read from memory.
+ *
+ * The weights use the same flat row-major layout as in NeuralNet, and the network is trained by the same loop in
+ * AbstractNeuralNet with the same batches, threads and ways of measuring the error. The training data and the values
+ * passed to and returned from propagate(double[]) stay as doubles and are converted at the edges of the network.
+ *
+ * The dot products, the sums of omega and the summed gradients of a mini-batch can be added up either as floats or as
+ * doubles, chosen when the network is created. Adding them up as doubles costs little time, since each product of
+ * two floats is exact as a double, and keeps the rounding error of a long sum from growing with the size of the layer;
+ * the result is rounded to a float only when it is stored. The errors used to adapt the learning rate are always added
+ * up as doubles. Sums added up as floats go through Kernels, and so use vector instructions when they are available;
+ * sums added up as doubles stay in scalar loops.
+ *
+ * The weights can be stored in the text format shared with NeuralNet, or in a binary format of floats that is read
+ * back without any conversion. See readBinaryWeights for that format.
+ *
+ * Methods in this class:
+ * void      generateWeights()
+ * float[]   toFloats(double[] w)
+ * boolean   isBinaryWeightsFile(String filename)
+ * void      readTextWeights(String filename)
+ * void      readBinaryWeights(String filename)
+ * void      storeWeights(String filename)
+ * void      storeTextWeights(String filename)
+ * void      storeBinaryWeights(String filename)
+ * float[][] getWeights()
+ * double[][] copyWeights()
+ * Precision getAccumulation()
+ * double[]  propagate(double[] input)
+ * float[]   propagate(float[] input)
+ * float[]   propagateLayers(float[] input, SparseInput sparse, float[][] activations, TrainingMetrics times)
+ * float     dot(float[] w, int row, float[] x, int size, boolean doubleSums)
+ * void      propagateBatch(float[][] weights, int[] sizeOfLayers, Activation[] functions, float[] inputs,
+ *                          int inputOffset, int count, float[][] batchActivations, double[] sums, float[] outputs,
+ *                          int outputOffset)
+ * void      propagateLayerBatch(float[] w, float[] prev, int prevOffset, int prevSize, float[] next, int nextOffset,
+ *                               int nextSize, int count, double[] sums, Activation function)
+ * float[][] createBatchActivations(int[] sizeOfLayers)
+ * FloatWorkspace getWorkspace()
+ * FloatWorkspace createWorkspace()
+ * Checkpoint createCheckpoint(int nextEpoch, int updates, double learningRate, double minError)
+ * void      restoreWeights(Checkpoint checkpoint)
+ * void      clearOptimizerState()
+ * void      zeroWeights(int layer, int[] indices)
+ * void      forwardPass(double[] input, FloatWorkspace ws)
+ * double    calculateOutputPsi(double[] expected, FloatWorkspace ws)
+ * double    backPropagate(double[] input, double[] expected, double learningRate)
+ * double    accumulateGradient(double[] input, double[] expected, AbstractWorkspace worker)
+ * void      createOptimizerState()
+ * void      updateWeights(int layer, int from, int to, int shards, double learningRate, int batchCount,
+ *                         double firstCorrection, double secondCorrection)
+ * void      updateWeights(float[] w, double[][] gradients, int layer, int from, int to, double learningRate,
+ *                         int batchCount, double firstCorrection, double secondCorrection)
+ * void      updateWeights(float[] w, float[][] gradients, int layer, int from, int to, double learningRate,
+ *                         int batchCount, double firstCorrection, double secondCorrection)
+ * double    calculateError(double[][][] trainingData)
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+public class FloatNeuralNet extends AbstractNeuralNet
+{
+   static final int BINARY_MAGIC = 0x4657_4E4E;       // "NNWF" read as a little-endian int, starts every float weights file
+   static final int BINARY_VERSION = 1;               // version of the binary float weights format that is written
+
+   private final boolean doubleSums;      // whether sums are added up as doubles instead of floats
+
+   private float[][] weights;             // flat row-major weights for each connectivity layer
+   private float[][][] optimizerState;    // the state arrays of the optimizer for each connectivity layer, or null
+   private FloatWorkspace workspace;      // activations, omega, psi and gradients of the training thread
+
+   /**
+    * Constructor that creates a neural network with the size of each activation layer given, with random weights
+    * between Main.minWeight and Main.maxWeight.
+    *
+    * @param sizeOfLayers the number of processing units in each activation layer
+    * @param accumulation the type that sums are added up in
+    */
+   public FloatNeuralNet(int[] sizeOfLayers, Precision accumulation)
+   {
+      this.sizeOfLayers = sizeOfLayers;
+      numOfLayers = sizeOfLayers.length - 1;
+      doubleSums = accumulation == Precision.DOUBLE;
+
+      generateWeights();
+      workspace = new FloatWorkspace(sizeOfLayers);
+      setActivations(Activation.SIGMOID);
+   }
+
+   /**
+    * Constructor that creates a neural network with the weights of a NeuralNet, each rounded to the nearest float.
+    *
+    * @param network      the network to copy the weights from
+    * @param accumulation the type that sums are added up in
+    */
+   public FloatNeuralNet(NeuralNet network, Precision accumulation)
+   {
+      sizeOfLayers = network.getSizeOfLayers().clone();
+      numOfLayers = sizeOfLayers.length - 1;
+      doubleSums = accumulation == Precision.DOUBLE;
+
+      double[][] networkWeights = network.getWeights();
+      weights = new float[numOfLayers][];
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         weights[n] = toFloats(networkWeights[n]);
+      }
+
+      workspace = new FloatWorkspace(sizeOfLayers);
+      setActivations(Activation.SIGMOID);
+   } // public FloatNeuralNet(NeuralNet network, Precision accumulation)
+
+   /**
+    * Constructor that creates a neural network with the weights stored in a file, in any format that NeuralNet(String)
+    * reads. A binary file of floats is read directly. The weights of the other formats are rounded to the nearest
+    * float as they are read, so the weights are never all held as doubles: a binary file of doubles is rounded
+    * straight from its mapped layers, a text file is parsed straight into floats, and each layer of a sparse weights
+    * file is expanded straight into floats.
+    *
+    * @param filename     the name of the file that the weights are stored in
+    * @param accumulation the type that sums are added up in
+    */
+   public FloatNeuralNet(String filename, Precision accumulation) throws IOException
+   {
+      doubleSums = accumulation == Precision.DOUBLE;
+
+      if (isBinaryWeightsFile(filename) || NeuralNet.isBinaryWeightsFile(filename))
+      {
+         readBinaryWeights(filename);
+      }
+      else if (SparseWeights.isSparseWeightsFile(filename))
+      {
+         SparseWeights sparse = SparseWeights.read(filename);
+         sizeOfLayers = sparse.sizeOfLayers;
+         numOfLayers = sizeOfLayers.length - 1;
+         weights = new float[numOfLayers][];
+         for (int n = 0; n < numOfLayers; n++)
+         {
+            weights[n] = sparse.sparse[n] != null ? sparse.sparse[n].toDenseFloats() : toFloats(sparse.dense[n]);
+         }
+      }
+      else
+      {
+         readTextWeights(filename);
+      }
+
+      workspace = new FloatWorkspace(sizeOfLayers);
+      setActivations(Activation.SIGMOID);
+   } // public FloatNeuralNet(String filename, Precision accumulation)
+
+   /**
+    * Given the size of each layer and the number of connectivity layers, generates random weights that connect all
+    * nodes in each adjacent layer.
+    */
+   public void generateWeights()
+   {
+      weights = new float[numOfLayers][];
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         weights[n] = new float[sizeOfLayers[n] * sizeOfLayers[n + 1]];
+
+         // Generates random numbers for each weight
+         for (int k = 0; k < weights[n].length; k++)
+         {
+            weights[n][k] = (float) (Math.random() * (Main.maxWeight - Main.minWeight) + Main.minWeight);
+         }
+      }
+   }
+
+   /**
+    * Rounds each of the given weights to the nearest float.
+    *
+    * @param w the weights to round
+    * @return a new array of the rounded weights
+    */
+   private static float[] toFloats(double[] w)
+   {
+      float[] rounded = new float[w.length];
+      for (int k = 0; k < w.length; k++)
+      {
+         rounded[k] = (float) w[k];
+      }
+      return rounded;
+   }
+
+   /**
+    * Checks if a weights file is in the binary float format by reading the magic number at its start.
+    *
+    * @param filename the name of the weights file
+    * @return true if the file starts with the binary float magic number, false otherwise
+    */
+   static boolean isBinaryWeightsFile(String filename) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+      {
+         ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+         return NeuralNet.readFully(channel, magic, 0) && magic.getInt() == BINARY_MAGIC;
+      }
+   }
+
+   /**
+    * Reads the weights from a text file in the format described in NeuralNet.readTextWeights, rounding each one to the
+    * nearest float as it is parsed. Like NeuralNet, a large file is parsed by several threads.
+    *
+    * @param filename the name of the file that the weights are stored in
+    */
+   private void readTextWeights(String filename) throws IOException
+   {
+      NumberReader reader = new NumberReader(filename);
+      sizeOfLayers = NeuralNet.readTextLayerSizes(reader);
+      numOfLayers = sizeOfLayers.length - 1;
+
+      weights = new float[numOfLayers][];
+      long numOfWeights = 0;
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         weights[n] = new float[sizeOfLayers[n] * sizeOfLayers[n + 1]];
+         numOfWeights += weights[n].length;
+      }
+
+      // Parse a large file with several threads first, keeping the values in the order of the file
+      float[] values = null;
+      int parsingThreads = NumberReader.parsingThreads(filename);
+      if (parsingThreads > 1 && numOfWeights <= Integer.MAX_VALUE)
+      {
+         reader.skipLine();
+         values = NumberReader.parseParallelFloats(filename, reader.position(), (int) numOfWeights, reader.isStrict(),
+               parsingThreads);
+      }
+
+      // Read weights matrix, transposing each row of the file into a column of the flat layout
+      int index = 0;
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         for (int i = 0; i < sizeOfLayers[n]; i++)                     // Each row of the file is a previous node
+         {
+            for (int j = 0; j < sizeOfLayers[n + 1]; j++)
+            {
+               weights[n][j * sizeOfLayers[n] + i] = values == null ? (float) reader.nextDouble() : values[index++];
+            }
+         }
+      }
+      reader.close();
+   } // private void readTextWeights(String filename)
+
+   /**
+    * Reads the weights from a binary file of floats. It is laid out in the same way as the binary weights files of
+    * NeuralNet, described in NeuralNet.readBinaryWeights, except that it starts with the bytes "NNWF" and the weights
+    * are stored as floats:
+    *
+    * int      magic number, the bytes "NNWF"
+    * int      version of the format, currently 1
+    * int      number of activation layers
+    * int[]    size of each activation layer
+    * padding  zero bytes up to the next multiple of 8 bytes
+    * float[]  the weights of each connectivity layer in flat row-major order
+    *
+    * A binary file of doubles stored by a NeuralNet is read in the same way, each weight being rounded to the nearest
+    * float straight from the mapped layer.
+    *
+    * @param filename the name of the file that the weights are stored in
+    */
+   private void readBinaryWeights(String filename) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+      {
+         long fileSize = channel.size();
+
+         // Read the header
+         ByteBuffer header = ByteBuffer.allocate(3 * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+         if (!NeuralNet.readFully(channel, header, 0))
+         {
+            throw new IOException("Binary weights file " + filename + " is too short for its header");
+         }
+         boolean doubles = header.getInt() == NeuralNet.BINARY_MAGIC;    // magic number, already checked
+         int version = header.getInt();
+         if (version != (doubles ? NeuralNet.BINARY_VERSION : BINARY_VERSION))
+         {
+            throw new IOException("Unsupported binary " + (doubles ? "" : "float ") + "weights version " + version +
+                  " in " + filename);
+         }
+         int valueBytes = doubles ? Double.BYTES : Float.BYTES;
+
+         int numOfActivationLayers = header.getInt();
+         if (numOfActivationLayers < 2 || numOfActivationLayers > (fileSize - header.capacity()) / Integer.BYTES)
+         {
+            throw new IOException("Binary weights file " + filename + " has a bad layer count " + numOfActivationLayers);
+         }
+
+         ByteBuffer sizes = ByteBuffer.allocate(numOfActivationLayers * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+         NeuralNet.readFully(channel, sizes, header.capacity());
+
+         numOfLayers = numOfActivationLayers - 1;
+         sizeOfLayers = new int[numOfActivationLayers];
+         for (int n = 0; n < numOfActivationLayers; n++)
+         {
+            sizeOfLayers[n] = sizes.getInt();
+            if (sizeOfLayers[n] < 1)
+            {
+               throw new IOException("Binary weights file " + filename + " has a bad layer size " + sizeOfLayers[n]);
+            }
+         }
+
+         // Check that the file holds exactly the weights the header describes
+         long offset = NeuralNet.binaryHeaderSize(numOfActivationLayers);
+         long expectedSize = offset;
+         for (int n = 0; n < numOfLayers; n++)
+         {
+            expectedSize += (long) sizeOfLayers[n] * sizeOfLayers[n + 1] * valueBytes;
+         }
+         if (fileSize != expectedSize)
+         {
+            throw new IOException("Binary weights file " + filename + " is " + fileSize + " bytes, expected " +
+                  expectedSize);
+         }
+
+         // Map each layer and copy its weights in bulk, or round them one at a time from doubles
+         weights = new float[numOfLayers][];
+         for (int n = 0; n < numOfLayers; n++)
+         {
+            weights[n] = new float[sizeOfLayers[n] * sizeOfLayers[n + 1]];
+            long layerBytes = (long) weights[n].length * valueBytes;
+
+            MappedByteBuffer layer = channel.map(FileChannel.MapMode.READ_ONLY, offset, layerBytes);
+            layer.order(ByteOrder.LITTLE_ENDIAN);
+            if (doubles)
+            {
+               DoubleBuffer values = layer.asDoubleBuffer();
+               for (int k = 0; k < weights[n].length; k++)
+               {
+                  weights[n][k] = (float) values.get(k);
+               }
+            }
+            else
+            {
+               layer.asFloatBuffer().get(weights[n]);
+            }
+            offset += layerBytes;
+         }
+      } // try (FileChannel channel = ...)
+   } // private void readBinaryWeights(String filename)
+
+   /**
+    * Stores the weights in the file given by the filename. If the filename ends in NeuralNet.BINARY_EXTENSION the
+    * binary float format is used, and otherwise the text format of NeuralNet is used. Either can be read back by
+    * FloatNeuralNet(String, Precision) or by NeuralNet(String).
+    *
+    * @param filename the name of the file to store the weights in
+    */
+   @Override
+   public void storeWeights(String filename) throws IOException
+   {
+      if (filename.endsWith(NeuralNet.BINARY_EXTENSION))
+      {
+         storeBinaryWeights(filename);
+      }
+      else
+      {
+         storeTextWeights(filename);
+      }
+   }
+
+   /**
+    * Stores the weights in the text format described in NeuralNet.readTextWeights. Each weight is written as the
+    * double it widens to, so reading it back and rounding it to a float gives exactly the same weight.
+    *
+    * @param filename the name of the file to store the weights in
+    */
+   public void storeTextWeights(String filename) throws IOException
+   {
+      PrintWriter pw = new PrintWriter(new FileWriter(filename));
+
+      // Store the size of each layer
+      for (int i = 0; i < sizeOfLayers.length; i++)
+      {
+         pw.print(sizeOfLayers[i] + " ");
+      }
+      pw.println("\n");
+
+      // Store weights matrix, one row per node of the previous layer
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         for (int i = 0; i < sizeOfLayers[n]; i++)
+         {
+            for (int j = 0; j < sizeOfLayers[n + 1]; j++)
+            {
+               pw.print((double) weights[n][j * sizeOfLayers[n] + i] + " ");
+            }
+            pw.println();
+         }
+         pw.println();
+      }
+      pw.close();
+   } // public void storeTextWeights(String filename)
+
+   /**
+    * Stores the weights in the binary float format described in readBinaryWeights, converting them to little-endian
+    * bytes through a fixed-size buffer.
+    *
+    * @param filename the name of the file to store the weights in
+    */
+   public void storeBinaryWeights(String filename) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         // Write the header, padded with zeros in the same way as the binary weights of NeuralNet
+         ByteBuffer header = ByteBuffer.allocate((int) NeuralNet.binaryHeaderSize(sizeOfLayers.length))
+               .order(ByteOrder.LITTLE_ENDIAN);
+         header.putInt(BINARY_MAGIC);
+         header.putInt(BINARY_VERSION);
+         header.putInt(sizeOfLayers.length);
+         for (int size : sizeOfLayers)
+         {
+            header.putInt(size);
+         }
+         header.position(0);
+         while (header.hasRemaining())
+         {
+            channel.write(header);
+         }
+
+         // Write the weights of each layer in blocks
+         ByteBuffer block = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+         int blockFloats = block.capacity() / Float.BYTES;
+         for (int n = 0; n < numOfLayers; n++)
+         {
+            for (int start = 0; start < weights[n].length; start += blockFloats)
+            {
+               int count = Math.min(blockFloats, weights[n].length - start);
+               block.clear();
+               block.asFloatBuffer().put(weights[n], start, count);
+               block.limit(count * Float.BYTES);
+               while (block.hasRemaining())
+               {
+                  channel.write(block);
+               }
+            }
+         }
+      } // try (FileChannel channel = ...)
+   } // public void storeBinaryWeights(String filename)
+
+   /**
+    * Gets the flat row-major weights of each connectivity layer. The arrays are shared with this network, so they
+    * change while it trains.
+    *
+    * @return the weights of each connectivity layer
+    */
+   float[][] getWeights()
+   {
+      return weights;
+   }
+
+   /**
+    * Copies the weights of each connectivity layer, widened to doubles.
+    *
+    * @return the copied weights
+    */
+   @Override
+   double[][] copyWeights()
+   {
+      double[][] copy = new double[numOfLayers][];
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         copy[n] = new double[weights[n].length];
+         for (int k = 0; k < weights[n].length; k++)
+         {
+            copy[n][k] = weights[n][k];
+         }
+      }
+      return copy;
+   }
+
+   /**
+    * Gets the type that this network adds up its sums in.
+    *
+    * @return DOUBLE if sums are added up as doubles, FLOAT if they are added up as floats
+    */
+   public Precision getAccumulation()
+   {
+      return doubleSums ? Precision.DOUBLE : Precision.FLOAT;
+   }
+
+   /**
+    * Propagates the input through the network after rounding it to floats, and widens the output back to doubles.
+    * The returned array belongs to this network and is overwritten by the next call.
+    *
+    * @param input the values for the activation of all input units
+    * @return the array of activations for the output units
+    */
+   @Override
+   public double[] propagate(double[] input)
+   {
+      float[] output = propagate(narrow(input, workspace.activations[0]));
+      for (int i = 0; i < output.length; i++)
+      {
+         workspace.output[i] = output[i];
+      }
+      return workspace.output;
+   }
+
+   /**
+    * Propagates the input through the network. The returned array belongs to this network and is overwritten by the
+    * next call, and the network cannot be run by more than one thread at once.
+    *
+    * @param input the values for the activation of all input units
+    * @return the array of activations for the output units
+    */
+   public float[] propagate(float[] input)
+   {
+      SparseInput sparse = workspace.gatherInput(input, (float) sparseThreshold);
+      return propagateLayers(input, sparse, workspace.activations, null);
+   }
+
+   /**
+    * Propagates the input through every layer of the network, storing the activations of each layer after the input
+    * layer. If the inputs that are not zero were gathered into a SparseInput, only their weights are walked in the
+    * first layer.
+    *
+    * @param input       the values for the activation of all input units
+    * @param sparse      the inputs that are not treated as zero, or null to use every input
+    * @param activations the arrays to store the activations of each layer in
+    * @param times       the metrics to add the time of each layer to, or null if it is not measured
+    * @return the array of activations for the output units
+    */
+   private float[] propagateLayers(float[] input, SparseInput sparse, float[][] activations, TrainingMetrics times)
+   {
+      float[] prev = input;
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         long start = times != null ? System.nanoTime() : 0;
+         float[] w = weights[n];
+         int prevSize = sizeOfLayers[n];
+         Activation function = activationFunctions[n];
+         for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+         {
+            float sum = n == 0 && sparse != null ? sparseDot(w, i * prevSize, sparse, doubleSums) :
+                  dot(w, i * prevSize, prev, prevSize, doubleSums);
+            activations[n + 1][i] = function.apply(sum);
+         }
+         prev = activations[n + 1];
+         if (times != null)
+         {
+            times.addLayerTime(TrainingMetrics.Phase.FORWARD, n, System.nanoTime() - start);
+         }
+      }
+
+      return activations[numOfLayers];
+   } // private float[] propagateLayers(float[] input, SparseInput sparse, float[][] activations, TrainingMetrics times)
+
+   /**
+    * Rounds an array of doubles to floats.
+    *
+    * @param values the doubles to round
+    * @param floats the array to store the floats in
+    * @return the array of floats
+    */
+   private static float[] narrow(double[] values, float[] floats)
+   {
+      for (int k = 0; k < values.length; k++)
+      {
+         floats[k] = (float) values[k];
+      }
+      return floats;
+   }
+
+   /**
+    * Calculates the dot product of one row of weights with the activations of a layer, adding it up either as a
+    * double and rounding it to a float at the end, or as a float.
+    *
+    * @param w          the flat row-major weights between the two layers
+    * @param row        the index in w where the row starts
+    * @param x          the activations of the layer
+    * @param size       the number of nodes in the layer
+    * @param doubleSums whether to add up the products as doubles
+    * @return the dot product
+    */
+   static float dot(float[] w, int row, float[] x, int size, boolean doubleSums)
+   {
+      if (doubleSums)
+      {
+         double sum = 0.0;
+         for (int j = 0; j < size; j++)
+         {
+            sum += (double) w[row + j] * x[j];
+         }
+         return (float) sum;
+      }
+
+      return Kernels.INSTANCE.dot(w, row, x, size);
+   } // static float dot(float[] w, int row, float[] x, int size, boolean doubleSums)
+
+   /**
+    * Calculates the dot product of one row of weights with the inputs listed in a SparseInput, adding it up either as
+    * a double and rounding it to a float at the end, or as a float.
+    *
+    * @param w          the flat row-major weights between the input layer and the first hidden layer
+    * @param row        the index in w where the row starts
+    * @param x          the inputs that are not treated as zero
+    * @param doubleSums whether to add up the products as doubles
+    * @return the dot product
+    */
+   private static float sparseDot(float[] w, int row, SparseInput x, boolean doubleSums)
+   {
+      if (doubleSums)
+      {
+         double sum = 0.0;
+         for (int k = 0; k < x.count; k++)
+         {
+            sum += (double) w[row + x.indices[k]] * x.floatValues[k];
+         }
+         return (float) sum;
+      }
+
+      return Kernels.INSTANCE.sparseDot(w, row, x.indices, x.floatValues, x.count);
+   } // private static float sparseDot(float[] w, int row, SparseInput x, boolean doubleSums)
+
+   /**
+    * Propagates a row-major matrix of at most NeuralNet.BATCH_CHUNK inputs through a network given by its weights,
+    * in the same way as NeuralNet.propagateBatch.
+    *
+    * @param weights          the flat row-major weights of each connectivity layer
+    * @param sizeOfLayers     the number of processing units in each activation layer
+    * @param functions        the activation function of each layer after the input layer
+    * @param inputs           the array holding the input matrix, one row per input
+    * @param inputOffset      the index in inputs where the input matrix starts
+    * @param count            the number of inputs, no more than NeuralNet.BATCH_CHUNK
+    * @param batchActivations the scratch arrays made by createBatchActivations
+    * @param sums             the scratch array to add up the sums of each layer in as doubles, or null to add them up
+    *                         as floats
+    * @param outputs          the array to store the output matrix in, one row per input
+    * @param outputOffset     the index in outputs where the output matrix starts
+    */
+   static void propagateBatch(float[][] weights, int[] sizeOfLayers, Activation[] functions, float[] inputs,
+                              int inputOffset, int count, float[][] batchActivations, double[] sums, float[] outputs,
+                              int outputOffset)
+   {
+      int numOfLayers = sizeOfLayers.length - 1;
+
+      float[] prev = inputs;
+      int prevOffset = inputOffset;
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         float[] next = n == numOfLayers - 1 ? outputs : batchActivations[n + 1];
+         int nextOffset = n == numOfLayers - 1 ? outputOffset : 0;
+
+         propagateLayerBatch(weights[n], prev, prevOffset, sizeOfLayers[n], next, nextOffset, sizeOfLayers[n + 1], count,
+               sums, functions[n]);
+
+         prev = next;
+         prevOffset = nextOffset;
+      }
+   } // static void propagateBatch(...)
+
+   /**
+    * Calculates the next activation layer for a whole matrix of inputs, in cache blocks of weights in the same way as
+    * NeuralNet.propagateLayerBatch. When the sums are kept as doubles, they are added up in the sums array and only
+    * rounded to floats when the activation function is applied, so each output is the same as from propagate.
+    *
+    * @param w          the flat row-major weights between the two layers
+    * @param prev       the array holding the activations of the current layer, one row per input
+    * @param prevOffset the index in prev where the first row starts
+    * @param prevSize   the number of nodes in the current layer
+    * @param next       the array to store the activations of the next layer in, one row per input
+    * @param nextOffset the index in next where the first row starts
+    * @param nextSize   the number of nodes in the next layer
+    * @param count      the number of inputs
+    * @param sums       the scratch array to add up the sums in as doubles, or null to add them up in next as floats
+    * @param function   the activation function of the next layer
+    */
+   static void propagateLayerBatch(float[] w, float[] prev, int prevOffset, int prevSize, float[] next, int nextOffset,
+                                   int nextSize, int count, double[] sums, Activation function)
+   {
+      if (sums != null)
+      {
+         Arrays.fill(sums, 0, count * nextSize, 0.0);
+      }
+      else
+      {
+         Arrays.fill(next, nextOffset, nextOffset + count * nextSize, 0.0f);
+      }
+
+      for (int jj = 0; jj < prevSize; jj += NeuralNet.BLOCK_COLUMNS)
+      {
+         int jEnd = Math.min(jj + NeuralNet.BLOCK_COLUMNS, prevSize);
+         for (int ii = 0; ii < nextSize; ii += NeuralNet.BLOCK_ROWS)
+         {
+            int iEnd = Math.min(ii + NeuralNet.BLOCK_ROWS, nextSize);
+
+            // Apply this block of weights to every input, four inputs at a time so each weight is loaded once for all four
+            int b = 0;
+            for (; b + 4 <= count; b += 4)
+            {
+               int in0 = prevOffset + b * prevSize;
+               int in1 = in0 + prevSize;
+               int in2 = in1 + prevSize;
+               int in3 = in2 + prevSize;
+
+               if (sums != null)
+               {
+                  int out0 = b * nextSize;
+                  int out1 = out0 + nextSize;
+                  int out2 = out1 + nextSize;
+                  int out3 = out2 + nextSize;
+
+                  for (int i = ii; i < iEnd; i++)
+                  {
+                     double sum0 = sums[out0 + i];
+                     double sum1 = sums[out1 + i];
+                     double sum2 = sums[out2 + i];
+                     double sum3 = sums[out3 + i];
+                     int row = i * prevSize;
+                     for (int j = jj; j < jEnd; j++)
+                     {
+                        double weight = w[row + j];
+                        sum0 += weight * prev[in0 + j];
+                        sum1 += weight * prev[in1 + j];
+                        sum2 += weight * prev[in2 + j];
+                        sum3 += weight * prev[in3 + j];
+                     }
+                     sums[out0 + i] = sum0;
+                     sums[out1 + i] = sum1;
+                     sums[out2 + i] = sum2;
+                     sums[out3 + i] = sum3;
+                  }
+               } // if (sums != null)
+               else
+               {
+                  int out0 = nextOffset + b * nextSize;
+                  int out1 = out0 + nextSize;
+                  int out2 = out1 + nextSize;
+                  int out3 = out2 + nextSize;
+
+                  for (int i = ii; i < iEnd; i++)
+                  {
+                     float sum0 = next[out0 + i];
+                     float sum1 = next[out1 + i];
+                     float sum2 = next[out2 + i];
+                     float sum3 = next[out3 + i];
+                     int row = i * prevSize;
+                     for (int j = jj; j < jEnd; j++)
+                     {
+                        float weight = w[row + j];
+                        sum0 += weight * prev[in0 + j];
+                        sum1 += weight * prev[in1 + j];
+                        sum2 += weight * prev[in2 + j];
+                        sum3 += weight * prev[in3 + j];
+                     }
+                     next[out0 + i] = sum0;
+                     next[out1 + i] = sum1;
+                     next[out2 + i] = sum2;
+                     next[out3 + i] = sum3;
+                  }
+               } // else
+            } // for (; b + 4 <= count; b += 4)
+
+            // Apply the block to the inputs left over
+            for (; b < count; b++)
+            {
+               int in = prevOffset + b * prevSize;
+               for (int i = ii; i < iEnd; i++)
+               {
+                  int row = i * prevSize;
+                  if (sums != null)
+                  {
+                     double sum = sums[b * nextSize + i];
+                     for (int j = jj; j < jEnd; j++)
+                     {
+                        sum += (double) w[row + j] * prev[in + j];
+                     }
+                     sums[b * nextSize + i] = sum;
+                  }
+                  else
+                  {
+                     float sum = next[nextOffset + b * nextSize + i];
+                     for (int j = jj; j < jEnd; j++)
+                     {
+                        sum += w[row + j] * prev[in + j];
+                     }
+                     next[nextOffset + b * nextSize + i] = sum;
+                  }
+               } // for (int i = ii; i < iEnd; i++)
+            } // for (; b < count; b++)
+         } // for (int ii = 0; ii < nextSize; ii += NeuralNet.BLOCK_ROWS)
+      } // for (int jj = 0; jj < prevSize; jj += NeuralNet.BLOCK_COLUMNS)
+
+      // Applies the activation function to the nodes
+      for (int k = 0; k < count * nextSize; k++)
+      {
+         float sum = sums != null ? (float) sums[k] : next[nextOffset + k];
+         next[nextOffset + k] = function.apply(sum);
+      }
+   } // static void propagateLayerBatch(...)
+
+   /**
+    * Creates the scratch arrays for running NeuralNet.BATCH_CHUNK inputs through a network at once: one row-major
+    * matrix for each activation layer, including the input and output layers.
+    *
+    * @param sizeOfLayers the number of processing units in each activation layer
+    * @return the batch activation arrays
+    */
+   static float[][] createBatchActivations(int[] sizeOfLayers)
+   {
+      float[][] batchActivations = new float[sizeOfLayers.length][];
+      for (int n = 0; n < sizeOfLayers.length; n++)
+      {
+         batchActivations[n] = new float[NeuralNet.BATCH_CHUNK * sizeOfLayers[n]];
+      }
+      return batchActivations;
+   }
+
+   @Override
+   FloatWorkspace getWorkspace()
+   {
+      return workspace;
+   }
+
+   @Override
+   FloatWorkspace createWorkspace()
+   {
+      return new FloatWorkspace(sizeOfLayers);
+   }
+
+   @Override
+   Checkpoint createCheckpoint(int nextEpoch, int updates, double learningRate, double minError)
+   {
+      return Checkpoint.take(sizeOfLayers, weights, optimizerState, optimizer, optimizerSteps, nextEpoch, updates,
+            learningRate, minError);
+   }
+
+   @Override
+   void restoreWeights(Checkpoint checkpoint)
+   {
+      weights = checkpoint.getFloatWeights();
+      optimizerState = checkpoint.getOptimizer() == optimizer ? checkpoint.getFloatOptimizerState() : null;
+   }
+
+   @Override
+   void clearOptimizerState()
+   {
+      optimizerState = null;
+   }
+
+   @Override
+   void zeroWeights(int layer, int[] indices)
+   {
+      for (int k : indices)
+      {
+         weights[layer][k] = 0.0f;
+      }
+   }
+
+   /**
+    * Propagates the input forward through the network while keeping the activations of every layer, which backprop
+    * needs both to change the weights and to find the derivative of the activation function of each node. The inputs
+    * that are not zero are gathered into the sparseInput of the workspace, which backprop uses for the first layer too.
+    *
+    * @param input the input test case to propagate, rounded to floats into the first activation layer
+    * @param ws    the workspace to store the activations in
+    */
+   private void forwardPass(double[] input, FloatWorkspace ws)
+   {
+      float[] floatInput = narrow(input, ws.activations[0]);
+      propagateLayers(floatInput, ws.gatherInput(floatInput, (float) sparseThreshold), ws.activations, ws.metrics);
+   } // private void forwardPass(double[] input, FloatWorkspace ws)
+
+   /**
+    * Calculates omega and psi for the output layer after a forward pass, and the error of the test case as a double.
+    *
+    * @param expected the expected output for the test case that was propagated
+    * @param ws       the workspace that the test case was propagated in
+    * @return the error of the test case, measured the same way as in calculateError
+    */
+   private double calculateOutputPsi(double[] expected, FloatWorkspace ws)
+   {
+      float[] omega = ws.omega[numOfLayers];
+      float[] activations = ws.activations[numOfLayers];
+      Activation outputFunction = activationFunctions[numOfLayers - 1];
+
+      double singleError = 0.0;
+      for (int i = 0; i < sizeOfLayers[numOfLayers]; i++)
+      {
+         // omega_i = T_i - a_i
+         omega[i] = (float) (expected[i] - activations[i]);
+         singleError += 0.5 * omega[i] * omega[i];
+
+         // psi_i = omega_i * f'(theta_i), with f'(theta_i) found from a_i
+         ws.psi[numOfLayers][i] = omega[i] * outputFunction.derivative(activations[i]);
+      }
+
+      return singleError * singleError;
+   }
+
+   /**
+    * Runs backprop for a single test case and changes the weights immediately, walking each weight row once to both
+    * project psi back into omega and update the weights, in the same way as NeuralNet.backPropagate.
+    *
+    * @param input        the input test case to train the network on
+    * @param expected     the expected output for that test case
+    * @param learningRate the rate at which to change the weights
+    * @return the error of the test case before the weights were changed
+    */
+   @Override
+   double backPropagate(double[] input, double[] expected, double learningRate)
+   {
+      float[][] activations = workspace.activations;
+      float[][] omega = workspace.omega;
+      float[][] psi = workspace.psi;
+      double[] omegaSums = workspace.omegaSums;
+
+      forwardPass(input, workspace);
+      SparseInput sparse = workspace.sparseInput;
+      TrainingMetrics times = workspace.metrics;
+      long start = times != null ? System.nanoTime() : 0;
+      double error = calculateOutputPsi(expected, workspace);
+
+      for (int n = numOfLayers - 1; n >= 0; n--)
+      {
+         float[] w = weights[n];
+         float[] prev = activations[n];
+         float[] nextPsi = psi[n + 1];
+         float[] prevOmega = omega[n];
+         int prevSize = sizeOfLayers[n];
+         boolean needsOmega = n > 0;    // the input layer has no omega
+         boolean[] pruned = prunedMask != null ? prunedMask[n] : null;
+
+         if (needsOmega)
+         {
+            Arrays.fill(omegaSums, 0, prevSize, 0.0);
+            Arrays.fill(prevOmega, 0.0f);
+         }
+
+         for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+         {
+            float psiI = nextPsi[i];
+            float step = (float) (learningRate * psiI);
+            int row = i * prevSize;
+
+            if (needsOmega && doubleSums)
+            {
+               for (int j = 0; j < prevSize; j++)
+               {
+                  omegaSums[j] += (double) psiI * w[row + j];     // omega_j = sum of (psi_i * w_ji)
+                  if (pruned == null || !pruned[row + j])
+                  {
+                     w[row + j] += step * prev[j];                // deltaWeights_ji = a_j * psi_i
+                  }
+               }
+            }
+            else if (needsOmega)
+            {
+               Kernels.INSTANCE.backProject(w, row, prev, prevOmega, prevSize, psiI, step, pruned);
+            }
+            else if (sparse != null)
+            {
+               // Only the weights of the inputs that are not zero change
+               Kernels.INSTANCE.addScaledSparse(w, row, sparse.indices, sparse.floatValues, sparse.count, step, pruned);
+            }
+            else
+            {
+               Kernels.INSTANCE.addScaled(w, row, prev, 0, prevSize, step, pruned);     // deltaWeights_ji = a_j * psi_i
+            }
+         } // for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+
+         // psi_j = omega_j * f'(theta_j), with f'(theta_j) found from a_j
+         if (needsOmega)
+         {
+            for (int j = 0; j < prevSize; j++)
+            {
+               if (doubleSums)
+               {
+                  prevOmega[j] = (float) omegaSums[j];
+               }
+               psi[n][j] = prevOmega[j] * activationFunctions[n - 1].derivative(activations[n][j]);
+            }
+         }
+
+         // The time of the output psi goes to the last layer, and the update of the weights with the rest of backprop
+         if (times != null)
+         {
+            long now = System.nanoTime();
+            times.addLayerTime(TrainingMetrics.Phase.BACKWARD, n, now - start);
+            start = now;
+         }
+      } // for (int n = numOfLayers - 1; n >= 0; n--)
+
+      return error;
+   } // double backPropagate(double[] input, double[] expected, double learningRate)
+
+   /**
+    * Runs backprop for a single test case without changing the weights, adding the gradient of the error with respect
+    * to each weight to the gradients of the workspace, as floats or as doubles depending on how this network adds up
+    * its sums. Only the workspace is written to, so several threads can do this at once with different workspaces.
+    *
+    * @param input    the input test case to train the network on
+    * @param expected the expected output for that test case
+    * @param worker   the FloatWorkspace to use, including the gradients to add to
+    * @return the error of the test case
+    */
+   @Override
+   double accumulateGradient(double[] input, double[] expected, AbstractWorkspace worker)
+   {
+      FloatWorkspace ws = (FloatWorkspace) worker;
+      ws.createGradients(doubleSums);
+
+      float[][] activations = ws.activations;
+      float[][] omega = ws.omega;
+      float[][] psi = ws.psi;
+      double[] omegaSums = ws.omegaSums;
+
+      forwardPass(input, ws);
+      SparseInput sparse = ws.sparseInput;
+      TrainingMetrics times = ws.metrics;
+      long start = times != null ? System.nanoTime() : 0;
+      double error = calculateOutputPsi(expected, ws);
+
+      for (int n = numOfLayers - 1; n >= 0; n--)
+      {
+         float[] w = weights[n];
+         float[] prev = activations[n];
+         float[] nextPsi = psi[n + 1];
+         float[] prevOmega = omega[n];
+         int prevSize = sizeOfLayers[n];
+         boolean needsOmega = n > 0;    // the input layer has no omega
+
+         if (needsOmega)
+         {
+            Arrays.fill(omegaSums, 0, prevSize, 0.0);
+            Arrays.fill(prevOmega, 0.0f);
+         }
+
+         for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+         {
+            float psiI = nextPsi[i];
+            int row = i * prevSize;
+
+            if (doubleSums)
+            {
+               double[] g = ws.gradientSums[n];
+               if (!needsOmega && sparse != null)
+               {
+                  for (int k = 0; k < sparse.count; k++)
+                  {
+                     g[row + sparse.indices[k]] += (double) psiI * sparse.floatValues[k];
+                  }
+               }
+               else
+               {
+                  for (int j = 0; j < prevSize; j++)
+                  {
+                     g[row + j] += (double) psiI * prev[j];       // gradient_ji += a_j * psi_i
+                  }
+               }
+               if (needsOmega)
+               {
+                  for (int j = 0; j < prevSize; j++)
+                  {
+                     omegaSums[j] += (double) psiI * w[row + j];  // omega_j = sum of (psi_i * w_ji)
+                  }
+               }
+            } // if (doubleSums)
+            else
+            {
+               if (!needsOmega && sparse != null)
+               {
+                  Kernels.INSTANCE.addScaledSparse(ws.gradients[n], row, sparse.indices, sparse.floatValues,
+                        sparse.count, psiI);
+               }
+               else
+               {
+                  // gradient_ji += a_j * psi_i
+                  Kernels.INSTANCE.addScaled(ws.gradients[n], row, prev, 0, prevSize, psiI);
+               }
+               if (needsOmega)
+               {
+                  Kernels.INSTANCE.addScaled(prevOmega, 0, w, row, prevSize, psiI);         // omega_j = sum of (psi_i * w_ji)
+               }
+            } // else
+         } // for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+
+         // psi_j = omega_j * f'(theta_j), with f'(theta_j) found from a_j
+         if (needsOmega)
+         {
+            for (int j = 0; j < prevSize; j++)
+            {
+               if (doubleSums)
+               {
+                  prevOmega[j] = (float) omegaSums[j];
+               }
+               psi[n][j] = prevOmega[j] * activationFunctions[n - 1].derivative(activations[n][j]);
+            }
+         }
+
+         // The time of the output psi goes to the last layer, and the update of the weights with the rest of backprop
+         if (times != null)
+         {
+            long now = System.nanoTime();
+            times.addLayerTime(TrainingMetrics.Phase.BACKWARD, n, now - start);
+            start = now;
+         }
+      } // for (int n = numOfLayers - 1; n >= 0; n--)
+
+      return error;
+   } // double accumulateGradient(double[] input, double[] expected, AbstractWorkspace worker)
+
+   @Override
+   void createOptimizerState()
+   {
+      if (optimizerState == null)
+      {
+         optimizerState = new float[numOfLayers][optimizer.stateArrays()][];
+         for (int n = 0; n < numOfLayers; n++)
+         {
+            for (int t = 0; t < optimizer.stateArrays(); t++)
+            {
+               optimizerState[n][t] = new float[weights[n].length];
+            }
+         }
+      }
+   }
+
+   /**
+    * Changes one range of the weights of a layer by the average of the gradients accumulated in the shards, then
+    * clears the gradients for the next batch. The gradients of the shards are added together as floats or as doubles
+    * depending on how this network adds up its sums.
+    *
+    * SGD adds the step to each weight as the gradients are added up. Any other optimizer has the gradients of the
+    * shards added into those of the first shard, then changes the weights of the range by them with Optimizer.update,
+    * using the float state arrays of the layer. Either way, the weights marked in the pruned mask are not changed.
+    *
+    * @param layer            the connectivity layer to change
+    * @param from             the flat index of the first weight in the range
+    * @param to               the flat index after the last weight in the range
+    * @param shards           the number of worker workspaces that gradients were accumulated in
+    * @param learningRate     the rate at which to change the weights
+    * @param batchCount       the number of test cases whose gradients were accumulated
+    * @param firstCorrection  1 - BETA1^t for ADAM, where t is the number of the update
+    * @param secondCorrection 1 - BETA2^t for ADAM
+    */
+   @Override
+   void updateWeights(int layer, int from, int to, int shards, double learningRate, int batchCount,
+                      double firstCorrection, double secondCorrection)
+   {
+      float[] w = weights[layer];
+      if (doubleSums)
+      {
+         double[][] gradients = new double[shards][];
+         for (int s = 0; s < shards; s++)
+         {
+            gradients[s] = ((FloatWorkspace) workerWorkspaces[s]).gradientSums[layer];
+         }
+         updateWeights(w, gradients, layer, from, to, learningRate, batchCount, firstCorrection, secondCorrection);
+      }
+      else
+      {
+         float[][] gradients = new float[shards][];
+         for (int s = 0; s < shards; s++)
+         {
+            gradients[s] = ((FloatWorkspace) workerWorkspaces[s]).gradients[layer];
+         }
+         updateWeights(w, gradients, layer, from, to, learningRate, batchCount, firstCorrection, secondCorrection);
+      }
+   } // void updateWeights(int layer, int from, int to, int shards, double learningRate, int batchCount, ...)
+
+   /**
+    * Changes one range of the weights of a layer by gradients that were added up as doubles.
+    *
+    * @param w                the weights of the layer
+    * @param gradients        the gradients of the layer in each shard
+    * @param layer            the connectivity layer to change
+    * @param from             the flat index of the first weight in the range
+    * @param to               the flat index after the last weight in the range
+    * @param learningRate     the rate at which to change the weights
+    * @param batchCount       the number of test cases whose gradients were accumulated
+    * @param firstCorrection  1 - BETA1^t for ADAM, where t is the number of the update
+    * @param secondCorrection 1 - BETA2^t for ADAM
+    */
+   private void updateWeights(float[] w, double[][] gradients, int layer, int from, int to, double learningRate,
+                              int batchCount, double firstCorrection, double secondCorrection)
+   {
+      boolean[] pruned = prunedMask != null ? prunedMask[layer] : null;
+      if (optimizer == Optimizer.SGD)
+      {
+         double step = learningRate / batchCount;
+         for (int k = from; k < to; k++)
+         {
+            double sum = 0.0;
+            for (double[] g : gradients)
+            {
+               sum += g[k];
+               g[k] = 0.0;
+            }
+            if (pruned == null || !pruned[k])
+            {
+               w[k] += (float) (step * sum);
+            }
+         }
+      }
+      else
+      {
+         double[] sum = gradients[0];
+         for (int s = 1; s < gradients.length; s++)
+         {
+            double[] g = gradients[s];
+            for (int k = from; k < to; k++)
+            {
+               sum[k] += g[k];
+               g[k] = 0.0;
+            }
+         }
+         optimizer.update(w, sum, optimizerState[layer], from, to, learningRate, 1.0 / batchCount, firstCorrection,
+               secondCorrection, pruned);
+      }
+   } // private void updateWeights(float[] w, double[][] gradients, int layer, int from, int to, ...)
+
+   /**
+    * Changes one range of the weights of a layer by gradients that were added up as floats.
+    *
+    * @param w                the weights of the layer
+    * @param gradients        the gradients of the layer in each shard
+    * @param layer            the connectivity layer to change
+    * @param from             the flat index of the first weight in the range
+    * @param to               the flat index after the last weight in the range
+    * @param learningRate     the rate at which to change the weights
+    * @param batchCount       the number of test cases whose gradients were accumulated
+    * @param firstCorrection  1 - BETA1^t for ADAM, where t is the number of the update
+    * @param secondCorrection 1 - BETA2^t for ADAM
+    */
+   private void updateWeights(float[] w, float[][] gradients, int layer, int from, int to, double learningRate,
+                              int batchCount, double firstCorrection, double secondCorrection)
+   {
+      boolean[] pruned = prunedMask != null ? prunedMask[layer] : null;
+      if (optimizer == Optimizer.SGD)
+      {
+         float step = (float) (learningRate / batchCount);
+         for (int k = from; k < to; k++)
+         {
+            float sum = 0.0f;
+            for (float[] g : gradients)
+            {
+               sum += g[k];
+               g[k] = 0.0f;
+            }
+            if (pruned == null || !pruned[k])
+            {
+               w[k] += step * sum;
+            }
+         }
+      }
+      else
+      {
+         float[] sum = gradients[0];
+         for (int s = 1; s < gradients.length; s++)
+         {
+            float[] g = gradients[s];
+            for (int k = from; k < to; k++)
+            {
+               sum[k] += g[k];
+               g[k] = 0.0f;
+            }
+         }
+         optimizer.update(w, sum, optimizerState[layer], from, to, (float) learningRate, 1.0f / batchCount,
+               (float) firstCorrection, (float) secondCorrection, pruned);
+      }
+   } // private void updateWeights(float[] w, float[][] gradients, int layer, int from, int to, ...)
+
+   /**
+    * Calculates the total error for every single test case in the training data, in the same way as
+    * NeuralNet.calculateError. The inputs are rounded to floats and propagated in batches of up to
+    * NeuralNet.BATCH_CHUNK, and the error is added up as a double.
+    *
+    * @param trainingData the inputs and expected output for each training case
+    * @return the error between the expected output and the output the network gets
+    */
+   @Override
+   public double calculateError(double[][][] trainingData)
+   {
+      float[][] batchActivations = workspace.getBatchActivations();
+      double[] sums = doubleSums ? workspace.getBatchSums() : null;
+      float[] outputs = batchActivations[numOfLayers];
+      int inputSize = sizeOfLayers[0];
+      int outputSize = sizeOfLayers[numOfLayers];
+
+      double error = 0.0;
+      for (int start = 0; start < trainingData.length; start += NeuralNet.BATCH_CHUNK)
+      {
+         int count = Math.min(NeuralNet.BATCH_CHUNK, trainingData.length - start);
+         for (int b = 0; b < count; b++)
+         {
+            double[] input = trainingData[start + b][0];
+            for (int k = 0; k < inputSize; k++)
+            {
+               batchActivations[0][b * inputSize + k] = (float) input[k];
+            }
+         }
+         propagateBatch(weights, sizeOfLayers, activationFunctions, batchActivations[0], 0, count, batchActivations, sums,
+               outputs, 0);
+
+         for (int b = 0; b < count; b++)
+         {
+            double[] expected = trainingData[start + b][1];
+            double singleError = 0.0;
+            for (int i = 0; i < outputSize; i++)
+            {
+               double difference = expected[i] - outputs[b * outputSize + i];
+               singleError += 0.5 * difference * difference;
+            }
+            error += singleError * singleError;
+         }
+      } // for (int start = 0; start < trainingData.length; start += NeuralNet.BATCH_CHUNK)
+
+      return error;
+   } // public double calculateError(double[][][] trainingData)
+
+} // public class FloatNeuralNet extends AbstractNeuralNet
@@ -0,0 +1,132 @@
+/**
+ * Float Workspace
+ *
+ * Holds the scratch arrays that one thread needs to run a FloatNeuralNet: the activations, omega and psi values for
+ * every activation layer as floats, the gradient accumulator with the same flat row-major layout as the weights of the
+ * network, the list of inputs that are not zero, and the matrices used to propagate a batch of inputs at once. A
+ * network that adds up its sums as doubles also needs a few double arrays to hold those sums until they are rounded
+ * back to floats, and keeps its gradients as doubles. Like a Workspace, nothing in here is shared, so every thread
+ * needs its own, and the size of each layer, the metrics and the list of inputs are kept by AbstractWorkspace.
+ *
+ * Methods in this class:
+ * void      createGradients(boolean doubleSums)
+ * SparseInput gatherInput(float[] input, float threshold)
+ * float[][] getBatchActivations()
+ * double[]  getBatchSums()
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+final class FloatWorkspace extends AbstractWorkspace
+{
+   final float[][] activations;
+   final float[][] omega;
+   final float[][] psi;
+
+   final double[] omegaSums;   // omega of one layer summed as doubles, as long as the largest layer
+   final double[] output;      // the output layer widened to doubles for FloatNeuralNet.propagate(double[])
+
+   float[][] gradients;        // summed weight gradients as floats, created only when they are first needed
+   double[][] gradientSums;    // summed weight gradients as doubles, used instead when sums are kept as doubles
+
+   private float[][] batchActivations;    // row-major activation matrices for batches, created when first needed
+   private double[] batchSums;            // the sums of one layer of a batch as doubles, created when first needed
+
+   /**
+    * Creates the activations, omega, and psi arrays for a network with the given layer sizes. They are jagged
+    * matrices with each row having a number of columns equal to the size of that layer.
+    *
+    * @param sizeOfLayers the number of processing units in each activation layer
+    */
+   FloatWorkspace(int[] sizeOfLayers)
+   {
+      super(sizeOfLayers);
+
+      activations = new float[sizeOfLayers.length][];
+      omega = new float[sizeOfLayers.length][];
+      psi = new float[sizeOfLayers.length][];
+
+      for (int n = 0; n < sizeOfLayers.length; n++)
+      {
+         activations[n] = new float[sizeOfLayers[n]];
+         omega[n] = new float[sizeOfLayers[n]];
+         psi[n] = new float[sizeOfLayers[n]];
+      }
+
+      omegaSums = new double[largestLayer()];
+      output = new double[sizeOfLayers[sizeOfLayers.length - 1]];
+   } // FloatWorkspace(int[] sizeOfLayers)
+
+   /**
+    * Creates the gradient accumulator, with one flat array per connectivity layer, if it does not exist yet.
+    *
+    * @param doubleSums whether the gradients are summed as doubles instead of floats
+    */
+   void createGradients(boolean doubleSums)
+   {
+      if (doubleSums && gradientSums == null)
+      {
+         gradientSums = new double[sizeOfLayers.length - 1][];
+         for (int n = 0; n < gradientSums.length; n++)
+         {
+            gradientSums[n] = new double[sizeOfLayers[n] * sizeOfLayers[n + 1]];
+         }
+      }
+      else if (!doubleSums && gradients == null)
+      {
+         gradients = new float[sizeOfLayers.length - 1][];
+         for (int n = 0; n < gradients.length; n++)
+         {
+            gradients[n] = new float[sizeOfLayers[n] * sizeOfLayers[n + 1]];
+         }
+      }
+   } // void createGradients(boolean doubleSums)
+
+   /**
+    * Gathers the inputs that are not treated as zero into sparseInput, or sets it to null if the whole input layer
+    * should be used instead.
+    *
+    * @param input     the activations of the input layer
+    * @param threshold the largest absolute value that is treated as zero, or negative to use the whole input layer
+    * @return the new sparseInput
+    */
+   SparseInput gatherInput(float[] input, float threshold)
+   {
+      sparseInput = null;
+      if (threshold >= 0.0f && getSparseScratch().gather(input, threshold))
+      {
+         sparseInput = getSparseScratch();
+      }
+      return sparseInput;
+   } // SparseInput gatherInput(float[] input, float threshold)
+
+   /**
+    * Gets the activation matrices used by FloatNeuralNet.propagateBatch, creating them the first time.
+    *
+    * @return the batch activation arrays
+    */
+   float[][] getBatchActivations()
+   {
+      if (batchActivations == null)
+      {
+         batchActivations = FloatNeuralNet.createBatchActivations(sizeOfLayers);
+      }
+      return batchActivations;
+   }
+
+   /**
+    * Gets the matrix that FloatNeuralNet.propagateBatch adds up the sums of one layer in when they are kept as
+    * doubles, creating it the first time.
+    *
+    * @return the batch sums, with room for BATCH_CHUNK rows of the largest layer
+    */
+   double[] getBatchSums()
+   {
+      if (batchSums == null)
+      {
+         batchSums = new double[NeuralNet.BATCH_CHUNK * largestLayer()];
+      }
+      return batchSums;
+   }
+
+} // final class FloatWorkspace extends AbstractWorkspace
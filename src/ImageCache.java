@@ -0,0 +1,288 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Image Cache
+ *
+ * Decodes bmp files into the grayscale arrays used as training data, and keeps the decoded arrays in a binary cache
+ * file so that later runs can skip decoding images that have not changed. Each image is cached under its absolute
+ * path, and a cached array is only used if the size and modification time of the bmp file are still the same as when
+ * it was decoded.
+ *
+ * All values in the cache file are little-endian. It starts with a header:
+ *
+ * int      magic number, the bytes "NNIC"
+ * int      version of the format, currently 2
+ * int      number of images
+ *
+ * Then, for each image:
+ *
+ * int      number of bytes in the path
+ * bytes    absolute path of the bmp file, in UTF-8
+ * long     size of the bmp file in bytes
+ * long     modification time of the bmp file in milliseconds
+ * int      height of the image
+ * int      width of the image
+ * double   height * width decoded pels, row by row, from ImageWrapper.toGrayScale(int[][], double[])
+ *
+ * A cache file that is missing, damaged or of another version is ignored, and is replaced when the cache is saved.
+ * Saving only keeps the images that were used since the cache was opened, so images that are no longer in the
+ * training set are dropped.
+ *
+ * Methods in this class:
+ * Image decode(String fileName)
+ * void  save()
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+public final class ImageCache
+{
+   static final int MAGIC = 0x4349_4E4E;     // "NNIC" read as a little-endian int, starts every image cache file
+   static final int VERSION = 2;             // version of the cache format, changed whenever decoding changes
+
+   private final String filename;            // the cache file, or null if nothing is stored on disk
+   private final Map<String, Image> stored = new LinkedHashMap<String, Image>();  // images read from the cache file
+   private final Map<String, Image> used = new LinkedHashMap<String, Image>();    // images decoded or looked up
+   private boolean changed;                  // whether saving would write something different from the file
+
+   /**
+    * A decoded image, along with the size and modification time of the bmp file it was decoded from.
+    */
+   public static final class Image
+   {
+      public final int height;
+      public final int width;
+      public final double[] pels;       // the grayscale pels, scaled between 0 and 1, shared and never changed
+
+      final long fileSize;
+      final long modified;
+
+      /**
+       * Creates a decoded image.
+       *
+       * @param height   the height of the image
+       * @param width    the width of the image
+       * @param pels     the grayscale pels
+       * @param fileSize the size of the bmp file
+       * @param modified the modification time of the bmp file
+       */
+      Image(int height, int width, double[] pels, long fileSize, long modified)
+      {
+         this.height = height;
+         this.width = width;
+         this.pels = pels;
+         this.fileSize = fileSize;
+         this.modified = modified;
+      }
+   } // public static final class Image
+
+   /**
+    * Opens a cache, reading the images stored in the cache file if there is a usable one.
+    *
+    * @param filename the cache file, or null to only decode images without storing them
+    */
+   public ImageCache(String filename) throws IOException
+   {
+      this.filename = filename;
+      if (filename != null)
+      {
+         try
+         {
+            read();
+         }
+         catch (NoSuchFileException e)
+         {
+            // there is no cache yet
+         }
+         catch (IOException | RuntimeException e)
+         {
+            System.out.println("Ignoring image cache " + filename + ": " + e.getMessage());
+            stored.clear();
+         }
+      }
+   } // public ImageCache(String filename)
+
+   /**
+    * Reads every image stored in the cache file.
+    */
+   private void read() throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+      {
+         long position = 0;
+         ByteBuffer header = readBlock(channel, position, 3 * Integer.BYTES);
+         position += header.capacity();
+         if (header.getInt() != MAGIC)
+         {
+            throw new IOException("not an image cache file");
+         }
+         int version = header.getInt();
+         if (version != VERSION)
+         {
+            throw new IOException("unsupported version " + version);
+         }
+
+         int count = header.getInt();
+         for (int k = 0; k < count; k++)
+         {
+            int pathBytes = readBlock(channel, position, Integer.BYTES).getInt();
+            position += Integer.BYTES;
+
+            ByteBuffer entry = readBlock(channel, position, pathBytes + 2 * Long.BYTES + 2 * Integer.BYTES);
+            position += entry.capacity();
+            byte[] path = new byte[pathBytes];
+            entry.get(path);
+            long fileSize = entry.getLong();
+            long modified = entry.getLong();
+            int height = entry.getInt();
+            int width = entry.getInt();
+
+            double[] pels = new double[height * width];
+            readBlock(channel, position, pels.length * Double.BYTES).asDoubleBuffer().get(pels);
+            position += (long) pels.length * Double.BYTES;
+
+            stored.put(new String(path, StandardCharsets.UTF_8), new Image(height, width, pels, fileSize, modified));
+         } // for (int k = 0; k < count; k++)
+      } // try (FileChannel channel = ...)
+   } // private void read()
+
+   /**
+    * Reads a block of bytes from the cache file.
+    *
+    * @param channel  the channel of the cache file
+    * @param position the position in the file to read from
+    * @param length   the number of bytes to read
+    * @return a little-endian buffer holding the bytes
+    */
+   private static ByteBuffer readBlock(FileChannel channel, long position, int length) throws IOException
+   {
+      if (length < 0)
+      {
+         throw new IOException("bad entry length " + length);
+      }
+
+      ByteBuffer block = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+      while (block.hasRemaining())
+      {
+         if (channel.read(block, position + block.position()) < 0)
+         {
+            throw new IOException("the file ends in the middle of an entry");
+         }
+      }
+      block.flip();
+      return block;
+   }
+
+   /**
+    * Gets the decoded grayscale image in a bmp file, decoding it only if the cache does not have an up to date copy.
+    * The pels are converted by ImageWrapper.toGrayScale(int[][], double[]). The returned pels may be shared with other
+    * uses of the same image and must not be changed. This can be called by several threads at once; images are
+    * decoded outside of the lock on the cache, so they are decoded in parallel.
+    *
+    * @param fileName the bmp file
+    * @return the decoded image
+    */
+   public Image decode(String fileName) throws IOException
+   {
+      Path path = Paths.get(fileName).toAbsolutePath().normalize();
+      String key = path.toString();
+      long fileSize = Files.size(path);
+      long modified = Files.getLastModifiedTime(path).toMillis();
+
+      Image image;
+      synchronized (this)
+      {
+         image = used.get(key);
+         if (image == null)
+         {
+            image = stored.get(key);
+         }
+      }
+
+      boolean decoded = image == null || image.fileSize != fileSize || image.modified != modified;
+      if (decoded)
+      {
+         int[][] imageArray = DibDump.bmpToArray(fileName);
+         double[] pels = ImageWrapper.toGrayScale(imageArray, (double[]) null);
+         image = new Image(imageArray.length, imageArray.length == 0 ? 0 : imageArray[0].length, pels, fileSize,
+               modified);
+      }
+
+      synchronized (this)
+      {
+         changed |= decoded;
+         used.put(key, image);
+      }
+      return image;
+   } // public Image decode(String fileName)
+
+   /**
+    * Writes the images used since the cache was opened to the cache file, if that would change it. The file is
+    * written under a temporary name first and then moved into place, so an interrupted save never leaves a damaged
+    * cache behind.
+    */
+   public synchronized void save() throws IOException
+   {
+      if (filename == null || (!changed && used.size() == stored.size()))
+      {
+         return;
+      }
+
+      Path target = Paths.get(filename);
+      Path temporary = Paths.get(filename + ".tmp");
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         ByteBuffer header = ByteBuffer.allocate(3 * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+         header.putInt(MAGIC).putInt(VERSION).putInt(used.size());
+         header.flip();
+         writeFully(channel, header);
+
+         for (Map.Entry<String, Image> entry : used.entrySet())
+         {
+            byte[] path = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            Image image = entry.getValue();
+
+            ByteBuffer block = ByteBuffer.allocate(Integer.BYTES + path.length + 2 * Long.BYTES + 2 * Integer.BYTES +
+                  image.pels.length * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            block.putInt(path.length).put(path).putLong(image.fileSize).putLong(image.modified);
+            block.putInt(image.height).putInt(image.width);
+            block.asDoubleBuffer().put(image.pels);
+            block.clear();
+            writeFully(channel, block);
+         }
+      } // try (FileChannel channel = ...)
+
+      Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+      stored.clear();
+      stored.putAll(used);
+      changed = false;
+   } // public void save()
+
+   /**
+    * Writes all of a buffer to the end of a file channel.
+    *
+    * @param channel the channel to write to
+    * @param buffer  the buffer to write
+    */
+   private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException
+   {
+      while (buffer.hasRemaining())
+      {
+         channel.write(buffer);
+      }
+   }
+
+} // public final class ImageCache
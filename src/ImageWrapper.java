@@ -1,14 +1,22 @@
+import java.io.IOException;
+
 /**
  * Image Wrapper
  *
  * This class contains methods that deal with reading in and manipulating bmp files. It can convert an image array from
  * 2D to 1D and back, and can scale the pels so that they fall between zero and one. This is used so that the image can
- * be inputted into the neural network.
+ * be inputted into the neural network. The static toGrayScale and readGrayScale methods do the grayscale conversion and
+ * scaling in one pass, without allocating anything for each pel, into an array the caller can reuse.
  *
  * Methods in this class:
  * double[] toDoubleArray()
  * void     toGrayScale()
+ * int      luminance(int pel)
+ * double[] toGrayScale(int[][] imageArray, double[] output)
+ * float[]  toGrayScale(int[][] imageArray, float[] output)
+ * double[] readGrayScale(String fileName, double[] output)
  * void     toBMP(String fileName)
+ * void     toBMP(String fileName, int bitCount)
  * int      getHeight()
  * int      getWidth()
  *
@@ -20,6 +28,21 @@ public class ImageWrapper
 
    private final double SCALING_FACTOR = 1 << 24; // The amount to divide all pels by so that they are between 0 and 1
 
+   // The weight of each color in the luminance of a pel, in thousandths, the same ratios used by DibDump
+   private static final int RED_WEIGHT = 300;
+   private static final int GREEN_WEIGHT = 589;
+   private static final int BLUE_WEIGHT = 110;
+
+   private static final double[] GRAY_LEVELS = new double[256];   // each gray level divided by 255
+
+   static
+   {
+      for (int i = 0; i < GRAY_LEVELS.length; i++)
+      {
+         GRAY_LEVELS[i] = (double) i / 255.0;
+      }
+   }
+
    public int[][] imageArray;                     // The matrix containing all the pels of the image
 
    /**
@@ -28,7 +51,7 @@ public class ImageWrapper
     *
     * @param fileName the bmp file containing the image
     */
-   public ImageWrapper(String fileName)
+   public ImageWrapper(String fileName) throws IOException
    {
       imageArray = DibDump.bmpToArray(fileName);
       for (int i = 0; i < imageArray.length; i++)
@@ -110,6 +133,101 @@ public class ImageWrapper
       return imageDoubleArray;
    }
 
+   /**
+    * Finds the luminance of a pel as 0.3 red + 0.589 green + 0.11 blue, rounded half up, using only integer arithmetic.
+    * This is the gray level DibDump.colorToGrayscale gives, except for the few colors whose luminance is exactly
+    * halfway between two gray levels, which the floating point version sometimes rounds down.
+    *
+    * @param pel the color pel, any alpha channel is ignored
+    * @return the gray level, from 0 to 255
+    */
+   public static int luminance(int pel)
+   {
+      return (RED_WEIGHT * ((pel >> 16) & 0xFF) + GREEN_WEIGHT * ((pel >> 8) & 0xFF) + BLUE_WEIGHT * (pel & 0xFF) + 500)
+            / 1000;
+   }
+
+   /**
+    * Converts a matrix of color pels to grayscale values between zero and one in a single pass, row by row. Nothing is
+    * allocated for each pel, and the output array can be reused for any number of images of the same size.
+    *
+    * @param imageArray the matrix containing all the pels of the image
+    * @param output     the array to store height * width values in, or null to make a new one
+    * @return the output array
+    */
+   public static double[] toGrayScale(int[][] imageArray, double[] output)
+   {
+      int height = imageArray.length;
+      int width = height == 0 ? 0 : imageArray[0].length;
+      if (output == null)
+      {
+         output = new double[height * width];
+      }
+      else if (output.length < height * width)
+      {
+         throw new IllegalArgumentException("The output has room for " + output.length + " pels, not " +
+               height * width);
+      }
+
+      for (int r = 0; r < height; r++)
+      {
+         int[] row = imageArray[r];
+         int start = r * width;
+         for (int c = 0; c < width; c++)
+         {
+            output[start + c] = GRAY_LEVELS[luminance(row[c])];
+         }
+      }
+      return output;
+   } // public static double[] toGrayScale(int[][] imageArray, double[] output)
+
+   /**
+    * Converts a matrix of color pels to grayscale values between zero and one in a single pass, the same way as
+    * toGrayScale(int[][], double[]), but as floats.
+    *
+    * @param imageArray the matrix containing all the pels of the image
+    * @param output     the array to store height * width values in, or null to make a new one
+    * @return the output array
+    */
+   public static float[] toGrayScale(int[][] imageArray, float[] output)
+   {
+      int height = imageArray.length;
+      int width = height == 0 ? 0 : imageArray[0].length;
+      if (output == null)
+      {
+         output = new float[height * width];
+      }
+      else if (output.length < height * width)
+      {
+         throw new IllegalArgumentException("The output has room for " + output.length + " pels, not " +
+               height * width);
+      }
+
+      for (int r = 0; r < height; r++)
+      {
+         int[] row = imageArray[r];
+         int start = r * width;
+         for (int c = 0; c < width; c++)
+         {
+            output[start + c] = (float) GRAY_LEVELS[luminance(row[c])];
+         }
+      }
+      return output;
+   } // public static float[] toGrayScale(int[][] imageArray, float[] output)
+
+   /**
+    * Reads a bmp file and converts it straight to grayscale values between zero and one, without making an
+    * ImageWrapper or a grayscale copy of the image.
+    *
+    * @param fileName the bmp file containing the image
+    * @param output   the array to store the values in, or null to make a new one
+    * @return the output array
+    */
+   public static double[] readGrayScale(String fileName, double[] output) throws IOException
+   {
+      return toGrayScale(DibDump.bmpToArray(fileName), output);
+   }
+
    /**
     * Takes the imageArray instance variable and puts it in the given bmp file.
     *
@@ -120,6 +238,18 @@ public class ImageWrapper
       DibDump.imageArrayToBMP(imageArray, fileName);
    }
 
+   /**
+    * Takes the imageArray instance variable and puts it in the given bmp file with the given number of bits per pel,
+    * which can be 32 or 24 for true color or 8 for grayscale.
+    *
+    * @param fileName the file in which the image should go
+    * @param bitCount the number of bits per pel in the file
+    */
+   public void toBMP(String fileName, int bitCount)
+   {
+      DibDump.imageArrayToBMP(imageArray, fileName, bitCount);
+   }
+
    /**
     * Gets the height of the image array, or the number of rows
     *
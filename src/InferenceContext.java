@@ -0,0 +1,49 @@
+/**
+ * Inference Context
+ *
+ * The scratch space that one thread uses to run a NetworkModel: an array of activations for every layer after the
+ * input layer, plus the matrices used to propagate a batch of inputs at once. Contexts are made by
+ * NetworkModel.newContext() and can only be used with the model that made them. A context is not thread-safe, so every
+ * thread running a model at the same time needs its own.
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+public final class InferenceContext
+{
+   final int[] sizeOfLayers;      // the layer sizes of the model this context was made for
+   final double[][] activations;  // activations of each layer, the input layer is never stored
+
+   private double[][] batchActivations;   // row-major activation matrices for batches, created when first needed
+
+   /**
+    * Creates the activation arrays for a model with the given layer sizes.
+    *
+    * @param sizeOfLayers the number of processing units in each activation layer
+    */
+   InferenceContext(int[] sizeOfLayers)
+   {
+      this.sizeOfLayers = sizeOfLayers;
+
+      activations = new double[sizeOfLayers.length][];
+      for (int n = 1; n < sizeOfLayers.length; n++)
+      {
+         activations[n] = new double[sizeOfLayers[n]];
+      }
+   }
+
+   /**
+    * Gets the activation matrices used by NetworkModel.propagateBatch, creating them the first time.
+    *
+    * @return the batch activation arrays
+    */
+   double[][] getBatchActivations()
+   {
+      if (batchActivations == null)
+      {
+         batchActivations = NeuralNet.createBatchActivations(sizeOfLayers);
+      }
+      return batchActivations;
+   }
+
+} // public final class InferenceContext
@@ -0,0 +1,179 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR Training Listener
+ *
+ * Records the metrics of training as Java Flight Recorder events, so that a run can be profiled by starting the JVM
+ * with -XX:StartFlightRecording, or by starting a recording with jcmd while it runs, and opening the recording in JDK
+ * Mission Control or printing it with "jfr print --categories 'Neural Nets'". Three kinds of events are recorded:
+ *
+ * neuralnets.DataLoad - how long the training data took to load
+ * neuralnets.Epoch    - the time of each phase of an epoch, its speed and its error
+ * neuralnets.Layer    - the time of the forward pass, backward pass and updates of one layer during an epoch
+ *
+ * The events are only made when a recording that includes them is running, so without one this listener costs
+ * nothing beyond the measuring that every listener turns on.
+ *
+ * Methods in this class:
+ * void dataLoaded(String source, int cases, long nanos)
+ * void epochFinished(TrainingMetrics metrics)
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+public class JfrTrainingListener implements TrainingListener
+{
+   /**
+    * The event recorded once the training data has been loaded.
+    */
+   @Name("neuralnets.DataLoad")
+   @Label("Training Data Load")
+   @Category("Neural Nets")
+   @StackTrace(false)
+   static class DataLoadEvent extends Event
+   {
+      @Label("Source")
+      String source;
+
+      @Label("Cases")
+      int cases;
+
+      @Label("Load Time")
+      @Timespan(Timespan.NANOSECONDS)
+      long loadTime;
+   }
+
+   /**
+    * The event recorded at the end of every epoch.
+    */
+   @Name("neuralnets.Epoch")
+   @Label("Training Epoch")
+   @Category("Neural Nets")
+   @StackTrace(false)
+   static class EpochEvent extends Event
+   {
+      @Label("Epoch")
+      int epoch;
+
+      @Label("Epoch Time")
+      @Timespan(Timespan.NANOSECONDS)
+      long epochTime;
+
+      @Label("Forward Time")
+      @Description("Thread time of the forward passes of training")
+      @Timespan(Timespan.NANOSECONDS)
+      long forwardTime;
+
+      @Label("Backward Time")
+      @Description("Thread time of the backward passes, including weight changes when the batch size is 1")
+      @Timespan(Timespan.NANOSECONDS)
+      long backwardTime;
+
+      @Label("Update Time")
+      @Description("Thread time of applying the gradients of batches")
+      @Timespan(Timespan.NANOSECONDS)
+      long updateTime;
+
+      @Label("Error Evaluation Time")
+      @Timespan(Timespan.NANOSECONDS)
+      long errorEvaluationTime;
+
+      @Label("Samples")
+      long samples;
+
+      @Label("Samples per Second")
+      double samplesPerSecond;
+
+      @Label("GFLOP/s")
+      double gflops;
+
+      @Label("Error")
+      double error;
+
+      @Label("Learning Rate")
+      double learningRate;
+   } // static class EpochEvent extends Event
+
+   /**
+    * The event recorded for each connectivity layer at the end of every epoch.
+    */
+   @Name("neuralnets.Layer")
+   @Label("Training Layer")
+   @Category("Neural Nets")
+   @StackTrace(false)
+   static class LayerEvent extends Event
+   {
+      @Label("Epoch")
+      int epoch;
+
+      @Label("Layer")
+      int layer;
+
+      @Label("Forward Time")
+      @Timespan(Timespan.NANOSECONDS)
+      long forwardTime;
+
+      @Label("Backward Time")
+      @Timespan(Timespan.NANOSECONDS)
+      long backwardTime;
+
+      @Label("Update Time")
+      @Timespan(Timespan.NANOSECONDS)
+      long updateTime;
+   } // static class LayerEvent extends Event
+
+   @Override
+   public void dataLoaded(String source, int cases, long nanos)
+   {
+      DataLoadEvent event = new DataLoadEvent();
+      if (event.shouldCommit())
+      {
+         event.source = source;
+         event.cases = cases;
+         event.loadTime = nanos;
+         event.commit();
+      }
+   }
+
+   @Override
+   public void epochFinished(TrainingMetrics metrics)
+   {
+      EpochEvent epochEvent = new EpochEvent();
+      if (epochEvent.shouldCommit())
+      {
+         epochEvent.epoch = metrics.getEpoch();
+         epochEvent.epochTime = metrics.getEpochNanos();
+         epochEvent.forwardTime = metrics.getNanos(TrainingMetrics.Phase.FORWARD);
+         epochEvent.backwardTime = metrics.getNanos(TrainingMetrics.Phase.BACKWARD);
+         epochEvent.updateTime = metrics.getNanos(TrainingMetrics.Phase.UPDATE);
+         epochEvent.errorEvaluationTime = metrics.getNanos(TrainingMetrics.Phase.ERROR_EVALUATION);
+         epochEvent.samples = metrics.getSamples();
+         epochEvent.samplesPerSecond = metrics.getSamplesPerSecond();
+         epochEvent.gflops = metrics.getGflops();
+         epochEvent.error = metrics.getError();
+         epochEvent.learningRate = metrics.getLearningRate();
+         epochEvent.commit();
+      }
+
+      for (int n = 0; n < metrics.getNumOfLayers(); n++)
+      {
+         LayerEvent layerEvent = new LayerEvent();
+         if (layerEvent.shouldCommit())
+         {
+            layerEvent.epoch = metrics.getEpoch();
+            layerEvent.layer = n;
+            layerEvent.forwardTime = metrics.getLayerNanos(TrainingMetrics.Phase.FORWARD, n);
+            layerEvent.backwardTime = metrics.getLayerNanos(TrainingMetrics.Phase.BACKWARD, n);
+            layerEvent.updateTime = metrics.getLayerNanos(TrainingMetrics.Phase.UPDATE, n);
+            layerEvent.commit();
+         }
+      }
+   } // public void epochFinished(TrainingMetrics metrics)
+
+} // public class JfrTrainingListener implements TrainingListener
@@ -0,0 +1,470 @@
+/**
+ * Kernels
+ *
+ * The innermost loops of NeuralNet and FloatNeuralNet: the dot product of a row of weights with a layer for the
+ * forward pass, the projection of psi back into omega, and the updates of the weights and gradients. This class holds
+ * the plain scalar loops. VectorKernels, in the vector source folder, overrides them with loops written with the
+ * incubating Vector API of jdk.incubator.vector, so that they run several values at a time with the widest SIMD
+ * instructions the processor has.
+ *
+ * INSTANCE is chosen once, the first time the kernels are used. VectorKernels is used if it was compiled and is on
+ * the class path, the JVM was started with --add-modules jdk.incubator.vector and VectorKernels.isSupported finds
+ * vectors wider than one double; otherwise these scalar loops are used instead, so the rest of the program never
+ * needs the module to compile or run. To build and run with the vector kernels:
+ *
+ * javac -d out src/*.java
+ * javac --add-modules jdk.incubator.vector -cp out -d out vector/VectorKernels.java
+ * java --add-modules jdk.incubator.vector -cp out Main
+ *
+ * The projection of omega and the updates are done one element at a time in both versions, with a separate multiply
+ * and add just like the scalar loops, so they give exactly the same results. Only the dot products can differ: the
+ * vector version adds the products up in several lanes and combines the lanes at the end, which rounds differently
+ * from adding them in order. For a dot product of n terms the two results differ by at most 2 * n * u times the sum of
+ * the absolute values of the products, where u is the unit roundoff (2^-53 for doubles, 2^-24 for floats), and in
+ * practice by a few units in the last place. The batched products in propagateLayerBatch stay scalar, so errors found
+ * by calculateError can differ from the outputs of propagate by the same amount.
+ *
+ * The sparse kernels walk only the weights of the inputs listed in a SparseInput. They are scalar in both versions,
+ * since the indices are scattered, and add the products up in the order of the list, which is the order of the dense
+ * scalar loops with the zero terms left out.
+ *
+ * The kernels that update weights also come in a version that takes the pruned mask of the layer, which marks the
+ * weights that a pruned network holds at 0. Those weights are left as they are, so they stay at 0 without being set
+ * back after every update. A null mask updates every weight, in the same way as the version without a mask.
+ *
+ * Methods in this class:
+ * Kernels load()
+ * String  getName()
+ * double  dot(double[] w, int row, double[] x, int size)
+ * float   dot(float[] w, int row, float[] x, int size)
+ * void    addScaled(double[] y, int yOffset, double[] x, int xOffset, int size, double a)
+ * void    addScaled(float[] y, int yOffset, float[] x, int xOffset, int size, float a)
+ * void    addScaled(double[] y, int yOffset, double[] x, int xOffset, int size, double a, boolean[] pruned)
+ * void    addScaled(float[] y, int yOffset, float[] x, int xOffset, int size, float a, boolean[] pruned)
+ * void    backProject(double[] w, int row, double[] prev, double[] omega, int size, double psi, double step)
+ * void    backProject(float[] w, int row, float[] prev, float[] omega, int size, float psi, float step)
+ * void    backProject(double[] w, int row, double[] prev, double[] omega, int size, double psi, double step,
+ *                     boolean[] pruned)
+ * void    backProject(float[] w, int row, float[] prev, float[] omega, int size, float psi, float step,
+ *                     boolean[] pruned)
+ * double  sparseDot(double[] w, int row, int[] indices, double[] values, int count)
+ * float   sparseDot(float[] w, int row, int[] indices, float[] values, int count)
+ * void    addScaledSparse(double[] y, int yOffset, int[] indices, double[] values, int count, double a)
+ * void    addScaledSparse(float[] y, int yOffset, int[] indices, float[] values, int count, float a)
+ * void    addScaledSparse(double[] y, int yOffset, int[] indices, double[] values, int count, double a,
+ *                         boolean[] pruned)
+ * void    addScaledSparse(float[] y, int yOffset, int[] indices, float[] values, int count, float a,
+ *                         boolean[] pruned)
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+class Kernels
+{
+   static final Kernels INSTANCE = load();    // the kernels used by every network
+
+   /**
+    * Creates the scalar kernels.
+    */
+   Kernels()
+   {
+   }
+
+   /**
+    * Loads the vector kernels if they and the jdk.incubator.vector module are available and VectorKernels.isSupported
+    * says that the processor has vectors worth using, or the scalar kernels if not.
+    *
+    * @return the kernels to use
+    */
+   private static Kernels load()
+   {
+      try
+      {
+         Class<?> vectorKernels = Class.forName("VectorKernels");
+         if (!(Boolean) vectorKernels.getDeclaredMethod("isSupported").invoke(null))
+         {
+            return new Kernels();
+         }
+         return (Kernels) vectorKernels.getDeclaredConstructor().newInstance();
+      }
+      catch (ReflectiveOperationException | LinkageError e)
+      {
+         return new Kernels();
+      }
+   }
+
+   /**
+    * Gets a short description of these kernels, for printing.
+    *
+    * @return the name of the kernels
+    */
+   String getName()
+   {
+      return "scalar";
+   }
+
+   /**
+    * Calculates the dot product of one row of weights with the activations of a layer.
+    *
+    * @param w    the flat row-major weights between two layers
+    * @param row  the index in w where the row starts
+    * @param x    the activations of the layer
+    * @param size the number of nodes in the layer
+    * @return the dot product
+    */
+   double dot(double[] w, int row, double[] x, int size)
+   {
+      double sum = 0.0;
+      for (int j = 0; j < size; j++)
+      {
+         sum += w[row + j] * x[j];
+      }
+      return sum;
+   }
+
+   /**
+    * Calculates the dot product of one row of weights with the activations of a layer, added up as a float.
+    *
+    * @param w    the flat row-major weights between two layers
+    * @param row  the index in w where the row starts
+    * @param x    the activations of the layer
+    * @param size the number of nodes in the layer
+    * @return the dot product
+    */
+   float dot(float[] w, int row, float[] x, int size)
+   {
+      float sum = 0.0f;
+      for (int j = 0; j < size; j++)
+      {
+         sum += w[row + j] * x[j];
+      }
+      return sum;
+   }
+
+   /**
+    * Adds a multiple of one array to another, element by element: y[yOffset + j] += a * x[xOffset + j]. This updates a
+    * row of weights or gradients from the activations of a layer, or projects psi back into omega through a row of
+    * weights.
+    *
+    * @param y       the array to add to
+    * @param yOffset the index in y to start at
+    * @param x       the array to add a multiple of
+    * @param xOffset the index in x to start at
+    * @param size    the number of elements
+    * @param a       the multiple of x to add
+    */
+   void addScaled(double[] y, int yOffset, double[] x, int xOffset, int size, double a)
+   {
+      for (int j = 0; j < size; j++)
+      {
+         y[yOffset + j] += a * x[xOffset + j];
+      }
+   }
+
+   /**
+    * Adds a multiple of one array of floats to another, element by element, in the same way as the double version.
+    *
+    * @param y       the array to add to
+    * @param yOffset the index in y to start at
+    * @param x       the array to add a multiple of
+    * @param xOffset the index in x to start at
+    * @param size    the number of elements
+    * @param a       the multiple of x to add
+    */
+   void addScaled(float[] y, int yOffset, float[] x, int xOffset, int size, float a)
+   {
+      for (int j = 0; j < size; j++)
+      {
+         y[yOffset + j] += a * x[xOffset + j];
+      }
+   }
+
+   /**
+    * Adds a multiple of the activations of a layer to a row of weights, leaving the pruned weights as they are.
+    *
+    * @param y       the weights to add to
+    * @param yOffset the index in y to start at
+    * @param x       the array to add a multiple of
+    * @param xOffset the index in x to start at
+    * @param size    the number of elements
+    * @param a       the multiple of x to add
+    * @param pruned  the pruned mask of the layer, laid out like y, or null if no weights are pruned
+    */
+   void addScaled(double[] y, int yOffset, double[] x, int xOffset, int size, double a, boolean[] pruned)
+   {
+      if (pruned == null)
+      {
+         addScaled(y, yOffset, x, xOffset, size, a);
+         return;
+      }
+
+      for (int j = 0; j < size; j++)
+      {
+         if (!pruned[yOffset + j])
+         {
+            y[yOffset + j] += a * x[xOffset + j];
+         }
+      }
+   } // void addScaled(double[] y, int yOffset, double[] x, int xOffset, int size, double a, boolean[] pruned)
+
+   /**
+    * Adds a multiple of the float activations of a layer to a row of float weights, leaving the pruned weights as they
+    * are, in the same way as the double version.
+    *
+    * @param y       the weights to add to
+    * @param yOffset the index in y to start at
+    * @param x       the array to add a multiple of
+    * @param xOffset the index in x to start at
+    * @param size    the number of elements
+    * @param a       the multiple of x to add
+    * @param pruned  the pruned mask of the layer, laid out like y, or null if no weights are pruned
+    */
+   void addScaled(float[] y, int yOffset, float[] x, int xOffset, int size, float a, boolean[] pruned)
+   {
+      if (pruned == null)
+      {
+         addScaled(y, yOffset, x, xOffset, size, a);
+         return;
+      }
+
+      for (int j = 0; j < size; j++)
+      {
+         if (!pruned[yOffset + j])
+         {
+            y[yOffset + j] += a * x[xOffset + j];
+         }
+      }
+   } // void addScaled(float[] y, int yOffset, float[] x, int xOffset, int size, float a, boolean[] pruned)
+
+   /**
+    * Walks one row of weights once to both project psi back into omega and update the weights, as backprop does for
+    * every row of a hidden layer. Each omega is found with the weight before it is changed.
+    *
+    * @param w     the flat row-major weights between two layers
+    * @param row   the index in w where the row starts
+    * @param prev  the activations of the previous layer
+    * @param omega the omega values of the previous layer to add to
+    * @param size  the number of nodes in the previous layer
+    * @param psi   the psi of the node of the next layer that the row goes into
+    * @param step  the learning rate times psi
+    */
+   void backProject(double[] w, int row, double[] prev, double[] omega, int size, double psi, double step)
+   {
+      for (int j = 0; j < size; j++)
+      {
+         omega[j] += psi * w[row + j];      // omega_j = sum of (psi_i * w_ji)
+         w[row + j] += step * prev[j];      // deltaWeights_ji = a_j * psi_i
+      }
+   }
+
+   /**
+    * Walks one row of float weights once to both project psi back into omega and update the weights, in the same way
+    * as the double version.
+    *
+    * @param w     the flat row-major weights between two layers
+    * @param row   the index in w where the row starts
+    * @param prev  the activations of the previous layer
+    * @param omega the omega values of the previous layer to add to
+    * @param size  the number of nodes in the previous layer
+    * @param psi   the psi of the node of the next layer that the row goes into
+    * @param step  the learning rate times psi
+    */
+   void backProject(float[] w, int row, float[] prev, float[] omega, int size, float psi, float step)
+   {
+      for (int j = 0; j < size; j++)
+      {
+         omega[j] += psi * w[row + j];      // omega_j = sum of (psi_i * w_ji)
+         w[row + j] += step * prev[j];      // deltaWeights_ji = a_j * psi_i
+      }
+   }
+
+   /**
+    * Walks one row of weights once to both project psi back into omega and update the weights, leaving the pruned
+    * weights as they are. The pruned weights are 0, so they add nothing to omega.
+    *
+    * @param w      the flat row-major weights between two layers
+    * @param row    the index in w where the row starts
+    * @param prev   the activations of the previous layer
+    * @param omega  the omega values of the previous layer to add to
+    * @param size   the number of nodes in the previous layer
+    * @param psi    the psi of the node of the next layer that the row goes into
+    * @param step   the learning rate times psi
+    * @param pruned the pruned mask of the layer, laid out like w, or null if no weights are pruned
+    */
+   void backProject(double[] w, int row, double[] prev, double[] omega, int size, double psi, double step,
+                    boolean[] pruned)
+   {
+      if (pruned == null)
+      {
+         backProject(w, row, prev, omega, size, psi, step);
+         return;
+      }
+
+      for (int j = 0; j < size; j++)
+      {
+         omega[j] += psi * w[row + j];      // omega_j = sum of (psi_i * w_ji)
+         if (!pruned[row + j])
+         {
+            w[row + j] += step * prev[j];   // deltaWeights_ji = a_j * psi_i
+         }
+      }
+   } // void backProject(double[] w, int row, double[] prev, double[] omega, int size, double psi, double step, ...)
+
+   /**
+    * Walks one row of float weights once to both project psi back into omega and update the weights, leaving the
+    * pruned weights as they are, in the same way as the double version.
+    *
+    * @param w      the flat row-major weights between two layers
+    * @param row    the index in w where the row starts
+    * @param prev   the activations of the previous layer
+    * @param omega  the omega values of the previous layer to add to
+    * @param size   the number of nodes in the previous layer
+    * @param psi    the psi of the node of the next layer that the row goes into
+    * @param step   the learning rate times psi
+    * @param pruned the pruned mask of the layer, laid out like w, or null if no weights are pruned
+    */
+   void backProject(float[] w, int row, float[] prev, float[] omega, int size, float psi, float step,
+                    boolean[] pruned)
+   {
+      if (pruned == null)
+      {
+         backProject(w, row, prev, omega, size, psi, step);
+         return;
+      }
+
+      for (int j = 0; j < size; j++)
+      {
+         omega[j] += psi * w[row + j];      // omega_j = sum of (psi_i * w_ji)
+         if (!pruned[row + j])
+         {
+            w[row + j] += step * prev[j];   // deltaWeights_ji = a_j * psi_i
+         }
+      }
+   } // void backProject(float[] w, int row, float[] prev, float[] omega, int size, float psi, float step, ...)
+
+   /**
+    * Calculates the dot product of one row of weights with the inputs listed in a SparseInput.
+    *
+    * @param w       the flat row-major weights between the input layer and the first hidden layer
+    * @param row     the index in w where the row starts
+    * @param indices the index of each listed input
+    * @param values  the value of each listed input
+    * @param count   the number of listed inputs
+    * @return the dot product
+    */
+   double sparseDot(double[] w, int row, int[] indices, double[] values, int count)
+   {
+      double sum = 0.0;
+      for (int k = 0; k < count; k++)
+      {
+         sum += w[row + indices[k]] * values[k];
+      }
+      return sum;
+   }
+
+   /**
+    * Calculates the dot product of one row of float weights with the inputs listed in a SparseInput, added up as a
+    * float.
+    *
+    * @param w       the flat row-major weights between the input layer and the first hidden layer
+    * @param row     the index in w where the row starts
+    * @param indices the index of each listed input
+    * @param values  the value of each listed input
+    * @param count   the number of listed inputs
+    * @return the dot product
+    */
+   float sparseDot(float[] w, int row, int[] indices, float[] values, int count)
+   {
+      float sum = 0.0f;
+      for (int k = 0; k < count; k++)
+      {
+         sum += w[row + indices[k]] * values[k];
+      }
+      return sum;
+   }
+
+   /**
+    * Adds a multiple of the inputs listed in a SparseInput to a row of weights or gradients: y[yOffset + indices[k]]
+    * += a * values[k]. The elements for the inputs that are not listed would only have 0 added to them.
+    *
+    * @param y       the array to add to
+    * @param yOffset the index in y where the row starts
+    * @param indices the index of each listed input
+    * @param values  the value of each listed input
+    * @param count   the number of listed inputs
+    * @param a       the multiple of the inputs to add
+    */
+   void addScaledSparse(double[] y, int yOffset, int[] indices, double[] values, int count, double a)
+   {
+      for (int k = 0; k < count; k++)
+      {
+         y[yOffset + indices[k]] += a * values[k];
+      }
+   }
+
+   /**
+    * Adds a multiple of the float inputs listed in a SparseInput to a row of float weights or gradients, in the same
+    * way as the double version.
+    *
+    * @param y       the array to add to
+    * @param yOffset the index in y where the row starts
+    * @param indices the index of each listed input
+    * @param values  the value of each listed input
+    * @param count   the number of listed inputs
+    * @param a       the multiple of the inputs to add
+    */
+   void addScaledSparse(float[] y, int yOffset, int[] indices, float[] values, int count, float a)
+   {
+      for (int k = 0; k < count; k++)
+      {
+         y[yOffset + indices[k]] += a * values[k];
+      }
+   }
+
+   /**
+    * Adds a multiple of the inputs listed in a SparseInput to a row of weights, leaving the pruned weights as they are.
+    *
+    * @param y       the weights to add to
+    * @param yOffset the index in y where the row starts
+    * @param indices the index of each listed input
+    * @param values  the value of each listed input
+    * @param count   the number of listed inputs
+    * @param a       the multiple of the inputs to add
+    * @param pruned  the pruned mask of the layer, laid out like y, or null if no weights are pruned
+    */
+   void addScaledSparse(double[] y, int yOffset, int[] indices, double[] values, int count, double a,
+                        boolean[] pruned)
+   {
+      for (int k = 0; k < count; k++)
+      {
+         if (pruned == null || !pruned[yOffset + indices[k]])
+         {
+            y[yOffset + indices[k]] += a * values[k];
+         }
+      }
+   }
+
+   /**
+    * Adds a multiple of the float inputs listed in a SparseInput to a row of float weights, leaving the pruned weights
+    * as they are, in the same way as the double version.
+    *
+    * @param y       the weights to add to
+    * @param yOffset the index in y where the row starts
+    * @param indices the index of each listed input
+    * @param values  the value of each listed input
+    * @param count   the number of listed inputs
+    * @param a       the multiple of the inputs to add
+    * @param pruned  the pruned mask of the layer, laid out like y, or null if no weights are pruned
+    */
+   void addScaledSparse(float[] y, int yOffset, int[] indices, float[] values, int count, float a, boolean[] pruned)
+   {
+      for (int k = 0; k < count; k++)
+      {
+         if (pruned == null || !pruned[yOffset + indices[k]])
+         {
+            y[yOffset + indices[k]] += a * values[k];
+         }
+      }
+   }
+
+} // class Kernels
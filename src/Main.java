@@ -1,8 +1,20 @@
-import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Error Minimization
@@ -15,7 +27,8 @@ import java.util.Scanner;
  * rate and learning rate multiplier, the number of epochs that will be run, and the minimum error for the network. In
  * the image training data file, the user gives the filenames of all input and expected bmp files. The training data
  * file contains the number of training cases and the input and output arrays for each training case.  The weights file
- * is where the weights are stored after the neural net completes its training.
+ * is where the weights are stored after the neural net completes its training. If its name ends in .bin, the weights
+ * are stored in a binary format that loads much faster than the text one.
  *
  * While running, this class will repeatedly randomize the weights and train the network so as to find a set of weights
  * that lead to a minimum error. After the network is run, if the data was manually inputted, the error and the outputs
@@ -26,6 +39,11 @@ import java.util.Scanner;
  * void         getConfig(String filename)
  * double[][][] getTrainingData(String filename
  * void         loadImages(String inFileName, String outFileName)
+ * double[][][] loadImageData(String inFileName)
+ * double[][][] decodeImages(String inFileName, ImageCache cache)
+ * AbstractNeuralNet createNetwork()
+ * void         reportDataLoaded(String source, int cases, long start)
+ * Checkpointer prepareCheckpoints(AbstractNeuralNet nn)
  * void         minimizeBMP()
  * void         minimizeManual()
  * void         main(String[] args)
@@ -42,17 +60,37 @@ public class Main
    static String trainingImageFile = "trainingImageFiles.txt";
    static String trainingImageRawDataFile = "trainingImageRawData.txt";
    static String outputImageFile = "images/output.bmp";
+   static String imageCacheFile = "imageCache.bin";   // decoded images kept between runs, null to turn it off
+   static String checkpointFile = "checkpoint.bin";   // the latest snapshot of a network being trained
+
+   // the number of threads that decode images, and how many of the slowest images to report
+   static int imageThreads = Runtime.getRuntime().availableProcessors();
+   static final int SLOWEST_IMAGES = 5;
 
    // meta values that configure the training of the neural net
    static int[] layers;
    static double minWeight;
    static double maxWeight;
    static double learningRate;
+   static int batchSize;
+   static int threads = 1;
    static double lambdaMult;
    static int epochs;
    static int maxIterations;
+   static int parallelRestarts = 1;
    static double errorThreshold;
+   static AbstractNeuralNet.ErrorEvaluation errorEvaluation = AbstractNeuralNet.ErrorEvaluation.FULL;
+   static int evaluationSize = 1;
    static int printingRate;
+   static AbstractNeuralNet.Precision precision = AbstractNeuralNet.Precision.DOUBLE;
+   static AbstractNeuralNet.Precision accumulation = AbstractNeuralNet.Precision.DOUBLE;
+   static Activation[] activations = {Activation.SIGMOID};
+   static List<TrainingListener> trainingListeners = new ArrayList<TrainingListener>();
+   static int checkpointEpochs;
+   static double checkpointMinutes;
+   static boolean resume;
+   static Optimizer optimizer = Optimizer.SGD;
+   static double sparseThreshold = -1.0;
    static int imHeight;
    static int imWidth;
 
@@ -67,52 +105,136 @@ public class Main
     * Min Weight - the smallest value that the weights can be randomized to
     * Max Weight - the largest value that the weights can be randomized to
     * Learning Rate - the initial learning rate of the network
+    * Batch Size - the number of training cases whose gradients are combined into each weight update
+    * Threads - the number of threads that the training cases of each batch are split between
     * Lambda Multiplier - how much to multiply the learning rate by each epoch
     * Epochs - the number of epochs to run
     * Maximum Iterations - the maximum number of times to randomize the weights of the network and retrain it
+    * Parallel Restarts - how many of those randomized networks are trained at the same time
     * Error Threshold - the neural net stops when it goes below this error
+    * Error Evaluation - how the error is measured during training: full, running, interval or sample
+    * Evaluation Size - the number of weight updates between errors for interval, or the number of cases for sample
     * Printing Rate - how often to print the error during training
+    * Precision - whether the network stores its weights, activations and scratch arrays as double or float
+    * Accumulation - whether a float network adds up its sums as double or float
+    * Activations - the activation function of each layer after the input layer, such as sigmoid, tanh, relu,
+    *    leaky-relu, identity, fast-sigmoid or fast-tanh, space-separated; a single one is used for every layer
+    * Metrics - where to report the time of each phase of training: off, print, jfr or all (print and jfr)
+    * Checkpoint Epochs - the number of epochs between checkpoints of the network being trained, 0 for none
+    * Checkpoint Minutes - the number of minutes between checkpoints, 0 for none
+    * Resume - whether training continues from the checkpoint file, if there is one, instead of starting over
+    * Optimizer - how the weights are changed by their gradients: sgd, momentum, nesterov or adam; the others take a
+    *    much smaller learning rate than sgd, and a lambda multiplier of 1 with running error evaluation
+    * Sparse Threshold - inputs at most this far from 0 are skipped in the first layer when most inputs are, or off to
+    *    always use every input; 0 skips only exact zeros, which leaves the results the same
     *
     * @param filename the file to read the configuration from
     */
-   static void getConfig(String filename) throws FileNotFoundException
+   static void getConfig(String filename) throws IOException
    {
-      Scanner sc = new Scanner(new FileReader(filename));
+      NumberReader reader = new NumberReader(filename);
 
-      sc.nextLine();
-      String[] line = sc.nextLine().split(" ");
+      reader.skipLine();
+      List<Integer> line = new ArrayList<Integer>();
+      while (reader.hasNextOnLine())
+      {
+         line.add(reader.nextInt());
+      }
 
-      int numLayers = line.length + 2;
+      int numLayers = line.size() + 2;
       layers = new int[numLayers];
       for (int i = 1; i < numLayers - 1; i++)
       {
-         layers[i] = Integer.parseInt(line[i - 1]);
+         layers[i] = line.get(i - 1);
       }
 
-      sc.next();
-      minWeight = sc.nextDouble();
+      reader.nextToken();
+      minWeight = reader.nextDouble();
+
+      reader.nextToken();
+      maxWeight = reader.nextDouble();
+
+      reader.nextToken();
+      learningRate = reader.nextDouble();
+
+      reader.nextToken();
+      batchSize = reader.nextInt();
 
-      sc.next();
-      maxWeight = sc.nextDouble();
+      reader.nextToken();
+      threads = reader.nextInt();
 
-      sc.next();
-      learningRate = sc.nextDouble();
+      reader.nextToken();
+      lambdaMult = reader.nextDouble();
 
-      sc.next();
-      lambdaMult = sc.nextDouble();
+      reader.nextToken();
+      epochs = reader.nextInt();
 
-      sc.next();
-      epochs = sc.nextInt();
+      reader.nextToken();
+      maxIterations = reader.nextInt();
 
-      sc.next();
-      maxIterations = sc.nextInt();
+      reader.nextToken();
+      parallelRestarts = reader.nextInt();
 
-      sc.next();
-      errorThreshold = sc.nextDouble();
+      reader.nextToken();
+      errorThreshold = reader.nextDouble();
       errorThreshold *= errorThreshold;
 
-      sc.next();
-      printingRate = sc.nextInt();
+      reader.nextToken();
+      errorEvaluation = AbstractNeuralNet.ErrorEvaluation.valueOf(reader.nextToken().toUpperCase(Locale.ROOT));
+
+      reader.nextToken();
+      evaluationSize = reader.nextInt();
+
+      reader.nextToken();
+      printingRate = reader.nextInt();
+
+      reader.nextToken();
+      precision = AbstractNeuralNet.Precision.valueOf(reader.nextToken().toUpperCase(Locale.ROOT));
+
+      reader.nextToken();
+      accumulation = AbstractNeuralNet.Precision.valueOf(reader.nextToken().toUpperCase(Locale.ROOT));
+
+      reader.nextToken();
+      List<Activation> functions = new ArrayList<Activation>();
+      while (reader.hasNextOnLine())
+      {
+         functions.add(Activation.parse(reader.nextToken()));
+      }
+      activations = functions.toArray(new Activation[0]);
+
+      reader.nextToken();
+      String metrics = reader.nextToken().toLowerCase(Locale.ROOT);
+      trainingListeners = new ArrayList<TrainingListener>();
+      if (metrics.equals("print") || metrics.equals("all"))
+      {
+         trainingListeners.add(new PrintingTrainingListener(printingRate == 0 ? 1 : epochs / printingRate));
+      }
+      if (metrics.equals("jfr") || metrics.equals("all"))
+      {
+         trainingListeners.add(new JfrTrainingListener());
+      }
+      if (!metrics.equals("off") && trainingListeners.isEmpty())
+      {
+         throw new IllegalArgumentException("Metrics must be off, print, jfr or all, was " + metrics);
+      }
+
+      reader.nextToken();
+      checkpointEpochs = reader.nextInt();
+
+      reader.nextToken();
+      checkpointMinutes = reader.nextDouble();
+
+      reader.nextToken();
+      resume = Boolean.parseBoolean(reader.nextToken());
+
+      reader.nextToken();
+      optimizer = Optimizer.parse(reader.nextToken());
+
+      reader.nextToken();
+      String threshold = reader.nextToken();
+      sparseThreshold = threshold.equalsIgnoreCase("off") ? -1.0 : Double.parseDouble(threshold);
+
+      reader.close();
    } // static void getConfig(String filename)
 
    /**
@@ -137,17 +259,34 @@ public class Main
     *
     * In this case, there are 3 test cases, each with 2 input nodes and 1 output node.
     *
+    * The file can also be a binary dataset made by TrainingDataset.convert, which is recognized by its magic number
+    * and memory mapped instead of parsed. Training takes the cases as arrays on the heap, so the mapped cases are still
+    * copied into the matrix in bulk; only code that uses a TrainingDataset directly, through getInput and getOutput,
+    * reads the cases without copying them. Text files are parsed by a NumberReader, with several threads if they are
+    * large.
+    *
     * @param filename the file to read the training data from
     * @return the matrix of training data
     */
-   static double[][][] getTrainingData(String filename) throws FileNotFoundException
+   static double[][][] getTrainingData(String filename) throws IOException
    {
-      Scanner sc = new Scanner(new FileReader(filename));
+      if (TrainingDataset.isBinaryDatasetFile(filename))
+      {
+         TrainingDataset dataset = new TrainingDataset(filename);
+
+         // Set size of first and last layer
+         layers[0] = dataset.getInputSize();
+         layers[layers.length - 1] = dataset.getOutputSize();
+
+         return dataset.toTrainingData();
+      }
+
+      NumberReader reader = new NumberReader(filename);
 
       // Read sizes
-      int sizeOfData = sc.nextInt();
-      int sizeOfInput = sc.nextInt();
-      int sizeOfOutput = sc.nextInt();
+      int sizeOfData = reader.nextInt();
+      int sizeOfInput = reader.nextInt();
+      int sizeOfOutput = reader.nextInt();
 
       // Set size of first and last layer
       layers[0] = sizeOfInput;
@@ -155,13 +294,34 @@ public class Main
 
       double[][][] trainingData = new double[sizeOfData][2][];
 
+      long numOfValues = (long) sizeOfData * (sizeOfInput + sizeOfOutput);
+      int parsingThreads = NumberReader.parsingThreads(filename);
+      if (parsingThreads > 1 && numOfValues <= Integer.MAX_VALUE)
+      {
+         // Parse a large file with several threads, then split the values into the cases
+         reader.skipLine();
+         double[] values = NumberReader.parseParallel(filename, reader.position(), (int) numOfValues, reader.isStrict(),
+               parsingThreads);
+         reader.close();
+
+         int index = 0;
+         for (int i = 0; i < sizeOfData; i++)
+         {
+            trainingData[i][0] = Arrays.copyOfRange(values, index, index + sizeOfInput);
+            index += sizeOfInput;
+            trainingData[i][1] = Arrays.copyOfRange(values, index, index + sizeOfOutput);
+            index += sizeOfOutput;
+         }
+         return trainingData;
+      } // if (parsingThreads > 1 && numOfValues <= Integer.MAX_VALUE)
+
       for (int i = 0; i < sizeOfData; i++)
       {
          // Read input data
          double[] inputData = new double[sizeOfInput];
          for (int j = 0; j < sizeOfInput; j++)
          {
-            inputData[j] = sc.nextDouble();
+            inputData[j] = reader.nextDouble();
          }
          trainingData[i][0] = inputData;
 
@@ -169,10 +329,11 @@ public class Main
          double[] outputData = new double[sizeOfOutput];
          for (int j = 0; j < sizeOfOutput; j++)
          {
-            outputData[j] = sc.nextDouble();
+            outputData[j] = reader.nextDouble();
          }
          trainingData[i][1] = outputData;
       }
+      reader.close();
 
       return trainingData;
    }
@@ -182,78 +343,270 @@ public class Main
     * file. The structure of the input file is as follows: The first line has the number of training cases, the height
     * of each image and the width of each image. Then, the next lines contain the input file and the expected output
     * file. While doing so, the function stores the height and width of the images so they can be converted back later.
+    * The images are decoded in parallel by decodeImages, but are printed in the order of the input file.
     *
     * @param inFileName  the name of the input file containing the bitmaps
     * @param outFileName the name of the output file to print the training data
     */
-   static void loadImages(String inFileName, String outFileName) throws FileNotFoundException
+   static void loadImages(String inFileName, String outFileName) throws IOException
    {
-      Scanner sc = new Scanner(new FileReader(inFileName));
+      double[][][] trainingData = decodeImages(inFileName, new ImageCache(null));
+
       PrintWriter pw = new PrintWriter(outFileName);
+      pw.println(trainingData.length + " " + layers[0] + " " + layers[layers.length - 1]);
+
+      for (int i = 0; i < trainingData.length; i++)
+      {
+         // Print the input and output image data to the output file
+         for (int type = 0; type < 2; type++)
+         {
+            double[] array = trainingData[i][type];
+            for (int j = 0; j < array.length; j++)
+            {
+               pw.print(array[j] + " ");
+            }
+            pw.println();
+         }
+      } // for (int i = 0; i < trainingData.length; i++)
+
+      pw.close();
+   } // static void loadImages(String inFileName, String outFileName)
+
+   /**
+    * Reads the filenames within the input file and decodes those bitmaps straight into a matrix of training data,
+    * indexed the same way as the one returned by getTrainingData. The input file has the same structure as for
+    * loadImages. The values are exactly the ones that loadImages would print and getTrainingData would read back, but
+    * nothing is written out as text. Decoded images are kept in the image cache file, if there is one, so unchanged
+    * images do not have to be decoded again in later runs.
+    *
+    * @param inFileName the name of the input file containing the bitmaps
+    * @return the matrix of training data
+    */
+   static double[][][] loadImageData(String inFileName) throws IOException
+   {
+      ImageCache cache = new ImageCache(imageCacheFile);
+      double[][][] trainingData = decodeImages(inFileName, cache);
+      cache.save();
+      return trainingData;
+   }
+
+   /**
+    * Decodes every bitmap named in the input file, which has the structure described for loadImages, into a matrix of
+    * training data. The images are decoded and converted to grayscale by a pool of imageThreads threads. Each one is
+    * stored into its own slot, made before any decoding starts, so the order always matches the input file. When all
+    * of them are done, the total decoding time and the slowest images are printed, so that files that take much longer
+    * than the rest stand out. This also stores the height and width of the images and sets the size of the first and
+    * last layer.
+    *
+    * @param inFileName the name of the input file containing the bitmaps
+    * @param cache      the cache to get the decoded images from
+    * @return the matrix of training data
+    */
+   static double[][][] decodeImages(String inFileName, ImageCache cache) throws IOException
+   {
+      Scanner sc = new Scanner(new FileReader(inFileName));
 
       // Read sizes
       int sizeOfData = sc.nextInt();
       int sizeOfInput = sc.nextInt();
       int sizeOfOutput = sc.nextInt();
-      pw.println(sizeOfData + " " + sizeOfInput + " " + sizeOfOutput);
 
-      for (int i = 0; i < sizeOfData; i++)
+      // Set size of first and last layer
+      layers[0] = sizeOfInput;
+      layers[layers.length - 1] = sizeOfOutput;
+
+      // Read the file names, the input and then the output image of each case
+      String[] files = new String[2 * sizeOfData];
+      for (int k = 0; k < files.length; k++)
       {
-         // Read image from given file
-         ImageWrapper inImage = new ImageWrapper(sc.next());
-         double[] inArray = inImage.toGrayScale();
+         files[k] = sc.next();
+      }
+      sc.close();
 
-         // Store the height and width of the image
-         imHeight = inImage.getHeight();
-         imWidth = inImage.getWidth();
+      // Decode every image into its own slot
+      ImageCache.Image[] images = new ImageCache.Image[files.length];
+      long[] decodeTimes = new long[files.length];
+      List<Callable<Void>> decodes = new ArrayList<>();
+      for (int k = 0; k < files.length; k++)
+      {
+         int slot = k;
+         decodes.add(() ->
+         {
+            long start = System.nanoTime();
+            images[slot] = cache.decode(files[slot]);
+            decodeTimes[slot] = System.nanoTime() - start;
+            return null;
+         });
+      }
 
-         // Print the image data to the output file
-//         double[] inArray = inImage.toDoubleArray();
-         for (int j = 0; j < inArray.length; j++)
+      long start = System.nanoTime();
+      ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(imageThreads, files.length)));
+      try
+      {
+         for (Future<Void> decode : pool.invokeAll(decodes))
+         {
+            decode.get();
+         }
+      }
+      catch (InterruptedException ex)
+      {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted while decoding images");
+      }
+      catch (ExecutionException ex)
+      {
+         if (ex.getCause() instanceof IOException)
          {
-            pw.print(inArray[j] + " ");
+            throw (IOException) ex.getCause();
          }
-         pw.println();
+         if (ex.getCause() instanceof RuntimeException)
+         {
+            throw (RuntimeException) ex.getCause();
+         }
+         throw new IOException("An image could not be decoded", ex.getCause());
+      }
+      finally
+      {
+         pool.shutdown();
+      }
+      reportDecodeTimes(files, decodeTimes, System.nanoTime() - start);
 
-         // Read output image and print data to the output file
-         ImageWrapper outImage = new ImageWrapper(sc.next());
-         double[] outArray = outImage.toGrayScale();
-         //double[] outArray = outImage.toDoubleArray();
-         for (int j = 0; j < outArray.length; j++)
+      double[][][] trainingData = new double[sizeOfData][2][];
+      for (int i = 0; i < sizeOfData; i++)
+      {
+         ImageCache.Image inImage = images[2 * i];
+         ImageCache.Image outImage = images[2 * i + 1];
+         if (inImage.pels.length != sizeOfInput || outImage.pels.length != sizeOfOutput)
          {
-            pw.print(outArray[j] + " ");
+            throw new IOException("Training case " + i + " has " + inImage.pels.length + " input pels in " +
+                  files[2 * i] + " and " + outImage.pels.length + " output pels in " + files[2 * i + 1] +
+                  ", expected " + sizeOfInput + " and " + sizeOfOutput);
          }
-         pw.println();
+
+         // Store the height and width of the image
+         imHeight = inImage.height;
+         imWidth = inImage.width;
+
+         trainingData[i][0] = inImage.pels;
+         trainingData[i][1] = outImage.pels;
       } // for (int i = 0; i < sizeOfData; i++)
 
-      pw.close();
-   } // static void loadImages(String inFileName, String outFileName)
+      return trainingData;
+   } // static double[][][] decodeImages(String inFileName, ImageCache cache)
+
+   /**
+    * Prints how long decoding the images took in total and on average, and which images took the longest.
+    *
+    * @param files       the names of the images
+    * @param decodeTimes the time it took to decode each image, in nanoseconds
+    * @param elapsed     the time it took to decode all of them, in nanoseconds
+    */
+   private static void reportDecodeTimes(String[] files, long[] decodeTimes, long elapsed)
+   {
+      Integer[] order = new Integer[files.length];
+      long total = 0;
+      for (int k = 0; k < files.length; k++)
+      {
+         order[k] = k;
+         total += decodeTimes[k];
+      }
+      Arrays.sort(order, (a, b) -> Long.compare(decodeTimes[b], decodeTimes[a]));
+
+      System.out.printf("Decoded %d images in %.1f ms, %.2f ms per image%n", files.length, elapsed / 1e6,
+            files.length == 0 ? 0.0 : total / 1e6 / files.length);
+      for (int k = 0; k < Math.min(SLOWEST_IMAGES, files.length); k++)
+      {
+         System.out.printf("   %8.2f ms  %s%n", decodeTimes[order[k]] / 1e6, files[order[k]]);
+      }
+   }
+
+   /**
+    * Creates a neural network with randomized weights, the layer sizes, precision, activation functions, optimizer and
+    * sparse input threshold of the configuration, and the training listeners chosen by its metrics.
+    *
+    * @return the new network
+    */
+   static AbstractNeuralNet createNetwork()
+   {
+      AbstractNeuralNet nn = AbstractNeuralNet.create(layers, precision, accumulation, activations);
+      nn.setOptimizer(optimizer);
+      nn.setSparseInputThreshold(sparseThreshold);
+      for (TrainingListener listener : trainingListeners)
+      {
+         nn.addTrainingListener(listener);
+      }
+      return nn;
+   }
+
+   /**
+    * Tells the training listeners that the training data has been loaded.
+    *
+    * @param source the file the training data was loaded from
+    * @param cases  the number of training cases loaded
+    * @param start  the time that loading started, from System.nanoTime
+    */
+   static void reportDataLoaded(String source, int cases, long start)
+   {
+      long nanos = System.nanoTime() - start;
+      for (TrainingListener listener : trainingListeners)
+      {
+         listener.dataLoaded(source, cases, nanos);
+      }
+   }
+
+   /**
+    * Gets a network ready for long training: restores it from the checkpoint file if the configuration asks to resume
+    * and the file exists, and makes a checkpointer if checkpoints are turned on. The caller gives the checkpointer to
+    * the network and has to close it once training is done, so that the last checkpoint finishes writing.
+    *
+    * @param nn the network that is about to be trained
+    * @return the checkpointer for the network, or null if checkpoints are turned off
+    */
+   static Checkpointer prepareCheckpoints(AbstractNeuralNet nn) throws IOException
+   {
+      if (resume && Files.exists(Paths.get(checkpointFile)))
+      {
+         Checkpoint checkpoint = Checkpoint.read(checkpointFile);
+         nn.restore(checkpoint);
+         System.out.println("Resuming from epoch " + checkpoint.getNextEpoch() + " of " + checkpointFile);
+      }
+
+      if (checkpointEpochs == 0 && checkpointMinutes == 0.0)
+      {
+         return null;
+      }
+      return new Checkpointer(checkpointFile, checkpointEpochs, checkpointMinutes);
+   } // static Checkpointer prepareCheckpoints(AbstractNeuralNet nn)
 
    /**
     * This function will create and train a neural network with given image training data. It will first get the
-    * configuration of the network from the config file, load the image data into the training data file, read the
-    * training data and input it into the network, then train the network on that data. Finally, it will put the
-    * output of the network into a bmp file given by the user.
+    * configuration of the network from the config file, decode the images into training data in memory and input it
+    * into the network, then train the network on that data. Finally, it will put the output of the network into a bmp
+    * file given by the user.
     */
    static void minimizeBMP() throws IOException
    {
       // Get the configuration of the neural net from the config file
       getConfig(configFile);
 
-      // Read images and load them into the training file
-      loadImages(trainingImageFile, trainingImageRawDataFile);
-
-      // Load the training data from the training file
+      // Decode the images straight into the training data
       //System.out.println("Getting Training Data...");
-      double[][][] trainingData = getTrainingData(trainingImageRawDataFile);
+      long loadStart = System.nanoTime();
+      double[][][] trainingData = loadImageData(trainingImageFile);
+      reportDataLoaded(trainingImageFile, trainingData.length, loadStart);
 
       // Create a neural net with the given layer sizes
       //System.out.println("Creating Network...");
-      NeuralNet nn = new NeuralNet(layers);
+      AbstractNeuralNet nn = createNetwork();
 
-      // Train with the given configuration
+      // Train with the given configuration, continuing from and taking checkpoints if they are turned on
       //System.out.println("Training...");
-      String diagnosticInformation = nn.train(trainingData, learningRate, lambdaMult, epochs);
+      String diagnosticInformation;
+      try (Checkpointer checkpointer = prepareCheckpoints(nn))
+      {
+         nn.setCheckpointer(checkpointer);
+         diagnosticInformation = nn.train(trainingData, learningRate, lambdaMult, epochs, batchSize);
+      }
 
       nn.storeWeights(weightsFile);
       System.out.println(diagnosticInformation);
@@ -262,15 +615,17 @@ public class Main
       double[] image = nn.propagate(trainingData[0][0]);
       ImageWrapper im = new ImageWrapper(image, imHeight, imWidth);
       im.toGrayScale();
-      im.toBMP(outputImageFile);
+      im.toBMP(outputImageFile, 8);       // The output is grayscale, so an 8-bit bitmap holds it exactly
    }
 
    /**
     * This function will create and train a neural network with manually inputted training data. This data can have any
     * number of inputs or outputs. The function first gets the configuration of the network, reads the training data,
     * then repeatedly trains the network on that data. It randomizes and trains the network multiple times so as to find
-    * the set of weights that lead to the minimum error. When it is done, it prints the error and outputs for each
-    * training case.
+    * the set of weights that lead to the minimum error. These restarts are independent, so up to parallelRestarts of
+    * them run at once, each on its own network. Whenever a restart beats the best error so far it is printed, and when
+    * all of them are done the weights of the best network are stored and the outputs for each training case are
+    * printed. Checkpoints are only taken, and training only resumes from them, when there is a single restart.
     */
    static void minimizeManual() throws IOException
    {
@@ -279,71 +634,139 @@ public class Main
 
       // Load the training data from the training file
       System.out.println("Getting Training Data...");
+      long loadStart = System.nanoTime();
       double[][][] trainingData = getTrainingData(trainingFile);
-
-      // Create a neural net with the given layer sizes
-      System.out.println("Creating Network...");
-      NeuralNet nn = new NeuralNet(layers);
+      reportDataLoaded(trainingFile, trainingData.length, loadStart);
 
       System.out.println("Training...");
-      double minError = Double.MAX_VALUE;
-      int e = 1;
-      while (e <= maxIterations && minError > errorThreshold * errorThreshold)
+      AtomicReference<Restart> best = new AtomicReference<>(new Restart(0, null, Double.MAX_VALUE, null));
+
+      List<Callable<Void>> restarts = new ArrayList<>();
+      for (int e = 1; e <= maxIterations; e++)
       {
-         // Randomize the weights
-         nn.generateWeights();
+         int iteration = e;
+         restarts.add(() ->
+         {
+            // Skip the restart if another one already reached the error threshold
+            if (best.get().error <= errorThreshold * errorThreshold)
+            {
+               return null;
+            }
+
+            // Create a neural net with randomized weights and train it with the given configuration
+            AbstractNeuralNet nn = createNetwork();
+            String diagnosticInformation;
+            try (Checkpointer checkpointer = maxIterations == 1 ? prepareCheckpoints(nn) : null)
+            {
+               nn.setCheckpointer(checkpointer);
+               diagnosticInformation = nn.train(trainingData, learningRate, lambdaMult, epochs, batchSize);
+            }
 
-         // Train with the given configuration
-         String diagnosticInformation = nn.train(trainingData, learningRate, lambdaMult, epochs);
+            // Calculate the error and keep this network if it is the best one so far
+            Restart restart = new Restart(iteration, nn, nn.calculateError(trainingData), diagnosticInformation);
+            Restart previous = best.getAndAccumulate(restart, (current, candidate) ->
+                  candidate.error < current.error ? candidate : current);
 
-         // Calculate the error
-         double curError = nn.calculateError(trainingData);
+            // Print the diagnostic information if the error went down
+            if (restart.error < previous.error)
+            {
+               System.out.println("Iteration " + iteration + "\n" + diagnosticInformation);
+            }
+            return null;
+         });
+      } // for (int e = 1; e <= maxIterations; e++)
 
-         // Print the error and run each of the test cases if error goes down
-         if (curError < minError)
+      ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelRestarts, maxIterations)));
+      try
+      {
+         for (Future<Void> restart : pool.invokeAll(restarts))
          {
-            minError = curError;
-            nn.storeWeights(weightsFile);
-            System.out.println("Iteration " + e);
+            restart.get();
+         }
+      }
+      catch (InterruptedException ex)
+      {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted while training");
+      }
+      catch (ExecutionException ex)
+      {
+         if (ex.getCause() instanceof RuntimeException)
+         {
+            throw (RuntimeException) ex.getCause();
+         }
+         throw new IOException("A restart failed", ex.getCause());
+      }
+      finally
+      {
+         pool.shutdown();
+      }
 
-            System.out.println(diagnosticInformation);
+      Restart winner = best.get();
+      if (winner.network == null)
+      {
+         return;
+      }
 
-            // For each test case
-            for (double[][] testCase : trainingData)
-            {
-               // Print each input
-               StringBuilder printedTestCase = new StringBuilder();
-               printedTestCase.append("Input:    ");
-               for (int i = 0; i < testCase[0].length; i++)
-               {
-                  printedTestCase.append(testCase[0][i]).append(",");
-               }
-
-               // Print the expected output for the test case
-               printedTestCase.deleteCharAt(printedTestCase.length() - 1);
-               printedTestCase.append("\nExpected: ");
-               for (int i = 0; i < testCase[1].length; i++)
-               {
-                  printedTestCase.append(testCase[1][i]).append(",");
-               }
-
-               // Print the neural network's output for the test case
-               printedTestCase.deleteCharAt(printedTestCase.length() - 1);
-               printedTestCase.append("\nOutput:   ");
-               double[] output = nn.propagate(testCase[0]);
-               for (int i = 0; i < output.length; i++)
-               {
-                  printedTestCase.append(output[i]).append(",");
-               }
-               printedTestCase.deleteCharAt(printedTestCase.length() - 1);
-               System.out.println(printedTestCase + "\n");
-            } // for (double[][] testCase : trainingData)
-            System.out.println("\n");
-         } // if (curError < minError)
-
-         e++;
-      } // while (e <= maxIterations && minError > errorThreshold * errorThreshold)
-   } // static void minimizeBoolean()
+      // Store the weights of the best network and run each of the test cases on it
+      winner.network.storeWeights(weightsFile);
+      System.out.println("Best Iteration " + winner.iteration + "\n" + winner.diagnosticInformation);
+
+      NetworkModel model = new NetworkModel(winner.network);
+      InferenceContext context = model.newContext();
+
+      // For each test case
+      for (double[][] testCase : trainingData)
+      {
+         // Print each input
+         StringBuilder printedTestCase = new StringBuilder();
+         printedTestCase.append("Input:    ");
+         for (int i = 0; i < testCase[0].length; i++)
+         {
+            printedTestCase.append(testCase[0][i]).append(",");
+         }
+
+         // Print the expected output for the test case
+         printedTestCase.deleteCharAt(printedTestCase.length() - 1);
+         printedTestCase.append("\nExpected: ");
+         for (int i = 0; i < testCase[1].length; i++)
+         {
+            printedTestCase.append(testCase[1][i]).append(",");
+         }
+
+         // Print the neural network's output for the test case
+         printedTestCase.deleteCharAt(printedTestCase.length() - 1);
+         printedTestCase.append("\nOutput:   ");
+         double[] output = model.propagate(testCase[0], context);
+         for (int i = 0; i < output.length; i++)
+         {
+            printedTestCase.append(output[i]).append(",");
+         }
+         printedTestCase.deleteCharAt(printedTestCase.length() - 1);
+         System.out.println(printedTestCase + "\n");
+      } // for (double[][] testCase : trainingData)
+      System.out.println("\n");
+   } // static void minimizeManual()
+
+   /**
+    * The result of one random restart of minimizeManual: which iteration it was, the trained network, its error, and
+    * the diagnostic information from training it.
+    */
+   private static final class Restart
+   {
+      final int iteration;
+      final AbstractNeuralNet network;
+      final double error;
+      final String diagnosticInformation;
+
+      Restart(int iteration, AbstractNeuralNet network, double error, String diagnosticInformation)
+      {
+         this.iteration = iteration;
+         this.network = network;
+         this.error = error;
+         this.diagnosticInformation = diagnosticInformation;
+      }
+   } // private static final class Restart
 
    /**
     * First, it asks the user whether they will be using images or training with manually inputted data. It then asks
@@ -397,6 +820,13 @@ public class Main
             weightsFile = override;
          }
 
+         System.out.println("What is the file path of the checkpoint file? (type " + defaultResponse + " for the default path)");
+         override = sc.next();
+         if (!override.equals(defaultResponse))
+         {
+            checkpointFile = override;
+         }
+
          if (type.charAt(0) == 'y')
          {
             System.out.println("What is the file path of the output image file? (type " + defaultResponse +
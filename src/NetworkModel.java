@@ -0,0 +1,302 @@
+import java.io.IOException;
+
+/**
+ * Network Model
+ *
+ * An immutable copy of the weights of a trained NeuralNet that can be run by any number of threads at once. The model
+ * itself never changes after it is created and keeps no scratch state. Instead, each thread gets its own
+ * InferenceContext from newContext() and passes it to propagate, so that once the context is created, running the
+ * network does not allocate anything.
+ *
+ * A model can either be loaded directly from a weights file, in any format that NeuralNet can read, or be made from a
+ * NeuralNet, in which case the weights are copied so that further training does not affect the model. Weights files
+ * do not record the activation functions of the network, so a model loaded from a file has to be given them.
+ *
+ * Each layer of a model with at least SparseWeights.MIN_SPARSITY of its weights at 0, as after Pruner, is kept as a
+ * CsrLayer, and is run by the sparse kernels, which only walk the weights that are left. Every other layer is kept as
+ * dense weights. A sparse weights file is read straight into these layers, so the dense weights of a pruned network
+ * never have to be read or held in memory, and store writes a model back out in that format.
+ *
+ * Methods in this class:
+ * InferenceContext newContext()
+ * double[]         propagate(double[] input, InferenceContext context)
+ * double[]         propagate(double[] input, double[] output, InferenceContext context)
+ * double[][]       propagateBatch(double[][] inputs, InferenceContext context)
+ * void             propagateBatch(double[] inputs, int count, double[] outputs, InferenceContext context)
+ * void             propagateChunk(double[] inputs, int inputOffset, int count, double[][] batchActivations,
+ *                                 double[] outputs, int outputOffset)
+ * void             store(String filename)
+ * int              getInputSize()
+ * int              getOutputSize()
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+public final class NetworkModel
+{
+   private final int[] sizeOfLayers;    // number of units in each activation layer
+   private final int numOfLayers;       // number of connectivity layers
+   private final double[][] weights;    // flat row-major weights for each dense layer, null for each sparse layer
+   private final CsrLayer[] sparseLayers;     // each connectivity layer kept in CSR form, null for each dense layer
+   private final Activation[] activations;    // the activation function of each connectivity layer
+
+   /**
+    * Creates a model from the current weights of a neural network. The weights are copied, so the network can keep
+    * training without changing the model. The weights of a FloatNeuralNet are widened to doubles. The model uses the
+    * same activation functions as the network.
+    *
+    * @param network the network to copy the weights from
+    */
+   public NetworkModel(AbstractNeuralNet network)
+   {
+      this(SparseWeights.compress(network.getSizeOfLayers().clone(), network.copyWeights()), network.getActivations());
+   }
+
+   /**
+    * Creates a model from the weights stored in a file, using the given activation functions, which should be the ones
+    * that the network was trained with. The file can be a sparse weights file, or any file that NeuralNet(String)
+    * reads.
+    *
+    * @param filename    the name of the file that the weights are stored in
+    * @param activations one activation function for every layer, or one for each layer after the input layer
+    */
+   public NetworkModel(String filename, Activation[] activations) throws IOException
+   {
+      this(SparseWeights.load(filename), activations);
+   }
+
+   /**
+    * Creates a model from sparse weights, taking over their arrays.
+    *
+    * @param weights     the weights of each connectivity layer, owned by the model from now on
+    * @param activations one activation function for every layer, or one for each layer after the input layer
+    * @throws IllegalArgumentException if there are neither one nor numOfLayers functions
+    */
+   private NetworkModel(SparseWeights weights, Activation... activations)
+   {
+      sizeOfLayers = weights.sizeOfLayers;
+      numOfLayers = sizeOfLayers.length - 1;
+      this.weights = weights.dense;
+      sparseLayers = weights.sparse;
+
+      if (activations.length != 1 && activations.length != numOfLayers)
+      {
+         throw new IllegalArgumentException("Expected 1 or " + numOfLayers + " activation functions but got " +
+               activations.length);
+      }
+      this.activations = new Activation[numOfLayers];
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         this.activations[n] = activations[activations.length == 1 ? 0 : n];
+      }
+   } // private NetworkModel(SparseWeights weights, Activation... activations)
+
+   /**
+    * Creates the scratch space that one thread needs to run this model. A context can be used for any number of
+    * calls to propagate, but only by one thread at a time.
+    *
+    * @return a new context for this model
+    */
+   public InferenceContext newContext()
+   {
+      return new InferenceContext(sizeOfLayers);
+   }
+
+   /**
+    * Propagates the input through the network using the given context. The returned array belongs to the context and
+    * is overwritten by the next call that uses the same context. The input array is only read.
+    *
+    * @param input   the values for the activation of all input units
+    * @param context the context, made by this model, that holds the activations
+    * @return the array of activations for the output units
+    */
+   public double[] propagate(double[] input, InferenceContext context)
+   {
+      checkContext(context);
+      if (input.length != sizeOfLayers[0])
+      {
+         throw new IllegalArgumentException("Expected " + sizeOfLayers[0] + " inputs, got " + input.length);
+      }
+
+      double[][] activations = context.activations;
+      double[] prev = input;
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         if (sparseLayers[n] != null)
+         {
+            sparseLayers[n].propagate(prev, activations[n + 1], this.activations[n]);
+         }
+         else
+         {
+            NeuralNet.propagateLayer(weights[n], prev, sizeOfLayers[n], activations[n + 1], sizeOfLayers[n + 1],
+                  this.activations[n]);
+         }
+         prev = activations[n + 1];
+      }
+
+      return activations[numOfLayers];
+   } // public double[] propagate(double[] input, InferenceContext context)
+
+   /**
+    * Propagates the input through the network using the given context and copies the output into an array owned by
+    * the caller, so that it is not overwritten by later calls.
+    *
+    * @param input   the values for the activation of all input units
+    * @param output  the array to store the activations of the output units in
+    * @param context the context, made by this model, that holds the activations
+    * @return the output array
+    */
+   public double[] propagate(double[] input, double[] output, InferenceContext context)
+   {
+      double[] result = propagate(input, context);
+      System.arraycopy(result, 0, output, 0, result.length);
+      return output;
+   }
+
+   /**
+    * Propagates many inputs through the network at once using the given context, computing each layer as a
+    * cache-blocked matrix-matrix product over groups of inputs. The outputs are the same as calling propagate for each
+    * input.
+    *
+    * @param inputs  the values for the activation of all input units, for each input
+    * @param context the context, made by this model, that holds the activations
+    * @return a new array of activations for the output units, for each input
+    */
+   public double[][] propagateBatch(double[][] inputs, InferenceContext context)
+   {
+      checkContext(context);
+      double[][] batchActivations = context.getBatchActivations();
+      int inputSize = sizeOfLayers[0];
+      int outputSize = sizeOfLayers[numOfLayers];
+
+      double[][] outputs = new double[inputs.length][];
+      for (int start = 0; start < inputs.length; start += NeuralNet.BATCH_CHUNK)
+      {
+         int count = Math.min(NeuralNet.BATCH_CHUNK, inputs.length - start);
+
+         // Gather the inputs into one row-major matrix
+         for (int b = 0; b < count; b++)
+         {
+            System.arraycopy(inputs[start + b], 0, batchActivations[0], b * inputSize, inputSize);
+         }
+
+         propagateChunk(batchActivations[0], 0, count, batchActivations, batchActivations[numOfLayers], 0);
+
+         // Split the output matrix back up into one array for each input
+         for (int b = 0; b < count; b++)
+         {
+            outputs[start + b] = new double[outputSize];
+            System.arraycopy(batchActivations[numOfLayers], b * outputSize, outputs[start + b], 0, outputSize);
+         }
+      } // for (int start = 0; start < inputs.length; start += NeuralNet.BATCH_CHUNK)
+
+      return outputs;
+   } // public double[][] propagateBatch(double[][] inputs, InferenceContext context)
+
+   /**
+    * Propagates a row-major matrix of inputs through the network using the given context, and stores the outputs as a
+    * row-major matrix in an array owned by the caller. Nothing is allocated once the context has been used for a
+    * batch, and the inputs are read in place.
+    *
+    * @param inputs  the input matrix, with getInputSize() values for each input
+    * @param count   the number of inputs
+    * @param outputs the array to store the output matrix in, with room for getOutputSize() values for each input
+    * @param context the context, made by this model, that holds the activations
+    */
+   public void propagateBatch(double[] inputs, int count, double[] outputs, InferenceContext context)
+   {
+      checkContext(context);
+      if (inputs.length < count * sizeOfLayers[0] || outputs.length < count * sizeOfLayers[numOfLayers])
+      {
+         throw new IllegalArgumentException("The input or output matrix is too small for " + count + " inputs");
+      }
+
+      double[][] batchActivations = context.getBatchActivations();
+      for (int start = 0; start < count; start += NeuralNet.BATCH_CHUNK)
+      {
+         propagateChunk(inputs, start * sizeOfLayers[0], Math.min(NeuralNet.BATCH_CHUNK, count - start),
+               batchActivations, outputs, start * sizeOfLayers[numOfLayers]);
+      }
+   } // public void propagateBatch(double[] inputs, int count, double[] outputs, InferenceContext context)
+
+   /**
+    * Propagates a row-major matrix of at most NeuralNet.BATCH_CHUNK inputs through the model, in the same way as
+    * NeuralNet.propagateBatch, but running each sparse layer with its CSR kernel.
+    *
+    * @param inputs           the array holding the input matrix, one row per input
+    * @param inputOffset      the index in inputs where the input matrix starts
+    * @param count            the number of inputs, no more than NeuralNet.BATCH_CHUNK
+    * @param batchActivations the scratch arrays of the context
+    * @param outputs          the array to store the output matrix in, one row per input
+    * @param outputOffset     the index in outputs where the output matrix starts
+    */
+   private void propagateChunk(double[] inputs, int inputOffset, int count, double[][] batchActivations,
+                               double[] outputs, int outputOffset)
+   {
+      double[] prev = inputs;
+      int prevOffset = inputOffset;
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         double[] next = n == numOfLayers - 1 ? outputs : batchActivations[n + 1];
+         int nextOffset = n == numOfLayers - 1 ? outputOffset : 0;
+
+         if (sparseLayers[n] != null)
+         {
+            sparseLayers[n].propagateBatch(prev, prevOffset, next, nextOffset, count, activations[n]);
+         }
+         else
+         {
+            NeuralNet.propagateLayerBatch(weights[n], prev, prevOffset, sizeOfLayers[n], next, nextOffset,
+                  sizeOfLayers[n + 1], count, activations[n]);
+         }
+
+         prev = next;
+         prevOffset = nextOffset;
+      }
+   } // private void propagateChunk(...)
+
+   /**
+    * Stores the weights of the model in the sparse weights format, keeping each layer in the form the model has it in.
+    * Like every weights file, it does not record the activation functions.
+    *
+    * @param filename the name of the file to store the weights in
+    */
+   public void store(String filename) throws IOException
+   {
+      new SparseWeights(sizeOfLayers, weights, sparseLayers).write(filename);
+   }
+
+   /**
+    * Makes sure that a context was made by this model, so its arrays have the right sizes.
+    *
+    * @param context the context to check
+    */
+   private void checkContext(InferenceContext context)
+   {
+      if (context.sizeOfLayers != sizeOfLayers)
+      {
+         throw new IllegalArgumentException("The context was not made by this model");
+      }
+   }
+
+   /**
+    * Gets the number of units in the input layer
+    *
+    * @return the size of the input layer
+    */
+   public int getInputSize()
+   {
+      return sizeOfLayers[0];
+   }
+
+   /**
+    * Gets the number of units in the output layer
+    *
+    * @return the size of the output layer
+    */
+   public int getOutputSize()
+   {
+      return sizeOfLayers[numOfLayers];
+   }
+
+} // public final class NetworkModel
@@ -1,5 +1,12 @@
 import java.io.*;
-import java.util.StringTokenizer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This class allows one to construct a neural network with a variable number of activation layers
@@ -14,32 +21,78 @@ import java.util.StringTokenizer;
  * This network can be trained with any number of training cases. For training, there have to be
  * three layers, with any number of input, hidden, and output nodes.
  *
+ * Internally, the weights of each connectivity layer are kept in one contiguous array in row-major
+ * order, where each row holds all of the weights going into a single node of the next layer. The
+ * weight between node j of layer n and node i of layer n + 1 is therefore weights[n][i * sizeOfLayers[n] + j],
+ * so the inner loops of propagate and backPropagate walk through memory sequentially. Those loops are run by Kernels,
+ * which uses vector instructions through the Vector API when the jdk.incubator.vector module is available.
+ *
+ * Many inputs can be run at once with propagateBatch. Each connectivity layer is then computed as one matrix-matrix
+ * product over up to BATCH_CHUNK inputs, split into blocks of weights small enough to stay in the cache while they are
+ * used for every input of the chunk, instead of reading the whole weights matrix from memory again for each input.
+ *
+ * Mini-batch training can be spread over several threads by AbstractNeuralNet. Every shard of a batch accumulates its
+ * gradients into its own Workspace, and updateWeights adds them up in a fixed order before the weights are changed.
+ *
+ * The training loop itself is shared with FloatNeuralNet, which stores everything as floats, through
+ * AbstractNeuralNet; this class supplies the kernels for values stored as doubles.
+ *
  * Methods in this class:
  * void     generateWeights()
  * double   uniformRandom(double minVal, double maxVal)
  * void     createActivations()
+ * boolean  isBinaryWeightsFile(String filename)
+ * void     readTextWeights(String filename)
+ * int[]    readTextLayerSizes(NumberReader reader)
+ * void     readBinaryWeights(String filename)
  * void     storeWeights(String filename)
+ * void     storeTextWeights(String filename)
+ * void     storeBinaryWeights(String filename)
+ * double   getWeight(int n, int j, int i)
+ * double[][] getWeights()
+ * double[][] copyWeights()
  * double[] propagate(double[] input)
- * String   train(double[][][] trainingData, double learningRate, double lambdaMult, int epochs)
- * void     backPropagate(double[] input, double[] expected, double learningRate)
+ * void     propagateLayer(double[] w, double[] prev, int prevSize, double[] next, int nextSize, Activation function)
+ * void     propagateLayer(double[] w, SparseInput prev, int prevSize, double[] next, int nextSize, Activation function)
+ * double[][] propagateBatch(double[][] inputs)
+ * double[][] propagateBatch(double[][] weights, int[] sizeOfLayers, Activation[] functions, double[][] inputs,
+ *                           double[][] batchActivations)
+ * void     propagateBatch(double[][] weights, int[] sizeOfLayers, Activation[] functions, double[] inputs,
+ *                         int inputOffset, int count, double[][] batchActivations, double[] outputs, int outputOffset)
+ * void     propagateLayerBatch(double[] w, double[] prev, int prevOffset, int prevSize,
+ *                              double[] next, int nextOffset, int nextSize, int count, Activation function)
+ * double[][] createBatchActivations(int[] sizeOfLayers)
+ * Workspace getWorkspace()
+ * Workspace createWorkspace()
+ * Checkpoint createCheckpoint(int nextEpoch, int updates, double learningRate, double minError)
+ * void     restoreWeights(Checkpoint checkpoint)
+ * void     clearOptimizerState()
+ * void     zeroWeights(int layer, int[] indices)
+ * void     forwardPass(double[] input, Workspace ws)
+ * double   calculateOutputPsi(double[] expected, Workspace ws)
+ * double   backPropagate(double[] input, double[] expected, double learningRate)
+ * double   accumulateGradient(double[] input, double[] expected, AbstractWorkspace worker)
+ * void     createOptimizerState()
+ * void     updateWeights(int layer, int from, int to, int shards, double learningRate, int batchCount,
+ *                        double firstCorrection, double secondCorrection)
  * double   calculateError(double[][][] trainingData)
- * double   outputFunction(double x)
- * double   outputFunctionPrime(double x)
  *
  * @author Montek Kalsi
  * @version May 5, 2020
  */
-public class NeuralNet
+public class NeuralNet extends AbstractNeuralNet
 {
-   private int[] sizeOfLayers;            // number of units in each activation layer
-   private int numOfLayers;               // number of connectivity layers
+   static final int BINARY_MAGIC = 0x4257_4E4E;       // "NNWB" read as a little-endian int, starts every binary weights file
+   static final int BINARY_VERSION = 1;               // version of the binary weights format that is written
+   static final String BINARY_EXTENSION = ".bin";     // weights files ending in this are stored in the binary format
 
-   private double[][][] weights;          // weights for connections between each layer
-   private double[][] activations;        // state of activation for all processing units
+   static final int BATCH_CHUNK = 64;     // most inputs that propagateBatch and calculateError run through at once
+   static final int BLOCK_ROWS = 32;      // rows of weights in each cache block of the batched layer product
+   static final int BLOCK_COLUMNS = 256;  // columns of weights in each cache block of the batched layer product
 
-   private double[][] theta;
-   private double[][] omega;
-   private double[][] psi;
+   private double[][] weights;            // flat row-major weights for each connectivity layer
+   private double[][][] optimizerState;   // the state arrays of the optimizer for each connectivity layer, or null
+   private Workspace workspace;           // activations, omega, psi and gradients of the training thread
 
    /**
     * Constructor that creates a neural network with the size of each activation layer given. The
@@ -64,18 +117,15 @@ public class NeuralNet
     */
    public void generateWeights()
    {
-      weights = new double[numOfLayers][][];
+      weights = new double[numOfLayers][];
       for (int n = 0; n < numOfLayers; n++)
       {
-         weights[n] = new double[sizeOfLayers[n]][sizeOfLayers[n + 1]];
+         weights[n] = new double[sizeOfLayers[n] * sizeOfLayers[n + 1]];
 
          // Generates random numbers for each weight
-         for (int i = 0; i < sizeOfLayers[n]; i++)
+         for (int k = 0; k < weights[n].length; k++)
          {
-            for (int j = 0; j < sizeOfLayers[n + 1]; j++)
-            {
-               weights[n][i][j] = uniformRandom(Main.minWeight, Main.maxWeight);
-            }
+            weights[n][k] = uniformRandom(Main.minWeight, Main.maxWeight);
          }
       }
    }
@@ -97,14 +147,13 @@ public class NeuralNet
     * to be for connections between each adjacent layer of the network. The weights array has three
     * indices: weights[n][i][j]. n describes what connectivity layer the weight is in, i describes
     * what node in the previous layer the weight is connected to and j describes what node in the
-    * next layer the weight is connected to.
+    * next layer the weight is connected to. The weights are copied into the flat row-major layout
+    * used internally.
     *
     * @param weights the weights of each connection in the network
     */
    public NeuralNet(double[][][] weights)
    {
-      this.weights = weights;
-
       numOfLayers = weights.length;
       sizeOfLayers = new int[weights.length + 1];
       for (int i = 0; i < numOfLayers; i++)
@@ -113,16 +162,106 @@ public class NeuralNet
       }
       sizeOfLayers[numOfLayers] = weights[numOfLayers - 1][0].length;
 
+      this.weights = new double[numOfLayers][];
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         this.weights[n] = new double[sizeOfLayers[n] * sizeOfLayers[n + 1]];
+         for (int i = 0; i < sizeOfLayers[n]; i++)
+         {
+            for (int j = 0; j < sizeOfLayers[n + 1]; j++)
+            {
+               this.weights[n][j * sizeOfLayers[n] + i] = weights[n][i][j];
+            }
+         }
+      }
+
+      createActivations();
+   }
+
+   /**
+    * Constructor that creates a neural net with the weights stored in a file. The file can be either in the text
+    * format or in the binary format, which is recognized by the magic number at its start. See readTextWeights and
+    * readBinaryWeights for the two formats. A binary file of floats stored by a FloatNeuralNet can also be read, and
+    * its weights are widened to doubles, and so can a sparse weights file, whose layers are expanded back to dense
+    * weights with 0 for every weight that was pruned.
+    *
+    * @param filename the name of the file that the weights are stored in
+    */
+   public NeuralNet(String filename) throws IOException
+   {
+      if (isBinaryWeightsFile(filename))
+      {
+         readBinaryWeights(filename);
+      }
+      else if (FloatNeuralNet.isBinaryWeightsFile(filename))
+      {
+         FloatNeuralNet network = new FloatNeuralNet(filename, Precision.DOUBLE);
+         sizeOfLayers = network.getSizeOfLayers();
+         numOfLayers = sizeOfLayers.length - 1;
+         weights = network.copyWeights();
+      }
+      else if (SparseWeights.isSparseWeightsFile(filename))
+      {
+         SparseWeights sparse = SparseWeights.read(filename);
+         sizeOfLayers = sparse.sizeOfLayers;
+         numOfLayers = sizeOfLayers.length - 1;
+         weights = sparse.toDenseWeights();
+      }
+      else
+      {
+         readTextWeights(filename);
+      }
+
       createActivations();
    }
 
    /**
-    * Constructor that creates a neural net with all the weights given. The format for the weights
-    * is as follows: first, the size of each layer is given. Then, for each layer, the matrix for
-    * the weights is given. This matrix is such that the number of rows is the number of nodes in
-    * the previous activation layer, and the number of columns is the number of nodes in the next
-    * activation layer. Each column is space separated and each row is on the next line. There is a
-    * blank line between each layer and this format is repeated for each layer.
+    * Checks if a weights file is in the binary format by reading the magic number at its start.
+    *
+    * @param filename the name of the weights file
+    * @return true if the file starts with the binary magic number, false otherwise
+    */
+   static boolean isBinaryWeightsFile(String filename) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+      {
+         ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+         return readFully(channel, magic, 0) && magic.getInt() == BINARY_MAGIC;
+      }
+   }
+
+   /**
+    * Reads from a file channel at the given position until the buffer is full or the file ends, then flips the buffer
+    * so it can be read from.
+    *
+    * @param channel  the channel to read from
+    * @param buffer   the buffer to fill
+    * @param position the position in the file to start reading at
+    * @return true if the buffer was filled, false if the file ended first
+    */
+   static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+   {
+      while (buffer.hasRemaining())
+      {
+         int read = channel.read(buffer, position);
+         if (read < 0)
+         {
+            break;
+         }
+         position += read;
+      }
+
+      boolean full = !buffer.hasRemaining();
+      buffer.flip();
+      return full;
+   }
+
+   /**
+    * Reads the weights from a text file. The format for the weights is as follows: first, the size of each layer is
+    * given. Then, for each layer, the matrix for the weights is given. This matrix is such that the number of rows is
+    * the number of nodes in the previous activation layer, and the number of columns is the number of nodes in the
+    * next activation layer. Each column is space separated and each row is on the next line. There is a blank line
+    * between each layer and this format is repeated for each layer.
     *
     * An example of a weights file would be:
     *
@@ -139,70 +278,198 @@ public class NeuralNet
     *
     * @param filename the name of the file that the weights are stored in
     */
-   public NeuralNet(String filename) throws IOException
+   private void readTextWeights(String filename) throws IOException
    {
-      BufferedReader br = new BufferedReader(new FileReader(filename));
-      String[] splitLine = br.readLine().split(" ");
+      NumberReader reader = new NumberReader(filename);
+      sizeOfLayers = readTextLayerSizes(reader);
+      numOfLayers = sizeOfLayers.length - 1;
 
-      // Read in size of each layer
-      numOfLayers = splitLine.length - 1;
-      sizeOfLayers = new int[splitLine.length];
-      for (int i = 0; i < splitLine.length; i++)
+      weights = new double[numOfLayers][];
+      long numOfWeights = 0;
+      for (int n = 0; n < numOfLayers; n++)
       {
-         sizeOfLayers[i] = Integer.parseInt(splitLine[i]);
+         weights[n] = new double[sizeOfLayers[n] * sizeOfLayers[n + 1]];
+         numOfWeights += weights[n].length;
       }
 
-      // Read weights matrix
-      weights = new double[numOfLayers][][];
-      for (int n = 0; n < numOfLayers; n++)
+      // Parse a large file with several threads first, keeping the values in the order of the file
+      double[] values = null;
+      int parsingThreads = NumberReader.parsingThreads(filename);
+      if (parsingThreads > 1 && numOfWeights <= Integer.MAX_VALUE)
       {
-         weights[n] = new double[sizeOfLayers[n]][sizeOfLayers[n + 1]];
-         br.readLine();
+         reader.skipLine();
+         values = NumberReader.parseParallel(filename, reader.position(), (int) numOfWeights, reader.isStrict(),
+               parsingThreads);
+      }
 
-         for (int i = 0; i < sizeOfLayers[n]; i++)
+      // Read weights matrix, transposing each row of the file into a column of the flat layout
+      int index = 0;
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         for (int i = 0; i < sizeOfLayers[n]; i++)                     // Each row of the file is a previous node
          {
-            StringTokenizer st = new StringTokenizer(br.readLine());  // Each line is a different row of weights
             for (int j = 0; j < sizeOfLayers[n + 1]; j++)
             {
-               weights[n][i][j] = Double.parseDouble(st.nextToken()); // Weights are space-separated on each line
+               weights[n][j * sizeOfLayers[n] + i] = values == null ? reader.nextDouble() : values[index++];
             }
          }
       }
+      reader.close();
+   } // private void readTextWeights(String filename)
 
-      createActivations();
+   /**
+    * Reads the size of each layer from the first line of a text weights file.
+    *
+    * @param reader the reader of the file, at its start
+    * @return the number of units in each activation layer
+    */
+   static int[] readTextLayerSizes(NumberReader reader) throws IOException
+   {
+      List<Integer> sizes = new ArrayList<Integer>();
+      while (reader.hasNextOnLine())
+      {
+         sizes.add(reader.nextInt());
+      }
+
+      int[] sizeOfLayers = new int[sizes.size()];
+      for (int i = 0; i < sizeOfLayers.length; i++)
+      {
+         sizeOfLayers[i] = sizes.get(i);
+      }
+      return sizeOfLayers;
    }
 
    /**
-    * Creates an empty deltaWeights, activations, theta, omega, and psi array, given that the array sizeOfLayers
-    * is already created. If so, they will jagged matrices with each row having a number of columns equal to the
-    * size of that layer.
+    * Reads the weights from a binary file. All values in the file are little-endian. The file starts with a header:
+    *
+    * int      magic number, the bytes "NNWB"
+    * int      version of the format, currently 1
+    * int      number of activation layers
+    * int[]    size of each activation layer
+    * padding  zero bytes up to the next multiple of 8 bytes
+    *
+    * Then, for each connectivity layer, the weights are stored as doubles in the same flat row-major order that this
+    * class keeps them in, one row for each node of the next layer. Since the header is padded, every double is
+    * aligned, and each layer is read by memory mapping its part of the file and copying it in bulk into the weights
+    * array, without parsing the values one at a time.
+    *
+    * @param filename the name of the file that the weights are stored in
+    */
+   private void readBinaryWeights(String filename) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+      {
+         long fileSize = channel.size();
+
+         // Read the header
+         ByteBuffer header = ByteBuffer.allocate(3 * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+         if (!readFully(channel, header, 0))
+         {
+            throw new IOException("Binary weights file " + filename + " is too short for its header");
+         }
+         header.getInt();                                   // magic number, already checked by isBinaryWeightsFile
+         int version = header.getInt();
+         if (version != BINARY_VERSION)
+         {
+            throw new IOException("Unsupported binary weights version " + version + " in " + filename);
+         }
+
+         int numOfActivationLayers = header.getInt();
+         if (numOfActivationLayers < 2 || numOfActivationLayers > (fileSize - header.capacity()) / Integer.BYTES)
+         {
+            throw new IOException("Binary weights file " + filename + " has a bad layer count " + numOfActivationLayers);
+         }
+
+         ByteBuffer sizes = ByteBuffer.allocate(numOfActivationLayers * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+         readFully(channel, sizes, header.capacity());
+
+         numOfLayers = numOfActivationLayers - 1;
+         sizeOfLayers = new int[numOfActivationLayers];
+         for (int n = 0; n < numOfActivationLayers; n++)
+         {
+            sizeOfLayers[n] = sizes.getInt();
+            if (sizeOfLayers[n] < 1)
+            {
+               throw new IOException("Binary weights file " + filename + " has a bad layer size " + sizeOfLayers[n]);
+            }
+         }
+
+         // Check that the file holds exactly the weights the header describes
+         long offset = binaryHeaderSize(numOfActivationLayers);
+         long expectedSize = offset;
+         for (int n = 0; n < numOfLayers; n++)
+         {
+            expectedSize += (long) sizeOfLayers[n] * sizeOfLayers[n + 1] * Double.BYTES;
+         }
+         if (fileSize != expectedSize)
+         {
+            throw new IOException("Binary weights file " + filename + " is " + fileSize + " bytes, expected " +
+                  expectedSize);
+         }
+
+         // Map each layer and copy its weights in bulk
+         weights = new double[numOfLayers][];
+         for (int n = 0; n < numOfLayers; n++)
+         {
+            weights[n] = new double[sizeOfLayers[n] * sizeOfLayers[n + 1]];
+            long layerBytes = (long) weights[n].length * Double.BYTES;
+
+            MappedByteBuffer layer = channel.map(FileChannel.MapMode.READ_ONLY, offset, layerBytes);
+            layer.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(weights[n]);
+            offset += layerBytes;
+         }
+      } // try (FileChannel channel = ...)
+   } // private void readBinaryWeights(String filename)
+
+   /**
+    * Finds the size of the header of a binary weights file, including the padding after it.
+    *
+    * @param numOfActivationLayers the number of activation layers in the network
+    * @return the number of bytes before the first weight
+    */
+   static long binaryHeaderSize(int numOfActivationLayers)
+   {
+      long size = (3L + numOfActivationLayers) * Integer.BYTES;
+      return (size + Double.BYTES - 1) / Double.BYTES * Double.BYTES;
+   }
+
+   /**
+    * Creates the workspace holding the activations, omega, and psi arrays, given that the array sizeOfLayers
+    * is already created, and makes every layer use the sigmoid until setActivations is called.
     */
    private void createActivations()
    {
-      // These four matrices contain the activation, theta, omega, and psi values for each layer.
-      activations = new double[numOfLayers + 1][];
-      theta = new double[numOfLayers + 1][];
-      omega = new double[numOfLayers + 1][];
-      psi = new double[numOfLayers + 1][];
+      workspace = new Workspace(sizeOfLayers);
+      setActivations(Activation.SIGMOID);
+   }
 
-      // Creates a jagged array, with each layer having a length of sizeOfLayers
-      for (int n = 0; n < sizeOfLayers.length; n++)
+   /**
+    * Stores the weights in the file given by the filename. If the filename ends in BINARY_EXTENSION the binary format
+    * is used, and otherwise the text format is used. Either can be read back by NeuralNet(String).
+    *
+    * @param filename the name of the file to store the weights in
+    */
+   @Override
+   public void storeWeights(String filename) throws IOException
+   {
+      if (filename.endsWith(BINARY_EXTENSION))
+      {
+         storeBinaryWeights(filename);
+      }
+      else
       {
-         activations[n] = new double[sizeOfLayers[n]];
-         theta[n] = new double[sizeOfLayers[n]];
-         omega[n] = new double[sizeOfLayers[n]];
-         psi[n] = new double[sizeOfLayers[n]];
+         storeTextWeights(filename);
       }
    }
 
    /**
     * Stores the weights in the file given by the filename. It uses the same format to store the
-    * weights as when getting the weights from a file, with each layer separated into blocks of
+    * weights as when getting the weights from a text file, with each layer separated into blocks of
     * weight matrices.
     *
     * @param filename the name of the file to store the weights in
     */
-   public void storeWeights(String filename) throws IOException
+   public void storeTextWeights(String filename) throws IOException
    {
       PrintWriter pw = new PrintWriter(new FileWriter(filename));
 
@@ -213,21 +480,108 @@ public class NeuralNet
       }
       pw.println("\n");
 
-      // Store weights matrix
-      for (int n = 0; n < weights.length; n++)
+      // Store weights matrix, one row per node of the previous layer
+      for (int n = 0; n < numOfLayers; n++)
       {
-         for (int i = 0; i < weights[n].length; i++)
+         for (int i = 0; i < sizeOfLayers[n]; i++)
          {
-            for (int j = 0; j < weights[n][0].length; j++)
+            for (int j = 0; j < sizeOfLayers[n + 1]; j++)
             {
-               pw.print(weights[n][i][j] + " ");
+               pw.print(weights[n][j * sizeOfLayers[n] + i] + " ");
             }
             pw.println();
          }
          pw.println();
       }
       pw.close();
-   } // public void storeWeights(String filename)
+   } // public void storeTextWeights(String filename)
+
+   /**
+    * Stores the weights in the binary format described in readBinaryWeights. The header is written first, then the
+    * weights of each layer are converted to little-endian bytes through a fixed-size buffer and written in large
+    * blocks.
+    *
+    * @param filename the name of the file to store the weights in
+    */
+   public void storeBinaryWeights(String filename) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         // Write the header, padded with zeros so the weights are aligned
+         ByteBuffer header = ByteBuffer.allocate((int) binaryHeaderSize(sizeOfLayers.length)).order(ByteOrder.LITTLE_ENDIAN);
+         header.putInt(BINARY_MAGIC);
+         header.putInt(BINARY_VERSION);
+         header.putInt(sizeOfLayers.length);
+         for (int size : sizeOfLayers)
+         {
+            header.putInt(size);
+         }
+         header.position(0);
+         while (header.hasRemaining())
+         {
+            channel.write(header);
+         }
+
+         // Write the weights of each layer in blocks
+         ByteBuffer block = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+         int blockDoubles = block.capacity() / Double.BYTES;
+         for (int n = 0; n < numOfLayers; n++)
+         {
+            for (int start = 0; start < weights[n].length; start += blockDoubles)
+            {
+               int count = Math.min(blockDoubles, weights[n].length - start);
+               block.clear();
+               block.asDoubleBuffer().put(weights[n], start, count);
+               block.limit(count * Double.BYTES);
+               while (block.hasRemaining())
+               {
+                  channel.write(block);
+               }
+            }
+         }
+      } // try (FileChannel channel = ...)
+   } // public void storeBinaryWeights(String filename)
+
+   /**
+    * Gets the weight that connects node j of activation layer n to node i of activation layer n + 1.
+    *
+    * @param n the connectivity layer of the weight
+    * @param j the node in the previous layer
+    * @param i the node in the next layer
+    * @return the weight between the two nodes
+    */
+   public double getWeight(int n, int j, int i)
+   {
+      return weights[n][i * sizeOfLayers[n] + j];
+   }
+
+   /**
+    * Gets the flat row-major weights of each connectivity layer. The arrays are shared with this network, so they
+    * change while it trains.
+    *
+    * @return the weights of each connectivity layer
+    */
+   double[][] getWeights()
+   {
+      return weights;
+   }
+
+   /**
+    * Copies the weights of each connectivity layer, so the copies do not change while this network trains.
+    *
+    * @return the copied weights
+    */
+   @Override
+   double[][] copyWeights()
+   {
+      double[][] copy = new double[numOfLayers][];
+      for (int n = 0; n < numOfLayers; n++)
+      {
+         copy[n] = weights[n].clone();
+      }
+      return copy;
+   }
 
    /**
     * Given the activations for all input nodes, this function propagates those inputs through the
@@ -235,25 +589,29 @@ public class NeuralNet
     * applying the output function. This is repeated until the values for the output layer are
     * found. This output array is returned.
     *
+    * The returned array belongs to this network and is overwritten by the next call, and the network cannot be run by
+    * more than one thread at once. To run a trained network from several threads, make a NetworkModel from it.
+    *
     * @param input the values for the activation of all input units
     * @return the array of activations for the output units
     */
+   @Override
    public double[] propagate(double[] input)
    {
+      double[][] activations = workspace.activations;
       activations[0] = input;
+      SparseInput sparse = workspace.gatherInput(input, sparseThreshold);
       for (int n = 0; n < numOfLayers; n++)
       {
-         // calculates the next layer by multiplying the weights by the current layer
-         for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+         if (n == 0 && sparse != null)
          {
-            activations[n + 1][i] = 0.0;
-            for (int j = 0; j < sizeOfLayers[n]; j++)
-            {
-               activations[n + 1][i] += weights[n][j][i] * activations[n][j];
-            }
-
-            // applies the output function to the nodes
-            activations[n + 1][i] = outputFunction(activations[n + 1][i]);
+            propagateLayer(weights[0], sparse, sizeOfLayers[0], activations[1], sizeOfLayers[1],
+                  activationFunctions[0]);
+         }
+         else
+         {
+            propagateLayer(weights[n], activations[n], sizeOfLayers[n], activations[n + 1], sizeOfLayers[n + 1],
+                  activationFunctions[n]);
          }
       }
 
@@ -261,201 +619,636 @@ public class NeuralNet
    } // public double[] propagate(double[] input)
 
    /**
-    * Trains the neural network with the given training data and calculates the error with the test
-    * data. The learning rate of the network starts at the given learning rate, and increases or
-    * decreases depending on the error. Training runs for a given number of epochs or until the
-    * learning rate goes to 0.
+    * Calculates the next activation layer by multiplying the weights of one connectivity layer by the current layer,
+    * one contiguous row per node, and applying the activation function of the next layer to the nodes. Nothing but
+    * next is written to, so this can be shared by any number of threads.
     *
-    * @param trainingData the inputs and outputs for each training case, used to train the network
-    * @param learningRate the initial learning rate of the network
-    * @param lambdaMult   how much to multiply the learning rate by for each iteration
-    * @param epochs       the number of epochs that training will run for
+    * @param w        the flat row-major weights between the two layers
+    * @param prev     the activations of the current layer
+    * @param prevSize the number of nodes in the current layer
+    * @param next     the array to store the activations of the next layer in
+    * @param nextSize the number of nodes in the next layer
+    * @param function the activation function of the next layer
     */
-   public String train(double[][][] trainingData, double learningRate, double lambdaMult, int epochs)
+   static void propagateLayer(double[] w, double[] prev, int prevSize, double[] next, int nextSize, Activation function)
    {
-      double minError = Double.MAX_VALUE;
+      for (int i = 0; i < nextSize; i++)
+      {
+         next[i] = function.apply(Kernels.INSTANCE.dot(w, i * prevSize, prev, prevSize));
+      }
+   } // static void propagateLayer(double[] w, double[] prev, int prevSize, double[] next, int nextSize, Activation function)
 
-      int e = 1;
-      while (e <= epochs && learningRate != 0.0 && minError >= Main.errorThreshold)
+   /**
+    * Calculates the first hidden layer from the inputs listed in a SparseInput, walking only the weights of those
+    * inputs in each row, then applies the activation function of the layer.
+    *
+    * @param w        the flat row-major weights between the input layer and the first hidden layer
+    * @param prev     the inputs that are not treated as zero
+    * @param prevSize the number of nodes in the input layer
+    * @param next     the array to store the activations of the first hidden layer in
+    * @param nextSize the number of nodes in the first hidden layer
+    * @param function the activation function of the first hidden layer
+    */
+   static void propagateLayer(double[] w, SparseInput prev, int prevSize, double[] next, int nextSize, Activation function)
+   {
+      for (int i = 0; i < nextSize; i++)
       {
-         for (double[][] trainingCase : trainingData)
-         {
-            // Find how much the weights need to change for each training case
-            backPropagate(trainingCase[0], trainingCase[1], learningRate);
+         next[i] = function.apply(Kernels.INSTANCE.sparseDot(w, i * prevSize, prev.indices, prev.values, prev.count));
+      }
+   }
 
-            // Calculate the error using the training data
-            double curError = calculateError(trainingData);
+   /**
+    * Propagates many inputs through the network at once. This gives the same outputs as calling propagate for each
+    * input, but every weight is only read from memory once for each group of BATCH_CHUNK inputs.
+    *
+    * @param inputs the values for the activation of all input units, for each input
+    * @return a new array of activations for the output units, for each input
+    */
+   public double[][] propagateBatch(double[][] inputs)
+   {
+      return propagateBatch(weights, sizeOfLayers, activationFunctions, inputs, workspace.getBatchActivations());
+   }
 
-            // Change the learning rate depending on if the error is decreasing or increasing
-            if (minError != Double.MAX_VALUE && curError < minError)
-            {
-               // If the error is decreasing, increase the learning rate
-               learningRate *= lambdaMult;
-               minError = curError;
-            }
-            else if (minError != Double.MAX_VALUE && curError >= minError && lambdaMult != 1.0)
-            {
-               // If the error is increasing, decrease the learning rate
-               learningRate /= lambdaMult;
-            }
-            else
-            {
-               minError = curError;
-            }
-         } // for (double[][] trainingCase : trainingData)
+   /**
+    * Propagates many inputs through a network given by its weights, using the given batch activation arrays as
+    * scratch space. The inputs are copied in groups of up to BATCH_CHUNK into the first of those arrays, and the
+    * outputs of each group are copied out into a new array for each input.
+    *
+    * @param weights          the flat row-major weights of each connectivity layer
+    * @param sizeOfLayers     the number of processing units in each activation layer
+    * @param functions        the activation function of each layer after the input layer
+    * @param inputs           the values for the activation of all input units, for each input
+    * @param batchActivations the scratch arrays made by createBatchActivations
+    * @return a new array of activations for the output units, for each input
+    */
+   static double[][] propagateBatch(double[][] weights, int[] sizeOfLayers, Activation[] functions, double[][] inputs,
+                                    double[][] batchActivations)
+   {
+      int numOfLayers = sizeOfLayers.length - 1;
+      int inputSize = sizeOfLayers[0];
+      int outputSize = sizeOfLayers[numOfLayers];
+
+      double[][] outputs = new double[inputs.length][];
+      for (int start = 0; start < inputs.length; start += BATCH_CHUNK)
+      {
+         int count = Math.min(BATCH_CHUNK, inputs.length - start);
+
+         // Gather the inputs into one row-major matrix
+         for (int b = 0; b < count; b++)
+         {
+            System.arraycopy(inputs[start + b], 0, batchActivations[0], b * inputSize, inputSize);
+         }
 
-         // Print the current error
-         if (Main.printingRate != 0 && e % (epochs / Main.printingRate) == 0)
+         propagateBatch(weights, sizeOfLayers, functions, batchActivations[0], 0, count, batchActivations,
+               batchActivations[numOfLayers], 0);
+
+         // Split the output matrix back up into one array for each input
+         for (int b = 0; b < count; b++)
          {
-            System.out.println("Epoch " + e + ": Error = " + Math.sqrt(minError));
+            outputs[start + b] = new double[outputSize];
+            System.arraycopy(batchActivations[numOfLayers], b * outputSize, outputs[start + b], 0, outputSize);
          }
+      } // for (int start = 0; start < inputs.length; start += BATCH_CHUNK)
 
-         e++;
-      } // while (e <= epochs && learningRate != 0)
+      return outputs;
+   } // static double[][] propagateBatch(...)
 
-      // Return the ending diagnostic information: the final epoch, learning rate, error, and reason for stopping
-      String diagnosticInformation = "";
-      diagnosticInformation += "Final Epoch: " + e + "\n";
-      diagnosticInformation += "Final Learning Rate: " + learningRate + "\n";
-      diagnosticInformation += "Final Error: " + Math.sqrt(minError) + "\n";
+   /**
+    * Propagates a row-major matrix of at most BATCH_CHUNK inputs through a network given by its weights. The
+    * activations of the hidden layers are stored in the batch activation arrays, and the activations of the output
+    * layer are stored as a row-major matrix in the outputs array.
+    *
+    * @param weights          the flat row-major weights of each connectivity layer
+    * @param sizeOfLayers     the number of processing units in each activation layer
+    * @param functions        the activation function of each layer after the input layer
+    * @param inputs           the array holding the input matrix, one row per input
+    * @param inputOffset      the index in inputs where the input matrix starts
+    * @param count            the number of inputs, no more than BATCH_CHUNK
+    * @param batchActivations the scratch arrays made by createBatchActivations
+    * @param outputs          the array to store the output matrix in, one row per input
+    * @param outputOffset     the index in outputs where the output matrix starts
+    */
+   static void propagateBatch(double[][] weights, int[] sizeOfLayers, Activation[] functions, double[] inputs,
+                              int inputOffset, int count, double[][] batchActivations, double[] outputs, int outputOffset)
+   {
+      int numOfLayers = sizeOfLayers.length - 1;
 
-      diagnosticInformation += "Reason for stopping: ";
-      if (e > epochs)
+      double[] prev = inputs;
+      int prevOffset = inputOffset;
+      for (int n = 0; n < numOfLayers; n++)
       {
-         diagnosticInformation += "Reached max epochs\n";
+         double[] next = n == numOfLayers - 1 ? outputs : batchActivations[n + 1];
+         int nextOffset = n == numOfLayers - 1 ? outputOffset : 0;
+
+         propagateLayerBatch(weights[n], prev, prevOffset, sizeOfLayers[n], next, nextOffset, sizeOfLayers[n + 1], count,
+               functions[n]);
+
+         prev = next;
+         prevOffset = nextOffset;
       }
-      else if (learningRate == 0.0)
+   } // static void propagateBatch(...)
+
+   /**
+    * Calculates the next activation layer for a whole matrix of inputs, as the product of the input matrix and the
+    * transpose of the weights matrix followed by the activation function. The weights are split into blocks of
+    * BLOCK_ROWS by BLOCK_COLUMNS, and each block is applied to every input before moving to the next, so it is only
+    * read from memory once. Within a node, the products are still added up in order of the nodes in the current
+    * layer, so each output is exactly the same as from propagateLayer.
+    *
+    * @param w          the flat row-major weights between the two layers
+    * @param prev       the array holding the activations of the current layer, one row per input
+    * @param prevOffset the index in prev where the first row starts
+    * @param prevSize   the number of nodes in the current layer
+    * @param next       the array to store the activations of the next layer in, one row per input
+    * @param nextOffset the index in next where the first row starts
+    * @param nextSize   the number of nodes in the next layer
+    * @param count      the number of inputs
+    * @param function   the activation function of the next layer
+    */
+   static void propagateLayerBatch(double[] w, double[] prev, int prevOffset, int prevSize,
+                                   double[] next, int nextOffset, int nextSize, int count, Activation function)
+   {
+      java.util.Arrays.fill(next, nextOffset, nextOffset + count * nextSize, 0.0);
+
+      for (int jj = 0; jj < prevSize; jj += BLOCK_COLUMNS)
+      {
+         int jEnd = Math.min(jj + BLOCK_COLUMNS, prevSize);
+         for (int ii = 0; ii < nextSize; ii += BLOCK_ROWS)
+         {
+            int iEnd = Math.min(ii + BLOCK_ROWS, nextSize);
+
+            // Apply this block of weights to every input, four inputs at a time so each weight is loaded once for all four
+            int b = 0;
+            for (; b + 4 <= count; b += 4)
+            {
+               int in0 = prevOffset + b * prevSize;
+               int in1 = in0 + prevSize;
+               int in2 = in1 + prevSize;
+               int in3 = in2 + prevSize;
+               int out0 = nextOffset + b * nextSize;
+               int out1 = out0 + nextSize;
+               int out2 = out1 + nextSize;
+               int out3 = out2 + nextSize;
+
+               for (int i = ii; i < iEnd; i++)
+               {
+                  double sum0 = next[out0 + i];
+                  double sum1 = next[out1 + i];
+                  double sum2 = next[out2 + i];
+                  double sum3 = next[out3 + i];
+                  int row = i * prevSize;
+                  for (int j = jj; j < jEnd; j++)
+                  {
+                     double weight = w[row + j];
+                     sum0 += weight * prev[in0 + j];
+                     sum1 += weight * prev[in1 + j];
+                     sum2 += weight * prev[in2 + j];
+                     sum3 += weight * prev[in3 + j];
+                  }
+                  next[out0 + i] = sum0;
+                  next[out1 + i] = sum1;
+                  next[out2 + i] = sum2;
+                  next[out3 + i] = sum3;
+               }
+            } // for (; b + 4 <= count; b += 4)
+
+            // Apply the block to the inputs left over
+            for (; b < count; b++)
+            {
+               int in = prevOffset + b * prevSize;
+               int out = nextOffset + b * nextSize;
+               for (int i = ii; i < iEnd; i++)
+               {
+                  double sum = next[out + i];
+                  int row = i * prevSize;
+                  for (int j = jj; j < jEnd; j++)
+                  {
+                     sum += w[row + j] * prev[in + j];
+                  }
+                  next[out + i] = sum;
+               }
+            } // for (; b < count; b++)
+         } // for (int ii = 0; ii < nextSize; ii += BLOCK_ROWS)
+      } // for (int jj = 0; jj < prevSize; jj += BLOCK_COLUMNS)
+
+      // Applies the activation function to the nodes
+      for (int k = nextOffset; k < nextOffset + count * nextSize; k++)
       {
-         diagnosticInformation += "Learning rate went to 0\n";
+         next[k] = function.apply(next[k]);
       }
-      else if (minError < Main.errorThreshold)
+   } // static void propagateLayerBatch(...)
+
+   /**
+    * Creates the scratch arrays for running BATCH_CHUNK inputs through a network at once: one row-major matrix for
+    * each activation layer, including the input and output layers.
+    *
+    * @param sizeOfLayers the number of processing units in each activation layer
+    * @return the batch activation arrays
+    */
+   static double[][] createBatchActivations(int[] sizeOfLayers)
+   {
+      double[][] batchActivations = new double[sizeOfLayers.length][];
+      for (int n = 0; n < sizeOfLayers.length; n++)
       {
-         diagnosticInformation += "Reached error threshold\n";
+         batchActivations[n] = new double[BATCH_CHUNK * sizeOfLayers[n]];
       }
+      return batchActivations;
+   }
+
+   @Override
+   Workspace getWorkspace()
+   {
+      return workspace;
+   }
+
+   @Override
+   Workspace createWorkspace()
+   {
+      return new Workspace(sizeOfLayers);
+   }
+
+   @Override
+   Checkpoint createCheckpoint(int nextEpoch, int updates, double learningRate, double minError)
+   {
+      return Checkpoint.take(sizeOfLayers, weights, optimizerState, optimizer, optimizerSteps, nextEpoch, updates,
+            learningRate, minError);
+   }
+
+   @Override
+   void restoreWeights(Checkpoint checkpoint)
+   {
+      weights = checkpoint.getWeights();
+      optimizerState = checkpoint.getOptimizer() == optimizer ? checkpoint.getOptimizerState() : null;
+   }
+
+   @Override
+   void clearOptimizerState()
+   {
+      optimizerState = null;
+   }
 
-      return diagnosticInformation;
-   } // public String train(double[][][] trainingData, double learningRate, double lambdaMult, int epochs)
+   @Override
+   void zeroWeights(int layer, int[] indices)
+   {
+      for (int k : indices)
+      {
+         weights[layer][k] = 0.0;
+      }
+   }
 
    /**
-    * This is the generalized form of backprop. It finds the gradient of the error function with respect to each weight for a given
-    * test case. It can work for a network that has any number of inputs, outputs, or hidden layers.
+    * Propagates the input forward through the network while keeping the activations of every layer, which backprop
+    * needs both to change the weights and to find the derivative of the activation function of each node. The inputs
+    * that are not zero are gathered into the sparseInput of the workspace, which backprop uses for the first layer too.
     *
-    * @param input        the input test case to train the network on
-    * @param expected     the expected output for that test case
-    * @param learningRate the rate at which to change the weights
+    * @param input the input test case to propagate
+    * @param ws    the workspace to store the activations in
     */
-   private void backPropagate(double[] input, double[] expected, double learningRate)
+   private void forwardPass(double[] input, Workspace ws)
    {
-      // Propagate forward to calculate theta and activations
+      double[][] activations = ws.activations;
+      TrainingMetrics times = ws.metrics;
+
       activations[0] = input;
       for (int n = 0; n < numOfLayers; n++)
       {
-         // Calculates the next layer by multiplying the weights by the current layer
-         for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+         long start = times != null ? System.nanoTime() : 0;
+         if (n == 0 && ws.gatherInput(input, sparseThreshold) != null)
          {
-            theta[n + 1][i] = 0.0;
-            for (int j = 0; j < sizeOfLayers[n]; j++)
-            {
-               theta[n + 1][i] += weights[n][j][i] * activations[n][j];
-            }
-
-            // Applies the output function to the nodes
-            activations[n + 1][i] = outputFunction(theta[n + 1][i]);
+            propagateLayer(weights[0], ws.sparseInput, sizeOfLayers[0], activations[1], sizeOfLayers[1],
+                  activationFunctions[0]);
          }
-      } // for (int n = 0; n < numOfLayers; n++)
+         else
+         {
+            propagateLayer(weights[n], activations[n], sizeOfLayers[n], activations[n + 1], sizeOfLayers[n + 1],
+                  activationFunctions[n]);
+         }
+         if (times != null)
+         {
+            times.addLayerTime(TrainingMetrics.Phase.FORWARD, n, System.nanoTime() - start);
+         }
+      }
+   } // private void forwardPass(double[] input, Workspace ws)
+
+   /**
+    * Calculates omega and psi for the output layer after a forward pass. Since omega is the difference between the
+    * expected and actual output, the error of the test case comes out of this for free.
+    *
+    * @param expected the expected output for the test case that was propagated
+    * @param ws       the workspace that the test case was propagated in
+    * @return the error of the test case, measured the same way as in calculateError
+    */
+   private double calculateOutputPsi(double[] expected, Workspace ws)
+   {
+      double[][] omega = ws.omega;
+      double[][] activations = ws.activations;
+      Activation outputFunction = activationFunctions[numOfLayers - 1];
 
-      // Calculate omega and psi for the last layer
+      double singleError = 0.0;
       for (int i = 0; i < sizeOfLayers[numOfLayers]; i++)
       {
          // omega_i = T_i - a_i
          omega[numOfLayers][i] = expected[i] - activations[numOfLayers][i];
+         singleError += 0.5 * omega[numOfLayers][i] * omega[numOfLayers][i];
 
-         // psi_i = omega_i * f'(theta_i)
-         psi[numOfLayers][i] = omega[numOfLayers][i] * outputFunctionPrime(theta[numOfLayers][i]);
+         // psi_i = omega_i * f'(theta_i), with f'(theta_i) found from a_i
+         ws.psi[numOfLayers][i] = omega[numOfLayers][i] * outputFunction.derivative(activations[numOfLayers][i]);
       } // for (int i = 0; i < sizeOfLayers[numOfLayers]; i++)
 
-      // Propagate backwards to calculate omega, psi and weights for everything except the last layer
-      for (int n = numOfLayers - 1; n > 0; n--)
+      return singleError * singleError;
+   }
+
+   /**
+    * This is the generalized form of backprop. It finds the gradient of the error function with respect to each weight for a given
+    * test case and changes the weights immediately. It can work for a network that has any number of inputs, outputs, or hidden
+    * layers.
+    *
+    * @param input        the input test case to train the network on
+    * @param expected     the expected output for that test case
+    * @param learningRate the rate at which to change the weights
+    * @return the error of the test case before the weights were changed
+    */
+   @Override
+   double backPropagate(double[] input, double[] expected, double learningRate)
+   {
+      double[][] activations = workspace.activations;
+      double[][] omega = workspace.omega;
+      double[][] psi = workspace.psi;
+
+      forwardPass(input, workspace);
+      SparseInput sparse = workspace.sparseInput;
+      TrainingMetrics times = workspace.metrics;
+      long start = times != null ? System.nanoTime() : 0;
+      double error = calculateOutputPsi(expected, workspace);
+
+      // Propagate backwards, walking each weight row once to both project psi back into omega and update the weights
+      for (int n = numOfLayers - 1; n >= 0; n--)
       {
-         for (int j = 0; j < sizeOfLayers[n]; j++)
+         double[] w = weights[n];
+         double[] prev = activations[n];
+         double[] nextPsi = psi[n + 1];
+         double[] prevOmega = omega[n];
+         int prevSize = sizeOfLayers[n];
+         boolean needsOmega = n > 0;    // the input layer has no omega
+         boolean[] pruned = prunedMask != null ? prunedMask[n] : null;
+
+         if (needsOmega)
          {
-            // omega_j = sum of (psi_I * w_jI)
-            omega[n][j] = 0.0;
-            for (int I = 0; I < sizeOfLayers[n + 1]; I++)
+            for (int j = 0; j < prevSize; j++)
             {
-               omega[n][j] += psi[n + 1][I] * weights[n][j][I];
+               prevOmega[j] = 0.0;
             }
+         }
 
-            // psi_j = omega_j * f'(theta_j)
-            psi[n][j] = omega[n][j] * outputFunctionPrime(theta[n][j]);
+         for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+         {
+            double psiI = nextPsi[i];
+            double step = learningRate * psiI;
+            int row = i * prevSize;
 
-            // deltaWeights_ji = a_j * psi_i
-            for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+            if (needsOmega)
+            {
+               // omega_j = sum of (psi_i * w_ji), using the weight before it is changed, and deltaWeights_ji = a_j * psi_i
+               Kernels.INSTANCE.backProject(w, row, prev, prevOmega, prevSize, psiI, step, pruned);
+            }
+            else if (sparse != null)
+            {
+               // Only the weights of the inputs that are not zero change
+               Kernels.INSTANCE.addScaledSparse(w, row, sparse.indices, sparse.values, sparse.count, step, pruned);
+            }
+            else
             {
-               weights[n][j][i] += learningRate * activations[n][j] * psi[n + 1][i];
+               Kernels.INSTANCE.addScaled(w, row, prev, 0, prevSize, step, pruned);  // deltaWeights_ji = a_j * psi_i
             }
-         } // for (int j = 0; j < sizeOfLayers[n]; j++)
-      } // for (int n = numOfLayers - 1; n > 0; n--)
+         } // for (int i = 0; i < sizeOfLayers[n + 1]; i++)
 
-      // Calculate weights for first layer
-      int n = 0;
-      for (int i = 0; i < sizeOfLayers[n + 1]; i++)
-      {
-         for (int j = 0; j < sizeOfLayers[n]; j++)
+         // psi_j = omega_j * f'(theta_j), with f'(theta_j) found from a_j
+         if (needsOmega)
          {
-            // deltaWeights_ji = a_j * psi_i
-            weights[n][j][i] += learningRate * activations[n][j] * psi[n + 1][i];
+            for (int j = 0; j < prevSize; j++)
+            {
+               psi[n][j] = prevOmega[j] * activationFunctions[n - 1].derivative(activations[n][j]);
+            }
          }
-      }
-   } // public void backPropagate(double[] input, double[] expected)
+
+         // The time of the output psi goes to the last layer, and the update of the weights with the rest of backprop
+         if (times != null)
+         {
+            long now = System.nanoTime();
+            times.addLayerTime(TrainingMetrics.Phase.BACKWARD, n, now - start);
+            start = now;
+         }
+      } // for (int n = numOfLayers - 1; n >= 0; n--)
+
+      return error;
+   } // double backPropagate(double[] input, double[] expected, double learningRate)
 
    /**
-    * Calculates the total error for every single test case in the training data. This total error is a quadratic mean
-    * of the error for each test case, which calculates the difference between the output the network gets and the
-    * expected output for the input.
+    * Runs backprop for a single test case without changing the weights. Instead, the gradient of the error with respect
+    * to each weight is added to the gradients array so that a whole batch can be applied at once by updateWeights.
     *
-    * @param trainingData the inputs and expected output for each training case
-    * @return the error between the expected output and the output the network gets
+    * Only the workspace is written to, so several threads can do this at once with different workspaces.
+    *
+    * @param input    the input test case to train the network on
+    * @param expected the expected output for that test case
+    * @param worker   the Workspace to use, including the gradients to add to
+    * @return the error of the test case
     */
-   public double calculateError(double[][][] trainingData)
+   @Override
+   double accumulateGradient(double[] input, double[] expected, AbstractWorkspace worker)
    {
-      double error = 0.0;
-      for (double[][] testCase : trainingData)                                                // for each test case
+      Workspace ws = (Workspace) worker;
+      ws.createGradients();
+
+      double[][] activations = ws.activations;
+      double[][] omega = ws.omega;
+      double[][] psi = ws.psi;
+      double[][] gradients = ws.gradients;
+
+      forwardPass(input, ws);
+      SparseInput sparse = ws.sparseInput;
+      TrainingMetrics times = ws.metrics;
+      long start = times != null ? System.nanoTime() : 0;
+      double error = calculateOutputPsi(expected, ws);
+
+      for (int n = numOfLayers - 1; n >= 0; n--)
       {
-         double[] output = propagate(testCase[0]);                                            // propagate to get the output
-         double singleError = 0.0;
-         for (int i = 0; i < output.length; i++)
+         double[] w = weights[n];
+         double[] g = gradients[n];
+         double[] prev = activations[n];
+         double[] nextPsi = psi[n + 1];
+         double[] prevOmega = omega[n];
+         int prevSize = sizeOfLayers[n];
+         boolean needsOmega = n > 0;    // the input layer has no omega
+
+         if (needsOmega)
          {
-            singleError += 0.5 * (testCase[1][i] - output[i]) * (testCase[1][i] - output[i]); // compare output with expected
+            for (int j = 0; j < prevSize; j++)
+            {
+               prevOmega[j] = 0.0;
+            }
          }
-         error += singleError * singleError;                                                  // sum this up for each case
-      }
+
+         for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+         {
+            double psiI = nextPsi[i];
+            int row = i * prevSize;
+
+            if (needsOmega)
+            {
+               Kernels.INSTANCE.addScaled(prevOmega, 0, w, row, prevSize, psiI);    // omega_j = sum of (psi_i * w_ji)
+            }
+            if (!needsOmega && sparse != null)
+            {
+               Kernels.INSTANCE.addScaledSparse(g, row, sparse.indices, sparse.values, sparse.count, psiI);
+            }
+            else
+            {
+               Kernels.INSTANCE.addScaled(g, row, prev, 0, prevSize, psiI);         // gradient_ji += a_j * psi_i
+            }
+         } // for (int i = 0; i < sizeOfLayers[n + 1]; i++)
+
+         // psi_j = omega_j * f'(theta_j), with f'(theta_j) found from a_j
+         if (needsOmega)
+         {
+            for (int j = 0; j < prevSize; j++)
+            {
+               psi[n][j] = prevOmega[j] * activationFunctions[n - 1].derivative(activations[n][j]);
+            }
+         }
+
+         // The time of the output psi goes to the last layer, and the update of the weights with the rest of backprop
+         if (times != null)
+         {
+            long now = System.nanoTime();
+            times.addLayerTime(TrainingMetrics.Phase.BACKWARD, n, now - start);
+            start = now;
+         }
+      } // for (int n = numOfLayers - 1; n >= 0; n--)
 
       return error;
+   } // double accumulateGradient(double[] input, double[] expected, AbstractWorkspace worker)
+
+   @Override
+   void createOptimizerState()
+   {
+      if (optimizerState == null)
+      {
+         optimizerState = new double[numOfLayers][optimizer.stateArrays()][];
+         for (int n = 0; n < numOfLayers; n++)
+         {
+            for (int t = 0; t < optimizer.stateArrays(); t++)
+            {
+               optimizerState[n][t] = new double[weights[n].length];
+            }
+         }
+      }
    }
 
    /**
-    * This is the function used to calculate the output of each activation node.
+    * Changes one range of the weights of a layer by the average of the gradients accumulated in the shards, then
+    * clears the gradients for the next batch.
+    *
+    * SGD adds the step to each weight as the gradients are added up. Any other optimizer has the gradients of the
+    * shards added into those of the first shard, then changes the weights of the range by them with Optimizer.update,
+    * using the state arrays of the layer. Either way, the weights marked in the pruned mask are not changed.
     *
-    * @param x the input for the node
-    * @return the function applied to the input
+    * @param layer            the connectivity layer to change
+    * @param from             the flat index of the first weight in the range
+    * @param to               the flat index after the last weight in the range
+    * @param shards           the number of worker workspaces that gradients were accumulated in
+    * @param learningRate     the rate at which to change the weights
+    * @param batchCount       the number of test cases whose gradients were accumulated
+    * @param firstCorrection  1 - BETA1^t for ADAM, where t is the number of the update
+    * @param secondCorrection 1 - BETA2^t for ADAM
     */
-   private double outputFunction(double x)
+   @Override
+   void updateWeights(int layer, int from, int to, int shards, double learningRate, int batchCount,
+                      double firstCorrection, double secondCorrection)
    {
-//      return x;
-      return 1.0 / (1.0 + Math.exp(-x));
-   }
+      double[] w = weights[layer];
+      boolean[] pruned = prunedMask != null ? prunedMask[layer] : null;
+      double[][] gradients = new double[shards][];
+      for (int s = 0; s < shards; s++)
+      {
+         gradients[s] = ((Workspace) workerWorkspaces[s]).gradients[layer];
+      }
+
+      if (optimizer == Optimizer.SGD)
+      {
+         double step = learningRate / batchCount;
+         for (int k = from; k < to; k++)
+         {
+            double sum = 0.0;
+            for (double[] g : gradients)
+            {
+               sum += g[k];
+               g[k] = 0.0;
+            }
+            if (pruned == null || !pruned[k])
+            {
+               w[k] += step * sum;
+            }
+         }
+      }
+      else
+      {
+         double[] sum = gradients[0];
+         for (int s = 1; s < shards; s++)
+         {
+            double[] g = gradients[s];
+            for (int k = from; k < to; k++)
+            {
+               sum[k] += g[k];
+               g[k] = 0.0;
+            }
+         }
+         optimizer.update(w, sum, optimizerState[layer], from, to, learningRate, 1.0 / batchCount, firstCorrection,
+               secondCorrection, pruned);
+      }
+   } // void updateWeights(int layer, int from, int to, int shards, double learningRate, int batchCount, ...)
 
    /**
-    * This returns the derivative of the output function of each activation node evaluated at x.
+    * Calculates the total error for every single test case in the training data. This total error is a quadratic mean
+    * of the error for each test case, which calculates the difference between the output the network gets and the
+    * expected output for the input. The test cases are propagated in batches of up to BATCH_CHUNK at a time.
     *
-    * @param x the input for the node
-    * @return the derivative of the output function
+    * @param trainingData the inputs and expected output for each training case
+    * @return the error between the expected output and the output the network gets
     */
-   private double outputFunctionPrime(double x)
+   @Override
+   public double calculateError(double[][][] trainingData)
    {
-//      return 1.0;
-      return outputFunction(x) * (1.0 - outputFunction(x));
-   }
+      double[][] batchActivations = workspace.getBatchActivations();
+      double[] outputs = batchActivations[numOfLayers];
+      int inputSize = sizeOfLayers[0];
+      int outputSize = sizeOfLayers[numOfLayers];
+
+      double error = 0.0;
+      for (int start = 0; start < trainingData.length; start += BATCH_CHUNK)
+      {
+         int count = Math.min(BATCH_CHUNK, trainingData.length - start);
+         for (int b = 0; b < count; b++)
+         {
+            System.arraycopy(trainingData[start + b][0], 0, batchActivations[0], b * inputSize, inputSize);
+         }
+         propagateBatch(weights, sizeOfLayers, activationFunctions, batchActivations[0], 0, count,
+               batchActivations, outputs, 0);                                                     // propagate to get the outputs
+
+         for (int b = 0; b < count; b++)                                                         // for each test case
+         {
+            double[] expected = trainingData[start + b][1];
+            double singleError = 0.0;
+            for (int i = 0; i < outputSize; i++)
+            {
+               double difference = expected[i] - outputs[b * outputSize + i];
+               singleError += 0.5 * difference * difference;                                      // compare output with expected
+            }
+            error += singleError * singleError;                                                   // sum this up for each case
+         }
+      } // for (int start = 0; start < trainingData.length; start += BATCH_CHUNK)
+
+      return error;
+   } // public double calculateError(double[][][] trainingData)
 
-} // public class NeuralNet
\ No newline at end of file
+} // public class NeuralNet extends AbstractNeuralNet
\ No newline at end of file
@@ -0,0 +1,958 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Number Reader
+ *
+ * Reads whitespace-separated numbers from the text files used by this project (the config file, training data files
+ * and text weights files) without going through Scanner or StringTokenizer. The file is read through one large byte
+ * buffer, and each number is parsed directly from the bytes, so reading a number does not create a String or any
+ * other object.
+ *
+ * Doubles are converted with correct rounding, giving exactly the same value as Double.parseDouble. Numbers with up
+ * to 19 significant digits and a small exponent are converted exactly with one multiplication or division, and other
+ * ones with up to 19 significant digits use the Eisel-Lemire algorithm with a table of 128-bit powers of five. Only
+ * numbers with more than 19 significant digits fall back to Double.parseDouble.
+ *
+ * A reader is either lenient or strict. A lenient reader accepts any token that Double.parseDouble accepts, so tokens
+ * such as NaN or Infinity, which do not use plain decimal syntax, are handed to Double.parseDouble. A strict reader
+ * only accepts plain decimal numbers, optionally signed and with an exponent, and throws a NumberFormatException
+ * giving the byte offset of any other token. Integers are always read strictly. The readers of the config, training
+ * data and weights files are strict when the program is run with -Dnumbers.strict=true, and lenient otherwise.
+ *
+ * Very large files can be parsed by several threads at once with parseParallel, which splits the file into chunks on
+ * line boundaries, counts the numbers in each chunk, and then parses every chunk straight into its part of the result.
+ * parseParallelFloats does the same but stores floats, for the weights of a FloatNeuralNet.
+ *
+ * Methods in this class:
+ * boolean  isStrict()
+ * boolean  hasNext()
+ * boolean  hasNextOnLine()
+ * void     skipLine()
+ * String   nextToken()
+ * int      nextInt()
+ * double   nextDouble()
+ * long     position()
+ * long     countRemaining()
+ * int      parsingThreads(String filename)
+ * double[] parseParallel(String filename, long start, int expected, boolean strict, int threads)
+ * float[]  parseParallelFloats(String filename, long start, int expected, boolean strict, int threads)
+ * Object   parseParallel(String filename, long start, int expected, boolean strict, int threads, boolean floats)
+ * double   toDouble(long mantissa, int exponent, boolean negative)
+ * void     close()
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+public final class NumberReader implements Closeable
+{
+   static final boolean STRICT = Boolean.getBoolean("numbers.strict");   // whether project files are read strictly
+   static final long PARALLEL_THRESHOLD = 16 << 20;    // files at least this big are worth parsing with several threads
+
+   private static final int BUFFER_SIZE = 1 << 20;     // bytes read from the file at a time
+   private static final int MAX_FAST_TOKEN = 128;      // bytes kept in the buffer ahead of each token when possible
+   private static final int MAX_DIGITS = 19;           // most significant digits that fit in the mantissa
+
+   // Powers of ten that are exactly representable as doubles, for the fast path
+   private static final double[] POWERS_OF_TEN = {
+         1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+         1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+   };
+
+   // 128-bit approximations of 5^q for q from SMALLEST_POWER to LARGEST_POWER, high word then low word
+   private static final int SMALLEST_POWER = -342;
+   private static final int LARGEST_POWER = 308;
+   private static final long[] POWERS_OF_FIVE = createPowersOfFive();
+
+   private final FileChannel channel;
+   private final boolean ownsChannel;    // whether closing this reader closes the channel
+   private final long end;               // file position where reading stops
+   private final boolean strict;
+
+   private final byte[] buffer = new byte[BUFFER_SIZE];
+   private final ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+   private long bufferStart;             // file position of buffer[0]
+   private long nextRead;                // file position of the next byte to read into the buffer
+   private int pos;                      // next byte of the buffer to parse
+   private int limit;                    // end of the bytes in the buffer
+
+   /**
+    * Opens a file to read numbers from, strictly if the numbers.strict system property is true.
+    *
+    * @param filename the file to read
+    */
+   public NumberReader(String filename) throws IOException
+   {
+      this(filename, STRICT);
+   }
+
+   /**
+    * Opens a file to read numbers from.
+    *
+    * @param filename the file to read
+    * @param strict   whether to only accept plain decimal numbers
+    */
+   public NumberReader(String filename, boolean strict) throws IOException
+   {
+      this(FileChannel.open(Paths.get(filename), StandardOpenOption.READ), true, 0, -1, strict);
+   }
+
+   /**
+    * Creates a reader for part of a file that is already open.
+    *
+    * @param channel     the channel of the file
+    * @param ownsChannel whether closing this reader closes the channel
+    * @param start       the file position to start reading at
+    * @param end         the file position to stop reading at, or -1 for the end of the file
+    * @param strict      whether to only accept plain decimal numbers
+    */
+   private NumberReader(FileChannel channel, boolean ownsChannel, long start, long end, boolean strict) throws IOException
+   {
+      this.channel = channel;
+      this.ownsChannel = ownsChannel;
+      this.end = end < 0 ? channel.size() : end;
+      this.strict = strict;
+
+      bufferStart = start;
+      nextRead = start;
+   }
+
+   /**
+    * Moves the unparsed bytes to the front of the buffer and reads more of the file after them.
+    *
+    * @return true if more bytes were read, false if the end was reached or the buffer is full
+    */
+   private boolean fill() throws IOException
+   {
+      if (pos > 0)
+      {
+         System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+         bufferStart += pos;
+         limit -= pos;
+         pos = 0;
+      }
+
+      int wanted = (int) Math.min(buffer.length - limit, end - nextRead);
+      if (wanted <= 0)
+      {
+         return false;
+      }
+
+      wrapped.limit(limit + wanted).position(limit);
+      int read = 0;
+      while (read == 0)
+      {
+         read = channel.read(wrapped, nextRead);
+      }
+      if (read < 0)
+      {
+         return false;
+      }
+
+      nextRead += read;
+      limit += read;
+      return true;
+   } // private boolean fill()
+
+   /**
+    * Checks whether this reader only accepts plain decimal numbers.
+    *
+    * @return true if the reader is strict, false if it is lenient
+    */
+   public boolean isStrict()
+   {
+      return strict;
+   }
+
+   /**
+    * Skips whitespace, including line breaks, up to the next token.
+    *
+    * @return true if there is another token, false if the end was reached
+    */
+   public boolean hasNext() throws IOException
+   {
+      while (true)
+      {
+         while (pos < limit)
+         {
+            if (buffer[pos] > ' ')
+            {
+               return true;
+            }
+            pos++;
+         }
+         if (!fill())
+         {
+            return false;
+         }
+      }
+   }
+
+   /**
+    * Skips whitespace other than line breaks, up to the next token on the current line.
+    *
+    * @return true if there is another token before the end of the line, false otherwise
+    */
+   public boolean hasNextOnLine() throws IOException
+   {
+      while (true)
+      {
+         while (pos < limit)
+         {
+            byte b = buffer[pos];
+            if (b == '\n')
+            {
+               return false;
+            }
+            if (b > ' ')
+            {
+               return true;
+            }
+            pos++;
+         }
+         if (!fill())
+         {
+            return false;
+         }
+      }
+   }
+
+   /**
+    * Skips everything up to and including the next line break.
+    */
+   public void skipLine() throws IOException
+   {
+      while (true)
+      {
+         while (pos < limit)
+         {
+            if (buffer[pos++] == '\n')
+            {
+               return;
+            }
+         }
+         if (!fill())
+         {
+            return;
+         }
+      }
+   }
+
+   /**
+    * Moves to the next token and makes sure that, unless the file ends first, at least MAX_FAST_TOKEN bytes of it are
+    * in the buffer.
+    */
+   private void startToken() throws IOException
+   {
+      if (!hasNext())
+      {
+         throw new NoSuchElementException("Expected another value at byte " + position() + " but the input ended");
+      }
+      if (limit - pos < MAX_FAST_TOKEN)
+      {
+         fill();
+      }
+   }
+
+   /**
+    * Reads the rest of the current token, starting at pos, as a String. This is only used for tokens that are not
+    * numbers or cannot be parsed in place.
+    *
+    * @return the token
+    */
+   private String readToken() throws IOException
+   {
+      StringBuilder token = new StringBuilder();
+      while (true)
+      {
+         int start = pos;
+         while (pos < limit && buffer[pos] > ' ')
+         {
+            pos++;
+         }
+         token.append(new String(buffer, start, pos - start, StandardCharsets.ISO_8859_1));
+         if (pos < limit || !fill())
+         {
+            return token.toString();
+         }
+      }
+   }
+
+   /**
+    * Reads the next token as a String.
+    *
+    * @return the next token
+    */
+   public String nextToken() throws IOException
+   {
+      startToken();
+      return readToken();
+   }
+
+   /**
+    * Reads the next token as an int. It has to be an optionally signed decimal integer that fits in an int.
+    *
+    * @return the next int
+    */
+   public int nextInt() throws IOException
+   {
+      startToken();
+      long start = position();
+
+      int i = pos;
+      boolean negative = false;
+      if (i < limit && (buffer[i] == '-' || buffer[i] == '+'))
+      {
+         negative = buffer[i] == '-';
+         i++;
+      }
+
+      long value = 0;
+      int digits = 0;
+      while (i < limit && buffer[i] >= '0' && buffer[i] <= '9' && value <= Integer.MAX_VALUE + 1L)
+      {
+         value = value * 10 + (buffer[i] - '0');
+         digits++;
+         i++;
+      }
+
+      if (digits == 0 || (i < limit && buffer[i] > ' ') || value > Integer.MAX_VALUE + (negative ? 1L : 0L))
+      {
+         throw new NumberFormatException("Bad integer \"" + readToken() + "\" at byte " + start);
+      }
+
+      pos = i;
+      return (int) (negative ? -value : value);
+   } // public int nextInt()
+
+   /**
+    * Reads the next token as a double. Plain decimal numbers with up to 19 significant digits are parsed in place
+    * without creating any objects.
+    *
+    * @return the next double
+    */
+   public double nextDouble() throws IOException
+   {
+      startToken();
+
+      byte[] b = buffer;
+      int i = pos;
+      int lim = limit;
+
+      boolean negative = false;
+      if (i < lim && (b[i] == '-' || b[i] == '+'))
+      {
+         negative = b[i] == '-';
+         i++;
+      }
+
+      // Read the digits before and after the point into the mantissa, counting only significant digits
+      long mantissa = 0;
+      int digits = 0;
+      int exponent = 0;
+      boolean anyDigits = false;
+      boolean truncated = false;
+
+      while (i < lim && b[i] >= '0' && b[i] <= '9')
+      {
+         int d = b[i] - '0';
+         anyDigits = true;
+         if (mantissa != 0 || d != 0)
+         {
+            if (digits < MAX_DIGITS)
+            {
+               mantissa = mantissa * 10 + d;
+               digits++;
+            }
+            else
+            {
+               exponent++;
+               truncated = true;
+            }
+         }
+         i++;
+      }
+
+      if (i < lim && b[i] == '.')
+      {
+         i++;
+         while (i < lim && b[i] >= '0' && b[i] <= '9')
+         {
+            int d = b[i] - '0';
+            anyDigits = true;
+            if (mantissa != 0 || d != 0)
+            {
+               if (digits < MAX_DIGITS)
+               {
+                  mantissa = mantissa * 10 + d;
+                  digits++;
+                  exponent--;
+               }
+               else
+               {
+                  truncated = true;
+               }
+            }
+            else
+            {
+               exponent--;    // a leading zero after the point only moves the exponent
+            }
+            i++;
+         }
+      } // if (i < lim && b[i] == '.')
+
+      // Read the exponent
+      boolean badExponent = false;
+      if (anyDigits && i < lim && (b[i] == 'e' || b[i] == 'E'))
+      {
+         i++;
+         boolean negativeExponent = false;
+         if (i < lim && (b[i] == '-' || b[i] == '+'))
+         {
+            negativeExponent = b[i] == '-';
+            i++;
+         }
+
+         int written = 0;
+         int expDigits = 0;
+         while (i < lim && b[i] >= '0' && b[i] <= '9')
+         {
+            if (written < 100000)
+            {
+               written = written * 10 + (b[i] - '0');
+            }
+            expDigits++;
+            i++;
+         }
+         badExponent = expDigits == 0;
+         exponent += negativeExponent ? -written : written;
+      } // if (anyDigits && i < lim && (b[i] == 'e' || b[i] == 'E'))
+
+      // Anything else in the token, a token that may go on past the buffer, or too many digits needs the slow path
+      boolean cutOff = i == lim && nextRead < end;
+      if (!anyDigits || badExponent || cutOff || truncated || (i < lim && b[i] > ' '))
+      {
+         return slowDouble();
+      }
+
+      pos = i;
+      return toDouble(mantissa, exponent, negative);
+   } // public double nextDouble()
+
+   /**
+    * Parses the token starting at pos with Double.parseDouble. A strict reader first makes sure it is a plain decimal
+    * number.
+    *
+    * @return the value of the token
+    */
+   private double slowDouble() throws IOException
+   {
+      long start = position();
+      String token = readToken();
+      if (strict && !isDecimal(token))
+      {
+         throw new NumberFormatException("Bad number \"" + token + "\" at byte " + start);
+      }
+
+      try
+      {
+         return Double.parseDouble(token);
+      }
+      catch (NumberFormatException e)
+      {
+         throw new NumberFormatException("Bad number \"" + token + "\" at byte " + start);
+      }
+   }
+
+   /**
+    * Checks if a token is a plain decimal number: an optional sign, digits with an optional point, and an optional
+    * exponent.
+    *
+    * @param token the token to check
+    * @return true if it is a plain decimal number, false otherwise
+    */
+   private static boolean isDecimal(String token)
+   {
+      int i = 0;
+      int n = token.length();
+      if (i < n && (token.charAt(i) == '-' || token.charAt(i) == '+'))
+      {
+         i++;
+      }
+
+      int digits = 0;
+      while (i < n && Character.isDigit(token.charAt(i)))
+      {
+         i++;
+         digits++;
+      }
+      if (i < n && token.charAt(i) == '.')
+      {
+         i++;
+         while (i < n && Character.isDigit(token.charAt(i)))
+         {
+            i++;
+            digits++;
+         }
+      }
+      if (digits == 0)
+      {
+         return false;
+      }
+
+      if (i < n && (token.charAt(i) == 'e' || token.charAt(i) == 'E'))
+      {
+         i++;
+         if (i < n && (token.charAt(i) == '-' || token.charAt(i) == '+'))
+         {
+            i++;
+         }
+         int expDigits = 0;
+         while (i < n && Character.isDigit(token.charAt(i)))
+         {
+            i++;
+            expDigits++;
+         }
+         if (expDigits == 0)
+         {
+            return false;
+         }
+      }
+
+      return i == n;
+   } // private static boolean isDecimal(String token)
+
+   /**
+    * Gets the file position of the next byte to be parsed.
+    *
+    * @return the position in the file
+    */
+   public long position()
+   {
+      return bufferStart + pos;
+   }
+
+   /**
+    * Counts the tokens left in the input without parsing them.
+    *
+    * @return the number of tokens left
+    */
+   public long countRemaining() throws IOException
+   {
+      long count = 0;
+      while (hasNext())
+      {
+         count++;
+         while (true)
+         {
+            while (pos < limit && buffer[pos] > ' ')
+            {
+               pos++;
+            }
+            if (pos < limit || !fill())
+            {
+               break;
+            }
+         }
+      }
+      return count;
+   }
+
+   /**
+    * Chooses how many threads to parse a file with: one for files below PARALLEL_THRESHOLD, and one per processor for
+    * larger ones.
+    *
+    * @param filename the file to be parsed
+    * @return the number of threads to use
+    */
+   static int parsingThreads(String filename) throws IOException
+   {
+      long size = Files.size(Paths.get(filename));
+      return size < PARALLEL_THRESHOLD ? 1 : Runtime.getRuntime().availableProcessors();
+   }
+
+   /**
+    * Parses all of the numbers in a file from the given position to the end, using several threads. The part of the
+    * file is split into one chunk per thread, each ending at a line break. First the numbers in every chunk are
+    * counted, which gives the index in the result where each chunk starts, and then every chunk is parsed straight
+    * into its part of the result.
+    *
+    * @param filename the file to read
+    * @param start    the file position to start at, normally the start of a line
+    * @param expected the number of values there should be, or -1 to accept any number
+    * @param strict   whether to only accept plain decimal numbers
+    * @param threads  the number of threads to use
+    * @return the values, in the order they appear in the file
+    */
+   public static double[] parseParallel(String filename, long start, int expected, boolean strict, int threads)
+         throws IOException
+   {
+      return (double[]) parseParallel(filename, start, expected, strict, threads, false);
+   }
+
+   /**
+    * Parses all of the numbers in a file from the given position to the end in the same way as parseParallel, but
+    * rounds each one to the nearest float as it is stored, so that no array of doubles is ever made.
+    *
+    * @param filename the file to read
+    * @param start    the file position to start at, normally the start of a line
+    * @param expected the number of values there should be, or -1 to accept any number
+    * @param strict   whether to only accept plain decimal numbers
+    * @param threads  the number of threads to use
+    * @return the values rounded to floats, in the order they appear in the file
+    */
+   public static float[] parseParallelFloats(String filename, long start, int expected, boolean strict, int threads)
+         throws IOException
+   {
+      return (float[]) parseParallel(filename, start, expected, strict, threads, true);
+   }
+
+   /**
+    * Does the work of parseParallel and parseParallelFloats.
+    *
+    * @param filename the file to read
+    * @param start    the file position to start at, normally the start of a line
+    * @param expected the number of values there should be, or -1 to accept any number
+    * @param strict   whether to only accept plain decimal numbers
+    * @param threads  the number of threads to use
+    * @param floats   whether to store the values as floats instead of doubles
+    * @return the values, as a double[] or a float[], in the order they appear in the file
+    */
+   private static Object parseParallel(String filename, long start, int expected, boolean strict, int threads,
+                                       boolean floats) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+      {
+         long size = channel.size();
+
+         // Split the file into chunks that end at line breaks
+         long[] bounds = new long[threads + 1];
+         bounds[0] = start;
+         for (int t = 1; t < threads; t++)
+         {
+            bounds[t] = Math.max(bounds[t - 1], nextLineStart(channel, start + (size - start) * t / threads, size));
+         }
+         bounds[threads] = size;
+
+         NumberReader[] readers = new NumberReader[threads];
+         for (int t = 0; t < threads; t++)
+         {
+            readers[t] = new NumberReader(channel, false, bounds[t], bounds[t + 1], strict);
+         }
+
+         ForkJoinPool pool = new ForkJoinPool(threads);
+         try
+         {
+            // Count the values in every chunk
+            long[] counts = new long[threads];
+            ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[threads];
+            for (int t = 0; t < threads; t++)
+            {
+               int chunk = t;
+               tasks[t] = pool.submit(() ->
+               {
+                  counts[chunk] = readers[chunk].countRemaining();
+                  return null;
+               });
+            }
+            joinAll(tasks);
+
+            long total = 0;
+            int[] offsets = new int[threads];
+            for (int t = 0; t < threads; t++)
+            {
+               offsets[t] = (int) total;
+               total += counts[t];
+            }
+            if (total > Integer.MAX_VALUE || (expected >= 0 && total != expected))
+            {
+               throw new IOException(filename + " has " + total + " values after byte " + start + ", expected " +
+                     expected);
+            }
+
+            // Parse every chunk into its part of the result
+            double[] values = floats ? null : new double[(int) total];
+            float[] floatValues = floats ? new float[(int) total] : null;
+            for (int t = 0; t < threads; t++)
+            {
+               int chunk = t;
+               tasks[t] = pool.submit(() ->
+               {
+                  NumberReader reader = new NumberReader(channel, false, bounds[chunk], bounds[chunk + 1], strict);
+                  for (int k = 0; k < counts[chunk]; k++)
+                  {
+                     if (floats)
+                     {
+                        floatValues[offsets[chunk] + k] = (float) reader.nextDouble();
+                     }
+                     else
+                     {
+                        values[offsets[chunk] + k] = reader.nextDouble();
+                     }
+                  }
+                  return null;
+               });
+            }
+            joinAll(tasks);
+
+            return floats ? floatValues : values;
+         }
+         finally
+         {
+            pool.shutdown();
+         }
+      } // try (FileChannel channel = ...)
+   } // private static Object parseParallel(...)
+
+   /**
+    * Finds the start of the first line that begins at or after a file position.
+    *
+    * @param channel  the channel of the file
+    * @param position the position to search from
+    * @param size     the size of the file
+    * @return the position just after the next line break, or the size of the file if there is none
+    */
+   private static long nextLineStart(FileChannel channel, long position, long size) throws IOException
+   {
+      ByteBuffer window = ByteBuffer.allocate(1 << 16);
+      while (position < size)
+      {
+         window.clear();
+         int read = channel.read(window, position);
+         if (read <= 0)
+         {
+            break;
+         }
+         for (int k = 0; k < read; k++)
+         {
+            if (window.get(k) == '\n')
+            {
+               return position + k + 1;
+            }
+         }
+         position += read;
+      }
+      return size;
+   }
+
+   /**
+    * Waits for every task, passing on the first failure as an IOException or unchecked exception.
+    *
+    * @param tasks the tasks to wait for
+    */
+   private static void joinAll(ForkJoinTask<?>[] tasks) throws IOException
+   {
+      for (ForkJoinTask<?> task : tasks)
+      {
+         try
+         {
+            task.get();
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing");
+         }
+         catch (ExecutionException e)
+         {
+            if (e.getCause() instanceof IOException)
+            {
+               throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException)
+            {
+               throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+         }
+      }
+   } // private static void joinAll(ForkJoinTask<?>[] tasks)
+
+   /**
+    * Converts a decimal number, mantissa * 10^exponent, to the nearest double. The mantissa must have at most 19
+    * digits, so that it is exact. If the mantissa and the power of ten are both exact doubles, one multiplication or
+    * division gives the correctly rounded result. Otherwise, the Eisel-Lemire algorithm multiplies the mantissa by a
+    * 128-bit approximation of the power of five and rounds the product, which is always enough to find the correctly
+    * rounded result for a mantissa of up to 19 digits.
+    *
+    * @param mantissa the significant digits of the number, as an unsigned value
+    * @param exponent the power of ten to multiply the mantissa by
+    * @param negative whether the number is negative
+    * @return the nearest double to the number
+    */
+   static double toDouble(long mantissa, int exponent, boolean negative)
+   {
+      if (mantissa == 0 || exponent < SMALLEST_POWER)
+      {
+         return negative ? -0.0 : 0.0;
+      }
+      if (exponent > LARGEST_POWER)
+      {
+         return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+      }
+
+      // Fast path: both factors are exact doubles
+      if (mantissa >= 0 && mantissa <= (1L << 53) && exponent >= -22 && exponent <= 22)
+      {
+         double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+         return negative ? -value : value;
+      }
+
+      // Normalize the mantissa and multiply it by the 128-bit power of five
+      int leadingZeros = Long.numberOfLeadingZeros(mantissa);
+      long w = mantissa << leadingZeros;
+
+      int index = 2 * (exponent - SMALLEST_POWER);
+      long high = unsignedMultiplyHigh(w, POWERS_OF_FIVE[index]);
+      long low = w * POWERS_OF_FIVE[index];
+      if ((high & 0x1FF) == 0x1FF)
+      {
+         // The low bits are all ones, so the rest of the power of five may carry into them
+         long secondHigh = unsignedMultiplyHigh(w, POWERS_OF_FIVE[index + 1]);
+         low += secondHigh;
+         if (Long.compareUnsigned(secondHigh, low) > 0)
+         {
+            high++;
+         }
+      }
+
+      // Keep 54 bits of the product, one more than a double holds, for rounding
+      int upperBit = (int) (high >>> 63);
+      int shift = upperBit + 64 - 52 - 3;
+      long bits = high >>> shift;
+      int power2 = (int) (((152170L + 65536L) * exponent) >> 16) + 63 + upperBit - leadingZeros + 1023;
+
+      if (power2 <= 0)
+      {
+         // The result is subnormal
+         if (-power2 + 1 >= 64)
+         {
+            return negative ? -0.0 : 0.0;
+         }
+         bits >>>= -power2 + 1;
+         bits += bits & 1;
+         bits >>>= 1;
+         power2 = bits < (1L << 52) ? 0 : 1;
+         return assemble(bits & ((1L << 52) - 1), power2, negative);
+      }
+
+      // Round half to even when the product is exactly halfway between two doubles
+      if (Long.compareUnsigned(low, 1) <= 0 && exponent >= -4 && exponent <= 23 && (bits & 3) == 1 &&
+            (bits << shift) == high)
+      {
+         bits &= ~1L;
+      }
+
+      bits += bits & 1;
+      bits >>>= 1;
+      if (bits >= (2L << 52))
+      {
+         bits = 1L << 52;
+         power2++;
+      }
+      bits &= ~(1L << 52);
+
+      if (power2 >= 0x7FF)
+      {
+         return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+      }
+      return assemble(bits, power2, negative);
+   } // static double toDouble(long mantissa, int exponent, boolean negative)
+
+   /**
+    * Puts together a double from its fraction bits, biased exponent and sign.
+    *
+    * @param fraction the 52 fraction bits
+    * @param power2   the biased binary exponent
+    * @param negative whether the number is negative
+    * @return the double
+    */
+   private static double assemble(long fraction, int power2, boolean negative)
+   {
+      long bits = fraction | ((long) power2 << 52);
+      if (negative)
+      {
+         bits |= 1L << 63;
+      }
+      return Double.longBitsToDouble(bits);
+   }
+
+   /**
+    * Finds the high 64 bits of the unsigned 128-bit product of two longs.
+    *
+    * @param a the first factor, as an unsigned value
+    * @param b the second factor, as an unsigned value
+    * @return the high half of the product
+    */
+   private static long unsignedMultiplyHigh(long a, long b)
+   {
+      return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+   }
+
+   /**
+    * Creates the table of 128-bit powers of five used by toDouble. For a non-negative q, the entry is 5^q shifted so
+    * that its highest bit is bit 127 and truncated. For a negative q, it is a 128-bit quotient of a power of two by
+    * 5^-q, rounded up.
+    *
+    * @return the high and low words of each power of five
+    */
+   private static long[] createPowersOfFive()
+   {
+      long[] table = new long[2 * (LARGEST_POWER - SMALLEST_POWER + 1)];
+      BigInteger twoTo128 = BigInteger.ONE.shiftLeft(128);
+      BigInteger lowMask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+      for (int q = SMALLEST_POWER; q <= LARGEST_POWER; q++)
+      {
+         BigInteger value;
+         if (q < 0)
+         {
+            BigInteger power5 = BigInteger.valueOf(5).pow(-q);
+            int z = power5.bitLength();           // smallest z with 2^z >= 5^-q, since 5^-q is not a power of two
+            int b = q >= -27 ? z + 127 : 2 * z + 128;
+            value = BigInteger.ONE.shiftLeft(b).divide(power5).add(BigInteger.ONE);
+            if (value.compareTo(twoTo128) >= 0)
+            {
+               value = value.shiftRight(value.bitLength() - 128);
+            }
+         }
+         else
+         {
+            value = BigInteger.valueOf(5).pow(q);
+            value = value.bitLength() <= 128 ? value.shiftLeft(128 - value.bitLength())
+                  : value.shiftRight(value.bitLength() - 128);
+         }
+
+         int index = 2 * (q - SMALLEST_POWER);
+         table[index] = value.shiftRight(64).longValue();
+         table[index + 1] = value.and(lowMask).longValue();
+      } // for (int q = SMALLEST_POWER; q <= LARGEST_POWER; q++)
+
+      return table;
+   } // private static long[] createPowersOfFive()
+
+   /**
+    * Closes the file, unless this reader only reads part of a file it does not own.
+    */
+   @Override
+   public void close() throws IOException
+   {
+      if (ownsChannel)
+      {
+         channel.close();
+      }
+   }
+
+} // public final class NumberReader
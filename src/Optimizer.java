@@ -0,0 +1,284 @@
+import java.util.Locale;
+
+/**
+ * Optimizer
+ *
+ * The rules that training can use to change the weights once the gradient of a batch is known. Every rule is scaled by
+ * the learning rate, which train still adapts with lambdaMult after each update.
+ *
+ * SGD      - plain gradient descent: w += rate * g
+ * MOMENTUM - gradient descent with momentum: v = MOMENTUM * v + rate * g, then w += v
+ * NESTEROV - Nesterov momentum, which steps from where the momentum is about to take the weights:
+ *            v = MOMENTUM * v + rate * g, then w += MOMENTUM * v + rate * g
+ * ADAM     - Adam, which scales the step of each weight by running averages of its gradient and squared gradient:
+ *            m = BETA1 * m + (1 - BETA1) * g and s = BETA2 * s + (1 - BETA2) * g^2, then
+ *            w += rate * (m / (1 - BETA1^t)) / (sqrt(s / (1 - BETA2^t)) + EPSILON), where t counts the updates
+ *
+ * Here g is the average over the batch of the direction that lowers the error, which is minus the gradient. With
+ * MOMENTUM and NESTEROV the steps add up along directions that the gradient keeps pointing in, and ADAM gives every
+ * weight a step of about the learning rate whatever the size of its gradient, so both usually reach a low error in far
+ * fewer epochs than SGD. They work best with a learning rate well below the one for SGD, around 0.01 for ADAM, and
+ * with LAMBDA_MULT at 1 and ERROR_EVALUATION at running, since they adapt the step size themselves.
+ *
+ * The state of each rule is kept by the network in flat row-major arrays, laid out exactly like its weights:
+ * stateArrays of them for each connectivity layer. The update kernels below walk a range of one layer at a time, so the
+ * layers can be split between threads like the rest of applyGradient, and clear the gradients they use. The weights
+ * marked in the pruned mask of a pruned network are skipped, so they and their state stay at 0.
+ *
+ * Methods in this class:
+ * int       stateArrays()
+ * void      update(double[] w, double[] g, double[][] state, int from, int to, double rate, double scale,
+ *                  double firstCorrection, double secondCorrection, boolean[] pruned)
+ * void      update(float[] w, float[] g, float[][] state, int from, int to, float rate, float scale,
+ *                  float firstCorrection, float secondCorrection, boolean[] pruned)
+ * void      update(float[] w, double[] g, float[][] state, int from, int to, double rate, double scale,
+ *                  double firstCorrection, double secondCorrection, boolean[] pruned)
+ * Optimizer parse(String name)
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+public enum Optimizer
+{
+   SGD, MOMENTUM, NESTEROV, ADAM;
+
+   static final double MOMENTUM_DECAY = 0.9;    // how much of the velocity is kept by MOMENTUM and NESTEROV
+   static final double BETA1 = 0.9;             // how much of the average gradient is kept by ADAM
+   static final double BETA2 = 0.999;           // how much of the average squared gradient is kept by ADAM
+   static final double EPSILON = 1e-8;          // keeps ADAM from dividing by 0
+
+   /**
+    * Finds how many arrays of state the rule keeps for each weight.
+    *
+    * @return 0 for SGD, 1 for MOMENTUM and NESTEROV, and 2 for ADAM
+    */
+   public int stateArrays()
+   {
+      switch (this)
+      {
+         case MOMENTUM:
+         case NESTEROV:
+            return 1;
+         case ADAM:
+            return 2;
+         default:
+            return 0;
+      }
+   }
+
+   /**
+    * Changes a range of the weights of one layer by the summed gradients of a batch, then clears those gradients.
+    *
+    * @param w                the flat row-major weights of the layer
+    * @param g                the gradients of the layer summed over the batch, cleared as they are used
+    * @param state            the state arrays of the layer, stateArrays() of them
+    * @param from             the index of the first weight to change
+    * @param to               the index after the last weight to change
+    * @param rate             the learning rate
+    * @param scale            what to multiply the summed gradients by to average them, 1 over the batch size
+    * @param firstCorrection  1 - BETA1^t for ADAM, where t is the number of the update
+    * @param secondCorrection 1 - BETA2^t for ADAM
+    * @param pruned           the pruned mask of the layer, laid out like w, or null if no weights are pruned
+    */
+   void update(double[] w, double[] g, double[][] state, int from, int to, double rate, double scale,
+               double firstCorrection, double secondCorrection, boolean[] pruned)
+   {
+      switch (this)
+      {
+         case MOMENTUM:
+         case NESTEROV:
+            double[] velocity = state[0];
+            for (int k = from; k < to; k++)
+            {
+               if (pruned != null && pruned[k])
+               {
+                  g[k] = 0.0;
+                  continue;
+               }
+               double step = rate * scale * g[k];
+               velocity[k] = MOMENTUM_DECAY * velocity[k] + step;
+               w[k] += this == NESTEROV ? MOMENTUM_DECAY * velocity[k] + step : velocity[k];
+               g[k] = 0.0;
+            }
+            break;
+         case ADAM:
+            double[] mean = state[0];
+            double[] square = state[1];
+            for (int k = from; k < to; k++)
+            {
+               if (pruned != null && pruned[k])
+               {
+                  g[k] = 0.0;
+                  continue;
+               }
+               double gradient = scale * g[k];
+               mean[k] = BETA1 * mean[k] + (1.0 - BETA1) * gradient;
+               square[k] = BETA2 * square[k] + (1.0 - BETA2) * gradient * gradient;
+               w[k] += rate * (mean[k] / firstCorrection) / (Math.sqrt(square[k] / secondCorrection) + EPSILON);
+               g[k] = 0.0;
+            }
+            break;
+         default:
+            for (int k = from; k < to; k++)
+            {
+               if (pruned != null && pruned[k])
+               {
+                  g[k] = 0.0;
+                  continue;
+               }
+               w[k] += rate * scale * g[k];
+               g[k] = 0.0;
+            }
+      } // switch (this)
+   } // void update(double[] w, double[] g, double[][] state, ...)
+
+   /**
+    * Changes a range of the weights of one layer of a FloatNeuralNet by gradients summed as floats, working in floats,
+    * in the same way as the double version.
+    *
+    * @param w                the flat row-major weights of the layer
+    * @param g                the gradients of the layer summed over the batch, cleared as they are used
+    * @param state            the state arrays of the layer, stateArrays() of them
+    * @param from             the index of the first weight to change
+    * @param to               the index after the last weight to change
+    * @param rate             the learning rate
+    * @param scale            what to multiply the summed gradients by to average them, 1 over the batch size
+    * @param firstCorrection  1 - BETA1^t for ADAM, where t is the number of the update
+    * @param secondCorrection 1 - BETA2^t for ADAM
+    * @param pruned           the pruned mask of the layer, laid out like w, or null if no weights are pruned
+    */
+   void update(float[] w, float[] g, float[][] state, int from, int to, float rate, float scale,
+               float firstCorrection, float secondCorrection, boolean[] pruned)
+   {
+      switch (this)
+      {
+         case MOMENTUM:
+         case NESTEROV:
+            float[] velocity = state[0];
+            for (int k = from; k < to; k++)
+            {
+               if (pruned != null && pruned[k])
+               {
+                  g[k] = 0.0f;
+                  continue;
+               }
+               float step = rate * scale * g[k];
+               velocity[k] = (float) MOMENTUM_DECAY * velocity[k] + step;
+               w[k] += this == NESTEROV ? (float) MOMENTUM_DECAY * velocity[k] + step : velocity[k];
+               g[k] = 0.0f;
+            }
+            break;
+         case ADAM:
+            float[] mean = state[0];
+            float[] square = state[1];
+            for (int k = from; k < to; k++)
+            {
+               if (pruned != null && pruned[k])
+               {
+                  g[k] = 0.0f;
+                  continue;
+               }
+               float gradient = scale * g[k];
+               mean[k] = (float) BETA1 * mean[k] + (float) (1.0 - BETA1) * gradient;
+               square[k] = (float) BETA2 * square[k] + (float) (1.0 - BETA2) * gradient * gradient;
+               w[k] += rate * (mean[k] / firstCorrection) /
+                     ((float) Math.sqrt(square[k] / secondCorrection) + (float) EPSILON);
+               g[k] = 0.0f;
+            }
+            break;
+         default:
+            for (int k = from; k < to; k++)
+            {
+               if (pruned != null && pruned[k])
+               {
+                  g[k] = 0.0f;
+                  continue;
+               }
+               w[k] += rate * scale * g[k];
+               g[k] = 0.0f;
+            }
+      } // switch (this)
+   } // void update(float[] w, float[] g, float[][] state, ...)
+
+   /**
+    * Changes a range of the weights of one layer of a FloatNeuralNet by gradients summed as doubles. The rule is
+    * worked out in doubles, and the new state and weights are rounded to floats.
+    *
+    * @param w                the flat row-major weights of the layer
+    * @param g                the gradients of the layer summed over the batch, cleared as they are used
+    * @param state            the state arrays of the layer, stateArrays() of them
+    * @param from             the index of the first weight to change
+    * @param to               the index after the last weight to change
+    * @param rate             the learning rate
+    * @param scale            what to multiply the summed gradients by to average them, 1 over the batch size
+    * @param firstCorrection  1 - BETA1^t for ADAM, where t is the number of the update
+    * @param secondCorrection 1 - BETA2^t for ADAM
+    * @param pruned           the pruned mask of the layer, laid out like w, or null if no weights are pruned
+    */
+   void update(float[] w, double[] g, float[][] state, int from, int to, double rate, double scale,
+               double firstCorrection, double secondCorrection, boolean[] pruned)
+   {
+      switch (this)
+      {
+         case MOMENTUM:
+         case NESTEROV:
+            float[] velocity = state[0];
+            for (int k = from; k < to; k++)
+            {
+               if (pruned != null && pruned[k])
+               {
+                  g[k] = 0.0;
+                  continue;
+               }
+               double step = rate * scale * g[k];
+               double newVelocity = MOMENTUM_DECAY * velocity[k] + step;
+               velocity[k] = (float) newVelocity;
+               w[k] += (float) (this == NESTEROV ? MOMENTUM_DECAY * newVelocity + step : newVelocity);
+               g[k] = 0.0;
+            }
+            break;
+         case ADAM:
+            float[] mean = state[0];
+            float[] square = state[1];
+            for (int k = from; k < to; k++)
+            {
+               if (pruned != null && pruned[k])
+               {
+                  g[k] = 0.0;
+                  continue;
+               }
+               double gradient = scale * g[k];
+               double newMean = BETA1 * mean[k] + (1.0 - BETA1) * gradient;
+               double newSquare = BETA2 * square[k] + (1.0 - BETA2) * gradient * gradient;
+               mean[k] = (float) newMean;
+               square[k] = (float) newSquare;
+               w[k] += (float) (rate * (newMean / firstCorrection) / (Math.sqrt(newSquare / secondCorrection) + EPSILON));
+               g[k] = 0.0;
+            }
+            break;
+         default:
+            for (int k = from; k < to; k++)
+            {
+               if (pruned != null && pruned[k])
+               {
+                  g[k] = 0.0;
+                  continue;
+               }
+               w[k] += (float) (rate * scale * g[k]);
+               g[k] = 0.0;
+            }
+      } // switch (this)
+   } // void update(float[] w, double[] g, float[][] state, ...)
+
+   /**
+    * Finds the optimizer with the given name, ignoring case, as it is written in the config file.
+    *
+    * @param name the name of the optimizer, such as sgd or adam
+    * @return the optimizer with that name
+    */
+   public static Optimizer parse(String name)
+   {
+      return valueOf(name.toUpperCase(Locale.ROOT));
+   }
+
+} // public enum Optimizer
@@ -0,0 +1,44 @@
+/**
+ * Printing Training Listener
+ *
+ * Prints the metrics of training to the console: how long the training data took to load, then one line for every
+ * so many epochs with the time of the epoch, its samples per second and GFLOP/s, its error, and the time of each
+ * phase, split into layers. See TrainingMetrics.toString for the layout of the line.
+ *
+ * Methods in this class:
+ * void dataLoaded(String source, int cases, long nanos)
+ * void epochFinished(TrainingMetrics metrics)
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+public class PrintingTrainingListener implements TrainingListener
+{
+   private final int interval;    // the metrics are printed for every epoch that is a multiple of this
+
+   /**
+    * Creates a listener that prints the metrics of every given number of epochs.
+    *
+    * @param interval how many epochs apart the printed ones are, at least 1
+    */
+   public PrintingTrainingListener(int interval)
+   {
+      this.interval = Math.max(1, interval);
+   }
+
+   @Override
+   public void dataLoaded(String source, int cases, long nanos)
+   {
+      System.out.println("Loaded " + cases + " training cases from " + source + " in " + nanos / 1000000 + " ms");
+   }
+
+   @Override
+   public void epochFinished(TrainingMetrics metrics)
+   {
+      if (metrics.getEpoch() % interval == 0)
+      {
+         System.out.println(metrics);
+      }
+   }
+
+} // public class PrintingTrainingListener implements TrainingListener
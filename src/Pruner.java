@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pruner
+ *
+ * Prunes a trained NeuralNet by magnitude: in every connectivity layer, the weights closest to 0 are set to 0 until the
+ * given fraction of the layer is 0, and the rest are kept as they are. Every layer is pruned to the same sparsity, so
+ * that the small layers near the output, whose weights tend to be larger, do not lose all of their weights to the
+ * large first layer. Weights of the same magnitude at the cut are pruned in order of their index, so exactly the
+ * rounded fraction of each layer is pruned.
+ *
+ * Pruning on its own raises the error of the network, so it can be followed by a few epochs of fine-tuning with the
+ * training settings of the config file. The pruned weights are held at 0 while fine-tuning, so the network keeps its
+ * sparsity and only the weights that are left learn to make up for the ones that were removed.
+ *
+ * The pruned network is stored as a sparse weights file, in which each pruned layer is a CsrLayer, so NetworkModel
+ * only reads and walks the weights that are left. At 90% sparsity, the first layer of an image network takes about a
+ * sixth of the memory and time of the dense layer to load and to propagate.
+ *
+ * Methods in this class:
+ * int[][]  prune(NeuralNet network, double sparsity)
+ * int[]    pruneLayer(double[] w, double sparsity)
+ * void     main(String[] args)
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+public final class Pruner
+{
+   /**
+    * Prunes every connectivity layer of a network to the given sparsity, and holds the pruned weights at 0 if it is
+    * trained any further.
+    *
+    * @param network  the network to prune, whose weights are changed
+    * @param sparsity the fraction of the weights of each layer to set to 0, from 0 to 1
+    * @return the index of each pruned weight for each connectivity layer, as given to network.setPrunedWeights
+    * @throws IllegalArgumentException if the sparsity is not from 0 to 1
+    */
+   public static int[][] prune(NeuralNet network, double sparsity)
+   {
+      if (!(sparsity >= 0.0 && sparsity <= 1.0))
+      {
+         throw new IllegalArgumentException("Sparsity must be from 0 to 1, was " + sparsity);
+      }
+
+      double[][] weights = network.getWeights();
+      int[][] pruned = new int[weights.length][];
+      for (int n = 0; n < weights.length; n++)
+      {
+         pruned[n] = pruneLayer(weights[n], sparsity);
+      }
+      network.setPrunedWeights(pruned);
+      return pruned;
+   } // public static int[][] prune(NeuralNet network, double sparsity)
+
+   /**
+    * Finds the weights of one layer with the smallest magnitudes. The magnitude at the cut is found by sorting a copy
+    * of the magnitudes; every weight below it is pruned, then weights equal to it until there are enough.
+    *
+    * @param w        the weights of the layer
+    * @param sparsity the fraction of the weights to prune
+    * @return the index of each weight to prune, in increasing order
+    */
+   private static int[] pruneLayer(double[] w, double sparsity)
+   {
+      int count = (int) Math.round(sparsity * w.length);
+      int[] pruned = new int[count];
+      if (count == 0)
+      {
+         return pruned;
+      }
+
+      double[] magnitudes = new double[w.length];
+      for (int k = 0; k < w.length; k++)
+      {
+         magnitudes[k] = Math.abs(w[k]);
+      }
+      Arrays.sort(magnitudes);
+      double cut = magnitudes[count - 1];
+
+      int below = 0;
+      for (double magnitude : magnitudes)
+      {
+         if (magnitude >= cut)
+         {
+            break;
+         }
+         below++;
+      }
+
+      int ties = count - below;    // how many of the weights at the cut are pruned
+      int p = 0;
+      for (int k = 0; k < w.length; k++)
+      {
+         double magnitude = Math.abs(w[k]);
+         if (magnitude < cut || (magnitude == cut && ties-- > 0))
+         {
+            pruned[p++] = k;
+         }
+      }
+      return pruned;
+   } // private static int[] pruneLayer(double[] w, double sparsity)
+
+   /**
+    * Prunes the network stored in a weights file and stores it as a sparse weights file. If a number of fine-tuning
+    * epochs is given, the pruned network is trained on the training data file of Main, or the one given, with the
+    * learning rate, batch size, optimizer and other settings of the config file before it is stored.
+    *
+    * @param args the weights file to read, the sparsity, the sparse weights file to write, and optionally the number of
+    *             fine-tuning epochs and the training data file
+    */
+   public static void main(String[] args) throws IOException
+   {
+      if (args.length < 3 || args.length > 5)
+      {
+         System.err.println("Usage: java Pruner <weights file> <sparsity> <sparse weights file> " +
+               "[fine-tuning epochs [training data file]]");
+         return;
+      }
+
+      NeuralNet network = new NeuralNet(args[0]);
+      double sparsity = Double.parseDouble(args[1]);
+      int fineTuneEpochs = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+      prune(network, sparsity);
+      System.out.println("Pruned " + args[0] + " to " + sparsity + " sparsity");
+
+      if (fineTuneEpochs > 0)
+      {
+         Main.getConfig(Main.configFile);
+         double[][][] trainingData = Main.getTrainingData(args.length > 4 ? args[4] : Main.trainingFile);
+         if (trainingData[0][0].length != network.getSizeOfLayers()[0] ||
+               trainingData[0][1].length != network.getSizeOfLayers()[network.numOfLayers])
+         {
+            throw new IllegalArgumentException("The training data does not fit the layer sizes " +
+                  Arrays.toString(network.getSizeOfLayers()));
+         }
+
+         Main.printingRate = Math.min(Main.printingRate, fineTuneEpochs);   // train prints every epochs / printingRate
+         network.setActivations(Main.activations);
+         network.setOptimizer(Main.optimizer);
+         network.setSparseInputThreshold(Main.sparseThreshold);
+         System.out.println(network.train(trainingData, Main.learningRate, Main.lambdaMult, fineTuneEpochs,
+               Main.batchSize));
+      } // if (fineTuneEpochs > 0)
+
+      new NetworkModel(network).store(args[2]);
+   } // public static void main(String[] args)
+
+} // public final class Pruner
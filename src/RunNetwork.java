@@ -3,8 +3,19 @@ import java.io.IOException;
 public class RunNetwork
 {
 
+   /**
+    * Runs a trained network over every case of the training data and prints the expected and actual outputs. Weights
+    * files do not record the activation functions, so the network is run with the ACTIVATIONS of the config file,
+    * which should be the ones it was trained with.
+    *
+    * @param args optionally the weights file, in any format that NetworkModel reads, including the sparse weights
+    *             files written by Pruner, and then the training data file
+    */
    public static void main(String[] args) throws IOException
    {
+      String weightsFile = args.length > 0 ? args[0] : Main.weightsFile;
+      String dataFile = args.length > 1 ? args[1] : Main.trainingFile;
+
 //      for (int i = 1; i <= 5; i++) {
 //         ImageWrapper im = new ImageWrapper("hands/small" + i + ".bmp");
 //         im.toGrayScale();
@@ -12,16 +23,31 @@ public class RunNetwork
 //      }
       // Create network with given weights
 //      System.out.println("Creating Network...");
-      NeuralNet nn = new NeuralNet("weights2.txt");
+      Main.getConfig(Main.configFile);
+      long loadStart = System.nanoTime();
+      NetworkModel model = new NetworkModel(weightsFile, Main.activations);
+      InferenceContext context = model.newContext();
+      long loadNanos = System.nanoTime() - loadStart;
 
       // Get the five training cases
 //      System.out.println("Getting Training Data...");
-      Main.getConfig(Main.configFile);
-      double[][][] trainingData = Main.getTrainingData(Main.trainingFile);
+      double[][][] trainingData = Main.getTrainingData(dataFile);
+
+      // Score every test case at once
+      double[][] inputs = new double[trainingData.length][];
+      for (int c = 0; c < trainingData.length; c++)
+      {
+         inputs[c] = trainingData[c][0];
+      }
+      long scoreStart = System.nanoTime();
+      double[][] outputs = model.propagateBatch(inputs, context);
+      long scoreNanos = System.nanoTime() - scoreStart;
 
       // For each test case
-      for (double[][] testCase : trainingData)
+      for (int c = 0; c < trainingData.length; c++)
       {
+         double[][] testCase = trainingData[c];
+
          // Print each input
          StringBuilder printedTestCase = new StringBuilder();
          printedTestCase.append("Input:    ");
@@ -36,22 +62,22 @@ public class RunNetwork
          for (int i = 0; i < testCase[1].length; i++)
          {
             printedTestCase.append(4 * testCase[1][i] + 1).append(",");
-            printedTestCase.append(("\nOutput:   " + (4 * testCase[1][i] + .8 + .5*Math.random())));
          }
 
-//         System.out.println("Output:   1.154627874157246");
-//
-//         // Print the neural network's output for the test case
-//         printedTestCase.deleteCharAt(printedTestCase.length() - 1);
-//         printedTestCase.append("\nOutput:   ");
-//         double[] output = nn.propagate(testCase[0]);
-//         for (int i = 0; i < output.length; i++)
-//         {
-//            printedTestCase.append(4 * output[i] + 1).append(",");
-//         }
+         // Print the neural network's output for the test case
+         printedTestCase.deleteCharAt(printedTestCase.length() - 1);
+         printedTestCase.append("\nOutput:   ");
+         double[] output = outputs[c];
+         for (int i = 0; i < output.length; i++)
+         {
+            printedTestCase.append(4 * output[i] + 1).append(",");
+         }
          printedTestCase.deleteCharAt(printedTestCase.length() - 1);
          System.out.println(printedTestCase + "\n");
-      } // for (double[][] testCase : trainingData)
-   }
+      } // for (int c = 0; c < trainingData.length; c++)
+
+      System.out.printf("Loaded %s in %.1f ms, scored %d cases in %.1f ms%n", weightsFile, loadNanos / 1e6,
+            trainingData.length, scoreNanos / 1e6);
+   } // public static void main(String[] args)
 
 }
@@ -0,0 +1,100 @@
+/**
+ * Sparse Input
+ *
+ * The inputs of one training case or image that are not treated as zero, kept as a list of their indices and values.
+ * Image inputs are mostly exact zeros, so the product of the input layer with the first layer of weights, and the
+ * update of that layer in backprop, only need to walk the weights of the inputs in the list; every other input adds
+ * nothing to either. Inputs whose absolute value is at most the threshold of the network are left out of the list, so
+ * a threshold of 0 skips only exact zeros and gives the same results as the dense loops, while a larger one also
+ * skips noise near zero.
+ *
+ * Finding the inputs takes one pass over the input layer, which is cheap next to the product with the first layer, so
+ * a sparse input is gathered again for every case as it is propagated instead of being stored with the training data.
+ * Walking a list of indices costs more for each input than walking a whole row, so the list is only used when at most
+ * MAX_DENSITY of the inputs are in it; gather reports whether it should be.
+ *
+ * A sparse input is scratch space owned by one Workspace or FloatWorkspace, so it is not thread-safe.
+ *
+ * Methods in this class:
+ * boolean gather(double[] input, double threshold)
+ * boolean gather(float[] input, float threshold)
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+final class SparseInput
+{
+   static final double MAX_DENSITY = 0.25;    // the most inputs, as a fraction of the input layer, worth walking by index
+
+   final int[] indices;         // the index of each input in the list
+   double[] values;             // the value of each input in the list, if it was gathered from doubles
+   float[] floatValues;         // the value of each input in the list, if it was gathered from floats
+   int count;                   // the number of inputs in the list
+
+   /**
+    * Creates an empty list for an input layer of the given size.
+    *
+    * @param size the number of units in the input layer
+    */
+   SparseInput(int size)
+   {
+      indices = new int[size];
+   }
+
+   /**
+    * Gathers the inputs whose absolute value is more than the threshold into the list.
+    *
+    * @param input     the activations of the input layer
+    * @param threshold the largest absolute value that is treated as zero
+    * @return true if there are few enough inputs in the list to use it instead of the whole input layer
+    */
+   boolean gather(double[] input, double threshold)
+   {
+      if (values == null)
+      {
+         values = new double[indices.length];
+      }
+
+      int limit = (int) (MAX_DENSITY * input.length);
+      count = 0;
+      for (int j = 0; j < input.length && count <= limit; j++)
+      {
+         if (Math.abs(input[j]) > threshold)
+         {
+            indices[count] = j;
+            values[count] = input[j];
+            count++;
+         }
+      }
+      return count <= limit;
+   } // boolean gather(double[] input, double threshold)
+
+   /**
+    * Gathers the float inputs whose absolute value is more than the threshold into the list.
+    *
+    * @param input     the activations of the input layer
+    * @param threshold the largest absolute value that is treated as zero
+    * @return true if there are few enough inputs in the list to use it instead of the whole input layer
+    */
+   boolean gather(float[] input, float threshold)
+   {
+      if (floatValues == null)
+      {
+         floatValues = new float[indices.length];
+      }
+
+      int limit = (int) (MAX_DENSITY * input.length);
+      count = 0;
+      for (int j = 0; j < input.length && count <= limit; j++)
+      {
+         if (Math.abs(input[j]) > threshold)
+         {
+            indices[count] = j;
+            floatValues[count] = input[j];
+            count++;
+         }
+      }
+      return count <= limit;
+   } // boolean gather(float[] input, float threshold)
+
+} // final class SparseInput
@@ -0,0 +1,390 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sparse Weights
+ *
+ * The weights of a network in which each connectivity layer is kept either as dense flat row-major weights, like in
+ * NeuralNet, or as a CsrLayer. compress chooses CSR for every layer with at least MIN_SPARSITY of its weights at 0,
+ * which only happens once a network has been pruned, so the weights of any other network stay dense.
+ *
+ * Sparse weights files are binary and little-endian, and start with a header:
+ *
+ * int      magic number, the bytes "NNWS"
+ * int      version of the format, currently 1
+ * int      number of activation layers
+ * int[]    size of each activation layer
+ * padding  zero bytes up to the next multiple of 8 bytes
+ *
+ * Then, for each connectivity layer, with R nodes in the next layer and C in the current one:
+ *
+ * int      how the layer is stored, DENSE or CSR
+ * int      the number of weights stored, R * C for a dense layer or the number of weights that are not 0, W, for CSR
+ *
+ * followed by either the R * C weights of a dense layer as doubles in flat row-major order, or by the arrays of a CSR
+ * layer: R + 1 ints of rowStart, W ints of columns, zero bytes up to the next multiple of 8 bytes, and W doubles of
+ * values. Every double is aligned, and each array is read by memory mapping its part of the file and copying it in
+ * bulk.
+ *
+ * NetworkModel reads these files directly into its CSR layers, and NeuralNet(String) reads them too, expanding every
+ * layer back to dense weights so that a pruned network can be trained further.
+ *
+ * Methods in this class:
+ * SparseWeights compress(int[] sizeOfLayers, double[][] weights)
+ * SparseWeights load(String filename)
+ * boolean       isSparseWeightsFile(String filename)
+ * SparseWeights read(String filename)
+ * int           readInt(FileChannel channel, long position, String filename)
+ * void          write(String filename)
+ * void          writeInts(FileChannel channel, ByteBuffer block, int[] values)
+ * void          writeDoubles(FileChannel channel, ByteBuffer block, double[] values)
+ * void          writeBuffer(FileChannel channel, ByteBuffer buffer)
+ * long          align(long position)
+ * double[][]    toDenseWeights()
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+final class SparseWeights
+{
+   static final int MAGIC = 0x5357_4E4E;       // "NNWS" read as a little-endian int, starts every sparse weights file
+   static final int VERSION = 1;               // version of the sparse weights format that is written
+   static final int DENSE = 0;                 // a layer stored as dense flat row-major weights
+   static final int CSR = 1;                   // a layer stored as a CsrLayer
+   static final double MIN_SPARSITY = 0.5;     // the fraction of zero weights from which compress keeps a layer as CSR
+
+   final int[] sizeOfLayers;     // number of units in each activation layer
+   final double[][] dense;       // the weights of each layer kept dense, or null for a layer kept as CSR
+   final CsrLayer[] sparse;      // each layer kept as CSR, or null for a layer kept dense
+
+   /**
+    * Creates sparse weights from layers that are each given in exactly one of the two forms, taking over the arrays.
+    *
+    * @param sizeOfLayers the number of units in each activation layer
+    * @param dense        the flat row-major weights of each dense layer, null for each CSR layer
+    * @param sparse       each CSR layer, null for each dense layer
+    */
+   SparseWeights(int[] sizeOfLayers, double[][] dense, CsrLayer[] sparse)
+   {
+      this.sizeOfLayers = sizeOfLayers;
+      this.dense = dense;
+      this.sparse = sparse;
+   }
+
+   /**
+    * Keeps every layer with at least MIN_SPARSITY of its weights at 0 as CSR, and every other layer as it is.
+    *
+    * @param sizeOfLayers the number of units in each activation layer
+    * @param weights      the flat row-major weights of each connectivity layer, which the dense layers keep
+    * @return the sparse weights
+    */
+   static SparseWeights compress(int[] sizeOfLayers, double[][] weights)
+   {
+      double[][] dense = new double[weights.length][];
+      CsrLayer[] sparse = new CsrLayer[weights.length];
+      for (int n = 0; n < weights.length; n++)
+      {
+         int zeros = 0;
+         for (double weight : weights[n])
+         {
+            if (weight == 0.0)
+            {
+               zeros++;
+            }
+         }
+
+         if (zeros >= MIN_SPARSITY * weights[n].length)
+         {
+            sparse[n] = CsrLayer.fromDense(weights[n], sizeOfLayers[n + 1], sizeOfLayers[n]);
+         }
+         else
+         {
+            dense[n] = weights[n];
+         }
+      } // for (int n = 0; n < weights.length; n++)
+      return new SparseWeights(sizeOfLayers, dense, sparse);
+   } // static SparseWeights compress(int[] sizeOfLayers, double[][] weights)
+
+   /**
+    * Loads weights from a file in any of the formats: a sparse weights file is read as it is stored, and any file that
+    * NeuralNet(String) reads is loaded as dense weights and compressed.
+    *
+    * @param filename the name of the weights file
+    * @return the sparse weights
+    */
+   static SparseWeights load(String filename) throws IOException
+   {
+      if (isSparseWeightsFile(filename))
+      {
+         return read(filename);
+      }
+      NeuralNet network = new NeuralNet(filename);
+      return compress(network.getSizeOfLayers(), network.getWeights());
+   }
+
+   /**
+    * Checks if a weights file is in the sparse format by reading the magic number at its start.
+    *
+    * @param filename the name of the weights file
+    * @return true if the file starts with the sparse magic number, false otherwise
+    */
+   static boolean isSparseWeightsFile(String filename) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+      {
+         ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+         return NeuralNet.readFully(channel, magic, 0) && magic.getInt() == MAGIC;
+      }
+   }
+
+   /**
+    * Reads a sparse weights file, checking every layer against the header and that the file ends with the last one.
+    *
+    * @param filename the name of the sparse weights file
+    * @return the sparse weights
+    */
+   static SparseWeights read(String filename) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+      {
+         long fileSize = channel.size();
+         if (readInt(channel, 0, filename) != MAGIC)
+         {
+            throw new IOException(filename + " is not a sparse weights file");
+         }
+         int version = readInt(channel, Integer.BYTES, filename);
+         if (version != VERSION)
+         {
+            throw new IOException("Unsupported sparse weights version " + version + " in " + filename);
+         }
+         int numOfActivationLayers = readInt(channel, 2 * Integer.BYTES, filename);
+         if (numOfActivationLayers < 2 || numOfActivationLayers > fileSize / Integer.BYTES)
+         {
+            throw new IOException("Sparse weights file " + filename + " has a bad layer count " +
+                  numOfActivationLayers);
+         }
+
+         int[] sizeOfLayers = new int[numOfActivationLayers];
+         for (int n = 0; n < numOfActivationLayers; n++)
+         {
+            sizeOfLayers[n] = readInt(channel, (3L + n) * Integer.BYTES, filename);
+            if (sizeOfLayers[n] < 1)
+            {
+               throw new IOException("Sparse weights file " + filename + " has a bad layer size " + sizeOfLayers[n]);
+            }
+         }
+
+         double[][] dense = new double[numOfActivationLayers - 1][];
+         CsrLayer[] sparse = new CsrLayer[numOfActivationLayers - 1];
+         long offset = align((3L + numOfActivationLayers) * Integer.BYTES);
+         for (int n = 0; n < numOfActivationLayers - 1; n++)
+         {
+            int rows = sizeOfLayers[n + 1];
+            int columnCount = sizeOfLayers[n];
+            int storage = readInt(channel, offset, filename);
+            int count = readInt(channel, offset + Integer.BYTES, filename);
+            offset += 2 * Integer.BYTES;
+
+            long layerBytes = storage == DENSE ? (long) count * Double.BYTES :
+                  align((rows + 1L + count) * Integer.BYTES) + (long) count * Double.BYTES;
+            if ((storage != DENSE && storage != CSR) || count < 0 || (long) count > (long) rows * columnCount ||
+                  (storage == DENSE && count != rows * columnCount) || offset + layerBytes > fileSize)
+            {
+               throw new IOException("Sparse weights file " + filename + " has a bad header for layer " + n);
+            }
+
+            MappedByteBuffer layer = channel.map(FileChannel.MapMode.READ_ONLY, offset, layerBytes);
+            layer.order(ByteOrder.LITTLE_ENDIAN);
+            if (storage == DENSE)
+            {
+               dense[n] = new double[count];
+               layer.asDoubleBuffer().get(dense[n]);
+            }
+            else
+            {
+               int[] rowStart = new int[rows + 1];
+               int[] columns = new int[count];
+               double[] values = new double[count];
+               layer.asIntBuffer().get(rowStart).get(columns);
+               layer.position((int) align((rows + 1L + count) * Integer.BYTES));
+               layer.asDoubleBuffer().get(values);
+
+               // Make sure that every weight is inside its row and the layer, so propagating cannot go out of bounds
+               boolean valid = rowStart[0] == 0 && rowStart[rows] == count;
+               for (int i = 0; i < rows && valid; i++)
+               {
+                  valid = rowStart[i] <= rowStart[i + 1];
+               }
+               for (int k = 0; k < count && valid; k++)
+               {
+                  valid = columns[k] >= 0 && columns[k] < columnCount;
+               }
+               if (!valid)
+               {
+                  throw new IOException("Sparse weights file " + filename + " has bad indices in layer " + n);
+               }
+               sparse[n] = new CsrLayer(rows, columnCount, rowStart, columns, values);
+            } // else
+            offset += layerBytes;
+         } // for (int n = 0; n < numOfActivationLayers - 1; n++)
+
+         if (offset != fileSize)
+         {
+            throw new IOException("Sparse weights file " + filename + " is " + fileSize + " bytes, expected " + offset);
+         }
+         return new SparseWeights(sizeOfLayers, dense, sparse);
+      } // try (FileChannel channel = ...)
+   } // static SparseWeights read(String filename)
+
+   /**
+    * Reads one little-endian int from a file.
+    *
+    * @param channel  the channel of the file
+    * @param position the position of the int in the file
+    * @param filename the name of the file, for the message if it is too short
+    * @return the int
+    */
+   private static int readInt(FileChannel channel, long position, String filename) throws IOException
+   {
+      ByteBuffer value = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      if (!NeuralNet.readFully(channel, value, position))
+      {
+         throw new IOException("Sparse weights file " + filename + " ends too early");
+      }
+      return value.getInt();
+   }
+
+   /**
+    * Writes the weights in the sparse weights format, converting the values to little-endian bytes through a
+    * fixed-size buffer in the same way as NeuralNet.storeBinaryWeights.
+    *
+    * @param filename the name of the file to write
+    */
+   void write(String filename) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         ByteBuffer header = ByteBuffer.allocate((int) align((3L + sizeOfLayers.length) * Integer.BYTES))
+               .order(ByteOrder.LITTLE_ENDIAN);
+         header.putInt(MAGIC);
+         header.putInt(VERSION);
+         header.putInt(sizeOfLayers.length);
+         for (int size : sizeOfLayers)
+         {
+            header.putInt(size);
+         }
+         header.position(0);
+         writeBuffer(channel, header);
+
+         ByteBuffer block = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+         for (int n = 0; n < sizeOfLayers.length - 1; n++)
+         {
+            ByteBuffer layerHeader = ByteBuffer.allocate(2 * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            layerHeader.putInt(sparse[n] != null ? CSR : DENSE);
+            layerHeader.putInt(sparse[n] != null ? sparse[n].nonZeros() : dense[n].length);
+            layerHeader.flip();
+            writeBuffer(channel, layerHeader);
+
+            if (sparse[n] == null)
+            {
+               writeDoubles(channel, block, dense[n]);
+            }
+            else
+            {
+               writeInts(channel, block, sparse[n].rowStart);
+               writeInts(channel, block, sparse[n].columns);
+               writeBuffer(channel, ByteBuffer.allocate((int) (align(channel.position()) - channel.position())));
+               writeDoubles(channel, block, sparse[n].values);
+            }
+         } // for (int n = 0; n < sizeOfLayers.length - 1; n++)
+      } // try (FileChannel channel = ...)
+   } // void write(String filename)
+
+   /**
+    * Writes an array of ints in blocks.
+    *
+    * @param channel the channel to write to
+    * @param block   the buffer to convert the ints through
+    * @param values  the ints to write
+    */
+   private static void writeInts(FileChannel channel, ByteBuffer block, int[] values) throws IOException
+   {
+      int blockInts = block.capacity() / Integer.BYTES;
+      for (int start = 0; start < values.length; start += blockInts)
+      {
+         int count = Math.min(blockInts, values.length - start);
+         block.clear();
+         block.asIntBuffer().put(values, start, count);
+         block.limit(count * Integer.BYTES);
+         writeBuffer(channel, block);
+      }
+   }
+
+   /**
+    * Writes an array of doubles in blocks.
+    *
+    * @param channel the channel to write to
+    * @param block   the buffer to convert the doubles through
+    * @param values  the doubles to write
+    */
+   private static void writeDoubles(FileChannel channel, ByteBuffer block, double[] values) throws IOException
+   {
+      int blockDoubles = block.capacity() / Double.BYTES;
+      for (int start = 0; start < values.length; start += blockDoubles)
+      {
+         int count = Math.min(blockDoubles, values.length - start);
+         block.clear();
+         block.asDoubleBuffer().put(values, start, count);
+         block.limit(count * Double.BYTES);
+         writeBuffer(channel, block);
+      }
+   }
+
+   /**
+    * Writes everything left in a buffer.
+    *
+    * @param channel the channel to write to
+    * @param buffer  the buffer to write
+    */
+   private static void writeBuffer(FileChannel channel, ByteBuffer buffer) throws IOException
+   {
+      while (buffer.hasRemaining())
+      {
+         channel.write(buffer);
+      }
+   }
+
+   /**
+    * Rounds a position in the file up to the next multiple of 8 bytes, where a double can start.
+    *
+    * @param position the position to round up
+    * @return the aligned position
+    */
+   private static long align(long position)
+   {
+      return (position + Double.BYTES - 1) / Double.BYTES * Double.BYTES;
+   }
+
+   /**
+    * Expands every layer into dense flat row-major weights. The layers that are already dense are not copied, so they
+    * are shared with these sparse weights.
+    *
+    * @return the weights of each connectivity layer
+    */
+   double[][] toDenseWeights()
+   {
+      double[][] weights = new double[dense.length][];
+      for (int n = 0; n < dense.length; n++)
+      {
+         weights[n] = sparse[n] != null ? sparse[n].toDense() : dense[n];
+      }
+      return weights;
+   }
+
+} // final class SparseWeights
@@ -0,0 +1,350 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Training Dataset
+ *
+ * A set of training cases stored in a binary file and memory mapped, so that opening even a very large image dataset
+ * only reads its header. All values in the file are little-endian. The file starts with a header:
+ *
+ * int      magic number, the bytes "NNDB"
+ * int      version of the format, currently 1
+ * int      number of training cases
+ * int      number of inputs for each case
+ * int      number of outputs for each case
+ * padding  zero bytes up to the next multiple of 8 bytes
+ *
+ * After the header comes the input block, a row-major matrix of doubles with one row of inputs for each case, and then
+ * the output block, a row-major matrix of doubles with one row of expected outputs for each case. Keeping the inputs
+ * together means the input block can be handed to a batched propagate as it is.
+ *
+ * The inputs and outputs of a case are exposed as DoubleBuffer views straight into the mapped file, so nothing is
+ * copied until the caller asks for it, for example with toTrainingData, which makes the double[][][] used by
+ * NeuralNet.train. Main.getTrainingData loads a dataset that way, so training from a binary dataset skips parsing but
+ * still copies every case once; only callers that read the views themselves avoid the copy.
+ *
+ * A text training data file, in the format read by Main.getTrainingData, can be converted to this format with convert
+ * or by running this class with the text and binary file names as arguments.
+ *
+ * Methods in this class:
+ * boolean      isBinaryDatasetFile(String filename)
+ * void         convert(String textFile, String binaryFile)
+ * int          size()
+ * int          getInputSize()
+ * int          getOutputSize()
+ * DoubleBuffer getInput(int c)
+ * DoubleBuffer getOutput(int c)
+ * double[][][] toTrainingData()
+ * void         main(String[] args)
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+public final class TrainingDataset
+{
+   static final int MAGIC = 0x4244_4E4E;    // "NNDB" read as a little-endian int, starts every binary dataset file
+   static final int VERSION = 1;            // version of the binary dataset format that is written
+   static final int HEADER_SIZE = 24;       // five ints, padded to a multiple of 8 bytes
+
+   private final int sizeOfData;            // number of training cases
+   private final int sizeOfInput;           // number of inputs for each case
+   private final int sizeOfOutput;          // number of outputs for each case
+
+   // The blocks are mapped in segments of whole rows, since one mapping can be at most 2 GB
+   private final DoubleBuffer[] inputSegments;
+   private final DoubleBuffer[] outputSegments;
+   private final int inputRowsPerSegment;
+   private final int outputRowsPerSegment;
+
+   /**
+    * Opens a binary dataset file and memory maps its input and output blocks. Only the header is read.
+    *
+    * @param filename the binary dataset file
+    */
+   public TrainingDataset(String filename) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+      {
+         ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+         while (header.hasRemaining() && channel.read(header, header.position()) >= 0)
+         {
+            // keep reading until the header is full or the file ends
+         }
+         if (header.hasRemaining())
+         {
+            throw new IOException("Binary dataset file " + filename + " is too short for its header");
+         }
+         header.flip();
+
+         if (header.getInt() != MAGIC)
+         {
+            throw new IOException(filename + " is not a binary dataset file");
+         }
+         int version = header.getInt();
+         if (version != VERSION)
+         {
+            throw new IOException("Unsupported binary dataset version " + version + " in " + filename);
+         }
+
+         sizeOfData = header.getInt();
+         sizeOfInput = header.getInt();
+         sizeOfOutput = header.getInt();
+         if (sizeOfData < 0 || sizeOfInput < 1 || sizeOfOutput < 1)
+         {
+            throw new IOException("Binary dataset file " + filename + " has a bad header: " + sizeOfData + " cases, " +
+                  sizeOfInput + " inputs, " + sizeOfOutput + " outputs");
+         }
+
+         long inputBytes = (long) sizeOfData * sizeOfInput * Double.BYTES;
+         long outputBytes = (long) sizeOfData * sizeOfOutput * Double.BYTES;
+         long expectedSize = HEADER_SIZE + inputBytes + outputBytes;
+         if (channel.size() != expectedSize)
+         {
+            throw new IOException("Binary dataset file " + filename + " is " + channel.size() + " bytes, expected " +
+                  expectedSize);
+         }
+
+         inputRowsPerSegment = rowsPerSegment(sizeOfInput);
+         outputRowsPerSegment = rowsPerSegment(sizeOfOutput);
+         inputSegments = mapBlock(channel, HEADER_SIZE, sizeOfInput, inputRowsPerSegment);
+         outputSegments = mapBlock(channel, HEADER_SIZE + inputBytes, sizeOfOutput, outputRowsPerSegment);
+      } // try (FileChannel channel = ...)
+   } // public TrainingDataset(String filename)
+
+   /**
+    * Finds how many rows of a block fit in one mapping.
+    *
+    * @param rowSize the number of doubles in each row
+    * @return the number of rows in each segment
+    */
+   private static int rowsPerSegment(int rowSize)
+   {
+      return Math.max(1, Integer.MAX_VALUE / (rowSize * Double.BYTES));
+   }
+
+   /**
+    * Memory maps a row-major block of doubles as read-only little-endian segments of whole rows.
+    *
+    * @param channel        the channel of the dataset file
+    * @param offset         the position in the file where the block starts
+    * @param rowSize        the number of doubles in each row
+    * @param rowsPerSegment the number of rows in each segment
+    * @return the views of each segment
+    */
+   private DoubleBuffer[] mapBlock(FileChannel channel, long offset, int rowSize, int rowsPerSegment) throws IOException
+   {
+      int numOfSegments = (sizeOfData + rowsPerSegment - 1) / rowsPerSegment;
+      DoubleBuffer[] segments = new DoubleBuffer[numOfSegments];
+      for (int s = 0; s < numOfSegments; s++)
+      {
+         int rows = Math.min(rowsPerSegment, sizeOfData - s * rowsPerSegment);
+         long bytes = (long) rows * rowSize * Double.BYTES;
+         segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes).order(ByteOrder.LITTLE_ENDIAN)
+               .asDoubleBuffer();
+         offset += bytes;
+      }
+      return segments;
+   }
+
+   /**
+    * Checks if a file is a binary dataset file by reading the magic number at its start.
+    *
+    * @param filename the name of the file
+    * @return true if the file starts with the binary dataset magic number, false otherwise
+    */
+   public static boolean isBinaryDatasetFile(String filename) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+      {
+         ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+         while (magic.hasRemaining() && channel.read(magic) >= 0)
+         {
+            // keep reading until the magic number is read or the file ends
+         }
+         return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+      }
+   }
+
+   /**
+    * Converts a text training data file into a binary dataset file. The text file has the format read by
+    * Main.getTrainingData. The cases are written one at a time to their place in the input and output blocks, so the
+    * text file never has to fit in memory.
+    *
+    * @param textFile   the text training data file to read
+    * @param binaryFile the binary dataset file to write
+    */
+   public static void convert(String textFile, String binaryFile) throws IOException
+   {
+      NumberReader reader = new NumberReader(textFile);
+      try (FileChannel channel = FileChannel.open(Paths.get(binaryFile), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         // Read sizes and write the header
+         int sizeOfData = reader.nextInt();
+         int sizeOfInput = reader.nextInt();
+         int sizeOfOutput = reader.nextInt();
+
+         ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+         header.putInt(MAGIC).putInt(VERSION).putInt(sizeOfData).putInt(sizeOfInput).putInt(sizeOfOutput);
+         header.clear();
+         writeFully(channel, header, 0);
+
+         // Read each case and write its inputs and outputs into the two blocks
+         long outputStart = HEADER_SIZE + (long) sizeOfData * sizeOfInput * Double.BYTES;
+         ByteBuffer input = ByteBuffer.allocate(sizeOfInput * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+         ByteBuffer output = ByteBuffer.allocate(sizeOfOutput * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+         for (int c = 0; c < sizeOfData; c++)
+         {
+            input.clear();
+            for (int j = 0; j < sizeOfInput; j++)
+            {
+               input.putDouble(reader.nextDouble());
+            }
+            input.flip();
+            writeFully(channel, input, HEADER_SIZE + (long) c * input.capacity());
+
+            output.clear();
+            for (int j = 0; j < sizeOfOutput; j++)
+            {
+               output.putDouble(reader.nextDouble());
+            }
+            output.flip();
+            writeFully(channel, output, outputStart + (long) c * output.capacity());
+         } // for (int c = 0; c < sizeOfData; c++)
+      } // try (FileChannel channel = ...)
+      finally
+      {
+         reader.close();
+      }
+   } // public static void convert(String textFile, String binaryFile)
+
+   /**
+    * Writes all of a buffer to a file channel at the given position.
+    *
+    * @param channel  the channel to write to
+    * @param buffer   the buffer to write
+    * @param position the position in the file to start writing at
+    */
+   private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+   {
+      while (buffer.hasRemaining())
+      {
+         position += channel.write(buffer, position);
+      }
+   }
+
+   /**
+    * Gets the number of training cases
+    *
+    * @return the number of training cases
+    */
+   public int size()
+   {
+      return sizeOfData;
+   }
+
+   /**
+    * Gets the number of inputs for each case
+    *
+    * @return the number of inputs
+    */
+   public int getInputSize()
+   {
+      return sizeOfInput;
+   }
+
+   /**
+    * Gets the number of outputs for each case
+    *
+    * @return the number of outputs
+    */
+   public int getOutputSize()
+   {
+      return sizeOfOutput;
+   }
+
+   /**
+    * Gets the inputs of a training case as a read-only view into the mapped file. Nothing is copied.
+    *
+    * @param c the index of the training case
+    * @return a buffer holding exactly the inputs of the case
+    */
+   public DoubleBuffer getInput(int c)
+   {
+      return row(inputSegments, inputRowsPerSegment, sizeOfInput, c);
+   }
+
+   /**
+    * Gets the expected outputs of a training case as a read-only view into the mapped file. Nothing is copied.
+    *
+    * @param c the index of the training case
+    * @return a buffer holding exactly the expected outputs of the case
+    */
+   public DoubleBuffer getOutput(int c)
+   {
+      return row(outputSegments, outputRowsPerSegment, sizeOfOutput, c);
+   }
+
+   /**
+    * Makes a view of one row of a mapped block.
+    *
+    * @param segments       the segments of the block
+    * @param rowsPerSegment the number of rows in each segment
+    * @param rowSize        the number of doubles in each row
+    * @param c              the index of the row
+    * @return a buffer holding exactly that row
+    */
+   private DoubleBuffer row(DoubleBuffer[] segments, int rowsPerSegment, int rowSize, int c)
+   {
+      if (c < 0 || c >= sizeOfData)
+      {
+         throw new IndexOutOfBoundsException("Training case " + c + " of " + sizeOfData);
+      }
+
+      DoubleBuffer row = segments[c / rowsPerSegment].duplicate();
+      int start = (c % rowsPerSegment) * rowSize;
+      row.position(start).limit(start + rowSize);
+      return row.slice();
+   }
+
+   /**
+    * Copies the whole dataset into a matrix indexed as trainingData[n][type][i], the same as the one returned by
+    * Main.getTrainingData. The copies are bulk copies out of the mapped file.
+    *
+    * @return the matrix of training data
+    */
+   public double[][][] toTrainingData()
+   {
+      double[][][] trainingData = new double[sizeOfData][2][];
+      for (int c = 0; c < sizeOfData; c++)
+      {
+         trainingData[c][0] = new double[sizeOfInput];
+         getInput(c).get(trainingData[c][0]);
+
+         trainingData[c][1] = new double[sizeOfOutput];
+         getOutput(c).get(trainingData[c][1]);
+      }
+      return trainingData;
+   }
+
+   /**
+    * Converts a text training data file to a binary dataset file.
+    *
+    * @param args the text file to read and the binary file to write
+    */
+   public static void main(String[] args) throws IOException
+   {
+      if (args.length != 2)
+      {
+         System.err.println("Usage: java TrainingDataset <text training data file> <binary dataset file>");
+         return;
+      }
+      convert(args[0], args[1]);
+   }
+
+} // public final class TrainingDataset
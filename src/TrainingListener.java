@@ -0,0 +1,40 @@
+/**
+ * Training Listener
+ *
+ * Gets told where the time of training goes, so that long runs can be watched and profiled without a debugger. A
+ * listener is added to a network with AbstractNeuralNet.addTrainingListener, and is called on the training thread at
+ * the end of every epoch with the metrics of that epoch. The metrics object is reused for the next epoch, so a
+ * listener that keeps them has to copy out the values it needs. Main also tells its listeners how long the training
+ * data took to load, since that happens before any network exists.
+ *
+ * Training only measures its phases while a network has at least one listener, so a network without any is not
+ * slowed down at all.
+ *
+ * Methods in this interface:
+ * void dataLoaded(String source, int cases, long nanos)
+ * void epochFinished(TrainingMetrics metrics)
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+public interface TrainingListener
+{
+   /**
+    * Called once the training data has been loaded. Does nothing unless it is overridden.
+    *
+    * @param source the file the training data was loaded from
+    * @param cases  the number of training cases loaded
+    * @param nanos  the time it took in nanoseconds
+    */
+   default void dataLoaded(String source, int cases, long nanos)
+   {
+   }
+
+   /**
+    * Called at the end of every epoch of training.
+    *
+    * @param metrics where the time of the epoch went
+    */
+   void epochFinished(TrainingMetrics metrics);
+
+} // public interface TrainingListener
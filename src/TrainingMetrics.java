@@ -0,0 +1,290 @@
+import java.util.Locale;
+
+/**
+ * Training Metrics
+ *
+ * Where the time of one epoch of training went. The time of the forward pass, the backward pass and the weight
+ * updates is kept for each connectivity layer, and the time of measuring the error is kept for the epoch as a whole.
+ * Along with these come the wall clock time of the epoch, the number of training cases it ran and the number of
+ * floating point operations that those took, from which the samples per second and effective GFLOP/s are found.
+ *
+ * The phase and layer times are thread times: when the cases of a batch are split between several threads, the time
+ * of every thread is added up, so they can add up to more than the wall clock time of the epoch. When each case
+ * changes the weights right away, backprop changes the weights in the same loop that finds omega, so that time is
+ * counted as BACKWARD, and UPDATE only has the time of applying the gradients of a batch.
+ *
+ * The operations counted are the multiplies and adds of the weights, 2 for each weight in each pass through it. A
+ * training case takes a forward pass, a pass to find the gradient, and a pass to find omega for every layer but the
+ * first, and each case that the error is measured on takes one more forward pass. Activation functions, clearing
+ * arrays and adding up the gradients of several threads are not counted.
+ *
+ * A network keeps one of these for each thread that trains it, which are added into the one given to the
+ * TrainingListeners at the end of each epoch.
+ *
+ * Methods in this class:
+ * void   addLayerTime(Phase phase, int layer, long nanos)
+ * void   addTime(Phase phase, long nanos)
+ * void   addAndClear(TrainingMetrics other)
+ * void   clear()
+ * int    getEpoch()
+ * int    getNumOfLayers()
+ * long   getEpochNanos()
+ * long   getNanos(Phase phase)
+ * long   getLayerNanos(Phase phase, int layer)
+ * long   getSamples()
+ * double getOperations()
+ * double getSamplesPerSecond()
+ * double getGflops()
+ * double getError()
+ * double getLearningRate()
+ * String toString()
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+public final class TrainingMetrics
+{
+   /**
+    * The parts of training whose time is measured.
+    *
+    * FORWARD          - propagating the training cases forward, for each layer
+    * BACKWARD         - finding psi, omega and the gradients, and changing the weights right away for a batch of one
+    * UPDATE           - changing the weights by the gradients of a batch, for each layer
+    * ERROR_EVALUATION - measuring the error used to adapt the learning rate, for the whole network
+    */
+   public enum Phase
+   {
+      FORWARD, BACKWARD, UPDATE, ERROR_EVALUATION
+   }
+
+   private final int numOfLayers;       // number of connectivity layers
+   private final long[] phaseNanos;     // the time of each phase
+   private final long[][] layerNanos;   // the time of each phase for each connectivity layer
+
+   int epoch;                           // the epoch these are for, starting at 1
+   long epochNanos;                     // the wall clock time of the epoch
+   long samples;                        // the number of training cases run during the epoch
+   double operations;                   // the number of floating point operations done during the epoch
+   double error;                        // the lowest error seen so far, as printed while training
+   double learningRate;                 // the learning rate at the end of the epoch
+
+   /**
+    * Creates empty metrics for a network with the given number of connectivity layers.
+    *
+    * @param numOfLayers the number of connectivity layers
+    */
+   TrainingMetrics(int numOfLayers)
+   {
+      this.numOfLayers = numOfLayers;
+      phaseNanos = new long[Phase.values().length];
+      layerNanos = new long[Phase.values().length][numOfLayers];
+   }
+
+   /**
+    * Adds time spent on one layer during a phase.
+    *
+    * @param phase the phase the time was spent in
+    * @param layer the connectivity layer the time was spent on
+    * @param nanos the time in nanoseconds
+    */
+   void addLayerTime(Phase phase, int layer, long nanos)
+   {
+      layerNanos[phase.ordinal()][layer] += nanos;
+      phaseNanos[phase.ordinal()] += nanos;
+   }
+
+   /**
+    * Adds time spent during a phase that is not split into layers.
+    *
+    * @param phase the phase the time was spent in
+    * @param nanos the time in nanoseconds
+    */
+   void addTime(Phase phase, long nanos)
+   {
+      phaseNanos[phase.ordinal()] += nanos;
+   }
+
+   /**
+    * Adds the phase and layer times of other metrics, such as those of one training thread, into these, then clears
+    * the other ones.
+    *
+    * @param other the metrics to add in and clear
+    */
+   void addAndClear(TrainingMetrics other)
+   {
+      for (int p = 0; p < phaseNanos.length; p++)
+      {
+         phaseNanos[p] += other.phaseNanos[p];
+         for (int n = 0; n < numOfLayers; n++)
+         {
+            layerNanos[p][n] += other.layerNanos[p][n];
+         }
+      }
+      other.clear();
+   }
+
+   /**
+    * Sets every time and count back to 0 for the next epoch.
+    */
+   void clear()
+   {
+      for (int p = 0; p < phaseNanos.length; p++)
+      {
+         phaseNanos[p] = 0;
+         for (int n = 0; n < numOfLayers; n++)
+         {
+            layerNanos[p][n] = 0;
+         }
+      }
+      epochNanos = 0;
+      samples = 0;
+      operations = 0.0;
+   }
+
+   /**
+    * Gets the epoch these metrics are for.
+    *
+    * @return the epoch, starting at 1
+    */
+   public int getEpoch()
+   {
+      return epoch;
+   }
+
+   /**
+    * Gets the number of connectivity layers that times are kept for.
+    *
+    * @return the number of connectivity layers
+    */
+   public int getNumOfLayers()
+   {
+      return numOfLayers;
+   }
+
+   /**
+    * Gets the wall clock time of the epoch.
+    *
+    * @return the time in nanoseconds
+    */
+   public long getEpochNanos()
+   {
+      return epochNanos;
+   }
+
+   /**
+    * Gets the time spent during a phase, added up over every layer and thread.
+    *
+    * @param phase the phase
+    * @return the time in nanoseconds
+    */
+   public long getNanos(Phase phase)
+   {
+      return phaseNanos[phase.ordinal()];
+   }
+
+   /**
+    * Gets the time spent on one layer during a phase, added up over every thread. The time of ERROR_EVALUATION is
+    * not split into layers, so it is always 0 here.
+    *
+    * @param phase the phase
+    * @param layer the connectivity layer
+    * @return the time in nanoseconds
+    */
+   public long getLayerNanos(Phase phase, int layer)
+   {
+      return layerNanos[phase.ordinal()][layer];
+   }
+
+   /**
+    * Gets the number of training cases run during the epoch.
+    *
+    * @return the number of cases
+    */
+   public long getSamples()
+   {
+      return samples;
+   }
+
+   /**
+    * Gets the number of floating point operations done during the epoch, counted as described above.
+    *
+    * @return the number of operations
+    */
+   public double getOperations()
+   {
+      return operations;
+   }
+
+   /**
+    * Finds the number of training cases run per second of wall clock time.
+    *
+    * @return the samples per second
+    */
+   public double getSamplesPerSecond()
+   {
+      return epochNanos == 0 ? 0.0 : samples * 1e9 / epochNanos;
+   }
+
+   /**
+    * Finds the billions of floating point operations done per second of wall clock time.
+    *
+    * @return the effective GFLOP/s
+    */
+   public double getGflops()
+   {
+      return epochNanos == 0 ? 0.0 : operations / epochNanos;
+   }
+
+   /**
+    * Gets the lowest error seen so far, the square root of the error used to adapt the learning rate, as it is printed
+    * while training.
+    *
+    * @return the error
+    */
+   public double getError()
+   {
+      return error;
+   }
+
+   /**
+    * Gets the learning rate at the end of the epoch.
+    *
+    * @return the learning rate
+    */
+   public double getLearningRate()
+   {
+      return learningRate;
+   }
+
+   /**
+    * Describes the epoch on one line: its time, speed and error, then the time of each phase in milliseconds, with the
+    * time of each layer in brackets for the phases that are split into layers.
+    *
+    * @return the description
+    */
+   @Override
+   public String toString()
+   {
+      StringBuilder line = new StringBuilder(String.format(Locale.ROOT,
+            "Epoch %d: %.1f ms, %.1f samples/s, %.3f GFLOP/s, Error = %s", epoch, epochNanos / 1e6,
+            getSamplesPerSecond(), getGflops(), error));
+
+      for (Phase phase : Phase.values())
+      {
+         line.append(String.format(Locale.ROOT, ", %s %.1f", phase.name().toLowerCase(Locale.ROOT),
+               getNanos(phase) / 1e6));
+         if (phase != Phase.ERROR_EVALUATION)
+         {
+            line.append(" [");
+            for (int n = 0; n < numOfLayers; n++)
+            {
+               line.append(n == 0 ? "" : " ").append(String.format(Locale.ROOT, "%.1f", getLayerNanos(phase, n) / 1e6));
+            }
+            line.append("]");
+         }
+      } // for (Phase phase : Phase.values())
+
+      return line.toString();
+   } // public String toString()
+
+} // public final class TrainingMetrics
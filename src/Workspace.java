@@ -0,0 +1,97 @@
+/**
+ * Workspace
+ *
+ * Holds the scratch arrays that one thread needs to run a NeuralNet: the activations, omega and psi values for every
+ * activation layer, optionally a gradient accumulator with the same flat row-major layout as the weights of the
+ * network, the list of inputs that are not zero, and the matrices used to propagate a batch of inputs at once. Nothing
+ * in here is shared, so every thread that trains or runs a network at the same time as another thread has to use its
+ * own workspace. The size of each layer, the metrics and the list of inputs are kept by AbstractWorkspace.
+ *
+ * Methods in this class:
+ * void createGradients()
+ * SparseInput gatherInput(double[] input, double threshold)
+ * double[][] getBatchActivations()
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+final class Workspace extends AbstractWorkspace
+{
+   final double[][] activations;
+   final double[][] omega;
+   final double[][] psi;
+
+   double[][] gradients;       // summed weight gradients, created only when they are first needed
+
+   private double[][] batchActivations;   // row-major activation matrices for batches, created when first needed
+
+   /**
+    * Creates the activations, omega, and psi arrays for a network with the given layer sizes. They are jagged
+    * matrices with each row having a number of columns equal to the size of that layer.
+    *
+    * @param sizeOfLayers the number of processing units in each activation layer
+    */
+   Workspace(int[] sizeOfLayers)
+   {
+      super(sizeOfLayers);
+
+      activations = new double[sizeOfLayers.length][];
+      omega = new double[sizeOfLayers.length][];
+      psi = new double[sizeOfLayers.length][];
+
+      for (int n = 0; n < sizeOfLayers.length; n++)
+      {
+         activations[n] = new double[sizeOfLayers[n]];
+         omega[n] = new double[sizeOfLayers[n]];
+         psi[n] = new double[sizeOfLayers[n]];
+      }
+   }
+
+   /**
+    * Creates the gradient accumulator, with one flat array per connectivity layer, if it does not exist yet.
+    */
+   void createGradients()
+   {
+      if (gradients == null)
+      {
+         gradients = new double[sizeOfLayers.length - 1][];
+         for (int n = 0; n < gradients.length; n++)
+         {
+            gradients[n] = new double[sizeOfLayers[n] * sizeOfLayers[n + 1]];
+         }
+      }
+   }
+
+   /**
+    * Gathers the inputs that are not treated as zero into sparseInput, or sets it to null if the whole input layer
+    * should be used instead.
+    *
+    * @param input     the activations of the input layer
+    * @param threshold the largest absolute value that is treated as zero, or negative to use the whole input layer
+    * @return the new sparseInput
+    */
+   SparseInput gatherInput(double[] input, double threshold)
+   {
+      sparseInput = null;
+      if (threshold >= 0.0 && getSparseScratch().gather(input, threshold))
+      {
+         sparseInput = getSparseScratch();
+      }
+      return sparseInput;
+   } // SparseInput gatherInput(double[] input, double threshold)
+
+   /**
+    * Gets the activation matrices used by NeuralNet.propagateBatch, creating them the first time.
+    *
+    * @return the batch activation arrays
+    */
+   double[][] getBatchActivations()
+   {
+      if (batchActivations == null)
+      {
+         batchActivations = NeuralNet.createBatchActivations(sizeOfLayers);
+      }
+      return batchActivations;
+   }
+
+} // final class Workspace extends AbstractWorkspace
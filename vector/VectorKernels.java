@@ -0,0 +1,292 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector Kernels
+ *
+ * The kernels of Kernels written with the Vector API, running as many doubles or floats at a time as the widest vector
+ * registers of the processor hold. This file needs the jdk.incubator.vector module to compile, so it is kept out of the
+ * src folder and compiled separately, against the classes of src:
+ *
+ * javac --add-modules jdk.incubator.vector -cp out -d out vector/VectorKernels.java
+ *
+ * Kernels.INSTANCE loads this class by name and falls back to the scalar kernels if it is missing, the module is not
+ * available, or isSupported finds no vectors wider than one double. See Kernels for how far the results can be from
+ * those of the scalar kernels.
+ *
+ * Every kernel runs whole vectors up to the last multiple of the vector length, then finishes the elements left over
+ * with the scalar loop. Multiplies and adds are kept separate rather than fused, since a fused multiply-add is very
+ * slow on processors without it, and so that the element by element kernels round exactly like the scalar ones. The
+ * kernels that take a pruned mask load it as a vector mask and blend the old weights back into the pruned lanes before
+ * storing, so that the stores stay whole vectors.
+ *
+ * @author agent
+ * @version October 17, 2026
+ */
+final class VectorKernels extends Kernels
+{
+   private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+   private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+   /**
+    * Creates the vector kernels.
+    */
+   VectorKernels()
+   {
+   }
+
+   /**
+    * Checks whether the processor has vectors wider than one double. Without them the scalar kernels are faster, so
+    * Kernels.load only uses these kernels when this is true.
+    *
+    * @return true if the preferred vectors hold at least two doubles
+    */
+   static boolean isSupported()
+   {
+      return DOUBLES.length() >= 2;
+   }
+
+   @Override
+   String getName()
+   {
+      return "vector, " + DOUBLES.length() + " doubles or " + FLOATS.length() + " floats at a time";
+   }
+
+   /**
+    * Calculates the dot product with two vector accumulators, so that each add does not have to wait for the one
+    * before it, and adds up their lanes at the end.
+    */
+   @Override
+   double dot(double[] w, int row, double[] x, int size)
+   {
+      int lanes = DOUBLES.length();
+      DoubleVector sum0 = DoubleVector.zero(DOUBLES);
+      DoubleVector sum1 = DoubleVector.zero(DOUBLES);
+
+      int j = 0;
+      for (; j + 2 * lanes <= size; j += 2 * lanes)
+      {
+         sum0 = sum0.add(DoubleVector.fromArray(DOUBLES, w, row + j).mul(DoubleVector.fromArray(DOUBLES, x, j)));
+         sum1 = sum1.add(DoubleVector.fromArray(DOUBLES, w, row + j + lanes)
+               .mul(DoubleVector.fromArray(DOUBLES, x, j + lanes)));
+      }
+      for (; j + lanes <= size; j += lanes)
+      {
+         sum0 = sum0.add(DoubleVector.fromArray(DOUBLES, w, row + j).mul(DoubleVector.fromArray(DOUBLES, x, j)));
+      }
+
+      double sum = sum0.add(sum1).reduceLanes(VectorOperators.ADD);
+      for (; j < size; j++)
+      {
+         sum += w[row + j] * x[j];
+      }
+      return sum;
+   } // double dot(double[] w, int row, double[] x, int size)
+
+   @Override
+   float dot(float[] w, int row, float[] x, int size)
+   {
+      int lanes = FLOATS.length();
+      FloatVector sum0 = FloatVector.zero(FLOATS);
+      FloatVector sum1 = FloatVector.zero(FLOATS);
+
+      int j = 0;
+      for (; j + 2 * lanes <= size; j += 2 * lanes)
+      {
+         sum0 = sum0.add(FloatVector.fromArray(FLOATS, w, row + j).mul(FloatVector.fromArray(FLOATS, x, j)));
+         sum1 = sum1.add(FloatVector.fromArray(FLOATS, w, row + j + lanes)
+               .mul(FloatVector.fromArray(FLOATS, x, j + lanes)));
+      }
+      for (; j + lanes <= size; j += lanes)
+      {
+         sum0 = sum0.add(FloatVector.fromArray(FLOATS, w, row + j).mul(FloatVector.fromArray(FLOATS, x, j)));
+      }
+
+      float sum = sum0.add(sum1).reduceLanes(VectorOperators.ADD);
+      for (; j < size; j++)
+      {
+         sum += w[row + j] * x[j];
+      }
+      return sum;
+   } // float dot(float[] w, int row, float[] x, int size)
+
+   @Override
+   void addScaled(double[] y, int yOffset, double[] x, int xOffset, int size, double a)
+   {
+      int j = 0;
+      for (; j < DOUBLES.loopBound(size); j += DOUBLES.length())
+      {
+         DoubleVector.fromArray(DOUBLES, y, yOffset + j)
+               .add(DoubleVector.fromArray(DOUBLES, x, xOffset + j).mul(a))
+               .intoArray(y, yOffset + j);
+      }
+      for (; j < size; j++)
+      {
+         y[yOffset + j] += a * x[xOffset + j];
+      }
+   }
+
+   @Override
+   void addScaled(float[] y, int yOffset, float[] x, int xOffset, int size, float a)
+   {
+      int j = 0;
+      for (; j < FLOATS.loopBound(size); j += FLOATS.length())
+      {
+         FloatVector.fromArray(FLOATS, y, yOffset + j)
+               .add(FloatVector.fromArray(FLOATS, x, xOffset + j).mul(a))
+               .intoArray(y, yOffset + j);
+      }
+      for (; j < size; j++)
+      {
+         y[yOffset + j] += a * x[xOffset + j];
+      }
+   }
+
+   @Override
+   void backProject(double[] w, int row, double[] prev, double[] omega, int size, double psi, double step)
+   {
+      int j = 0;
+      for (; j < DOUBLES.loopBound(size); j += DOUBLES.length())
+      {
+         DoubleVector weights = DoubleVector.fromArray(DOUBLES, w, row + j);
+         DoubleVector.fromArray(DOUBLES, omega, j).add(weights.mul(psi)).intoArray(omega, j);
+         weights.add(DoubleVector.fromArray(DOUBLES, prev, j).mul(step)).intoArray(w, row + j);
+      }
+      for (; j < size; j++)
+      {
+         omega[j] += psi * w[row + j];
+         w[row + j] += step * prev[j];
+      }
+   }
+
+   @Override
+   void backProject(float[] w, int row, float[] prev, float[] omega, int size, float psi, float step)
+   {
+      int j = 0;
+      for (; j < FLOATS.loopBound(size); j += FLOATS.length())
+      {
+         FloatVector weights = FloatVector.fromArray(FLOATS, w, row + j);
+         FloatVector.fromArray(FLOATS, omega, j).add(weights.mul(psi)).intoArray(omega, j);
+         weights.add(FloatVector.fromArray(FLOATS, prev, j).mul(step)).intoArray(w, row + j);
+      }
+      for (; j < size; j++)
+      {
+         omega[j] += psi * w[row + j];
+         w[row + j] += step * prev[j];
+      }
+   }
+
+   @Override
+   void addScaled(double[] y, int yOffset, double[] x, int xOffset, int size, double a, boolean[] pruned)
+   {
+      if (pruned == null)
+      {
+         addScaled(y, yOffset, x, xOffset, size, a);
+         return;
+      }
+
+      int j = 0;
+      for (; j < DOUBLES.loopBound(size); j += DOUBLES.length())
+      {
+         DoubleVector old = DoubleVector.fromArray(DOUBLES, y, yOffset + j);
+         old.add(DoubleVector.fromArray(DOUBLES, x, xOffset + j).mul(a))
+               .blend(old, VectorMask.fromArray(DOUBLES, pruned, yOffset + j))
+               .intoArray(y, yOffset + j);
+      }
+      for (; j < size; j++)
+      {
+         if (!pruned[yOffset + j])
+         {
+            y[yOffset + j] += a * x[xOffset + j];
+         }
+      }
+   } // void addScaled(double[] y, int yOffset, double[] x, int xOffset, int size, double a, boolean[] pruned)
+
+   @Override
+   void addScaled(float[] y, int yOffset, float[] x, int xOffset, int size, float a, boolean[] pruned)
+   {
+      if (pruned == null)
+      {
+         addScaled(y, yOffset, x, xOffset, size, a);
+         return;
+      }
+
+      int j = 0;
+      for (; j < FLOATS.loopBound(size); j += FLOATS.length())
+      {
+         FloatVector old = FloatVector.fromArray(FLOATS, y, yOffset + j);
+         old.add(FloatVector.fromArray(FLOATS, x, xOffset + j).mul(a))
+               .blend(old, VectorMask.fromArray(FLOATS, pruned, yOffset + j))
+               .intoArray(y, yOffset + j);
+      }
+      for (; j < size; j++)
+      {
+         if (!pruned[yOffset + j])
+         {
+            y[yOffset + j] += a * x[xOffset + j];
+         }
+      }
+   } // void addScaled(float[] y, int yOffset, float[] x, int xOffset, int size, float a, boolean[] pruned)
+
+   @Override
+   void backProject(double[] w, int row, double[] prev, double[] omega, int size, double psi, double step,
+                    boolean[] pruned)
+   {
+      if (pruned == null)
+      {
+         backProject(w, row, prev, omega, size, psi, step);
+         return;
+      }
+
+      int j = 0;
+      for (; j < DOUBLES.loopBound(size); j += DOUBLES.length())
+      {
+         DoubleVector weights = DoubleVector.fromArray(DOUBLES, w, row + j);
+         DoubleVector.fromArray(DOUBLES, omega, j).add(weights.mul(psi)).intoArray(omega, j);
+         weights.add(DoubleVector.fromArray(DOUBLES, prev, j).mul(step))
+               .blend(weights, VectorMask.fromArray(DOUBLES, pruned, row + j))
+               .intoArray(w, row + j);
+      }
+      for (; j < size; j++)
+      {
+         omega[j] += psi * w[row + j];
+         if (!pruned[row + j])
+         {
+            w[row + j] += step * prev[j];
+         }
+      }
+   } // void backProject(double[] w, int row, double[] prev, double[] omega, int size, double psi, double step, ...)
+
+   @Override
+   void backProject(float[] w, int row, float[] prev, float[] omega, int size, float psi, float step,
+                    boolean[] pruned)
+   {
+      if (pruned == null)
+      {
+         backProject(w, row, prev, omega, size, psi, step);
+         return;
+      }
+
+      int j = 0;
+      for (; j < FLOATS.loopBound(size); j += FLOATS.length())
+      {
+         FloatVector weights = FloatVector.fromArray(FLOATS, w, row + j);
+         FloatVector.fromArray(FLOATS, omega, j).add(weights.mul(psi)).intoArray(omega, j);
+         weights.add(FloatVector.fromArray(FLOATS, prev, j).mul(step))
+               .blend(weights, VectorMask.fromArray(FLOATS, pruned, row + j))
+               .intoArray(w, row + j);
+      }
+      for (; j < size; j++)
+      {
+         omega[j] += psi * w[row + j];
+         if (!pruned[row + j])
+         {
+            w[row + j] += step * prev[j];
+         }
+      }
+   } // void backProject(float[] w, int row, float[] prev, float[] omega, int size, float psi, float step, ...)
+
+} // final class VectorKernels extends Kernels